@@ -21,6 +21,7 @@ package io.jitstatic.injection.configuration.hosted;
  */
 
 import java.nio.file.Path;
+import java.util.List;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
@@ -101,6 +102,78 @@ public class HostedFactory {
     @JsonProperty
     private int iterations = 5;
 
+    @NotNull
+    @JsonProperty
+    private List<String> warmUpRefs = List.of();
+
+    @JsonProperty
+    @Min(0)
+    private long warmUpBytes = 64_000_000;
+
+    @JsonProperty
+    @Min(0)
+    private int hotSetSize = 1000;
+
+    @JsonProperty
+    @Min(1)
+    private long hotSetInterval = 300;
+
+    @JsonProperty
+    @Min(0)
+    private long refIdleTimeout = 1800;
+
+    @JsonProperty
+    @Min(0)
+    private long offHeapCacheSize = 0;
+
+    @JsonProperty
+    @Min(1)
+    private int offHeapSlabSize = 4_194_304;
+
+    @JsonProperty
+    @Min(1)
+    private int largeObjectWriters = 128;
+
+    @JsonProperty
+    @Min(0)
+    private int largeObjectWriterQueue = 64;
+
+    @JsonProperty
+    @Min(0)
+    private long spillCacheSize = 0;
+
+    @JsonProperty
+    @Min(0)
+    private long compressionCacheSize = 64_000_000;
+
+    @JsonProperty
+    @Min(0)
+    private int compressionMinSize = 1024;
+
+    @JsonProperty
+    @Min(0)
+    private long deltaCacheSize = 16_000_000;
+
+    @JsonProperty
+    @Min(0)
+    private int maxAcceptedWrites = 1000;
+
+    @JsonProperty
+    @Min(1)
+    private long maxImportSize = 256_000_000;
+
+    @NotNull
+    @JsonProperty
+    private Durability durability = Durability.RELAXED;
+
+    @JsonProperty
+    @Min(1)
+    private long durabilityInterval = 1000;
+
+    @JsonProperty
+    @Min(1)
+    private int durabilityCommits = 100;
+
     public String getServletName() { return servletName; }
 
     public void setServletName(String servletName) { this.servletName = servletName; }
@@ -141,6 +214,14 @@ public class HostedFactory {
 
     public void setProtectHealthChecks(boolean protectHealthChecks) { this.protectHealthChecks = protectHealthChecks; }
 
+    /**
+     * How soon a write is forced to disk. STRICT before it's answered, BATCHED on a timer or after a number of commits, RELAXED when the OS
+     * gets to it.
+     */
+    public enum Durability {
+        STRICT, BATCHED, RELAXED
+    }
+
     public static class Cors {
         @JsonProperty
         @NotEmpty
@@ -212,6 +293,78 @@ public class HostedFactory {
 
     public void setIterations(int iterations) { this.iterations = iterations; }
 
+    public List<String> getWarmUpRefs() { return warmUpRefs; }
+
+    public void setWarmUpRefs(List<String> warmUpRefs) { this.warmUpRefs = warmUpRefs; }
+
+    public long getWarmUpBytes() { return warmUpBytes; }
+
+    public void setWarmUpBytes(long warmUpBytes) { this.warmUpBytes = warmUpBytes; }
+
+    public int getHotSetSize() { return hotSetSize; }
+
+    public void setHotSetSize(int hotSetSize) { this.hotSetSize = hotSetSize; }
+
+    public long getHotSetInterval() { return hotSetInterval; }
+
+    public void setHotSetInterval(long hotSetInterval) { this.hotSetInterval = hotSetInterval; }
+
+    public long getRefIdleTimeout() { return refIdleTimeout; }
+
+    public void setRefIdleTimeout(long refIdleTimeout) { this.refIdleTimeout = refIdleTimeout; }
+
+    public long getOffHeapCacheSize() { return offHeapCacheSize; }
+
+    public void setOffHeapCacheSize(long offHeapCacheSize) { this.offHeapCacheSize = offHeapCacheSize; }
+
+    public int getOffHeapSlabSize() { return offHeapSlabSize; }
+
+    public void setOffHeapSlabSize(int offHeapSlabSize) { this.offHeapSlabSize = offHeapSlabSize; }
+
+    public int getLargeObjectWriters() { return largeObjectWriters; }
+
+    public void setLargeObjectWriters(int largeObjectWriters) { this.largeObjectWriters = largeObjectWriters; }
+
+    public int getLargeObjectWriterQueue() { return largeObjectWriterQueue; }
+
+    public void setLargeObjectWriterQueue(int largeObjectWriterQueue) { this.largeObjectWriterQueue = largeObjectWriterQueue; }
+
+    public long getSpillCacheSize() { return spillCacheSize; }
+
+    public void setSpillCacheSize(long spillCacheSize) { this.spillCacheSize = spillCacheSize; }
+
+    public long getCompressionCacheSize() { return compressionCacheSize; }
+
+    public void setCompressionCacheSize(long compressionCacheSize) { this.compressionCacheSize = compressionCacheSize; }
+
+    public int getCompressionMinSize() { return compressionMinSize; }
+
+    public void setCompressionMinSize(int compressionMinSize) { this.compressionMinSize = compressionMinSize; }
+
+    public long getDeltaCacheSize() { return deltaCacheSize; }
+
+    public void setDeltaCacheSize(long deltaCacheSize) { this.deltaCacheSize = deltaCacheSize; }
+
+    public int getMaxAcceptedWrites() { return maxAcceptedWrites; }
+
+    public void setMaxAcceptedWrites(int maxAcceptedWrites) { this.maxAcceptedWrites = maxAcceptedWrites; }
+
+    public long getMaxImportSize() { return maxImportSize; }
+
+    public void setMaxImportSize(long maxImportSize) { this.maxImportSize = maxImportSize; }
+
+    public Durability getDurability() { return durability; }
+
+    public void setDurability(Durability durability) { this.durability = durability; }
+
+    public long getDurabilityInterval() { return durabilityInterval; }
+
+    public void setDurabilityInterval(long durabilityInterval) { this.durabilityInterval = durabilityInterval; }
+
+    public int getDurabilityCommits() { return durabilityCommits; }
+
+    public void setDurabilityCommits(int durabilityCommits) { this.durabilityCommits = durabilityCommits; }
+
     public boolean isProtectTasks() { return protectTasks; }
 
     public void setProtectTasks(boolean protectTasks) { this.protectTasks = protectTasks; }
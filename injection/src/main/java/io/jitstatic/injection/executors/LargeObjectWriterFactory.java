@@ -0,0 +1,80 @@
+package io.jitstatic.injection.executors;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.Factory;
+
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+
+import io.jitstatic.injection.configuration.JitstaticConfiguration;
+import io.jitstatic.injection.configuration.hosted.HostedFactory;
+import io.jitstatic.utils.NamingThreadFactory;
+
+/**
+ * Large objects are written with blocking output, so each download holds one of the pool's threads until the client has read all of it. The pool is a
+ * cap on how many large downloads run at once, leaving the rest of the server's threads to everything else. Downloads beyond the cap wait in a bounded
+ * queue, when that's full new ones are rejected instead of piling up behind slow clients. Idle threads are let go so a large cap costs nothing when
+ * it isn't used.
+ */
+public class LargeObjectWriterFactory implements Factory<ExecutorService> {
+
+    private ExecutorService executor;
+
+    @Inject
+    public LargeObjectWriterFactory(JitstaticConfiguration config, MetricRegistry metricRegistry) {
+        final HostedFactory hostedFactory = config.getHostedFactory();
+        final int writers = hostedFactory.getLargeObjectWriters();
+        final int queued = hostedFactory.getLargeObjectWriterQueue();
+        final BlockingQueue<Runnable> queue = queued == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queued);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(writers, writers, 60L, TimeUnit.SECONDS, queue, new NamingThreadFactory("LargeObjectWriter"));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = new InstrumentedExecutorService(pool, metricRegistry, "LargeObjectWriter");
+    }
+
+    @Override
+    @Singleton
+    @LargeObjectWriter
+    public ExecutorService provide() {
+        return executor;
+    }
+
+    @Override
+    public void dispose(ExecutorService instance) {
+        instance.shutdown();
+        try {
+            instance.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -65,7 +65,10 @@ import io.dropwizard.auth.AuthValueFactoryProvider;
 import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.jitstatic.api.AcceptedWrites;
+import io.jitstatic.api.ByteBufferMessageBodyWriter;
 import io.jitstatic.api.CliResource;
+import io.jitstatic.api.CommitResource;
 import io.jitstatic.api.JitstaticInfoResource;
 import io.jitstatic.api.KeyResource;
 import io.jitstatic.api.MetaKeyResource;
@@ -84,12 +87,16 @@ import io.jitstatic.injection.configuration.hosted.HostedFactory.Cors;
 import io.jitstatic.injection.configuration.reporting.ConsoleReporting;
 import io.jitstatic.injection.executors.DefaultExecutorAnnotation;
 import io.jitstatic.injection.executors.DefaultExecutorFactory;
+import io.jitstatic.injection.executors.LargeObjectWriterAnnotation;
+import io.jitstatic.injection.executors.LargeObjectWriterFactory;
 import io.jitstatic.injection.executors.RepoWriterAnnotation;
 import io.jitstatic.injection.executors.RepoWriterFactory;
 import io.jitstatic.injection.executors.WorkStealerAnnotation;
 import io.jitstatic.injection.executors.WorkStealerFactory;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
+import io.jitstatic.source.SourceCachesFactory;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.KeyStorage;
 import io.jitstatic.storage.Storage;
@@ -138,6 +145,9 @@ public class JitstaticApplication extends Application<JitstaticConfiguration> {
                             .qualifiedBy(RepoWriterAnnotation.INSTANCE);
                     bindFactory(WorkStealerFactory.class, Singleton.class).to(Factory.class).to(ExecutorService.class)
                             .qualifiedBy(WorkStealerAnnotation.INSTANCE);
+                    bindFactory(LargeObjectWriterFactory.class, Singleton.class).to(Factory.class).to(ExecutorService.class)
+                            .qualifiedBy(LargeObjectWriterAnnotation.INSTANCE);
+                    bindFactory(SourceCachesFactory.class, Singleton.class).to(Factory.class).to(SourceCaches.class);
 
                     bind(HashService.class).to(HashService.class).in(Singleton.class);
                     bind(LocalRefLockService.class).to(RefLockService.class).in(Singleton.class);
@@ -145,6 +155,7 @@ public class JitstaticApplication extends Application<JitstaticConfiguration> {
                     bind(KeyStorage.class).to(Storage.class).to(InjectableManaged.class).to(InjectableHealthCheck.class).in(Singleton.class);
                     bind(GitServletHook.class).to(GitServletHook.class).to(InjectableManaged.class).in(Singleton.class);
                     bind(LoginServiceHook.class).to(LoginServiceHook.class).to(InjectableManaged.class).in(Singleton.class);
+                    bind(AcceptedWrites.class).to(AcceptedWrites.class).in(Singleton.class);
                     loaded = true;
                 }
             }
@@ -153,9 +164,11 @@ public class JitstaticApplication extends Application<JitstaticConfiguration> {
         env.jersey().register(new AuthDynamicFeature(UrlAwareBasicCredentialAuthFilter.class));
         env.jersey().register(new AuthValueFactoryProvider.Binder<>(User.class));
 
+        env.jersey().register(ByteBufferMessageBodyWriter.class);
         env.jersey().register(KeyResource.class);
         env.jersey().register(JitstaticInfoResource.class);
         env.jersey().register(MetaKeyResource.class);
+        env.jersey().register(CommitResource.class);
         env.jersey().register(UsersResource.class);
         env.jersey().register(CliResource.class);
 
@@ -43,11 +43,14 @@ import org.slf4j.Logger;
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.MetaData;
 import io.jitstatic.Role;
+import io.jitstatic.RoleSet;
 import io.jitstatic.UpdateFailedException;
+import io.jitstatic.auth.RoleSecurityContext;
 import io.jitstatic.auth.User;
 import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.storage.KeyAlreadyExist;
 import io.jitstatic.storage.Storage;
+import io.jitstatic.utils.KeyPaths;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
 
@@ -195,17 +198,21 @@ class APIHelper {
     }
 
     CompletableFuture<StoreInfo> checkIfKeyExist(final String key, final String ref, final Storage storage) throws RefNotFoundException {
+        if (KeyPaths.hasDotSegment(key) && !key.endsWith("/")) {
+            // Hidden keys are never served, no need to ask the storage
+            return CompletableFuture.failedFuture(new WebApplicationException(key, Status.NOT_FOUND));
+        }
         return storage.getKey(key, ref)
                 .exceptionally(this.keyExceptionHandler(Optional::empty))
                 .thenApply(storeInfo -> storeInfo.orElseThrow(() -> new WebApplicationException(key, Status.NOT_FOUND)));
     }
 
-    boolean canAdministrate(final User user, final Set<Role> writeRoles) {
+    boolean canAdministrate(final User user, final RoleSet writeRoles) {
         return writeRoles.isEmpty() && user.isAdmin();
     }
 
     void checkWritePermission(final String key, final User user, SecurityContext context, final String ref, final MetaData metaData) {
-        final Set<Role> writeRoles = metaData.getWrite();
+        final RoleSet writeRoles = metaData.getWriteRoles();
         if (!(APIHelper.isUserInRole(context, writeRoles) || (canAdministrate(user, writeRoles)))) {
             log.info(KeyResource.RESOURCE_IS_DENIED_FOR_USER, key, ref, user);
             throw new WebApplicationException(Status.FORBIDDEN);
@@ -220,6 +227,18 @@ class APIHelper {
         return user.getName() + "@" + req.getRemoteHost();
     }
 
+    public static boolean isUserInRole(final SecurityContext context, final RoleSet roles) {
+        if (context instanceof RoleSecurityContext) {
+            return ((RoleSecurityContext) context).isUserInAnyRole(roles);
+        }
+        for (int i = 0; i < roles.size(); i++) {
+            if (context.isUserInRole(roles.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean isUserInRole(final SecurityContext context, final Set<Role> roles) {
         for (Role role : roles) {
             if (context.isUserInRole(role.getRole())) {
@@ -0,0 +1,79 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * A write that was answered before it was committed. It's pending until the commit is done, and then either committed with the key's new version or
+ * failed with the status code the write would have been answered with.
+ */
+@JsonInclude(Include.NON_NULL)
+public class AcceptedWrite {
+
+    public enum Status {
+        PENDING, COMMITTED, FAILED
+    }
+
+    private final String id;
+    private final String key;
+    private final String ref;
+    private final String user;
+    private volatile Status status = Status.PENDING;
+    private volatile String version;
+    private volatile Integer code;
+
+    AcceptedWrite(final String id, final String key, final String ref, final String user) {
+        this.id = id;
+        this.key = key;
+        this.ref = ref;
+        this.user = user;
+    }
+
+    void complete(final int code, final String version) {
+        if (code >= 200 && code < 300) {
+            this.version = version;
+            this.status = Status.COMMITTED;
+        } else {
+            this.code = code;
+            this.status = Status.FAILED;
+        }
+    }
+
+    public String getId() { return id; }
+
+    public String getKey() { return key; }
+
+    public String getRef() { return ref; }
+
+    public Status getStatus() { return status; }
+
+    public String getVersion() { return version; }
+
+    public Integer getCode() { return code; }
+
+    @JsonIgnore
+    public boolean isBy(final String user) {
+        return this.user.equals(user);
+    }
+}
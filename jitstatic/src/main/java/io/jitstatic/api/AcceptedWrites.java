@@ -0,0 +1,114 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+import io.jitstatic.injection.configuration.JitstaticConfiguration;
+
+/**
+ * Writes that have been accepted but not yet committed, for clients that prefer not to wait for the commit. The number of pending writes is bounded so
+ * a client writing faster than the repository can commit is turned away instead of piling up work. The outcome of as many finished writes is kept
+ * for the clients to look up.
+ */
+public class AcceptedWrites {
+
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, AcceptedWrite> writes = new ConcurrentHashMap<>();
+    private final Queue<String> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+
+    @Inject
+    public AcceptedWrites(final JitstaticConfiguration config) {
+        this(config.getHostedFactory().getMaxAcceptedWrites());
+    }
+
+    public AcceptedWrites(final int maxPending) {
+        if (maxPending < 0) {
+            throw new IllegalArgumentException("maxPending can't be negative " + maxPending);
+        }
+        this.maxPending = maxPending;
+    }
+
+    public boolean isEnabled() { return maxPending > 0; }
+
+    /**
+     * @return the accepted write or null if too many writes are pending
+     */
+    @Nullable
+    public AcceptedWrite accept(final String key, final String ref, final String user) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return null;
+        }
+        final AcceptedWrite write = new AcceptedWrite(UUID.randomUUID().toString(), Objects.requireNonNull(key), Objects.requireNonNull(ref), Objects
+                .requireNonNull(user));
+        writes.put(write.getId(), write);
+        return write;
+    }
+
+    /**
+     * Forgets a write that was turned down before it was answered.
+     */
+    public void cancel(final AcceptedWrite write) {
+        if (writes.remove(write.getId(), write)) {
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Records the outcome of a write from the response it would have been answered with.
+     */
+    public void complete(final AcceptedWrite write, final Response response) {
+        final EntityTag tag = response.getEntityTag();
+        write.complete(response.getStatus(), tag == null ? null : tag.getValue());
+        pending.decrementAndGet();
+        finished.add(write.getId());
+        finishedCount.incrementAndGet();
+        while (finishedCount.get() > maxPending) {
+            final String oldest = finished.poll();
+            if (oldest == null) {
+                return;
+            }
+            finishedCount.decrementAndGet();
+            writes.remove(oldest);
+        }
+    }
+
+    @Nullable
+    public AcceptedWrite get(final String id) {
+        return writes.get(id);
+    }
+
+    public int getPending() { return pending.get(); }
+}
@@ -0,0 +1,75 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Writes cached content straight from its buffer. Heap buffers are written in one go from the backing array, direct buffers are copied through a small
+ * per thread chunk since the entity stream only accepts arrays.
+ */
+@Provider
+@Produces(MediaType.WILDCARD)
+public class ByteBufferMessageBodyWriter implements MessageBodyWriter<ByteBuffer> {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+        return ByteBuffer.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(final ByteBuffer buffer, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void writeTo(final ByteBuffer buffer, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType,
+            final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream) throws IOException {
+        write(buffer, entityStream);
+    }
+
+    static void write(final ByteBuffer buffer, final OutputStream output) throws IOException {
+        final ByteBuffer source = buffer.duplicate();
+        if (source.hasArray()) {
+            output.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            return;
+        }
+        final byte[] chunk = CHUNK.get();
+        while (source.hasRemaining()) {
+            final int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            output.write(chunk, 0, length);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A single byte range from a {@code Range} header. Multiple ranges aren't supported and are answered with the whole content, which is allowed by
+ * RFC 7233.
+ */
+final class ByteRange {
+
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long first;
+    private final long last;
+
+    private ByteRange(final long first, final long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * @return the requested range, {@link #UNSATISFIABLE} if it's outside of the content or null if the header should be ignored
+     */
+    static ByteRange parse(final String header, final long size) {
+        if (header == null) {
+            return null;
+        }
+        final String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        final String spec = value.substring(BYTES_UNIT.length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        final String start = spec.substring(0, dash).trim();
+        final String end = spec.substring(dash + 1).trim();
+        try {
+            if (start.isEmpty()) {
+                if (end.isEmpty()) {
+                    return null;
+                }
+                final long suffix = Long.parseLong(end);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            final long firstByte = Long.parseLong(start);
+            final long lastByte = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+            if (lastByte < firstByte) {
+                return null;
+            }
+            if (firstByte >= size) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(firstByte, Math.min(lastByte, size - 1));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long getFirst() { return first; }
+
+    long getLast() { return last; }
+
+    long getLength() { return last - first + 1; }
+
+    String toContentRange(final long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+}
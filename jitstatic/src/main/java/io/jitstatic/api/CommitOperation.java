@@ -0,0 +1,111 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Locale;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.ObjectStreamProvider;
+
+public class CommitOperation {
+
+    @NotNull
+    private final KeyChange.Type op;
+
+    @NotBlank
+    private final String key;
+
+    private final ObjectStreamProvider data;
+
+    @Valid
+    private final MetaData metaData;
+
+    private final String version;
+
+    @JsonCreator
+    public CommitOperation(@JsonProperty("op") final String op, @JsonProperty("key") final String key,
+            @JsonSerialize(using = StreamingSerializer.class) @JsonDeserialize(using = StreamingDeserializer.class) @JsonProperty("data") final ObjectStreamProvider data,
+            @JsonProperty("metaData") final MetaData metaData, @JsonProperty("version") final String version) {
+        this.op = op == null ? null : KeyChange.Type.valueOf(op.toUpperCase(Locale.ROOT));
+        this.key = key;
+        this.data = data;
+        this.metaData = metaData;
+        this.version = version;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "add needs data and metaData, update needs data and version, metadata needs metaData and version")
+    public boolean isComplete() {
+        if (op == null) {
+            return true;
+        }
+        switch (op) {
+        case ADD:
+            return data != null && metaData != null;
+        case UPDATE:
+            return data != null && version != null;
+        case METADATA:
+            return metaData != null && version != null;
+        case DELETE:
+        default:
+            return true;
+        }
+    }
+
+    public String getOp() { return op == null ? null : op.name().toLowerCase(Locale.ROOT); }
+
+    public String getKey() { return key; }
+
+    public ObjectStreamProvider getData() { return data; }
+
+    public MetaData getMetaData() { return metaData; }
+
+    public String getVersion() { return version; }
+
+    KeyChange toKeyChange() {
+        switch (op) {
+        case ADD:
+            return KeyChange.add(key, data, metaData);
+        case UPDATE:
+            return KeyChange.update(key, data, version);
+        case METADATA:
+            return KeyChange.updateMetaData(key, metaData, version);
+        case DELETE:
+        default:
+            return KeyChange.delete(key, version);
+        }
+    }
+
+    @JsonIgnore
+    KeyChange.Type getType() { return op; }
+}
@@ -0,0 +1,379 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
+
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+import com.spencerwi.either.Either;
+
+import io.dropwizard.auth.Auth;
+import io.dropwizard.validation.Validated;
+import io.jitstatic.CommitMetaData;
+import io.jitstatic.auth.User;
+import io.jitstatic.hosted.FailedToLock;
+import io.jitstatic.injection.configuration.JitstaticConfiguration;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.storage.Storage;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.WrappingAPIException;
+
+@Singleton
+@Path("commit")
+public class CommitResource {
+
+    private static final String UTF_8 = "utf-8";
+    private static final Logger LOG = LoggerFactory.getLogger(CommitResource.class);
+    private final String defaultRef;
+    private final Storage storage;
+    private final APIHelper helper;
+    private final KeyImportReader importReader;
+    private final AcceptedWrites acceptedWrites;
+
+    @Inject
+    public CommitResource(final Storage storage, final JitstaticConfiguration config, final AcceptedWrites acceptedWrites) {
+        this(storage, config.getHostedFactory().getBranch(), acceptedWrites, config.getHostedFactory().getMaxImportSize());
+    }
+
+    public CommitResource(final Storage storage, final String defaultBranch) {
+        this(storage, defaultBranch, new AcceptedWrites(0));
+    }
+
+    public CommitResource(final Storage storage, final String defaultBranch, final AcceptedWrites acceptedWrites) {
+        this(storage, defaultBranch, acceptedWrites, Long.MAX_VALUE);
+    }
+
+    public CommitResource(final Storage storage, final String defaultBranch, final AcceptedWrites acceptedWrites, final long maxImportSize) {
+        this.acceptedWrites = Objects.requireNonNull(acceptedWrites);
+        this.storage = Objects.requireNonNull(storage);
+        this.helper = new APIHelper(LOG);
+        this.importReader = new KeyImportReader(maxImportSize);
+        this.defaultRef = Objects.requireNonNull(defaultBranch);
+    }
+
+    @POST
+    @Timed(name = "post_commit_time")
+    @Metered(name = "post_commit_counter")
+    @ExceptionMetered(name = "post_commit_exception")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void commit(@Suspended AsyncResponse asyncResponse, final @QueryParam("ref") String askedRef, final @Validated @Valid @NotNull CommitData data,
+            final @Auth User user, final @Context HttpServletRequest httpRequest, final @Context SecurityContext context,
+            @Context ExecutorService executor) {
+        APIHelper.checkMutableRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        final List<CommitOperation> operations = data.getOperations();
+        CompletableFuture.allOf(operations.stream().map(op -> checkPermission(op, user, context, ref)).toArray(CompletableFuture[]::new))
+                .thenComposeAsync(ignore -> commit(operations, data, httpRequest, user, ref), executor)
+                .thenApplyAsync(result -> {
+                    if (result.isRight()) {
+                        throw new WebApplicationException(Status.PRECONDITION_FAILED);
+                    }
+                    final List<String> versions = result.getLeft();
+                    final Map<String, String> keyVersions = new LinkedHashMap<>();
+                    for (int i = 0; i < operations.size(); i++) {
+                        keyVersions.put(operations.get(i).getKey(), versions.get(i));
+                    }
+                    LOG.info("{} logged in and committed keys {} in {}", user, keyVersions.keySet(), ref);
+                    return Response.ok(keyVersions).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
+                }, executor)
+                .exceptionally(this::exceptionHandler)
+                .thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    @POST
+    @Timed(name = "post_import_time")
+    @Metered(name = "post_import_counter")
+    @ExceptionMetered(name = "post_import_exception")
+    @Path("import")
+    @Consumes(KeyImportReader.NDJSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void importKeys(@Suspended AsyncResponse asyncResponse, final @QueryParam("ref") String askedRef, final InputStream body,
+            final @Auth User user, final @Context HttpServletRequest httpRequest, @Context ExecutorService executor) throws IOException {
+        APIHelper.checkMutableRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        if (!user.isAdmin()) {
+            // Imports can replace any key so they are not checked key by key
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+        // The body has to be read on the request thread, the keys are validated and written as they are read and only locked for the commit
+        final KeyImport keys = storage.newImport();
+        final ImportHeader header;
+        try {
+            header = importReader.read(body, keys);
+        } catch (IOException | RuntimeException e) {
+            keys.close();
+            throw e;
+        }
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return storage.importKeys(ref, keys, new CommitMetaData(header.getUserInfo(), header.getUserMail(), header.getMessage(), user
+                        .getName(), APIHelper.compileUserOrigin(user, httpRequest)));
+            } catch (RefNotFoundException e) {
+                throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+            }
+        }, executor)
+                .thenComposeAsync(c -> c, executor)
+                .thenApplyAsync(result -> {
+                    if (result.isRight()) {
+                        throw new WebApplicationException(Status.PRECONDITION_FAILED);
+                    }
+                    final String commit = result.getLeft();
+                    LOG.info("{} logged in and imported {} keys in {}", user, keys.getKeys().size(), ref);
+                    return Response.ok(Map.of("keys", keys.getKeys().size(), "commit", commit)).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
+                }, executor)
+                .whenComplete((r, t) -> keys.close())
+                .exceptionally(this::exceptionHandler)
+                .thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    @POST
+    @Timed(name = "post_copy_time")
+    @Metered(name = "post_copy_counter")
+    @ExceptionMetered(name = "post_copy_exception")
+    @Path("copy")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void copy(@Suspended AsyncResponse asyncResponse, final @QueryParam("ref") String askedRef, final @Validated @Valid @NotNull CopyData data,
+            final @Auth User user, final @Context HttpServletRequest httpRequest, final @Context HttpHeaders headers, @Context ExecutorService executor) {
+        APIHelper.checkMutableRef(askedRef);
+        APIHelper.checkRef(data.getFromRef());
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        final String fromRef = APIHelper.setToDefaultRefIfNull(data.getFromRef(), ref);
+        if (!user.isAdmin()) {
+            // Copies can span refs and directories so they are not checked key by key
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+        final String version = getIfMatch(headers);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return storage.copy(data.getFrom(), fromRef, data.getTo(), ref, data.isMove(), version, new CommitMetaData(data.getUserInfo(), data
+                        .getUserMail(), data.getMessage(), user.getName(), APIHelper.compileUserOrigin(user, httpRequest)));
+            } catch (RefNotFoundException e) {
+                throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+            }
+        }, executor)
+                .thenComposeAsync(c -> c, executor)
+                .thenApplyAsync(result -> {
+                    if (result.isRight()) {
+                        throw new WebApplicationException(Status.PRECONDITION_FAILED);
+                    }
+                    final Map<String, String> keyVersions = new LinkedHashMap<>();
+                    result.getLeft().forEach(key -> keyVersions.put(key.getLeft(), key.getRight()));
+                    LOG.info("{} logged in and {} {} in {} to {} in {}", user, data.isMove() ? "moved" : "copied", data.getFrom(), fromRef, data.getTo(), ref);
+                    return Response.ok(keyVersions).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
+                }, executor)
+                .exceptionally(this::exceptionHandler)
+                .thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    @POST
+    @Timed(name = "post_delete_path_time")
+    @Metered(name = "post_delete_path_counter")
+    @ExceptionMetered(name = "post_delete_path_exception")
+    @Path("delete")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void deletePath(@Suspended AsyncResponse asyncResponse, final @QueryParam("ref") String askedRef, final @QueryParam("dryRun") boolean dryRun,
+            final @Validated @Valid @NotNull DeletePathData data, final @Auth User user, final @Context HttpServletRequest httpRequest,
+            final @Context HttpHeaders headers, @Context ExecutorService executor) {
+        APIHelper.checkMutableRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        checkAdmin(user);
+        final String version = getIfMatch(headers);
+        final CommitMetaData commitMetaData = new CommitMetaData(data.getUserInfo(), data.getUserMail(), data.getMessage(), user.getName(), APIHelper
+                .compileUserOrigin(user, httpRequest));
+        changePath(asyncResponse, () -> storage.deletePath(data.getPath(), ref, version, dryRun, commitMetaData), keys -> LOG
+                .info("{} logged in and {} {} keys in {} in {}", user, dryRun ? "would delete" : "deleted", keys, data.getPath(), ref), executor);
+    }
+
+    @POST
+    @Timed(name = "post_path_metadata_time")
+    @Metered(name = "post_path_metadata_counter")
+    @ExceptionMetered(name = "post_path_metadata_exception")
+    @Path("metadata")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void rewriteMetaData(@Suspended AsyncResponse asyncResponse, final @QueryParam("ref") String askedRef,
+            final @QueryParam("dryRun") boolean dryRun, final @Validated @Valid @NotNull PathMetaData data, final @Auth User user,
+            final @Context HttpServletRequest httpRequest, final @Context HttpHeaders headers, @Context ExecutorService executor) {
+        APIHelper.checkMutableRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        checkAdmin(user);
+        final String version = getIfMatch(headers);
+        final CommitMetaData commitMetaData = new CommitMetaData(data.getUserInfo(), data.getUserMail(), data.getMessage(), user.getName(), APIHelper
+                .compileUserOrigin(user, httpRequest));
+        changePath(asyncResponse, () -> storage.rewriteMetaData(data.getPath(), ref, data.getMetaData(), version, dryRun, commitMetaData), keys -> LOG
+                .info("{} logged in and {} metadata of {} keys in {} in {}", user, dryRun ? "would rewrite" : "rewrote", keys, data.getPath(), ref),
+                executor);
+    }
+
+    @GET
+    @Timed(name = "get_write_time")
+    @Metered(name = "get_write_counter")
+    @ExceptionMetered(name = "get_write_exception")
+    @Path("writes/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public AcceptedWrite getWrite(final @PathParam("id") String id, final @Auth User user) {
+        final AcceptedWrite write = acceptedWrites.get(id);
+        // Other users' writes are not found
+        if (write == null || !(user.isAdmin() || write.isBy(user.getName()))) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        return write;
+    }
+
+    private static void checkAdmin(final User user) {
+        if (!user.isAdmin()) {
+            // Every key in the path is changed so they are not checked key by key
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+    }
+
+    /**
+     * Answers with how many keys a change of a path touched, and the commit unless it was a dry run
+     */
+    private void changePath(final AsyncResponse asyncResponse,
+            final ThrowingSupplier<CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>>, RefNotFoundException> change,
+            final IntConsumer onChanged, final ExecutorService executor) {
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return change.get();
+            } catch (RefNotFoundException e) {
+                throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+            }
+        }, executor)
+                .thenComposeAsync(c -> c, executor)
+                .thenApplyAsync(result -> {
+                    if (result.isRight()) {
+                        throw new WebApplicationException(Status.PRECONDITION_FAILED);
+                    }
+                    final int keys = result.getLeft().getLeft().size();
+                    final String commit = result.getLeft().getRight();
+                    final Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("keys", keys);
+                    if (commit != null) {
+                        body.put("commit", commit);
+                    }
+                    onChanged.accept(keys);
+                    return Response.ok(body).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
+                }, executor)
+                .exceptionally(this::exceptionHandler)
+                .thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    @Nullable
+    private static String getIfMatch(final HttpHeaders headers) {
+        final String ifMatch = headers.getHeaderString(HttpHeaders.IF_MATCH);
+        if (ifMatch == null || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        try {
+            return EntityTag.valueOf(ifMatch).getValue();
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException("Malformed " + HttpHeaders.IF_MATCH, Status.BAD_REQUEST);
+        }
+    }
+
+    private CompletableFuture<Void> checkPermission(final CommitOperation operation, final User user, final SecurityContext context, final String ref) {
+        final String key = operation.getKey();
+        try {
+            switch (operation.getType()) {
+            case ADD:
+                // Adding is governed by the realm, same as POST on storage
+                return CompletableFuture.completedFuture(null);
+            case METADATA:
+                return storage.getMetaKey(key, ref).thenAccept(metaKeyData -> {
+                    if (!metaKeyData.isPresent()) {
+                        throw new WebApplicationException(key, Status.NOT_FOUND);
+                    }
+                    helper.checkWritePermission(key, user, context, ref, metaKeyData.getLeft());
+                });
+            case UPDATE:
+            case DELETE:
+            default:
+                return helper.checkIfKeyExist(key, ref, storage)
+                        .thenAccept(storeInfo -> helper.checkWritePermission(key, user, context, ref, storeInfo.getMetaData()));
+            }
+        } catch (RefNotFoundException e) {
+            throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+        }
+    }
+
+    private CompletableFuture<Either<List<String>, FailedToLock>> commit(final List<CommitOperation> operations, final CommitData data,
+            final HttpServletRequest httpRequest, final User user, final String ref) {
+        try {
+            return storage.commit(ref, operations.stream().map(CommitOperation::toKeyChange).collect(Collectors.toList()), new CommitMetaData(data
+                    .getUserInfo(), data.getUserMail(), data.getMessage(), user.getName(), APIHelper.compileUserOrigin(user, httpRequest)));
+        } catch (RefNotFoundException e) {
+            throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+        }
+    }
+
+    private Response exceptionHandler(final Throwable e) {
+        final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        if (cause instanceof WrappingAPIException && cause.getCause() instanceof IllegalArgumentException) {
+            return new WebApplicationException(cause.getCause().getMessage(), Status.BAD_REQUEST).getResponse();
+        }
+        return helper.exceptionHandlerPUTAPI(cause);
+    }
+}
@@ -0,0 +1,75 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.validation.constraints.NotBlank;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class CopyData {
+
+    @NotBlank
+    private final String from;
+
+    private final String fromRef;
+
+    @NotBlank
+    private final String to;
+
+    private final boolean move;
+
+    @NotBlank
+    private final String message;
+
+    @NotBlank
+    private final String userMail;
+
+    @NotBlank
+    private final String userInfo;
+
+    @JsonCreator
+    public CopyData(@JsonProperty("from") final String from, @JsonProperty("fromRef") final String fromRef, @JsonProperty("to") final String to,
+            @JsonProperty("move") final boolean move, @JsonProperty("message") final String message, @JsonProperty("userInfo") final String userInfo,
+            @JsonProperty("userMail") final String userMail) {
+        this.from = from;
+        this.fromRef = fromRef;
+        this.to = to;
+        this.move = move;
+        this.message = message;
+        this.userMail = userMail;
+        this.userInfo = userInfo;
+    }
+
+    public String getFrom() { return from; }
+
+    public String getFromRef() { return fromRef; }
+
+    public String getTo() { return to; }
+
+    public boolean isMove() { return move; }
+
+    public String getMessage() { return message; }
+
+    public String getUserMail() { return userMail; }
+
+    public String getUserInfo() { return userInfo; }
+}
@@ -0,0 +1,58 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.validation.constraints.NotBlank;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class DeletePathData {
+
+    @NotBlank
+    private final String path;
+
+    @NotBlank
+    private final String message;
+
+    @NotBlank
+    private final String userMail;
+
+    @NotBlank
+    private final String userInfo;
+
+    @JsonCreator
+    public DeletePathData(@JsonProperty("path") final String path, @JsonProperty("message") final String message,
+            @JsonProperty("userInfo") final String userInfo, @JsonProperty("userMail") final String userMail) {
+        this.path = path;
+        this.message = message;
+        this.userMail = userMail;
+        this.userInfo = userInfo;
+    }
+
+    public String getPath() { return path; }
+
+    public String getMessage() { return message; }
+
+    public String getUserMail() { return userMail; }
+
+    public String getUserInfo() { return userInfo; }
+}
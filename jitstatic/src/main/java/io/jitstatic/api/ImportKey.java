@@ -0,0 +1,61 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.source.ObjectStreamProvider;
+
+public class ImportKey {
+
+    @NotBlank
+    private final String key;
+
+    @NotNull
+    private final ObjectStreamProvider data;
+
+    @NotNull
+    @Valid
+    private final MetaData metaData;
+
+    @JsonCreator
+    public ImportKey(@JsonProperty("key") final String key,
+            @JsonSerialize(using = StreamingSerializer.class) @JsonDeserialize(using = StreamingDeserializer.class) @JsonProperty("data") final ObjectStreamProvider data,
+            @JsonProperty("metaData") final MetaData metaData) {
+        this.key = key;
+        this.data = data;
+        this.metaData = metaData;
+    }
+
+    public String getKey() { return key; }
+
+    public ObjectStreamProvider getData() { return data; }
+
+    public MetaData getMetaData() { return metaData; }
+}
@@ -0,0 +1,262 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Applies JSON Patch (RFC 6902) and JSON Merge Patch (RFC 7386) documents. The patched document is never modified, a patch that can't be applied
+ * throws {@link IllegalArgumentException} and a failing test operation throws {@link IllegalStateException}. Also computes the JSON Patch that turns
+ * one document into another.
+ */
+final class JsonPatcher {
+
+    private static final Pattern INDEX = Pattern.compile("0|[1-9][0-9]*");
+    private static final String APPEND = "-";
+
+    private JsonPatcher() {
+    }
+
+    static JsonNode patch(final JsonNode document, final JsonNode patch) {
+        if (!patch.isArray()) {
+            throw new IllegalArgumentException("A JSON Patch is an array of operations");
+        }
+        JsonNode result = document.deepCopy();
+        for (JsonNode operation : patch) {
+            result = apply(result, operation);
+        }
+        return result;
+    }
+
+    static JsonNode mergePatch(final JsonNode document, final JsonNode patch) {
+        return merge(document.deepCopy(), patch);
+    }
+
+    /**
+     * The operations recurse into objects and arrays present in both documents. Arrays keep their common prefix and suffix and the elements in between
+     * are patched pairwise, with the surplus removed or added.
+     */
+    static ArrayNode diff(final JsonNode from, final JsonNode to) {
+        final ArrayNode operations = JsonNodeFactory.instance.arrayNode();
+        diff(from, to, "", operations);
+        return operations;
+    }
+
+    private static void diff(final JsonNode from, final JsonNode to, final String path, final ArrayNode operations) {
+        if (from.equals(to)) {
+            return;
+        }
+        if (from.isObject() && to.isObject()) {
+            final Iterator<Entry<String, JsonNode>> fields = from.fields();
+            while (fields.hasNext()) {
+                final Entry<String, JsonNode> field = fields.next();
+                final JsonNode target = to.get(field.getKey());
+                final String fieldPath = path + "/" + escape(field.getKey());
+                if (target == null) {
+                    operation(operations, "remove", fieldPath, null);
+                } else {
+                    diff(field.getValue(), target, fieldPath, operations);
+                }
+            }
+            final Iterator<Entry<String, JsonNode>> added = to.fields();
+            while (added.hasNext()) {
+                final Entry<String, JsonNode> field = added.next();
+                if (!from.has(field.getKey())) {
+                    operation(operations, "add", path + "/" + escape(field.getKey()), field.getValue());
+                }
+            }
+        } else if (from.isArray() && to.isArray()) {
+            diffArray(from, to, path, operations);
+        } else {
+            operation(operations, "replace", path, to);
+        }
+    }
+
+    private static void diffArray(final JsonNode from, final JsonNode to, final String path, final ArrayNode operations) {
+        final int shortest = Math.min(from.size(), to.size());
+        int prefix = 0;
+        while (prefix < shortest && from.get(prefix).equals(to.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < shortest - prefix && from.get(from.size() - 1 - suffix).equals(to.get(to.size() - 1 - suffix))) {
+            suffix++;
+        }
+        final int fromEnd = from.size() - suffix;
+        final int toEnd = to.size() - suffix;
+        final int paired = Math.min(fromEnd, toEnd) - prefix;
+        for (int i = prefix; i < prefix + paired; i++) {
+            diff(from.get(i), to.get(i), path + "/" + i, operations);
+        }
+        for (int i = prefix + paired; i < fromEnd; i++) {
+            operation(operations, "remove", path + "/" + (prefix + paired), null);
+        }
+        for (int i = prefix + paired; i < toEnd; i++) {
+            operation(operations, "add", path + "/" + i, to.get(i));
+        }
+    }
+
+    private static void operation(final ArrayNode operations, final String op, final String path, final JsonNode value) {
+        final ObjectNode operation = operations.addObject().put("op", op).put("path", path);
+        if (value != null) {
+            operation.set("value", value);
+        }
+    }
+
+    private static String escape(final String field) {
+        return field.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static JsonNode apply(final JsonNode document, final JsonNode operation) {
+        final JsonPointer path = pointer(operation, "path");
+        switch (text(operation, "op")) {
+        case "add":
+            return add(document, path, value(operation));
+        case "remove":
+            remove(document, path);
+            return document;
+        case "replace":
+            if (path.matches()) {
+                return value(operation);
+            }
+            remove(document, path);
+            return add(document, path, value(operation));
+        case "move": {
+            final JsonPointer from = pointer(operation, "from");
+            if (!from.equals(path) && path.toString().startsWith(from.toString() + "/")) {
+                throw new IllegalArgumentException("Can't move " + from + " into itself");
+            }
+            final JsonNode moved = get(document, from);
+            remove(document, from);
+            return add(document, path, moved);
+        }
+        case "copy":
+            return add(document, path, get(document, pointer(operation, "from")).deepCopy());
+        case "test":
+            if (!get(document, path).equals(value(operation))) {
+                throw new IllegalStateException("Test failed for " + path);
+            }
+            return document;
+        default:
+            throw new IllegalArgumentException("Unknown operation " + operation.get("op"));
+        }
+    }
+
+    private static JsonNode add(final JsonNode document, final JsonPointer path, final JsonNode value) {
+        if (path.matches()) {
+            return value;
+        }
+        final JsonNode parent = document.at(path.head());
+        final String last = path.last().getMatchingProperty();
+        if (parent.isObject()) {
+            ((ObjectNode) parent).set(last, value);
+        } else if (parent.isArray()) {
+            final ArrayNode array = (ArrayNode) parent;
+            if (APPEND.equals(last)) {
+                array.add(value);
+            } else {
+                array.insert(index(last, array.size() + 1, path), value);
+            }
+        } else {
+            throw new IllegalArgumentException("No container at " + path);
+        }
+        return document;
+    }
+
+    private static void remove(final JsonNode document, final JsonPointer path) {
+        if (path.matches()) {
+            throw new IllegalArgumentException("The whole document can't be removed");
+        }
+        final JsonNode parent = document.at(path.head());
+        final String last = path.last().getMatchingProperty();
+        if (parent.isObject() && parent.has(last)) {
+            ((ObjectNode) parent).remove(last);
+        } else if (parent.isArray()) {
+            ((ArrayNode) parent).remove(index(last, parent.size(), path));
+        } else {
+            throw new IllegalArgumentException("Nothing at " + path);
+        }
+    }
+
+    private static JsonNode get(final JsonNode document, final JsonPointer path) {
+        final JsonNode node = document.at(path);
+        if (node.isMissingNode()) {
+            throw new IllegalArgumentException("Nothing at " + path);
+        }
+        return node;
+    }
+
+    private static int index(final String token, final int size, final JsonPointer path) {
+        if (!INDEX.matcher(token).matches() || token.length() > 9 || Integer.parseInt(token) >= size) {
+            throw new IllegalArgumentException("Bad index at " + path);
+        }
+        return Integer.parseInt(token);
+    }
+
+    private static JsonNode merge(final JsonNode target, final JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch;
+        }
+        final ObjectNode result = target != null && target.isObject() ? (ObjectNode) target : JsonNodeFactory.instance.objectNode();
+        final Iterator<Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            final Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), merge(result.get(field.getKey()), field.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private static JsonPointer pointer(final JsonNode operation, final String field) {
+        try {
+            return JsonPointer.compile(text(operation, field));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Bad " + field + " in " + operation, e);
+        }
+    }
+
+    private static String text(final JsonNode operation, final String field) {
+        final JsonNode node = operation.get(field);
+        if (node == null || !node.isTextual()) {
+            throw new IllegalArgumentException("Missing " + field + " in " + operation);
+        }
+        return node.asText();
+    }
+
+    private static JsonNode value(final JsonNode operation) {
+        final JsonNode value = operation.get("value");
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value in " + operation);
+        }
+        return value;
+    }
+}
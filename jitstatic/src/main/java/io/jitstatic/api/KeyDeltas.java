@@ -0,0 +1,137 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.eclipse.jgit.internal.storage.pack.DeltaIndex;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Deltas between two versions of a key, computed the first time they're asked for and kept by the key, the pair of blob ids and the delta format. The
+ * base is only ever read for the key it was a version of, so a delta is never handed out for another key. The cache is
+ * bounded by the size of the deltas plus a fixed cost per entry and evicts the least recently used. A delta that isn't smaller than the new version, or
+ * one whose base can't be read, is remembered as missing so the full version is served without looking for the base again.
+ */
+public class KeyDeltas {
+
+    public static final String JSON_PATCH = "json-patch";
+    public static final String GIT_DELTA = "git-delta";
+    static final int MAX_SIZE = 8 * 1024 * 1024;
+    // The key and map entry, so that remembering a delta as not smaller isn't free
+    static final int ENTRY_OVERHEAD = 256;
+    private static final byte[] NO_DELTA = new byte[0];
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final long maxBytes;
+    private final Map<String, byte[]> deltas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public KeyDeltas(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param base reads the version the client has, empty if the key never had that blob
+     * @return the delta from base to content or null if the full content should be sent
+     */
+    public ByteBuffer get(final String ref, final String path, final String baseId, final String blobId, final String format,
+            final ThrowingSupplier<Optional<byte[]>, IOException> base, final ByteBuffer content) throws IOException {
+        if (!JSON_PATCH.equals(format) && !GIT_DELTA.equals(format)) {
+            throw new IllegalArgumentException("Unsupported delta " + format);
+        }
+        if (content.remaining() > MAX_SIZE) {
+            return null;
+        }
+        final String key = Objects.requireNonNull(ref) + ':' + Objects.requireNonNull(path) + ':' + Objects.requireNonNull(baseId) + ':'
+                + Objects.requireNonNull(blobId) + '/' + format;
+        synchronized (this) {
+            final byte[] delta = deltas.get(key);
+            if (delta != null) {
+                return delta == NO_DELTA ? null : ByteBuffer.wrap(delta);
+            }
+        }
+        final Optional<byte[]> baseData = base.get();
+        final byte[] delta = baseData.isEmpty() ? NO_DELTA : compute(baseData.get(), content, format);
+        synchronized (this) {
+            final byte[] old = deltas.put(key, delta);
+            bytes += weigh(delta) - (old == null ? 0 : weigh(old));
+            evict();
+        }
+        return delta == NO_DELTA ? null : ByteBuffer.wrap(delta);
+    }
+
+    private static byte[] compute(final byte[] base, final ByteBuffer content, final String format) {
+        final byte[] target = new byte[content.remaining()];
+        content.duplicate().get(target);
+        try {
+            final byte[] delta = JSON_PATCH.equals(format) ? jsonPatch(base, target) : gitDelta(base, target);
+            return delta != null && delta.length < target.length ? delta : NO_DELTA;
+        } catch (final JsonProcessingException e) {
+            return NO_DELTA;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] jsonPatch(final byte[] base, final byte[] target) throws IOException {
+        final JsonNode from = MAPPER.readTree(base);
+        final JsonNode to = MAPPER.readTree(target);
+        if (from == null || to == null) {
+            return null;
+        }
+        return MAPPER.writeValueAsBytes(JsonPatcher.diff(from, to));
+    }
+
+    private static byte[] gitDelta(final byte[] base, final byte[] target) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, target.length / 8));
+        return new DeltaIndex(base).encode(out, target, target.length - 1) ? out.toByteArray() : null;
+    }
+
+    private void evict() {
+        final Iterator<byte[]> iterator = deltas.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= weigh(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long weigh(final byte[] delta) {
+        return ENTRY_OVERHEAD + delta.length;
+    }
+
+    public synchronized long getBytes() { return bytes; }
+
+    public synchronized int getEntries() { return deltas.size(); }
+}
@@ -0,0 +1,151 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.jitstatic.source.KeyImport;
+
+/**
+ * Reads an import in NDJSON, where the first line holds the commit information and every following line a key. Each line is validated and its
+ * key written to the import as soon as it has been read, so a bad import fails without reading the rest of it and only the written blob ids are
+ * held. An import larger than the maximum size is refused as soon as that many bytes have been read.
+ */
+class KeyImportReader {
+
+    static final String NDJSON = "application/x-ndjson";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ValidatorFactory VALIDATIONFACTORY = Validation.buildDefaultValidatorFactory();
+    private final Validator validator;
+    private final long maxSize;
+
+    KeyImportReader(final long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive " + maxSize);
+        }
+        this.validator = VALIDATIONFACTORY.getValidator();
+        this.maxSize = maxSize;
+    }
+
+    ImportHeader read(final InputStream is, final KeyImport keys) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(new SizeLimitedInputStream(is, maxSize))) {
+            if (parser.nextToken() == null) {
+                throw new WebApplicationException("Import is empty", Status.BAD_REQUEST);
+            }
+            final ImportHeader header = validate(MAPPER.readValue(parser, ImportHeader.class), parser);
+            parser.clearCurrentToken();
+            try (MappingIterator<ImportKey> iterator = MAPPER.readValues(parser, ImportKey.class)) {
+                while (iterator.hasNextValue()) {
+                    final ImportKey key = validate(iterator.nextValue(), parser);
+                    keys.add(key.getKey(), key.getData(), key.getMetaData());
+                }
+            }
+            if (keys.getKeys().isEmpty()) {
+                throw new WebApplicationException("Import has no keys", Status.BAD_REQUEST);
+            }
+            keys.finish();
+            return header;
+        } catch (JsonProcessingException e) {
+            final String where = e.getLocation() == null ? "Import" : "Line " + e.getLocation().getLineNr();
+            throw new WebApplicationException(where + " is malformed", Status.BAD_REQUEST);
+        } catch (ImportTooLargeException e) {
+            throw new WebApplicationException(e.getMessage(), Status.REQUEST_ENTITY_TOO_LARGE);
+        }
+    }
+
+    private <T> T validate(final T value, final JsonParser parser) {
+        final Set<ConstraintViolation<T>> violations = validator.validate(value);
+        if (!violations.isEmpty()) {
+            throw new WebApplicationException("Line " + parser.getCurrentLocation().getLineNr() + " " + violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .collect(Collectors.joining(", ")), 422);
+        }
+        return value;
+    }
+
+    private static class ImportTooLargeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ImportTooLargeException(final long maxSize) {
+            super("Import is larger than " + maxSize + " bytes");
+        }
+    }
+
+    private static class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long read;
+
+        SizeLimitedInputStream(final InputStream in, final long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(final long n) throws ImportTooLargeException {
+            read += n;
+            if (read > maxSize) {
+                throw new ImportTooLargeException(maxSize);
+            }
+        }
+    }
+}
@@ -27,6 +27,9 @@ import static io.jitstatic.JitStaticConstants.X_JITSTATIC_NAME;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -34,12 +37,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
@@ -51,6 +57,7 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.OPTIONS;
 import javax.ws.rs.POST;
+import javax.ws.rs.PATCH;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -69,8 +76,11 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,7 +88,10 @@ import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spencerwi.either.Either;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -87,11 +100,19 @@ import io.dropwizard.validation.Validated;
 import io.jitstatic.CommitMetaData;
 import io.jitstatic.HeaderPair;
 import io.jitstatic.MetaData;
-import io.jitstatic.Role;
+import io.jitstatic.RoleSet;
 import io.jitstatic.auth.User;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.injection.configuration.JitstaticConfiguration;
+import io.jitstatic.injection.configuration.hosted.HostedFactory;
+import io.jitstatic.injection.executors.LargeObjectWriter;
+import io.jitstatic.source.CompressedVariants;
+import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.ParsedBlobCache;
+import io.jitstatic.source.SmallObjectStreamProvider;
+import io.jitstatic.source.SourceCaches;
+import io.jitstatic.source.SpilledObjectStreamProvider;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.WrappingAPIException;
@@ -107,22 +128,64 @@ public class KeyResource {
     private static final String LOGGED_IN_AND_ACCESSED_KEY = "{} logged in and accessed key {} in {}";
     static final String RESOURCE_IS_DENIED_FOR_USER = "Resource {} in {} is denied for user {}";
     private static final String UTF_8 = "utf-8";
+    private static final String IMMUTABLE = "max-age=31536000, immutable";
+    private static final String RANGE = "Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String VARY = "Vary";
+    private static final String A_IM = "A-IM";
+    private static final String IM = "IM";
+    private static final String DELTA_BASE = "Delta-Base";
+    private static final int IM_USED = 226;
+    private static final String JSON_PATCH_TYPE = "application/json-patch+json";
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String RETRY_AFTER = "Retry-After";
     private static final Logger LOG = LoggerFactory.getLogger(KeyResource.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     private final String defaultRef;
     private final Storage storage;
     private final APIHelper helper;
     private final boolean cors;
+    private final ExecutorService largeObjectWriter;
+    private final CompressedVariants compressedVariants;
+    private final KeyDeltas keyDeltas;
+    private final AcceptedWrites acceptedWrites;
+    private final ParsedBlobCache<JsonNode> documents;
     
     @Inject
-    public KeyResource(final Storage storage, final JitstaticConfiguration config) {
-        this(storage, config.getHostedFactory().getCors() != null, config.getHostedFactory().getBranch());
+    public KeyResource(final Storage storage, final JitstaticConfiguration config, final @LargeObjectWriter ExecutorService largeObjectWriter,
+            final AcceptedWrites acceptedWrites, final SourceCaches caches) {
+        this(storage, config.getHostedFactory().getCors() != null, config.getHostedFactory().getBranch(), largeObjectWriter, compressedVariants(config),
+                keyDeltas(config), acceptedWrites.isEnabled() ? acceptedWrites : null, caches);
     }
 
-    public KeyResource(final Storage storage, final boolean cors, final String defaultBranch) {
+    private static CompressedVariants compressedVariants(final JitstaticConfiguration config) {
+        final HostedFactory hostedFactory = config.getHostedFactory();
+        if (hostedFactory.getCompressionCacheSize() == 0) {
+            return null;
+        }
+        return new CompressedVariants(hostedFactory.getCompressionCacheSize(), hostedFactory.getCompressionMinSize());
+    }
+
+    private static KeyDeltas keyDeltas(final JitstaticConfiguration config) {
+        final long deltaCacheSize = config.getHostedFactory().getDeltaCacheSize();
+        return deltaCacheSize == 0 ? null : new KeyDeltas(deltaCacheSize);
+    }
+
+    public KeyResource(final Storage storage, final boolean cors, final String defaultBranch, final ExecutorService largeObjectWriter,
+            final CompressedVariants compressedVariants, final KeyDeltas keyDeltas, final AcceptedWrites acceptedWrites, final SourceCaches caches) {
+        this.largeObjectWriter = largeObjectWriter;
+        this.compressedVariants = compressedVariants;
+        this.keyDeltas = keyDeltas;
+        this.acceptedWrites = acceptedWrites;
         this.storage = Objects.requireNonNull(storage);
         this.helper = new APIHelper(LOG);
         this.cors = cors;
         this.defaultRef = Objects.requireNonNull(defaultBranch);
+        this.documents = caches.getDocuments();
     }
 
     @GET
@@ -136,22 +199,51 @@ public class KeyResource {
         APIHelper.checkRef(askedRef);
         final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
         try {
-            helper.checkIfKeyExist(key, ref, storage)
-                    .thenApplyAsync(storeInfo -> {
-                        final MetaData data = storeInfo.getMetaData();
-                        final Set<Role> readRoles = data.getRead();
-                        if (!(readRoles.isEmpty() || APIHelper.isUserInRole(context, readRoles))) {
-                            LOG.info(RESOURCE_IS_DENIED_FOR_USER, key, ref, user);
-                            throw new WebApplicationException(Status.FORBIDDEN);
-                        }
-                        final EntityTag tag = new EntityTag(storeInfo.getVersion());
-                        final ResponseBuilder noChange = request.evaluatePreconditions(tag);
-                        if (noChange != null) {
-                            return noChange.build();
-                        }
-                        LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, key, ref);
-                        return buildResponse(storeInfo, tag, data, response);
-                    }, executor).exceptionally(helper::execptionHandler).thenAcceptAsync(asyncResponse::resume, executor);
+            final CompletableFuture<StoreInfo> keyFuture = helper.checkIfKeyExist(key, ref, storage);
+            final Function<StoreInfo, Response> respond = storeInfo -> {
+                final MetaData data = storeInfo.getMetaData();
+                final RoleSet readRoles = data.getReadRoles();
+                if (!(readRoles.isEmpty() || APIHelper.isUserInRole(context, readRoles))) {
+                    LOG.info(RESOURCE_IS_DENIED_FOR_USER, key, ref, user);
+                    throw new WebApplicationException(Status.FORBIDDEN);
+                }
+                final boolean compressible = isCompressible(storeInfo);
+                final ByteBuffer compressed = compressible && headers.getHeaderString(RANGE) == null
+                        && acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING)) ? compress(storeInfo) : null;
+                final EntityTag tag = new EntityTag(compressed == null ? storeInfo.getVersion() : gzipVersion(storeInfo.getVersion()));
+                final ResponseBuilder noChange = request.evaluatePreconditions(tag);
+                if (noChange != null) {
+                    addImmutableCacheControl(ref, data, noChange);
+                    addVary(compressible, noChange);
+                    return noChange.build();
+                }
+                LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, key, ref);
+                final String format = keyDeltas == null || headers.getHeaderString(RANGE) != null ? null
+                        : deltaFormat(headers.getHeaderString(A_IM), data.getContentType());
+                final String base = format == null ? null : deltaBase(headers, storeInfo.getVersion());
+                final ByteBuffer delta = base == null ? null : delta(key, ref, storeInfo, base, format);
+                if (delta != null) {
+                    return finishDelta(Response.status(IM_USED)
+                            .entity(delta)
+                            .header(HttpHeaders.CONTENT_LENGTH, delta.remaining())
+                            .header(IM, format)
+                            .header(DELTA_BASE, "\"" + base + "\"")
+                            .tag(new EntityTag(storeInfo.getVersion())), format, data, response);
+                }
+                final ResponseBuilder responseBuilder = compressed == null
+                        ? buildResponse(storeInfo, tag, headers.getHeaderString(RANGE), headers.getHeaderString(IF_RANGE))
+                        : Response.ok(compressed)
+                                .header(HttpHeaders.CONTENT_LENGTH, compressed.remaining())
+                                .header(HttpHeaders.CONTENT_ENCODING, CompressedVariants.GZIP)
+                                .tag(tag);
+                return finishResponse(responseBuilder, data, response, ref, compressible);
+            };
+            // A cached key is already done, so answer it on this thread instead of hopping through the executor twice, but only if the response is
+            // built from memory. Compressing, computing a delta or reading the repository is left to the executor.
+            final boolean cached = keyFuture.isDone() && !keyFuture.isCompletedExceptionally() && answersFromMemory(keyFuture.join(), headers);
+            (cached ? keyFuture.thenApply(respond) : keyFuture.thenApplyAsync(respond, executor))
+                    .exceptionally(helper::execptionHandler)
+                    .thenAccept(r -> resume(asyncResponse, r, cached ? null : executor));
         } catch (RefNotFoundException e) {
             throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
         }
@@ -180,7 +272,7 @@ public class KeyResource {
                     .thenApplyAsync(list -> list.stream()
                             .filter(data -> {
                                 final MetaData storageData = data.getRight().getMetaData();
-                                final Set<Role> readRoles = storageData.getRead();
+                                final RoleSet readRoles = storageData.getReadRoles();
                                 if (readRoles.isEmpty() || APIHelper.isUserInRole(context, readRoles)) {
                                     LOG.info(LOGGED_IN_AND_ACCESSED_KEY, user, data.getLeft(), ref);
                                     return true;
@@ -210,46 +302,175 @@ public class KeyResource {
     public void updateKey(@Suspended AsyncResponse asyncResponse, final @PathParam("key") String key, final @QueryParam("ref") String askedRef,
             final @Auth User user, final @Context HttpServletRequest httpRequest, final @Context Request request,
             final @Validated @Valid @NotNull ModifyKeyData data, final @Context HttpHeaders headers, @Context SecurityContext context,
-            @Context ExecutorService executor) {
+            @Context ExecutorService executor, final @Context UriInfo uriInfo) {
         // All resources without a user cannot be modified with this method. It has to
         // be done through directly changing the file in the Git repository.
         APIHelper.checkMutableRef(askedRef);
         final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
         APIHelper.checkHeaders(headers);
         try {
-            helper.checkIfKeyExist(key, ref, storage)
-                    .thenApplyAsync(storeInfo -> {
-                        helper.checkWritePermission(key, user, context, ref, storeInfo.getMetaData());
-                        final String currentVersion = storeInfo.getVersion();
-                        final EntityTag entityTag = new EntityTag(currentVersion);
-                        final ResponseBuilder response = request.evaluatePreconditions(entityTag);
-                        if (response != null) {
-                            throw new WebApplicationException(response.header(HttpHeaders.CONTENT_ENCODING, UTF_8).tag(entityTag).build());
-                        }
-                        return currentVersion;
-                    }, executor)
-                    .thenApplyAsync(currentVersion -> updateKey(key, httpRequest, data, user, ref, currentVersion), executor)
-                    .thenComposeAsync(Function.identity())
-                    .thenApplyAsync(result -> {
-                        if (result == null) {
-                            throw new WebApplicationException(Status.NOT_FOUND);
-                        }
-                        if (result.isRight()) {
-                            throw new WebApplicationException(Status.PRECONDITION_FAILED);
-                        }
-                        final String newVersion = result.getLeft();
+            modify(asyncResponse, helper.checkIfKeyExist(key, ref, storage)
+                    .thenApplyAsync(storeInfo -> checkModifiable(key, user, context, ref, headers, request, storeInfo), executor),
+                    storeInfo -> updateKey(key, httpRequest, data, user, ref, storeInfo.getVersion()), key, user, ref, headers, uriInfo, executor);
+        } catch (RefNotFoundException e) {
+            throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+        }
+    }
+
+    @PATCH
+    @Timed(name = "patch_storage_time")
+    @Metered(name = "patch_storage_counter")
+    @ExceptionMetered(name = "patch_storage_exception")
+    @Path("{key : .+}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void patchKey(@Suspended AsyncResponse asyncResponse, final @PathParam("key") String key, final @QueryParam("ref") String askedRef,
+            final @Auth User user, final @Context HttpServletRequest httpRequest, final @Context Request request,
+            final @Validated @Valid @NotNull PatchKeyData data, final @Context HttpHeaders headers, @Context SecurityContext context,
+            @Context ExecutorService executor, final @Context UriInfo uriInfo) {
+        APIHelper.checkMutableRef(askedRef);
+        final String ref = APIHelper.setToDefaultRefIfNull(askedRef, defaultRef);
+        APIHelper.checkHeaders(headers);
+        try {
+            modify(asyncResponse, helper.checkIfKeyExist(key, ref, storage)
+                    .thenApplyAsync(storeInfo -> checkModifiable(key, user, context, ref, headers, request, storeInfo), executor),
+                    storeInfo -> patchKey(key, httpRequest, data, user, ref, storeInfo), key, user, ref, headers, uriInfo, executor);
+        } catch (RefNotFoundException e) {
+            throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+        }
+    }
+
+    /*
+     * A client preferring to not wait for the commit is answered 202 once the preconditions are checked and the write is queued
+     */
+    private void modify(final AsyncResponse asyncResponse, final CompletableFuture<StoreInfo> modifiable,
+            final Function<StoreInfo, CompletableFuture<Either<String, FailedToLock>>> modification, final String key, final User user, final String ref,
+            final HttpHeaders headers, final UriInfo uriInfo, final ExecutorService executor) {
+        if (acceptedWrites != null && prefersAsync(headers.getHeaderString(PREFER))) {
+            modifiable.thenApplyAsync(storeInfo -> accept(storeInfo, modification, key, user, ref, uriInfo, executor), executor)
+                    .exceptionally(helper::exceptionHandlerPUTAPI)
+                    .thenAcceptAsync(asyncResponse::resume, executor);
+            return;
+        }
+        modifiable.thenApplyAsync(modification, executor)
+                .thenComposeAsync(Function.identity())
+                .thenApplyAsync(result -> modified(result, key, user, ref), executor)
+                .exceptionally(helper::exceptionHandlerPUTAPI)
+                .thenAcceptAsync(asyncResponse::resume, executor);
+    }
+
+    private Response accept(final StoreInfo storeInfo, final Function<StoreInfo, CompletableFuture<Either<String, FailedToLock>>> modification,
+            final String key, final User user, final String ref, final UriInfo uriInfo, final ExecutorService executor) {
+        final AcceptedWrite write = acceptedWrites.accept(key, ref, user.getName());
+        if (write == null) {
+            throw new WebApplicationException(Response.status(Status.TOO_MANY_REQUESTS).header(RETRY_AFTER, 1).build());
+        }
+        final CompletableFuture<Either<String, FailedToLock>> modified;
+        try {
+            modified = modification.apply(storeInfo);
+        } catch (RuntimeException e) {
+            acceptedWrites.cancel(write);
+            throw e;
+        }
+        modified.thenApplyAsync(result -> modified(result, key, user, ref), executor)
+                .exceptionally(helper::exceptionHandlerPUTAPI)
+                .thenAccept(response -> acceptedWrites.complete(write, response));
+        LOG.info("{} logged in and queued a modification of key {} in {}", user, key, ref);
+        return Response.accepted(write)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .location(uriInfo.getBaseUriBuilder().path(CommitResource.class).path(CommitResource.class, "getWrite").build(write.getId()))
+                .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                .build();
+    }
+
+    static boolean prefersAsync(final String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(COMMA_REGEX)) {
+            if (RESPOND_ASYNC.equalsIgnoreCase(preference.split(";")[0].trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private StoreInfo checkModifiable(final String key, final User user, final SecurityContext context, final String ref, final HttpHeaders headers,
+            final Request request, final StoreInfo storeInfo) {
+        helper.checkWritePermission(key, user, context, ref, storeInfo.getMetaData());
+        final EntityTag entityTag = representationTag(headers, storeInfo.getVersion());
+        final ResponseBuilder response = request.evaluatePreconditions(entityTag);
+        if (response != null) {
+            throw new WebApplicationException(response.header(HttpHeaders.CONTENT_ENCODING, UTF_8).tag(entityTag).build());
+        }
+        return storeInfo;
+    }
+
+    private Response modified(final Either<String, FailedToLock> result, final String key, final User user, final String ref) {
+        if (result == null) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        if (result.isRight()) {
+            throw new WebApplicationException(Status.PRECONDITION_FAILED);
+        }
+        final String newVersion = result.getLeft();
 
-                        if (newVersion == null) {
-                            throw new WebApplicationException(Status.NOT_FOUND);
+        if (newVersion == null) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        LOG.info("{} logged in and modified key {} in {}", user, key, ref);
+        return Response.ok().tag(new EntityTag(newVersion)).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
+    }
+
+    private CompletableFuture<Either<String, FailedToLock>> patchKey(final String key, final HttpServletRequest httpRequest, final PatchKeyData data,
+            final User user, final String ref, final StoreInfo storeInfo) {
+        if (!isJson(storeInfo.getMetaData().getContentType())) {
+            throw new WebApplicationException(key + " is not JSON", Status.UNSUPPORTED_MEDIA_TYPE);
+        }
+        final String currentVersion = storeInfo.getVersion();
+        final JsonNode patched;
+        final byte[] patchedData;
+        try {
+            // The cached document is shared, the patch is applied to a copy of it
+            final JsonNode document = documents.get(currentVersion, storeInfo.getStreamProvider().getSize(), () -> {
+                try (InputStream is = storeInfo.getStreamProvider().getInputStream()) {
+                    return MAPPER.readTree(is);
+                }
+            });
+            patched = data.apply(document);
+            patchedData = MAPPER.writeValueAsBytes(patched);
+        } catch (JsonProcessingException e) {
+            throw new WebApplicationException(key + " is not valid JSON", 422);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalStateException e) {
+            throw new WebApplicationException(e.getMessage(), Status.CONFLICT);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e.getMessage(), 422);
+        }
+        try {
+            return storage.updateKey(key, ref, new SmallObjectStreamProvider(patchedData), currentVersion, new CommitMetaData(data.getUserInfo(), data
+                    .getUserMail(), data.getMessage(), user.getName(), APIHelper.compileUserOrigin(user, httpRequest)))
+                    .thenApply(result -> {
+                        if (result != null && result.isLeft() && result.getLeft() != null) {
+                            // The next patch of this key starts from what was just written
+                            documents.put(result.getLeft(), patchedData.length, patched);
                         }
-                        LOG.info("{} logged in and modified key {} in {}", user, key, ref);
-                        return Response.ok().tag(new EntityTag(newVersion)).header(HttpHeaders.CONTENT_ENCODING, UTF_8).build();
-                    }, executor).exceptionally(helper::exceptionHandlerPUTAPI).thenAcceptAsync(asyncResponse::resume, executor);
+                        return result;
+                    });
         } catch (RefNotFoundException e) {
             throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
         }
     }
 
+    static boolean isJson(final String contentType) {
+        try {
+            final MediaType mediaType = MediaType.valueOf(contentType);
+            return "application".equals(mediaType.getType()) && ("json".equals(mediaType.getSubtype()) || mediaType.getSubtype().endsWith("+json"));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private CompletableFuture<Either<String, FailedToLock>> updateKey(final String key, final HttpServletRequest httpRequest, final ModifyKeyData data,
             final User user, final String ref, String currentVersion) {
         try {
@@ -377,20 +598,258 @@ public class KeyResource {
         }
     }
 
-    private Response buildResponse(final StoreInfo storeInfo, final EntityTag tag, final MetaData data, final HttpServletResponse response) {
-        final StreamingOutput so = output -> {
-            try (InputStream is = storeInfo.getStreamProvider().getInputStream()) {
-                is.transferTo(output);
+    private ResponseBuilder buildResponse(final StoreInfo storeInfo, final EntityTag tag, final String rangeHeader, final String ifRange) {
+        final ObjectStreamProvider provider = storeInfo.getStreamProvider();
+        final long size = provider.getSize();
+        final ByteRange range = ifRange == null || ifRange.trim().equals(quoted(tag)) ? ByteRange.parse(rangeHeader, size) : null;
+        if (range == ByteRange.UNSATISFIABLE) {
+            throw new WebApplicationException(Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE).header(CONTENT_RANGE, "bytes */" + size).tag(tag)
+                    .build());
+        }
+        final ByteBuffer buffer = asByteBuffer(provider);
+        final ResponseBuilder responseBuilder;
+        if (range != null) {
+            responseBuilder = Response.status(Status.PARTIAL_CONTENT)
+                    .header(CONTENT_RANGE, range.toContentRange(size))
+                    .header(HttpHeaders.CONTENT_LENGTH, range.getLength());
+            if (buffer != null) {
+                responseBuilder.entity(buffer.duplicate().position((int) range.getFirst()).limit((int) range.getLast() + 1).slice());
+            } else {
+                responseBuilder.entity(new LargeObjectOutput(provider, range.getFirst(), range.getLength()));
             }
-        };
-        final ResponseBuilder responseBuilder = Response.ok(so)
-                .header(HttpHeaders.CONTENT_TYPE, data.getContentType())
-                .header(HttpHeaders.CONTENT_ENCODING, UTF_8)
+        } else if (buffer != null) {
+            responseBuilder = Response.ok(buffer).header(HttpHeaders.CONTENT_LENGTH, buffer.remaining());
+        } else {
+            responseBuilder = Response.ok(new LargeObjectOutput(provider, 0, size));
+        }
+        return responseBuilder.header(HttpHeaders.CONTENT_ENCODING, UTF_8)
+                .header(ACCEPT_RANGES, "bytes")
                 .tag(tag);
+    }
+
+    private Response finishResponse(final ResponseBuilder responseBuilder, final MetaData data, final HttpServletResponse response, final String ref,
+            final boolean compressible) {
+        responseBuilder.header(HttpHeaders.CONTENT_TYPE, data.getContentType());
+        extractResponseHeaders(data, response, responseBuilder);
+        addImmutableCacheControl(ref, data, responseBuilder);
+        addVary(compressible, responseBuilder);
+        return responseBuilder.build();
+    }
+
+    /*
+     * A delta replaces the key's content, so it's not cached as the key even if it's read from a tag
+     */
+    private Response finishDelta(final ResponseBuilder responseBuilder, final String format, final MetaData data, final HttpServletResponse response) {
+        responseBuilder.header(HttpHeaders.CONTENT_TYPE, KeyDeltas.JSON_PATCH.equals(format) ? JSON_PATCH_TYPE : MediaType.APPLICATION_OCTET_STREAM);
         extractResponseHeaders(data, response, responseBuilder);
+        responseBuilder.header(VARY, A_IM);
         return responseBuilder.build();
     }
 
+    private ByteBuffer delta(final String key, final String ref, final StoreInfo storeInfo, final String base, final String format) {
+        final ByteBuffer buffer = asByteBuffer(storeInfo.getStreamProvider());
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            return keyDeltas.get(ref, key, base, storeInfo.getVersion(), format, () -> {
+                try {
+                    return storage.readBlob(key, ref, base, KeyDeltas.MAX_SIZE);
+                } catch (final RefNotFoundException e) {
+                    return Optional.empty();
+                }
+            }, buffer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * JSON keys are sent as JSON Patch if the client takes it, anything else as a git delta
+     */
+    static String deltaFormat(final String aIm, final String contentType) {
+        if (aIm == null) {
+            return null;
+        }
+        final Set<String> accepted = new HashSet<>();
+        for (String manipulation : aIm.split(COMMA_REGEX)) {
+            final String[] parts = manipulation.trim().split(";");
+            if (isAccepted(parts)) {
+                accepted.add(parts[0].trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (accepted.contains(KeyDeltas.JSON_PATCH) && isJson(contentType)) {
+            return KeyDeltas.JSON_PATCH;
+        }
+        return accepted.contains(KeyDeltas.GIT_DELTA) ? KeyDeltas.GIT_DELTA : null;
+    }
+
+    /*
+     * The version the client has is the first other blob id it lists in If-None-Match, RFC 3229
+     */
+    private static String deltaBase(final HttpHeaders headers, final String version) {
+        final List<String> ifNoneMatch = headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        return ifNoneMatch.stream()
+                .flatMap(h -> Arrays.stream(h.split(COMMA_REGEX)))
+                .map(KeyResource::unquote)
+                .filter(tag -> ObjectId.isId(tag) && !tag.equals(version))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String unquote(final String header) {
+        String tag = header.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        final String gzip = "-" + CompressedVariants.GZIP;
+        return tag.endsWith(gzip) ? tag.substring(0, tag.length() - gzip.length()) : tag;
+    }
+
+    private boolean answersFromMemory(final StoreInfo storeInfo, final HttpHeaders headers) {
+        if (storeInfo == null || headers.getHeaderString(A_IM) != null) {
+            return false;
+        }
+        final ObjectStreamProvider provider = storeInfo.getStreamProvider();
+        if (provider == null || !provider.isInMemory()) {
+            return false;
+        }
+        final boolean compresses = compressedVariants != null && compressedVariants.isCompressible(provider.getSize())
+                && headers.getHeaderString(RANGE) == null && acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        return !compresses || compressedVariants.contains(storeInfo.getVersion(), CompressedVariants.GZIP);
+    }
+
+    private boolean isCompressible(final StoreInfo storeInfo) {
+        final ObjectStreamProvider provider = storeInfo.getStreamProvider();
+        return compressedVariants != null && compressedVariants.isCompressible(provider.getSize()) && asByteBuffer(provider) != null;
+    }
+
+    private ByteBuffer compress(final StoreInfo storeInfo) {
+        final ByteBuffer buffer = asByteBuffer(storeInfo.getStreamProvider());
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            return compressedVariants.get(storeInfo.getVersion(), CompressedVariants.GZIP, buffer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String gzipVersion(final String version) {
+        return version + "-" + CompressedVariants.GZIP;
+    }
+
+    /*
+     * A client may send back the ETag of the compressed representation it got, which is the same version of the key
+     */
+    private static EntityTag representationTag(final HttpHeaders headers, final String version) {
+        final List<String> ifMatch = headers.getRequestHeader(HttpHeaders.IF_MATCH);
+        final String gzipTag = "\"" + gzipVersion(version) + "\"";
+        if (ifMatch != null && ifMatch.stream().flatMap(h -> Arrays.stream(h.split(COMMA_REGEX))).anyMatch(h -> h.trim().equals(gzipTag))) {
+            return new EntityTag(gzipVersion(version));
+        }
+        return new EntityTag(version);
+    }
+
+    private static void addVary(final boolean compressible, final ResponseBuilder responseBuilder) {
+        if (compressible) {
+            responseBuilder.header(VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    /*
+     * gzip is accepted if it's listed, or covered by *, without a q value of 0
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(COMMA_REGEX)) {
+            final String[] parts = coding.trim().split(";");
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            final boolean accepted = isAccepted(parts);
+            if (CompressedVariants.GZIP.equals(name) || "x-gzip".equals(name)) {
+                return accepted;
+            }
+            if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    /*
+     * A coding is accepted unless it has a q value of 0
+     */
+    private static boolean isAccepted(final String[] parts) {
+        boolean accepted = true;
+        for (int i = 1; i < parts.length; i++) {
+            final String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                } catch (final NumberFormatException e) {
+                    accepted = false;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static String quoted(final EntityTag tag) {
+        return "\"" + tag.getValue() + "\"";
+    }
+
+    /*
+     * The response is written by the thread resuming it and the write blocks until the client has read it. Large objects are written by their own
+     * bounded pool, which caps how many threads slow clients downloading them can hold. If that pool is full the client is asked to come back later.
+     * Without an executor the response is resumed by the calling thread.
+     */
+    private void resume(final AsyncResponse asyncResponse, final Response response, @Nullable final ExecutorService executor) {
+        final ExecutorService writer = largeObjectWriter != null && response.getEntity() instanceof LargeObjectOutput ? largeObjectWriter : executor;
+        if (writer == null) {
+            asyncResponse.resume(response);
+        } else {
+            try {
+                // Like thenAcceptAsync a failing resume stays in the future instead of ending up as an uncaught error
+                CompletableFuture.runAsync(() -> asyncResponse.resume(response), writer);
+            } catch (final RejectedExecutionException e) {
+                LOG.warn("Too many large objects are being written");
+                asyncResponse.resume(Response.status(Status.SERVICE_UNAVAILABLE).header(RETRY_AFTER, 1).build());
+            }
+        }
+    }
+
+    private static ByteBuffer asByteBuffer(final ObjectStreamProvider provider) {
+        try {
+            return provider.asByteBuffer();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * A tag never changes so its keys can be cached forever, unless the key's own headers says otherwise
+     */
+    private static void addImmutableCacheControl(final String ref, final MetaData data, final ResponseBuilder responseBuilder) {
+        if (!ref.startsWith(Constants.R_TAGS)) {
+            return;
+        }
+        final List<HeaderPair> headers = data.getHeaders();
+        if (headers != null && headers.stream().anyMatch(h -> HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(h.getHeader()))) {
+            return;
+        }
+        responseBuilder.header(HttpHeaders.CACHE_CONTROL, (data.getRead().isEmpty() ? "public, " : "private, ") + IMMUTABLE);
+    }
+
     private boolean requestingDelete(final String requestMethod) {
         if (requestMethod == null) {
             return false;
@@ -433,4 +892,28 @@ public class KeyResource {
             }
         }
     }
+
+    private static class LargeObjectOutput implements StreamingOutput {
+
+        private final ObjectStreamProvider provider;
+        private final long position;
+        private final long count;
+
+        LargeObjectOutput(final ObjectStreamProvider provider, final long position, final long count) {
+            this.provider = provider;
+            this.position = position;
+            this.count = count;
+        }
+
+        @Override
+        public void write(final OutputStream output) throws IOException {
+            if (provider instanceof SpilledObjectStreamProvider) {
+                ((SpilledObjectStreamProvider) provider).transferTo(output, position, count);
+                return;
+            }
+            try (InputStream is = provider.getInputStream()) {
+                ObjectStreamProvider.copyRange(is, output, position, count);
+            }
+        }
+    }
 }
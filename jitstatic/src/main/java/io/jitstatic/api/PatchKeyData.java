@@ -0,0 +1,75 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotBlank;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class PatchKeyData {
+
+    private final JsonNode jsonPatch;
+
+    private final JsonNode mergePatch;
+
+    @NotBlank
+    private final String message;
+
+    @NotBlank
+    private final String userMail;
+
+    @NotBlank
+    private final String userInfo;
+
+    @JsonCreator
+    public PatchKeyData(@JsonProperty("jsonPatch") final JsonNode jsonPatch, @JsonProperty("mergePatch") final JsonNode mergePatch,
+            @JsonProperty("message") final String message, @JsonProperty("userInfo") final String userInfo,
+            @JsonProperty("userMail") final String userMail) {
+        // Jackson hands a missing JsonNode over as a JSON null
+        this.jsonPatch = jsonPatch == null || jsonPatch.isNull() ? null : jsonPatch;
+        this.mergePatch = mergePatch == null || mergePatch.isNull() ? null : mergePatch;
+        this.message = message;
+        this.userMail = userMail;
+        this.userInfo = userInfo;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "needs either a jsonPatch or a mergePatch")
+    public boolean isOnePatch() { return (jsonPatch == null) != (mergePatch == null); }
+
+    public JsonNode getJsonPatch() { return jsonPatch; }
+
+    public JsonNode getMergePatch() { return mergePatch; }
+
+    public String getMessage() { return message; }
+
+    public String getUserMail() { return userMail; }
+
+    public String getUserInfo() { return userInfo; }
+
+    JsonNode apply(final JsonNode document) {
+        return jsonPatch != null ? JsonPatcher.patch(document, jsonPatch) : JsonPatcher.mergePatch(document, mergePatch);
+    }
+}
@@ -29,7 +29,6 @@ import static io.jitstatic.JitStaticConstants.REFS_HEADS_SECRETS;
 import java.security.Principal;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.function.Predicate;
@@ -52,7 +51,7 @@ import org.glassfish.jersey.server.ExtendedUriInfo;
 import io.dropwizard.auth.DefaultUnauthorizedHandler;
 import io.dropwizard.auth.UnauthorizedHandler;
 import io.jitstatic.JitStaticConstants;
-import io.jitstatic.Role;
+import io.jitstatic.RoleSet;
 import io.jitstatic.auth.ContextAwareAuthFilter.Realm.Domain;
 import io.jitstatic.storage.Storage;
 import io.jitstatic.utils.ShouldNeverHappenException;
@@ -196,6 +195,7 @@ public abstract class ContextAwareAuthFilter<C> implements ContainerRequestFilte
         case "bulk":
             return Realm.NONE_USER_ADMIN_GIT;
         case "metakey":
+        case "commit":
             return Realm.USER_ADMIN_GIT;
         case "info":
             return Realm.NONE;
@@ -226,6 +226,7 @@ public abstract class ContextAwareAuthFilter<C> implements ContainerRequestFilte
             return Realm.NONE_USER_ADMIN_GIT;
         case "POST":
         case "PUT":
+        case "PATCH":
         case "DELETE":
             return Realm.USER_ADMIN_GIT;
         case "OPTIONS":
@@ -359,15 +360,15 @@ public abstract class ContextAwareAuthFilter<C> implements ContainerRequestFilte
             GIT(JITSTATIC_GIT_REALM) {
                 @Override
                 void setUsersPrincipal(final ContainerRequestContext requestContext, final String scheme, final UserData userData, final String userName) {
-                    final Set<Role> roles = userData.getRoles();
+                    final RoleSet roles = userData.getRoleSet();
                     // Git admin with the appropriate roles can change their own password, keyadmins
                     // and keyusers
                     setPrincipal(requestContext, scheme, new User(userName, null, getDomainName(), true), role -> Realm.Domain.KEYADMIN.getDomainName()
                             .equals(role)
                             || Realm.Domain.KEYUSER.getDomainName().equals(role)
-                            || roles.contains(new Role(role))
+                            || roles.contains(role)
                             || Realm.Domain.GIT.createUserKey(userName).equals(role)
-                            || (roles.contains(new Role(JitStaticConstants.GIT_CREATE)) && role.equals(JitStaticConstants.ROLERROLES)));
+                            || (roles.contains(JitStaticConstants.GIT_CREATE) && role.equals(JitStaticConstants.ROLERROLES)));
                 }
 
                 @Override
@@ -418,8 +419,8 @@ public abstract class ContextAwareAuthFilter<C> implements ContainerRequestFilte
                 @Override
                 void setKeysPrincipal(final ContainerRequestContext requestContext, final String scheme, final UserData userData, final String userName) {
                     // Keyusers can only read or write to the roles they are part of.
-                    Set<Role> roles = userData.getRoles();
-                    setPrincipal(requestContext, scheme, new User(userName, null, getDomainName(), false), role -> roles.contains(new Role(role)));
+                    final RoleSet roles = userData.getRoleSet();
+                    setPrincipal(requestContext, scheme, new User(userName, null, getDomainName(), false), roles::contains, roles);
                 }
             };
 
@@ -456,24 +457,14 @@ public abstract class ContextAwareAuthFilter<C> implements ContainerRequestFilte
     }
 
     private static void setPrincipal(ContainerRequestContext requestContext, String scheme, Principal principal, Predicate<String> authorizer) {
+        setPrincipal(requestContext, scheme, principal, authorizer, null);
+    }
+
+    private static void setPrincipal(ContainerRequestContext requestContext, String scheme, Principal principal, Predicate<String> authorizer,
+            @Nullable RoleSet userRoles) {
         final SecurityContext securityContext = requestContext.getSecurityContext();
         final boolean secure = securityContext != null && securityContext.isSecure();
-
-        requestContext.setSecurityContext(new SecurityContext() {
-            @Override
-            public Principal getUserPrincipal() { return principal; }
-
-            @Override
-            public boolean isUserInRole(final String role) {
-                return authorizer.test(role);
-            }
-
-            @Override
-            public boolean isSecure() { return secure; }
-
-            @Override
-            public String getAuthenticationScheme() { return scheme; }
-        });
+        requestContext.setSecurityContext(new RoleSecurityContext(principal, scheme, secure, authorizer, userRoles));
     }
 
 }
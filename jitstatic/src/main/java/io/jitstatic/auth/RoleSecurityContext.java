@@ -0,0 +1,76 @@
+package io.jitstatic.auth;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.security.Principal;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.core.SecurityContext;
+
+import io.jitstatic.RoleSet;
+
+/**
+ * A security context which can check a whole set of roles at once. When the user's own roles are known that is an intersection of their compiled sets.
+ */
+public final class RoleSecurityContext implements SecurityContext {
+
+    private final Principal principal;
+    private final String scheme;
+    private final boolean secure;
+    private final Predicate<String> authorizer;
+    private final RoleSet userRoles;
+
+    RoleSecurityContext(final Principal principal, final String scheme, final boolean secure, final Predicate<String> authorizer,
+            @Nullable final RoleSet userRoles) {
+        this.principal = principal;
+        this.scheme = scheme;
+        this.secure = secure;
+        this.authorizer = authorizer;
+        this.userRoles = userRoles;
+    }
+
+    @Override
+    public Principal getUserPrincipal() { return principal; }
+
+    @Override
+    public boolean isUserInRole(final String role) {
+        return authorizer.test(role);
+    }
+
+    public boolean isUserInAnyRole(final RoleSet roles) {
+        if (userRoles != null) {
+            return userRoles.intersects(roles);
+        }
+        for (int i = 0; i < roles.size(); i++) {
+            if (authorizer.test(roles.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isSecure() { return secure; }
+
+    @Override
+    public String getAuthenticationScheme() { return scheme; }
+}
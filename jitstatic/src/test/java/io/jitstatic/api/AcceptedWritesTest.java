@@ -0,0 +1,74 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+class AcceptedWritesTest {
+
+    @Test
+    void testPendingWritesAreBounded() {
+        AcceptedWrites writes = new AcceptedWrites(2);
+        AcceptedWrite first = writes.accept("a", "refs/heads/master", "user");
+        AcceptedWrite second = writes.accept("b", "refs/heads/master", "user");
+        assertNull(writes.accept("c", "refs/heads/master", "user"));
+        writes.cancel(second);
+        assertNull(writes.get(second.getId()));
+        assertEquals(1, writes.getPending());
+        writes.complete(first, Response.ok().tag(new EntityTag("2")).build());
+        assertEquals(0, writes.getPending());
+        assertSame(first, writes.get(first.getId()));
+        assertEquals(AcceptedWrite.Status.COMMITTED, first.getStatus());
+        assertEquals("2", first.getVersion());
+        assertNull(first.getCode());
+        assertTrue(first.isBy("user"));
+        assertFalse(first.isBy("other"));
+    }
+
+    @Test
+    void testOnlyTheLatestFinishedWritesAreKept() {
+        AcceptedWrites writes = new AcceptedWrites(1);
+        AcceptedWrite first = writes.accept("a", "refs/heads/master", "user");
+        writes.complete(first, Response.status(Response.Status.CONFLICT).build());
+        assertEquals(AcceptedWrite.Status.FAILED, first.getStatus());
+        assertEquals(409, first.getCode());
+        AcceptedWrite second = writes.accept("b", "refs/heads/master", "user");
+        writes.complete(second, Response.ok().build());
+        assertNull(writes.get(first.getId()));
+        assertSame(second, writes.get(second.getId()));
+    }
+
+    @Test
+    void testDisabled() {
+        AcceptedWrites writes = new AcceptedWrites(0);
+        assertFalse(writes.isEnabled());
+        assertNull(writes.accept("a", "refs/heads/master", "user"));
+    }
+}
@@ -0,0 +1,58 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class ByteBufferMessageBodyWriterTest {
+
+    @Test
+    void testWriteHeapBuffer() throws IOException {
+        byte[] data = new byte[] { 0, 1, 2, 3, 4 };
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBufferMessageBodyWriter writer = new ByteBufferMessageBodyWriter();
+        assertEquals(3, writer.getSize(buffer, ByteBuffer.class, null, null, null));
+        writer.writeTo(buffer, ByteBuffer.class, null, null, null, null, out);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, out.toByteArray());
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void testWriteDirectBuffer() throws IOException {
+        byte[] data = new byte[20_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).flip().asReadOnlyBuffer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ByteBufferMessageBodyWriter().writeTo(buffer, ByteBuffer.class, null, null, null, null, out);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(data.length, buffer.remaining());
+    }
+}
@@ -0,0 +1,63 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class ByteRangeTest {
+
+    @Test
+    void testClosedRange() {
+        ByteRange range = ByteRange.parse("bytes=2-5", 10);
+        assertEquals(2, range.getFirst());
+        assertEquals(5, range.getLast());
+        assertEquals(4, range.getLength());
+        assertEquals("bytes 2-5/10", range.toContentRange(10));
+    }
+
+    @Test
+    void testOpenAndSuffixRanges() {
+        assertEquals("bytes 7-9/10", ByteRange.parse("bytes=7-", 10).toContentRange(10));
+        assertEquals("bytes 7-9/10", ByteRange.parse("bytes=-3", 10).toContentRange(10));
+        assertEquals("bytes 0-9/10", ByteRange.parse("bytes=-30", 10).toContentRange(10));
+        assertEquals("bytes 5-9/10", ByteRange.parse("bytes=5-100", 10).toContentRange(10));
+    }
+
+    @Test
+    void testUnsatisfiable() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=10-", 10));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 10));
+    }
+
+    @Test
+    void testIgnoredHeaders() {
+        assertNull(ByteRange.parse(null, 10));
+        assertNull(ByteRange.parse("items=1-2", 10));
+        assertNull(ByteRange.parse("bytes=1-2,4-5", 10));
+        assertNull(ByteRange.parse("bytes=5-2", 10));
+        assertNull(ByteRange.parse("bytes=a-b", 10));
+        assertNull(ByteRange.parse("bytes=-", 10));
+    }
+}
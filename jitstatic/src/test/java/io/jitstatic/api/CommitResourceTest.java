@@ -0,0 +1,300 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+
+import com.spencerwi.either.Either;
+
+import io.dropwizard.auth.AuthDynamicFeature;
+import io.dropwizard.auth.AuthValueFactoryProvider;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.dropwizard.testing.junit5.ResourceExtension;
+import io.jitstatic.MetaData;
+import io.jitstatic.auth.UrlAwareBasicCredentialAuthFilter;
+import io.jitstatic.auth.User;
+import io.jitstatic.hosted.FailedToLock;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.Storage;
+import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.VersionIsNotSame;
+import io.jitstatic.utils.WrappingAPIException;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class CommitResourceTest {
+
+    private static final String REFS_HEADS_MASTER = "refs/heads/master";
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private static final String PUSER = "puser";
+    private static final String PSECRET = "psecret";
+    private static final String BASIC_AUTH_CRED = createCreds(PUSER, PSECRET);
+    private static final String COMMIT = "{\"message\":\"msg\",\"userInfo\":\"info\",\"userMail\":\"mail\",\"operations\":["
+            + "{\"op\":\"update\",\"key\":\"dog\",\"data\":\"AQ==\",\"version\":\"1\"},"
+            + "{\"op\":\"add\",\"key\":\"cat\",\"data\":\"Ag==\",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]}}]}";
+
+    private static final String IMPORT = "{\"message\":\"msg\",\"userInfo\":\"info\",\"userMail\":\"mail\"}\n"
+            + "{\"key\":\"dog\",\"data\":\"AQ==\",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]}}\n"
+            + "{\"key\":\"cat\",\"data\":\"Ag==\",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]}}\n";
+
+    private static final String COPY = "{\"from\":\"dir/\",\"fromRef\":\"refs/heads/staging\",\"to\":\"dir/\",\"message\":\"msg\",\"userInfo\":\"info\",\"userMail\":\"mail\"}";
+
+    private static final String DELETE = "{\"path\":\"dir/\",\"message\":\"msg\",\"userInfo\":\"info\",\"userMail\":\"mail\"}";
+
+    private static final String METADATA = "{\"path\":\"dir/\",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]},\"message\":\"msg\","
+            + "\"userInfo\":\"info\",\"userMail\":\"mail\"}";
+
+    private Storage storage = mock(Storage.class);
+    private KeyImport keyImport;
+    private HashService hashService = new HashService();
+    private AcceptedWrites acceptedWrites = new AcceptedWrites(10);
+
+    public ResourceExtension RESOURCES = ResourceExtension.builder().setTestContainerFactory(new GrizzlyWebTestContainerFactory())
+            .addProvider(new AuthDynamicFeature(new UrlAwareBasicCredentialAuthFilter(storage, hashService, (u, p) -> u.equals(PUSER) && p.equals(PSECRET))))
+            .addProvider(new AuthValueFactoryProvider.Binder<>(User.class))
+            .addResource(new CommitResource(storage, REFS_HEADS_MASTER, acceptedWrites, 10_000))
+            .build();
+
+    @AfterEach
+    public void tearDown() {
+        Mockito.reset(storage);
+    }
+
+    @BeforeEach
+    public void setup() throws RefNotFoundException {
+        keyImport = mock(KeyImport.class);
+        when(storage.newImport()).thenReturn(keyImport);
+        when(storage.getUser(anyString(), any(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        when(storage.getKey(eq("dog"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture
+                .completedFuture(Optional.of(new StoreInfo(toProvider(new byte[] { 0 }), new MetaData(Set.of(), Set.of()), "1", "1"))));
+    }
+
+    @Test
+    public void testCommitWithoutUser() throws RefNotFoundException {
+        Response response = RESOURCES.target("/commit").request().post(Entity.json(COMMIT));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_UNAUTHORIZED));
+        response.close();
+        verify(storage, never()).commit(any(), any(), any());
+    }
+
+    @Test
+    public void testGetAcceptedWrite() {
+        AcceptedWrite write = acceptedWrites.accept("dog", REFS_HEADS_MASTER, "someone");
+        Response response = RESOURCES.target("/commit/writes/" + write.getId()).request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).get();
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, String>>() {}), Matchers.is(Map.of("id", write.getId(), "key", "dog", "ref",
+                REFS_HEADS_MASTER, "status", "PENDING")));
+        response.close();
+        acceptedWrites.complete(write, Response.status(HttpStatus.SC_PRECONDITION_FAILED).build());
+        response = RESOURCES.target("/commit/writes/" + write.getId()).request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).get();
+        assertThat(response.readEntity(new GenericType<Map<String, Object>>() {}), Matchers.is(Map.of("id", write.getId(), "key", "dog", "ref",
+                REFS_HEADS_MASTER, "status", "FAILED", "code", HttpStatus.SC_PRECONDITION_FAILED)));
+        response.close();
+        response = RESOURCES.target("/commit/writes/unknown").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).get();
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_NOT_FOUND));
+        response.close();
+    }
+
+    @Test
+    public void testCommit() throws RefNotFoundException {
+        when(storage.commit(eq(REFS_HEADS_MASTER), any(), any())).thenReturn(CompletableFuture.completedFuture(Either.left(List.of("2", "3"))));
+        Response response = RESOURCES.target("/commit").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).post(Entity.json(COMMIT));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, String>>() {}), Matchers.is(Map.of("dog", "2", "cat", "3")));
+        response.close();
+    }
+
+    @Test
+    public void testCommitWhenKeyIsLocked() throws RefNotFoundException {
+        when(storage.commit(eq(REFS_HEADS_MASTER), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(Either.right(new FailedToLock(REFS_HEADS_MASTER, "dog"))));
+        Response response = RESOURCES.target("/commit").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).post(Entity.json(COMMIT));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_PRECONDITION_FAILED));
+        response.close();
+    }
+
+    @Test
+    public void testCommitWithConflictingChanges() throws RefNotFoundException {
+        when(storage.commit(eq(REFS_HEADS_MASTER), any(), any())).thenThrow(new WrappingAPIException(new IllegalArgumentException("dog")));
+        Response response = RESOURCES.target("/commit").request().header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED).post(Entity.json(COMMIT));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_BAD_REQUEST));
+        response.close();
+    }
+
+    @Test
+    public void testCommitUpdateWithoutVersion() throws RefNotFoundException {
+        Response response = RESOURCES.target("/commit")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.json(COMMIT.replace(",\"version\":\"1\"", "")));
+        assertThat(response.getStatus(), Matchers.is(422));
+        response.close();
+        verify(storage, never()).commit(any(), any(), any());
+    }
+
+    @Test
+    public void testImportKeys() throws Exception {
+        when(keyImport.getKeys()).thenReturn(List.of("dog", "cat"));
+        when(storage.importKeys(eq(REFS_HEADS_MASTER), eq(keyImport), any())).thenReturn(CompletableFuture.completedFuture(Either.left("commit")));
+        Response response = RESOURCES.target("/commit/import")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.entity(IMPORT, KeyImportReader.NDJSON));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, Object>>() {}), Matchers.is(Map.of("keys", 2, "commit", "commit")));
+        response.close();
+        verify(keyImport).add(eq("dog"), any(), any());
+        verify(keyImport).add(eq("cat"), any(), any());
+        verify(keyImport).finish();
+        verify(keyImport).close();
+    }
+
+    @Test
+    public void testImportKeysWithInvalidKey() throws Exception {
+        Response response = RESOURCES.target("/commit/import")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.entity(IMPORT.replace(",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]}}\n{\"key\":\"cat\"", "}\n{\"key\":\"cat\""),
+                        KeyImportReader.NDJSON));
+        assertThat(response.getStatus(), Matchers.is(422));
+        response.close();
+        verify(storage, never()).importKeys(any(), any(), any());
+        verify(keyImport).close();
+    }
+
+    @Test
+    public void testImportMalformedKeys() throws Exception {
+        Response response = RESOURCES.target("/commit/import")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.entity(IMPORT + "{\"key\":", KeyImportReader.NDJSON));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_BAD_REQUEST));
+        response.close();
+        verify(storage, never()).importKeys(any(), any(), any());
+        verify(keyImport).close();
+    }
+
+    @Test
+    public void testImportLargerThanMaxSizeIsRejected() throws Exception {
+        String data = Base64.getEncoder().encodeToString(new byte[10_000]);
+        Response response = RESOURCES.target("/commit/import")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.entity(IMPORT + "{\"key\":\"bird\",\"data\":\"" + data + "\",\"metaData\":{\"users\":[],\"read\":[],\"write\":[]}}\n",
+                        KeyImportReader.NDJSON));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_REQUEST_TOO_LONG));
+        response.close();
+        verify(storage, never()).importKeys(any(), any(), any());
+        verify(keyImport).close();
+    }
+
+    @Test
+    public void testCopy() throws RefNotFoundException {
+        when(storage.copy(eq("dir/"), eq("refs/heads/staging"), eq("dir/"), eq(REFS_HEADS_MASTER), eq(false), eq("1"), any()))
+                .thenReturn(CompletableFuture.completedFuture(Either.left(List.of(Pair.of("dir/a", "2")))));
+        Response response = RESOURCES.target("/commit/copy")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .post(Entity.json(COPY));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, String>>() {}), Matchers.is(Map.of("dir/a", "2")));
+        response.close();
+    }
+
+    @Test
+    public void testCopyWithWrongVersion() throws RefNotFoundException {
+        when(storage.copy(any(), any(), any(), any(), Mockito.anyBoolean(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new WrappingAPIException(new VersionIsNotSame("1", "2"))));
+        Response response = RESOURCES.target("/commit/copy")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .post(Entity.json(COPY));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_PRECONDITION_FAILED));
+        response.close();
+    }
+
+    @Test
+    public void testDeletePathDryRun() throws RefNotFoundException {
+        when(storage.deletePath(eq("dir/"), eq(REFS_HEADS_MASTER), eq(null), eq(true), any()))
+                .thenReturn(CompletableFuture.completedFuture(Either.left(Pair.of(List.of("dir/a", "dir/b"), null))));
+        Response response = RESOURCES.target("/commit/delete")
+                .queryParam("dryRun", true)
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .post(Entity.json(DELETE));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, Object>>() {}), Matchers.is(Map.of("keys", 2)));
+        response.close();
+    }
+
+    @Test
+    public void testRewriteMetaData() throws RefNotFoundException {
+        when(storage.rewriteMetaData(eq("dir/"), eq(REFS_HEADS_MASTER), eq(new MetaData(Set.of(), Set.of())), eq("1"), eq(false), any()))
+                .thenReturn(CompletableFuture.completedFuture(Either.left(Pair.of(List.of("dir/a"), "commit"))));
+        Response response = RESOURCES.target("/commit/metadata")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .post(Entity.json(METADATA));
+        assertThat(response.getStatus(), Matchers.is(HttpStatus.SC_OK));
+        assertThat(response.readEntity(new GenericType<Map<String, Object>>() {}), Matchers.is(Map.of("keys", 1, "commit", "commit")));
+        response.close();
+    }
+
+    private static String createCreds(String user, String secret) {
+        return "Basic " + Base64.getEncoder().encodeToString((user + ":" + secret).getBytes(UTF_8));
+    }
+}
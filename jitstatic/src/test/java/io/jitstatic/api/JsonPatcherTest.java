@@ -0,0 +1,91 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonPatcherTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void testPatchOperations() throws IOException {
+        JsonNode document = json("{'a':{'b':[1,2]},'c':'d'}");
+        JsonNode patched = JsonPatcher.patch(document, json("[{'op':'test','path':'/c','value':'d'},{'op':'add','path':'/a/b/1','value':3},"
+                + "{'op':'add','path':'/a/b/-','value':4},{'op':'replace','path':'/c','value':'e'},{'op':'copy','from':'/c','path':'/f'},"
+                + "{'op':'move','from':'/a/b','path':'/g'},{'op':'remove','path':'/f'}]"));
+        assertEquals(json("{'a':{},'c':'e','g':[1,3,2,4]}"), patched);
+        assertEquals(json("{'a':{'b':[1,2]},'c':'d'}"), document);
+        assertEquals(json("[1]"), JsonPatcher.patch(document, json("[{'op':'replace','path':'','value':[1]}]")));
+        assertEquals(json("{'a/b':{'~':1}}"), JsonPatcher.patch(json("{'a/b':{}}"), json("[{'op':'add','path':'/a~1b/~0','value':1}]")));
+    }
+
+    @Test
+    void testFailingPatches() throws IOException {
+        JsonNode document = json("{'a':[1]}");
+        assertThrows(IllegalStateException.class, () -> JsonPatcher.patch(document, json("[{'op':'test','path':'/a/0','value':2}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("{'op':'remove','path':'/a'}")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'remove','path':'/b'}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'add','path':'/a/2','value':1}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'add','path':'/a/01','value':1}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'add','path':'/b/c','value':1}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'move','from':'/a','path':'/a/0'}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'add','path':'/b'}]")));
+        assertThrows(IllegalArgumentException.class, () -> JsonPatcher.patch(document, json("[{'op':'undo','path':'/a'}]")));
+    }
+
+    @Test
+    void testMergePatch() throws IOException {
+        JsonNode document = json("{'title':'Goodbye!','author':{'givenName':'John','familyName':'Doe'},'tags':['example','sample'],'content':'text'}");
+        JsonNode patched = JsonPatcher.mergePatch(document, json("{'title':'Hello!','phoneNumber':'+01-123-456-7890','author':{'familyName':null},"
+                + "'tags':['example'],'extra':{'a':null,'b':1}}"));
+        assertEquals(json("{'title':'Hello!','author':{'givenName':'John'},'tags':['example'],'content':'text','phoneNumber':'+01-123-456-7890',"
+                + "'extra':{'b':1}}"), patched);
+        assertEquals("Doe", document.at("/author/familyName").asText());
+        assertEquals(json("[1]"), JsonPatcher.mergePatch(document, json("[1]")));
+    }
+
+    @Test
+    void testDiff() throws IOException {
+        assertDiff("{'a':{'b':[1,2,3,4],'c':'d'},'e':1,'f/~':[]}", "{'a':{'b':[1,5,6,3,4],'c':'x'},'g':true,'f/~':[{'h':1}]}");
+        assertDiff("{'a':[1,2,3,4,5]}", "{'a':[1,5]}");
+        assertDiff("{'a':[{'b':1},{'b':2}]}", "{'a':[{'b':1},{'b':3}]}");
+        assertDiff("{'a':1}", "[1,2]");
+        assertEquals(json("[{'op':'replace','path':'/a/1/b','value':3}]"), JsonPatcher.diff(json("{'a':[{'b':1},{'b':2}]}"), json("{'a':[{'b':1},{'b':3}]}")));
+        assertEquals(json("[]"), JsonPatcher.diff(json("{'a':[1]}"), json("{'a':[1]}")));
+    }
+
+    private static void assertDiff(final String from, final String to) throws IOException {
+        assertEquals(json(to), JsonPatcher.patch(json(from), JsonPatcher.diff(json(from), json(to))));
+    }
+
+    private static JsonNode json(final String json) throws IOException {
+        return MAPPER.readTree(json.replace('\'', '"'));
+    }
+}
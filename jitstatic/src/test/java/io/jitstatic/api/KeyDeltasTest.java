@@ -0,0 +1,100 @@
+package io.jitstatic.api;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.internal.storage.pack.BinaryDelta;
+import org.junit.jupiter.api.Test;
+
+class KeyDeltasTest {
+
+    private static final String REF = "refs/heads/master";
+    private static final byte[] BASE = "0123456789".repeat(100).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT = ("0123456789".repeat(99) + "changed").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testGitDeltaIsComputedOnce() throws IOException {
+        KeyDeltas deltas = new KeyDeltas(1_000_000);
+        AtomicInteger reads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer delta = deltas.get(REF, "key", "a", "b", KeyDeltas.GIT_DELTA, () -> {
+                reads.incrementAndGet();
+                return Optional.of(BASE);
+            }, ByteBuffer.wrap(CONTENT));
+            byte[] bytes = new byte[delta.remaining()];
+            delta.get(bytes);
+            assertArrayEquals(CONTENT, BinaryDelta.apply(BASE, bytes));
+        }
+        assertEquals(1, reads.get());
+        assertEquals(1, deltas.getEntries());
+    }
+
+    @Test
+    void testNoDelta() throws IOException {
+        KeyDeltas deltas = new KeyDeltas(1_000_000);
+        assertNull(deltas.get(REF, "key", "a", "b", KeyDeltas.GIT_DELTA, Optional::empty, ByteBuffer.wrap(CONTENT)));
+        assertEquals(1, deltas.getEntries());
+        assertNull(deltas.get(REF, "key", "a", "b", KeyDeltas.GIT_DELTA, () -> {
+            throw new IOException("missing base should be remembered");
+        }, ByteBuffer.wrap(CONTENT)));
+        assertNull(deltas.get(REF, "key", "c", "b", KeyDeltas.GIT_DELTA, () -> Optional.of(new byte[] { 1 }), ByteBuffer.wrap(new byte[] { 2, 3 })));
+        assertNull(deltas.get(REF, "key", "c", "b", KeyDeltas.JSON_PATCH, () -> Optional.of(BASE), ByteBuffer.wrap(CONTENT)));
+        assertNull(deltas.get(REF, "key", "c", "b", KeyDeltas.GIT_DELTA, () -> {
+            throw new IOException("should be remembered");
+        }, ByteBuffer.wrap(new byte[] { 2, 3 })));
+        assertEquals(3, deltas.getEntries());
+        assertEquals(3 * KeyDeltas.ENTRY_OVERHEAD, deltas.getBytes());
+        assertThrows(IllegalArgumentException.class, () -> deltas.get(REF, "key", "a", "b", "vcdiff", () -> Optional.of(BASE), ByteBuffer.wrap(CONTENT)));
+    }
+
+    @Test
+    void testDeltasAreEvicted() throws IOException {
+        KeyDeltas deltas = new KeyDeltas(1);
+        deltas.get(REF, "key", "a", "b", KeyDeltas.GIT_DELTA, () -> Optional.of(BASE), ByteBuffer.wrap(CONTENT));
+        assertEquals(0, deltas.getEntries());
+        assertEquals(0, deltas.getBytes());
+    }
+
+    @Test
+    void testDeltaIsOnlyReusedForTheSameKey() throws IOException {
+        KeyDeltas deltas = new KeyDeltas(1_000_000);
+        AtomicInteger reads = new AtomicInteger();
+        deltas.get(REF, "key", "a", "b", KeyDeltas.GIT_DELTA, () -> {
+            reads.incrementAndGet();
+            return Optional.of(BASE);
+        }, ByteBuffer.wrap(CONTENT));
+        assertNull(deltas.get(REF, "other", "a", "b", KeyDeltas.GIT_DELTA, () -> {
+            reads.incrementAndGet();
+            return Optional.empty();
+        }, ByteBuffer.wrap(CONTENT)));
+        assertEquals(2, reads.get());
+    }
+}
@@ -26,17 +26,24 @@ import static io.jitstatic.source.ObjectStreamProvider.toProvider;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
@@ -44,8 +51,14 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.EntityTag;
@@ -56,6 +69,9 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.internal.storage.pack.BinaryDelta;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
@@ -63,10 +79,12 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spencerwi.either.Either;
 
 import io.dropwizard.auth.AuthDynamicFeature;
@@ -83,6 +101,11 @@ import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.KeyAlreadyExist;
 import io.jitstatic.storage.Storage;
+import io.jitstatic.source.CompressedVariants;
+import io.jitstatic.source.LargeObjectStreamProvider;
+import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.SourceCaches;
+import io.jitstatic.utils.NamingThreadFactory;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
@@ -91,6 +114,7 @@ import io.jitstatic.utils.WrappingAPIException;
 public class KeyResourceTest {
     private static final String REFS_HEADS_MASTER = "refs/heads/master";
     private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final String USER = "user";
     private static final String SECRET = "secret";
     private static final String PUSER = "puser";
@@ -105,11 +129,17 @@ public class KeyResourceTest {
     private HashService hashService = new HashService();
     private Storage storage = mock(Storage.class);
     private io.jitstatic.auth.UserData userData = mock(io.jitstatic.auth.UserData.class);
+    private ExecutorService largeObjectWriter = Executors.newSingleThreadExecutor(new NamingThreadFactory("test-largeobjectwriter"));
+    private AcceptedWrites acceptedWrites = new AcceptedWrites(1);
+    private SourceCaches caches = new SourceCaches();
+    private Client patchClient = ClientBuilder.newClient(new ClientConfig().connectorProvider(new ApacheConnectorProvider()));
 
     public ResourceExtension RESOURCES = ResourceExtension.builder().setTestContainerFactory(new GrizzlyWebTestContainerFactory())
             .addProvider(new AuthDynamicFeature(new UrlAwareBasicCredentialAuthFilter(storage, hashService, (u, p) -> u.equals(PUSER) && p.equals(PSECRET))))
             .addProvider(new AuthValueFactoryProvider.Binder<>(User.class))
-            .addResource(new KeyResource(storage, false, REFS_HEADS_MASTER))
+            .addProvider(ByteBufferMessageBodyWriter.class)
+            .addResource(new KeyResource(storage, false, REFS_HEADS_MASTER, largeObjectWriter, new CompressedVariants(1_000_000, 100), new KeyDeltas(1_000_000),
+                    acceptedWrites, caches))
             .build();
 
     @BeforeAll
@@ -138,6 +168,8 @@ public class KeyResourceTest {
     public void tearDown() {
         Mockito.reset(storage);
         Mockito.reset(userData);
+        largeObjectWriter.shutdown();
+        patchClient.close();
     }
 
     @BeforeEach
@@ -270,6 +302,229 @@ public class KeyResourceTest {
         response.close();
     }
 
+    @Test
+    public void testTagKeyIsCachedForever() throws RefNotFoundException {
+        Optional<StoreInfo> optional = DATA.get("dog");
+        when(storage.getKey(Mockito.matches("dog/dog"), Mockito.matches("refs/tags/branch"))).thenReturn(CompletableFuture.completedFuture(optional));
+        Response response = RESOURCES.target("/storage/dog/dog")
+                .queryParam("ref", "refs/tags/branch")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("private, max-age=31536000, immutable", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        response.close();
+        response = RESOURCES.target("/storage/dog/dog")
+                .queryParam("ref", "refs/tags/branch")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + optional.get().getVersion() + "\"")
+                .get();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+        assertEquals("private, max-age=31536000, immutable", response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        response.close();
+    }
+
+    @Test
+    public void testBranchKeyIsNotCachedForever() throws RefNotFoundException {
+        Optional<StoreInfo> optional = DATA.get("dog");
+        when(storage.getKey(Mockito.matches("dog/dog"), Mockito.matches("refs/heads/branch"))).thenReturn(CompletableFuture.completedFuture(optional));
+        Response response = RESOURCES.target("/storage/dog/dog")
+                .queryParam("ref", "refs/heads/branch")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertNull(response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+        response.close();
+    }
+
+    @Test
+    public void testCachedKeyIsWrittenWithContentLength() throws RefNotFoundException {
+        Optional<StoreInfo> optional = DATA.get("dog");
+        when(storage.getKey(Mockito.matches("dog/dog"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(optional));
+        Response response = RESOURCES.target("/storage/dog/dog")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(returnedDog.length(), response.getLength());
+        assertEquals(returnedDog, response.readEntity(String.class));
+        response.close();
+    }
+
+    @Test
+    public void testLargeKeyIsWrittenByLargeObjectWriter() throws RefNotFoundException {
+        byte[] data = new byte[200_000];
+        Arrays.fill(data, (byte) 'a');
+        AtomicReference<String> writingThread = new AtomicReference<>();
+        LargeObjectStreamProvider provider = new LargeObjectStreamProvider(() -> {
+            writingThread.set(Thread.currentThread().getName());
+            return new ByteArrayInputStream(data);
+        }, data.length);
+        StoreInfo storeInfo = new StoreInfo(provider, new MetaData("application/octet-stream", false, false, List.of(), Set.of(), Set.of()), "1", "1");
+        when(storage.getKey(Mockito.matches("large"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        Response response = RESOURCES.target("/storage/large").request().get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(data, response.readEntity(byte[].class));
+        assertTrue(writingThread.get().startsWith("test-largeobjectwriter"));
+        response.close();
+    }
+
+    @Test
+    public void testLargeKeyIsRejectedWhenWritersAreBusy() throws RefNotFoundException {
+        byte[] data = new byte[200_000];
+        LargeObjectStreamProvider provider = new LargeObjectStreamProvider(() -> new ByteArrayInputStream(data), data.length);
+        StoreInfo storeInfo = new StoreInfo(provider, new MetaData("application/octet-stream", false, false, List.of(), Set.of(), Set.of()), "1", "1");
+        when(storage.getKey(Mockito.matches("large"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        largeObjectWriter.shutdown();
+        Response response = RESOURCES.target("/storage/large").request().get();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals("1", response.getHeaderString("Retry-After"));
+        response.close();
+    }
+
+    @Test
+    public void testRangeOfCachedKey() throws RefNotFoundException {
+        Optional<StoreInfo> optional = DATA.get("dog");
+        when(storage.getKey(Mockito.matches("dog/dog"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(optional));
+        Response response = RESOURCES.target("/storage/dog/dog")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header("Range", "bytes=2-5")
+                .get();
+        assertEquals(HttpStatus.PARTIAL_CONTENT_206, response.getStatus());
+        assertEquals("bytes 2-5/" + returnedDog.length(), response.getHeaderString("Content-Range"));
+        assertEquals(returnedDog.substring(2, 6), response.readEntity(String.class));
+        response.close();
+        response = RESOURCES.target("/storage/dog/dog")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header("Range", "bytes=2-5")
+                .header("If-Range", "\"other\"")
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        assertEquals(returnedDog, response.readEntity(String.class));
+        response.close();
+        response = RESOURCES.target("/storage/dog/dog")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header("Range", "bytes=1000-")
+                .get();
+        assertEquals(HttpStatus.RANGE_NOT_SATISFIABLE_416, response.getStatus());
+        assertEquals("bytes */" + returnedDog.length(), response.getHeaderString("Content-Range"));
+        response.close();
+    }
+
+    @Test
+    public void testRangeOfLargeKey() throws RefNotFoundException {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        LargeObjectStreamProvider provider = new LargeObjectStreamProvider(() -> new ByteArrayInputStream(data), data.length);
+        StoreInfo storeInfo = new StoreInfo(provider, new MetaData("application/octet-stream", false, false, List.of(), Set.of(), Set.of()), "1", "1");
+        when(storage.getKey(Mockito.matches("large"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        Response response = RESOURCES.target("/storage/large").request().header("Range", "bytes=100000-100099").header("If-Range", "\"1\"").get();
+        assertEquals(HttpStatus.PARTIAL_CONTENT_206, response.getStatus());
+        assertArrayEquals(Arrays.copyOfRange(data, 100_000, 100_100), response.readEntity(byte[].class));
+        response.close();
+    }
+
+    @Test
+    public void testGetCompressedKey() throws IOException, RefNotFoundException {
+        byte[] data = ("{\"values\":[" + "\"value\",".repeat(200) + "\"value\"]}").getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(toProvider(data), new MetaData("application/json", false, false, List.of(), Set.of(), Set.of()), "1", "1");
+        when(storage.getKey(Mockito.matches("compressed"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        Response response = RESOURCES.target("/storage/compressed").request().header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8").get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Accept-Encoding", response.getHeaderString("Vary"));
+        assertEquals("1-gzip", response.getEntityTag().getValue());
+        byte[] compressed = response.readEntity(byte[].class);
+        assertTrue(compressed.length < data.length);
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+        response.close();
+        response = RESOURCES.target("/storage/compressed").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, "\"1-gzip\"").get();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+        response.close();
+        response = RESOURCES.target("/storage/compressed").request().header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0").get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("1", response.getEntityTag().getValue());
+        assertEquals("Accept-Encoding", response.getHeaderString("Vary"));
+        assertArrayEquals(data, response.readEntity(byte[].class));
+        response.close();
+    }
+
+    @Test
+    public void testGetKeyAsJsonPatch() throws IOException, RefNotFoundException {
+        String base = "8a1f0c6a3e2b5d4c7f9e0a1b2c3d4e5f60718293";
+        String version = "0f1e2d3c4b5a69788796a5b4c3d2e1f001122334";
+        byte[] old = ("{\"values\":[" + "\"value\",".repeat(200) + "\"value\"],\"name\":\"old\"}").getBytes(UTF_8);
+        byte[] data = ("{\"values\":[" + "\"value\",".repeat(200) + "\"value\",\"new\"],\"name\":\"new\"}").getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(toProvider(data), new MetaData("application/json", false, false, List.of(), Set.of(), Set.of()), version, "1");
+        when(storage.getKey(Mockito.matches("delta"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        when(storage.readBlob(eq("delta"), eq(REFS_HEADS_MASTER), eq(base), anyInt())).thenReturn(Optional.of(old));
+        Response response = RESOURCES.target("/storage/delta").request().header("A-IM", "json-patch").header(HttpHeaders.IF_NONE_MATCH, "\"" + base + "\"")
+                .get();
+        assertEquals(226, response.getStatus());
+        assertEquals("json-patch", response.getHeaderString("IM"));
+        assertEquals("\"" + base + "\"", response.getHeaderString("Delta-Base"));
+        assertEquals(version, response.getEntityTag().getValue());
+        assertEquals("application/json-patch+json", response.getHeaderString(HttpHeaders.CONTENT_TYPE));
+        JsonNode patch = MAPPER.readTree(response.readEntity(byte[].class));
+        assertEquals(MAPPER.readTree(data), JsonPatcher.patch(MAPPER.readTree(old), patch));
+        response.close();
+        response = RESOURCES.target("/storage/delta").request().header("A-IM", "json-patch")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"ffffffffffffffffffffffffffffffffffffffff\"").get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(data, response.readEntity(byte[].class));
+        response.close();
+    }
+
+    @Test
+    public void testGetKeyAsGitDelta() throws IOException, RefNotFoundException {
+        String base = "8a1f0c6a3e2b5d4c7f9e0a1b2c3d4e5f60718294";
+        String version = "0f1e2d3c4b5a69788796a5b4c3d2e1f001122335";
+        byte[] old = "0123456789".repeat(100).getBytes(UTF_8);
+        byte[] data = ("0123456789".repeat(50) + "changed" + "0123456789".repeat(50)).getBytes(UTF_8);
+        StoreInfo storeInfo = new StoreInfo(toProvider(data), new MetaData("text/plain", false, false, List.of(), Set.of(), Set.of()), version, "1");
+        when(storage.getKey(Mockito.matches("binary"), Mockito.matches(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(Optional.of(storeInfo)));
+        when(storage.readBlob(eq("binary"), eq(REFS_HEADS_MASTER), eq(base), anyInt())).thenReturn(Optional.of(old));
+        Response response = RESOURCES.target("/storage/binary").request().header("A-IM", "json-patch, git-delta")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"" + base + "-gzip\"").get();
+        assertEquals(226, response.getStatus());
+        assertEquals("git-delta", response.getHeaderString("IM"));
+        assertEquals("A-IM", response.getHeaderString("Vary"));
+        assertArrayEquals(data, BinaryDelta.apply(old, response.readEntity(byte[].class)));
+        response.close();
+        response = RESOURCES.target("/storage/binary").request().header("A-IM", "git-delta;q=0").header(HttpHeaders.IF_NONE_MATCH, "\"" + base + "\"").get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(data, response.readEntity(byte[].class));
+        response.close();
+    }
+
+    @Test
+    public void testDeltaFormat() {
+        assertEquals(KeyDeltas.JSON_PATCH, KeyResource.deltaFormat("git-delta, json-patch", "application/json"));
+        assertEquals(KeyDeltas.GIT_DELTA, KeyResource.deltaFormat("git-delta, json-patch", "text/plain"));
+        assertNull(KeyResource.deltaFormat("json-patch", "text/plain"));
+        assertNull(KeyResource.deltaFormat("vcdiff", "application/json"));
+        assertNull(KeyResource.deltaFormat(null, "application/json"));
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(KeyResource.acceptsGzip("gzip"));
+        assertTrue(KeyResource.acceptsGzip("deflate, *"));
+        assertFalse(KeyResource.acceptsGzip("*, gzip;q=0"));
+        assertFalse(KeyResource.acceptsGzip("identity"));
+        assertFalse(KeyResource.acceptsGzip(null));
+    }
+
     @Test
     public void testFaultyRef() {
         assertEquals(compileMsg(Status.BAD_REQUEST), assertThrows(WebApplicationException.class, () -> RESOURCES.target("/storage/horse")
@@ -345,6 +600,121 @@ public class KeyResourceTest {
         response.close();
     }
 
+    @Test
+    public void testPutAKeyRespondingAsync() throws IOException, RefNotFoundException, InterruptedException {
+        WebTarget target = RESOURCES.target("/storage/dog");
+        CompletableFuture<Either<String, FailedToLock>> written = new CompletableFuture<>();
+        when(storage.getKey(eq("dog"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(DATA.get("dog")));
+        when(storage.updateKey(eq("dog"), eq(REFS_HEADS_MASTER), any(), eq("1"), any())).thenReturn(written);
+        ModifyKeyData data = new ModifyKeyData(toProvider("{\"food\" : [\"treats\",\"steak\"]}".getBytes(UTF_8)), "message", "user", "mail");
+        Response response = target.request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .header("Prefer", "respond-async, wait=10")
+                .buildPut(Entity.entity(data, MediaType.APPLICATION_JSON))
+                .invoke();
+        assertEquals(Status.ACCEPTED.getStatusCode(), response.getStatus());
+        assertEquals("respond-async", response.getHeaderString("Preference-Applied"));
+        JsonNode accepted = MAPPER.readTree(response.readEntity(String.class));
+        assertEquals("PENDING", accepted.get("status").asText());
+        String id = accepted.get("id").asText();
+        assertTrue(response.getLocation().getPath().endsWith("/commit/writes/" + id));
+        response.close();
+
+        response = target.request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .header("Prefer", "respond-async")
+                .buildPut(Entity.entity(data, MediaType.APPLICATION_JSON))
+                .invoke();
+        assertEquals(Status.TOO_MANY_REQUESTS.getStatusCode(), response.getStatus());
+        assertEquals("1", response.getHeaderString("Retry-After"));
+        response.close();
+
+        written.complete(Either.left("2"));
+        AcceptedWrite write = acceptedWrites.get(id);
+        // The outcome is recorded by another thread
+        for (int i = 0; i < 500 && write.getStatus() == AcceptedWrite.Status.PENDING; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(AcceptedWrite.Status.COMMITTED, write.getStatus());
+        assertEquals("2", write.getVersion());
+        assertEquals(0, acceptedWrites.getPending());
+    }
+
+    @Test
+    public void testPutAKeyRespondingAsyncChecksPreconditions() throws IOException, RefNotFoundException {
+        when(storage.getKey(eq("dog"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(DATA.get("dog")));
+        ModifyKeyData data = new ModifyKeyData(toProvider("{\"food\" : [\"treats\",\"steak\"]}".getBytes(UTF_8)), "message", "user", "mail");
+        Response response = RESOURCES.target("/storage/dog").request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .header("Prefer", "respond-async")
+                .buildPut(Entity.entity(data, MediaType.APPLICATION_JSON))
+                .invoke();
+        assertEquals(Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+        response.close();
+        assertEquals(0, acceptedWrites.getPending());
+        Mockito.verify(storage, Mockito.never()).updateKey(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testPrefersAsync() {
+        assertTrue(KeyResource.prefersAsync("respond-async"));
+        assertTrue(KeyResource.prefersAsync("return=minimal, Respond-Async; wait=5"));
+        assertFalse(KeyResource.prefersAsync("return=minimal"));
+        assertFalse(KeyResource.prefersAsync(null));
+    }
+
+    @Test
+    public void testPatchAKey() throws IOException, RefNotFoundException {
+        when(storage.getKey(eq("dog"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(DATA.get("dog")));
+        ArgumentCaptor<ObjectStreamProvider> written = ArgumentCaptor.forClass(ObjectStreamProvider.class);
+        when(storage.updateKey(eq("dog"), eq(REFS_HEADS_MASTER), written.capture(), eq("1"), any()))
+                .thenReturn(CompletableFuture.completedFuture(Either.left("2")));
+        Response response = patch("dog", "{\"jsonPatch\":[{\"op\":\"replace\",\"path\":\"/food/0\",\"value\":\"treats\"}],"
+                + "\"message\":\"message\",\"userInfo\":\"user\",\"userMail\":\"mail\"}");
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("2", response.getEntityTag().getValue());
+        assertEquals("{\"food\":[\"treats\",\"meat\"]}", new String(toByte(written.getValue()), UTF_8));
+        assertNotNull(caches.getDocuments().get("2", () -> {
+            throw new IOException("should already be parsed");
+        }));
+        response.close();
+    }
+
+    @Test
+    public void testPatchAKeyWithFailingTest() throws IOException, RefNotFoundException {
+        when(storage.getKey(eq("dog"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(DATA.get("dog")));
+        Response response = patch("dog", "{\"jsonPatch\":[{\"op\":\"test\",\"path\":\"/food/0\",\"value\":\"fish\"}],"
+                + "\"message\":\"message\",\"userInfo\":\"user\",\"userMail\":\"mail\"}");
+        assertEquals(Status.CONFLICT.getStatusCode(), response.getStatus());
+        response.close();
+        response = patch("dog", "{\"jsonPatch\":[],\"mergePatch\":{},\"message\":\"message\",\"userInfo\":\"user\",\"userMail\":\"mail\"}");
+        assertEquals(422, response.getStatus());
+        response.close();
+        Mockito.verify(storage, Mockito.never()).updateKey(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testPatchAKeyThatIsNotJson() throws IOException, RefNotFoundException {
+        when(storage.getKey(eq("book"), eq(REFS_HEADS_MASTER))).thenReturn(CompletableFuture.completedFuture(DATA.get("book")));
+        Response response = patch("book", "{\"mergePatch\":{\"a\":1},\"message\":\"message\",\"userInfo\":\"user\",\"userMail\":\"mail\"}");
+        assertEquals(Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode(), response.getStatus());
+        response.close();
+    }
+
+    private Response patch(final String key, final String body) {
+        // The default connector can't send PATCH
+        return patchClient.target(RESOURCES.target("/storage/" + key).getUri())
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, BASIC_AUTH_CRED)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .build("PATCH", Entity.json(body))
+                .invoke();
+    }
+
     @Test
     public void testPutAKeyOtherVersion() throws RefNotFoundException, IOException {
         WebTarget target = RESOURCES.target("/storage/dog");
@@ -116,6 +116,8 @@ class ContextAwareAuthFilterTest {
                 Arguments.of("PUT", Domain.KEYUSER, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
                 Arguments.of("PUT", Domain.KEYADMIN, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
                 Arguments.of("PUT", Domain.GIT, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
+                Arguments.of("PATCH", Domain.NONE, Realm.USER_ADMIN_GIT, "storage/key", "storage", null, false, null),
+                Arguments.of("PATCH", Domain.KEYUSER, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
                 Arguments.of("POST", Domain.NONE, Realm.USER_ADMIN_GIT, "storage/key", "storage", null, false, null),
                 Arguments.of("POST", Domain.KEYUSER, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
                 Arguments.of("POST", Domain.KEYADMIN, Realm.USER_ADMIN_GIT, "storage/key", "storage", creds, true, null),
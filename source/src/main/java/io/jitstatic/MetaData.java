@@ -31,6 +31,7 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -57,6 +58,8 @@ public class MetaData {
     @Valid
     @NotNull
     private final Set<Role> write;
+    private volatile RoleSet readRoles;
+    private volatile RoleSet writeRoles;
 
     @JsonCreator
     @Deprecated
@@ -111,4 +114,22 @@ public class MetaData {
 
     public Set<Role> getWrite() { return write; }
 
+    @JsonIgnore
+    public final RoleSet getReadRoles() {
+        RoleSet compiled = readRoles;
+        if (compiled == null) {
+            compiled = readRoles = RoleSet.of(getRead());
+        }
+        return compiled;
+    }
+
+    @JsonIgnore
+    public final RoleSet getWriteRoles() {
+        RoleSet compiled = writeRoles;
+        if (compiled == null) {
+            compiled = writeRoles = RoleSet.of(getWrite());
+        }
+        return compiled;
+    }
+
 }
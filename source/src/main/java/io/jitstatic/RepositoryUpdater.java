@@ -27,6 +27,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEditor;
 import org.eclipse.jgit.dircache.DirCacheEntry;
@@ -35,8 +37,11 @@ import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.UnmergedPathException;
 import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectDatabase;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
@@ -48,8 +53,11 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.jitstatic.hosted.DurableWrites;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.utils.Pair;
 
@@ -58,16 +66,176 @@ import io.jitstatic.utils.Pair;
 public class RepositoryUpdater {
 
     private final Repository repository;
+    private final DurableWrites durableWrites;
 
     public RepositoryUpdater(final Repository repository) {
+        this(repository, DurableWrites.relaxed(repository));
+    }
+
+    public RepositoryUpdater(final Repository repository, final DurableWrites durableWrites) {
         this.repository = repository;
+        this.durableWrites = durableWrites;
     }
 
     public List<Pair<String, ObjectId>> buildDirCache(final CommitMetaData commitMetaData, final List<Pair<String, ObjectStreamProvider>> files, final String ref)
             throws IOException, MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, UnmergedPathException {
-        final List<Pair<String, ObjectId>> fileVersions = new ArrayList<>(files.size());
+        try (final ObjectInserter objectInserter = repository.newObjectInserter()) {
+            return buildDirCache(commitMetaData, files, ref, objectInserter);
+        }
+    }
+
+    /**
+     * Blobs written with this inserter go into a single pack instead of one loose object each, they can't be read until it's been flushed with
+     * {@link #flushPack(ObjectInserter)}.
+     */
+    public ObjectInserter newPackInserter() {
+        final ObjectDatabase objectDatabase = repository.getObjectDatabase();
+        return objectDatabase instanceof ObjectDirectory ? ((ObjectDirectory) objectDatabase).newPackInserter() : objectDatabase.newInserter();
+    }
+
+    public void flushPack(final ObjectInserter objectInserter) throws IOException {
+        objectInserter.flush();
+        if (objectInserter instanceof PackInserter) {
+            durableWrites.onPack();
+        }
+    }
+
+    /**
+     * Writes files whose blobs already exist in one commit. A null blob deletes the file.
+     */
+    public ObjectId writeBlobs(final CommitMetaData commitMetaData, final List<Pair<String, ObjectId>> blobs, final String ref)
+            throws IOException, MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, UnmergedPathException {
         final Ref foundRef = repository.findRef(ref);
         try (final RevWalk rw = new RevWalk(repository); final ObjectInserter objectInserter = repository.newObjectInserter()) {
+            final DirCache inCoreIndex = getCurrentDirCache(rw, foundRef);
+            final DirCacheEditor editor = inCoreIndex.editor();
+            for (Pair<String, ObjectId> blob : blobs) {
+                final String path = blob.getLeft();
+                final ObjectId blobId = blob.getRight();
+                if (blobId == null) {
+                    editor.add(new DirCacheEditor.DeletePath(path));
+                } else {
+                    checkPath(inCoreIndex, path);
+                    editor.add(new DirCacheEditor.PathEdit(path) {
+                        @Override
+                        public void apply(DirCacheEntry ent) {
+                            ent.setFileMode(FileMode.REGULAR_FILE);
+                            ent.setObjectId(blobId);
+                        }
+                    });
+                }
+            }
+            editor.finish();
+            final ObjectId fullTree = inCoreIndex.writeTree(objectInserter);
+            final ObjectId insertedCommit = buildCommit(foundRef.getObjectId(), commitMetaData, objectInserter, fullTree);
+            objectInserter.flush();
+            updateRef(foundRef, rw, insertedCommit);
+            return insertedCommit;
+        }
+    }
+
+    /**
+     * Stores data once so that several files can point at the same blob.
+     */
+    public ObjectId insertBlob(final byte[] data) throws IOException {
+        try (final ObjectInserter objectInserter = repository.newObjectInserter()) {
+            final ObjectId blobId = objectInserter.insert(Constants.OBJ_BLOB, data);
+            objectInserter.flush();
+            return blobId;
+        }
+    }
+
+    /**
+     * @param path a file, a directory or the empty string for the root
+     * @return the blob or tree at the path, or null if there's nothing of that kind there
+     */
+    @Nullable
+    public ObjectId findObject(final String ref, final String path, final boolean tree) throws IOException {
+        final RevTree root = getTree(ref);
+        if (root == null) {
+            return null;
+        }
+        if (path.isEmpty()) {
+            return tree ? root : null;
+        }
+        try (final TreeWalk treeWalk = TreeWalk.forPath(repository, path, root)) {
+            if (treeWalk == null || (treeWalk.getFileMode(0) == FileMode.TREE) != tree) {
+                return null;
+            }
+            return treeWalk.getObjectId(0);
+        }
+    }
+
+    /**
+     * A blob that isn't in the repository is never looked for. Otherwise at most maxCommits commits are visited, whether they change the path or not,
+     * so the walk is bounded however long the history is.
+     *
+     * @param maxCommits how many of the latest commits to look through
+     * @return true if the file at the path was the blob in one of them
+     */
+    public boolean wasAtPath(final String ref, final String path, final ObjectId blob, final int maxCommits) throws IOException {
+        final Ref foundRef = repository.findRef(ref);
+        if (foundRef == null || foundRef.getObjectId() == null || path.isEmpty() || !repository.getObjectDatabase().has(blob)) {
+            return false;
+        }
+        try (final RevWalk rw = new RevWalk(repository)) {
+            rw.setRetainBody(false);
+            rw.markStart(rw.parseCommit(foundRef.getObjectId()));
+            int commits = 0;
+            for (RevCommit commit : rw) {
+                if (commits++ == maxCommits) {
+                    return false;
+                }
+                try (final TreeWalk treeWalk = TreeWalk.forPath(rw.getObjectReader(), path, commit.getTree())) {
+                    if (treeWalk != null && treeWalk.getFileMode(0) != FileMode.TREE && blob.equals(treeWalk.getObjectId(0))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param directory a directory without a trailing slash, or the empty string for the root
+     * @return every file under the directory and its blob
+     */
+    public List<Pair<String, ObjectId>> listFiles(final String ref, final String directory) throws IOException {
+        final List<Pair<String, ObjectId>> files = new ArrayList<>();
+        final RevTree root = getTree(ref);
+        if (root == null) {
+            return files;
+        }
+        try (final TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(root);
+            treeWalk.setRecursive(true);
+            if (!directory.isEmpty()) {
+                treeWalk.setFilter(PathFilter.create(directory));
+            }
+            while (treeWalk.next()) {
+                files.add(Pair.of(treeWalk.getPathString(), treeWalk.getObjectId(0)));
+            }
+        }
+        return files;
+    }
+
+    @Nullable
+    private RevTree getTree(final String ref) throws IOException {
+        final Ref foundRef = repository.findRef(ref);
+        if (foundRef == null || foundRef.getObjectId() == null) {
+            return null;
+        }
+        try (final RevWalk rw = new RevWalk(repository)) {
+            return rw.parseCommit(foundRef.getObjectId()).getTree();
+        }
+    }
+
+    private List<Pair<String, ObjectId>> buildDirCache(final CommitMetaData commitMetaData, final List<Pair<String, ObjectStreamProvider>> files,
+            final String ref, final ObjectInserter objectInserter)
+            throws IOException, MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, UnmergedPathException {
+        final List<Pair<String, ObjectId>> fileVersions = new ArrayList<>(files.size());
+        final Ref foundRef = repository.findRef(ref);
+        try (final RevWalk rw = new RevWalk(repository)) {
 
             final DirCache inCoreIndex = getCurrentDirCache(rw, foundRef);
             final DirCacheEditor editor = inCoreIndex.editor();
@@ -94,11 +262,23 @@ public class RepositoryUpdater {
             editor.finish();
             final ObjectId fullTree = inCoreIndex.writeTree(objectInserter);
             final ObjectId insertedCommit = buildCommit(foundRef.getObjectId(), commitMetaData, objectInserter, fullTree);
+            objectInserter.flush();
             updateRef(foundRef, rw, insertedCommit);
             return fileVersions;
         }
     }
 
+    private static void checkPath(final DirCache index, final String path) {
+        if (index.getEntriesWithin(path).length > 0) {
+            throw new IllegalArgumentException(path + " is a directory");
+        }
+        for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+            if (index.findEntry(path.substring(0, i)) >= 0) {
+                throw new IllegalArgumentException(path.substring(0, i) + " is a file");
+            }
+        }
+    }
+
     private DirCache getCurrentDirCache(final RevWalk rw, Ref head) throws MissingObjectException, IncorrectObjectTypeException, IOException {
         RevCommit revision = head.getObjectId() != null ? rw.parseCommit(head.getObjectId()) : null;
         RevTree tree = revision != null ? rw.parseTree(revision) : null;
@@ -122,6 +302,7 @@ public class RepositoryUpdater {
         ru.setNewObjectId(newCommit);
         ru.setExpectedOldObjectId(ref.getObjectId());
         checkResult(ru.update(rw), ref.getName());
+        durableWrites.onCommit();
     }
 
     private ObjectId buildCommit(final ObjectId parent, final CommitMetaData commitMetaData, final ObjectInserter objectInserter, final ObjectId fullTree)
@@ -171,6 +352,7 @@ public class RepositoryUpdater {
             updateRef.setForceUpdate(true);
             updateRef.disableRefLog();
             checkResult(updateRef.forceUpdate(), finalRef);
+            durableWrites.onCommit();
         }
     }
 
@@ -180,6 +362,7 @@ public class RepositoryUpdater {
             ru.setForceUpdate(true);
             checkResult(ru.delete(), ref);
         }
+        durableWrites.onCommit();
     }
 
     public Repository getRepository() {
@@ -0,0 +1,110 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * A set of roles compiled once for the metadata or user it belongs to. The names are sorted ignoring case, as {@link Role} compares them, so checking if
+ * a set holds a role or if two sets have a role in common neither allocates nor changes the case of any name.
+ */
+public final class RoleSet {
+
+    private static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER;
+    public static final RoleSet EMPTY = new RoleSet(new String[0]);
+
+    private final String[] roles;
+    private final int hash;
+
+    private RoleSet(final String[] roles) {
+        this.roles = roles;
+        int h = 1;
+        for (String role : roles) {
+            h = 31 * h + role.toLowerCase(Locale.ROOT).hashCode();
+        }
+        this.hash = h;
+    }
+
+    public static RoleSet of(final Collection<Role> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return EMPTY;
+        }
+        final TreeSet<String> names = new TreeSet<>(ORDER);
+        for (Role role : roles) {
+            names.add(role.getRole());
+        }
+        return new RoleSet(names.toArray(new String[0]));
+    }
+
+    /**
+     * Roles are compared ignoring case, as {@link Role} does
+     */
+    public boolean contains(final String role) {
+        return Arrays.binarySearch(roles, role, ORDER) >= 0;
+    }
+
+    public boolean intersects(final RoleSet other) {
+        int i = 0;
+        int j = 0;
+        while (i < roles.length && j < other.roles.length) {
+            final int compared = ORDER.compare(roles[i], other.roles[j]);
+            if (compared == 0) {
+                return true;
+            } else if (compared < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() { return roles.length == 0; }
+
+    public int size() { return roles.length; }
+
+    public String get(final int index) {
+        return roles[index];
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        return Arrays.equals(roles, ((RoleSet) obj).roles, ORDER);
+    }
+
+    @Override
+    public String toString() {
+        return "RoleSet " + Arrays.toString(roles);
+    }
+}
@@ -46,13 +46,17 @@ public class SourceJSONParser {
     }
 
     public String parseMetaData(final InputStream bc) throws IOException {
+        return readMetaData(bc).getContentType();
+    }
+
+    public MetaData readMetaData(final InputStream bc) throws IOException {
         final MetaData metaData = parseStream(bc);
 
         final Set<ConstraintViolation<MetaData>> violations = validator.validate(metaData, Warning.class, Default.class);
         if (!violations.isEmpty()) {
             throw new StorageParseException(violations);
         }
-        return metaData.getContentType();
+        return metaData;
     }
 
     private MetaData parseStream(final InputStream bc) throws StorageParseException {
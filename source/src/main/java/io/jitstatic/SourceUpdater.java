@@ -21,17 +21,25 @@ package io.jitstatic;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.Repository;
 
+import io.jitstatic.source.KeyChange;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.SmallObjectStreamProvider;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.Pair;
 
@@ -43,13 +51,13 @@ public class SourceUpdater {
         this.repositoryUpdater = repositoryUpdater;
     }
 
-    public Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> addKey(
+    public WrittenKey addKey(
             final Pair<Pair<String, ObjectStreamProvider>, Pair<String, byte[]>> fileEntry, final CommitMetaData commitMetaData, final String ref)
             throws IOException {
         final List<Pair<String, ObjectId>> addedEntry = addEntry(fileEntry, commitMetaData, ref);
         final Pair<String, ObjectId> file = addedEntry.get(0);
         final Pair<String, ObjectId> metadata = addedEntry.get(1);
-        return Pair.of(Pair.of(getObjectLoaderFactory(file), file.getRight().name()), metadata.getRight().name());
+        return new WrittenKey(file.getRight().name(), metadata.getRight().name(), getObjectLoaderFactory(file));
     }
 
     public String updateMetaData(final String key, final byte[] data, final CommitMetaData commitMetaData, final String ref)
@@ -59,10 +67,10 @@ public class SourceUpdater {
         return updateMetaDataEntry.getRight().name();
     }
 
-    public Pair<String, ThrowingSupplier<ObjectLoader, IOException>> updateKey(final String key, final ObjectStreamProvider data,
+    public WrittenKey updateKey(final String key, final ObjectStreamProvider data,
             final CommitMetaData commitMetaData, final String ref) throws IOException {
         final Pair<String, ObjectId> updatedKeyEntry = addEntry(Pair.of(Pair.of(key, data), Pair.ofNothing()), commitMetaData, ref).get(0);
-        return Pair.of(updatedKeyEntry.getRight().name(), getObjectLoaderFactory(updatedKeyEntry));
+        return new WrittenKey(updatedKeyEntry.getRight().name(), null, getObjectLoaderFactory(updatedKeyEntry));
     }
 
     private ThrowingSupplier<ObjectLoader, IOException> getObjectLoaderFactory(final Pair<String, ObjectId> updatedKeyEntry) {
@@ -85,6 +93,95 @@ public class SourceUpdater {
                 List.of(file, Pair.of(fileMetadata.getLeft(), fileMetaDataArray == null ? null : new SmallObjectStreamProvider(fileMetaDataArray))), ref);
     }
 
+    /**
+     * Writes the files of several key changes in one commit and pairs up the written blobs with the changes
+     */
+    public List<WrittenKey> commit(final List<KeyChange> changes, final List<Pair<String, ObjectStreamProvider>> files,
+            final CommitMetaData commitMetaData, final String ref) throws IOException {
+        final Map<String, ObjectId> written = new HashMap<>();
+        for (Pair<String, ObjectId> file : repositoryUpdater.buildDirCache(commitMetaData, files, ref)) {
+            written.put(file.getLeft(), file.getRight());
+        }
+        final List<WrittenKey> writtenKeys = new ArrayList<>(changes.size());
+        for (KeyChange change : changes) {
+            final String key = change.getKey();
+            switch (change.getType()) {
+            case ADD:
+                writtenKeys.add(writtenKey(key, written.get(key), written.get(key + JitStaticConstants.METADATA).name()));
+                break;
+            case UPDATE:
+                writtenKeys.add(writtenKey(key, written.get(key), null));
+                break;
+            case METADATA:
+                writtenKeys.add(WrittenKey.ofMetaData(written.get(key + JitStaticConstants.METADATA).name()));
+                break;
+            case DELETE:
+            default:
+                writtenKeys.add(null);
+                break;
+            }
+        }
+        return writtenKeys;
+    }
+
+    private WrittenKey writtenKey(final String key, final ObjectId blobId, final String metaDataVersion) {
+        return new WrittenKey(blobId.name(), metaDataVersion, getObjectLoaderFactory(Pair.of(key, blobId)));
+    }
+
+    public ObjectInserter newPackInserter() {
+        return repositoryUpdater.newPackInserter();
+    }
+
+    public void flushPack(final ObjectInserter objectInserter) throws IOException {
+        repositoryUpdater.flushPack(objectInserter);
+    }
+
+    /**
+     * Commits the blobs of an import, which have already been written, no file may turn a file into a directory or the other way around
+     */
+    public String importKeys(final List<Pair<String, ObjectId>> files, final CommitMetaData commitMetaData, final String ref) throws IOException {
+        return repositoryUpdater.writeBlobs(commitMetaData, files, ref).name();
+    }
+
+    /**
+     * Copies files by writing their existing blobs to new paths in one commit
+     */
+    public String copyBlobs(final List<Pair<String, String>> blobs, final CommitMetaData commitMetaData, final String ref) throws IOException {
+        return repositoryUpdater.writeBlobs(commitMetaData, blobs.stream()
+                .map(blob -> Pair.of(blob.getLeft(), blob.getRight() == null ? null : ObjectId.fromString(blob.getRight())))
+                .collect(Collectors.toList()), ref).name();
+    }
+
+    /**
+     * Deletes files in one commit
+     */
+    public String deleteFiles(final List<String> files, final CommitMetaData commitMetaData, final String ref) throws IOException {
+        return repositoryUpdater.writeBlobs(commitMetaData, files.stream().map(file -> Pair.of(file, (ObjectId) null)).collect(Collectors.toList()), ref)
+                .name();
+    }
+
+    /**
+     * Writes the same data to several files in one commit, the data is only stored once
+     */
+    public String writeToFiles(final List<String> files, final byte[] data, final CommitMetaData commitMetaData, final String ref) throws IOException {
+        final ObjectId blobId = repositoryUpdater.insertBlob(data);
+        return repositoryUpdater.writeBlobs(commitMetaData, files.stream().map(file -> Pair.of(file, blobId)).collect(Collectors.toList()), ref).name();
+    }
+
+    @Nullable
+    public String findVersion(final String path, final boolean directory, final String ref) throws IOException {
+        final ObjectId found = repositoryUpdater.findObject(ref, path, directory);
+        return found == null ? null : found.name();
+    }
+
+    public boolean wasVersionOf(final String path, final String blobId, final String ref, final int maxCommits) throws IOException {
+        return repositoryUpdater.wasAtPath(ref, path, ObjectId.fromString(blobId), maxCommits);
+    }
+
+    public List<Pair<String, String>> listFiles(final String directory, final String ref) throws IOException {
+        return repositoryUpdater.listFiles(ref, directory).stream().map(file -> Pair.of(file.getLeft(), file.getRight().name())).collect(Collectors.toList());
+    }
+
     public void deleteKey(final String file, final CommitMetaData commitMetaData, final boolean hasKeyMetaFile, final String ref)
             throws IOException {
         List<Pair<String, ObjectStreamProvider>> files = (hasKeyMetaFile ? Set.of(file, file + JitStaticConstants.METADATA) : Set.of(file)).stream()
@@ -29,9 +29,11 @@ import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.jitstatic.Role;
+import io.jitstatic.RoleSet;
 import io.jitstatic.auth.constraints.DuplicatedAuthenticationMethods;
 import io.jitstatic.auth.constraints.HasPassword;
 import io.jitstatic.constraints.Warning;
@@ -52,6 +54,8 @@ public class UserData implements BasicAuthentication, Serializable {
 
     private final String hash;
 
+    private transient volatile RoleSet roleSet;
+
     @JsonCreator
     public UserData(@JsonProperty("roles") Set<Role> roles, @JsonProperty("basicPassword") String password, @JsonProperty("salt") String salt,
             @JsonProperty("hash") String hash) {
@@ -85,6 +89,15 @@ public class UserData implements BasicAuthentication, Serializable {
         return roles;
     }
 
+    @JsonIgnore
+    public final RoleSet getRoleSet() {
+        RoleSet compiled = roleSet;
+        if (compiled == null) {
+            compiled = roleSet = RoleSet.of(getRoles());
+        }
+        return compiled;
+    }
+
     @Override
     public String getBasicPassword() {
         return basicPassword;
@@ -38,8 +38,10 @@ import org.eclipse.jgit.lib.Repository;
 
 import com.spencerwi.either.Either;
 
+import io.jitstatic.MetaData;
 import io.jitstatic.SourceJSONParser;
 import io.jitstatic.hosted.InputStreamHolder;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.utils.Pair;
 
 public class SourceChecker {
@@ -47,14 +49,16 @@ public class SourceChecker {
     private static final SourceJSONParser PARSER = new SourceJSONParser();
     private final Repository repository;
     private final SourceExtractor extractor;
+    private final SourceCaches caches;
 
-    public SourceChecker(final Repository repository) {
-        this(repository, new SourceExtractor(repository));
+    public SourceChecker(final Repository repository, final SourceCaches caches) {
+        this(repository, new SourceExtractor(repository, caches), caches);
     }
 
-    SourceChecker(final Repository repository, final SourceExtractor extractor) {
+    SourceChecker(final Repository repository, final SourceExtractor extractor, final SourceCaches caches) {
         this.repository = Objects.requireNonNull(repository);
         this.extractor = extractor;
+        this.caches = Objects.requireNonNull(caches);
     }
 
     public List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> checkTestBranchForErrors(final String branch)
@@ -133,8 +137,13 @@ public class SourceChecker {
             return Pair.of(fileObject, null);
         }
         if (inputStreamHolder.isPresent()) {
-            try (final InputStream is = inputStreamHolder.inputStream()) {
-                return Pair.of(fileObject, Either.left(PARSER.parseMetaData(is)));
+            try {
+                final MetaData metaData = caches.getMetaData().get(data.getVersion(), () -> {
+                    try (final InputStream is = inputStreamHolder.inputStream()) {
+                        return PARSER.readMetaData(is);
+                    }
+                });
+                return Pair.of(fileObject, Either.left(metaData.getContentType()));
             } catch (final IOException e) {
                 // File had errors
                 return Pair.of(fileObject, Either.right(e));
@@ -43,9 +43,12 @@ import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -59,6 +62,8 @@ import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import io.jitstatic.hosted.InputStreamHolder;
+import io.jitstatic.source.BlobCache;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.Pair;
@@ -68,9 +73,11 @@ public class SourceExtractor {
 
     private static final int METADATA_LENGTH = METADATA.length();
     private final Repository repository;
+    private final SourceCaches caches;
 
-    public SourceExtractor(final Repository repository) {
+    public SourceExtractor(final Repository repository, final SourceCaches caches) {
         this.repository = Objects.requireNonNull(repository);
+        this.caches = Objects.requireNonNull(caches);
     }
 
     public SourceInfo openTag(final String tagName, final String key) throws RefNotFoundException, IOException {
@@ -100,10 +107,10 @@ public class SourceExtractor {
         }
         final Pair<MetaFileData, SourceFileData> pair = repositoryData.getFirstPair();
         if (pair.isPresent()) {
-            return new SourceInfo(pair.getLeft(), pair.getRight());
+            return new SourceInfo(pair.getLeft(), pair.getRight(), caches);
         }
         if (pair.getLeft() != null && pair.getLeft().isMasterMetaData()) {
-            return new SourceInfo(pair.getLeft(), null);
+            return new SourceInfo(pair.getLeft(), null, caches);
         }
         return null;
     }
@@ -116,6 +123,77 @@ public class SourceExtractor {
         return branchRef;
     }
 
+    /**
+     * Reads every key in a ref with one tree walk and one batched blob read. Small data blobs are read into memory until {@code maxBytes} have been read,
+     * keys found after that are left out so they can be loaded lazily. Metadata is always read and large blobs are never read here. Keys sharing a blob
+     * share the read bytes and blobs already in the {@link BlobCache} aren't read again.
+     */
+    public List<Pair<String, SourceInfo>> openAll(final String refName, final long maxBytes) throws RefNotFoundException, IOException {
+        final Ref ref = findBranch(Objects.requireNonNull(refName));
+        if (ref.getObjectId() == null || ObjectId.zeroId().equals(ref.getObjectId())) {
+            return List.of();
+        }
+        final Map<ObjectId, List<String>> blobs = new HashMap<>();
+        try (final RevWalk rev = new RevWalk(repository); final TreeWalk treeWalker = new TreeWalk(repository)) {
+            treeWalker.addTree(rev.parseTree(rev.parseCommit(ref.getObjectId()).getTree()));
+            treeWalker.setRecursive(true);
+            treeWalker.setFilter(NotTreeFilter.create(PathFilter.create(USERS)));
+            while (treeWalker.next()) {
+                final FileMode mode = treeWalker.getFileMode();
+                if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    blobs.computeIfAbsent(treeWalker.getObjectId(0), id -> new ArrayList<>()).add(new String(treeWalker.getRawPath(), UTF_8));
+                }
+            }
+            rev.dispose();
+        }
+        final Map<String, MetaFileData> metaFiles = new HashMap<>();
+        final Map<String, SourceFileData> dataFiles = new HashMap<>();
+        long budget = maxBytes;
+        try (final ObjectReader reader = repository.newObjectReader()) {
+            final AsyncObjectLoaderQueue<ObjectId> queue = reader.open(blobs.keySet(), true);
+            try {
+                while (queue.next()) {
+                    final ObjectId objectId = queue.getObjectId().toObjectId();
+                    final ObjectLoader loader = queue.open();
+                    final long size = loader.getSize();
+                    final List<String> paths = blobs.get(objectId);
+                    final boolean isMetaData = paths.stream().allMatch(p -> p.endsWith(METADATA));
+                    final InputStreamHolder inputStreamHolder;
+                    if (!isMetaData && caches.getBlobCache().contains(objectId.name())) {
+                        inputStreamHolder = new InputStreamHolder(() -> repository.open(objectId));
+                    } else if (size < SourceInfo.THRESHOLD && !loader.isLarge() && (isMetaData || budget >= size)) {
+                        final ObjectLoader cached = new ObjectLoader.SmallObject(Constants.OBJ_BLOB, loader.getCachedBytes());
+                        // Only the first read gets the read bytes, reloading the blob opens it again
+                        inputStreamHolder = new InputStreamHolder(() -> cached, () -> repository.open(objectId));
+                        if (!isMetaData) {
+                            budget -= size;
+                        }
+                    } else if (size >= SourceInfo.THRESHOLD || loader.isLarge()) {
+                        inputStreamHolder = new InputStreamHolder(() -> repository.open(objectId));
+                    } else {
+                        continue;
+                    }
+                    for (String path : paths) {
+                        arrangeKeys(metaFiles, dataFiles, path, inputStreamHolder, new FileObjectIdStore(path, objectId));
+                    }
+                }
+            } finally {
+                queue.release();
+            }
+        }
+        return new BranchData(metaFiles, dataFiles, null).pair().stream()
+                .filter(Pair::isPresent)
+                .map(p -> Pair.of(p.getRight().getFileName(), new SourceInfo(p.getLeft(), p.getRight(), caches)))
+                .collect(Collectors.toList());
+    }
+
+    public String getTreeVersion(final String refName) throws RefNotFoundException, IOException {
+        final Ref ref = findBranch(Objects.requireNonNull(refName));
+        try (final RevWalk rev = new RevWalk(repository)) {
+            return rev.parseCommit(ref.getObjectId()).getTree().name();
+        }
+    }
+
     public Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> sourceTestBranchExtractor(final String branchName) throws IOException, RefNotFoundException {
         if (!Objects.requireNonNull(branchName).startsWith(REFS_JITSTATIC)) {
             throw new RefNotFoundException(branchName);
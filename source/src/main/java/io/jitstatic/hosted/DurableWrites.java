@@ -0,0 +1,253 @@
+package io.jitstatic.hosted;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.jitstatic.injection.configuration.hosted.HostedFactory.Durability;
+import io.jitstatic.utils.NamingThreadFactory;
+
+/**
+ * Forces what the write paths put in the repository to disk as the configured {@link Durability} asks for. STRICT turns on JGit's own fsync of
+ * objects and refs and syncs packs before a ref may point into them. BATCHED syncs everything written since the last time on a timer and after a
+ * number of commits. RELAXED leaves it to the OS.
+ */
+public class DurableWrites implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DurableWrites.class);
+    // Some file systems only keep modification times to the second
+    private static final long SLACK = 2000;
+    private static final String FSYNC_OBJECT_FILES = "fsyncObjectFiles";
+    private static final String FSYNC_REF_FILES = "fsyncRefFiles";
+    private static final String PACK = "pack";
+    private static final String REFS = "refs";
+    private static final Pattern FAN_OUT = Pattern.compile("[0-9a-f]{2}");
+
+    private final Repository repository;
+    private final Path gitDir;
+    private final Path objectsDir;
+    private final Durability durability;
+    private final int commits;
+    private final AtomicInteger unsynced = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private long lastSync;
+    private long lastPackSync;
+    private int syncs;
+
+    public DurableWrites(final Repository repository, final Durability durability, final long interval, final int commits) {
+        this.repository = Objects.requireNonNull(repository);
+        this.durability = Objects.requireNonNull(durability);
+        this.gitDir = repository.getDirectory().toPath();
+        this.objectsDir = gitDir.resolve("objects");
+        this.commits = commits;
+        this.lastSync = System.currentTimeMillis();
+        this.lastPackSync = lastSync;
+        if (durability == Durability.BATCHED) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("DurableWrites"));
+            this.scheduler.scheduleWithFixedDelay(this::syncQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+        configure();
+    }
+
+    public static DurableWrites relaxed(final Repository repository) {
+        return new DurableWrites(repository, Durability.RELAXED, 1, 1);
+    }
+
+    public Durability getDurability() { return durability; }
+
+    /**
+     * Called after a ref has been moved.
+     */
+    public void onCommit() {
+        if (durability == Durability.STRICT) {
+            // The config is reloaded if the file changes on disk, which drops what was set in memory
+            configure();
+        } else if (durability == Durability.BATCHED && unsynced.incrementAndGet() == commits) {
+            scheduler.execute(this::syncQuietly);
+        }
+    }
+
+    /**
+     * Called when a pack has been written, before any ref points into it. JGit doesn't fsync packs from its pack inserter, nor the directory they
+     * are renamed into.
+     */
+    public void onPack() throws IOException {
+        if (durability == Durability.STRICT) {
+            syncPacks();
+        }
+    }
+
+    /**
+     * Forces the objects, refs and packed-refs that have changed since the last sync. Nothing else in the repository is needed to read what has
+     * been committed, so the rest, like the spill files under jitstatic, is left alone.
+     *
+     * @return the number of files forced
+     */
+    public synchronized int sync() throws IOException {
+        final long since = lastSync - SLACK;
+        lastSync = System.currentTimeMillis();
+        unsynced.set(0);
+        int forced = 0;
+        if (Files.isDirectory(objectsDir)) {
+            try (DirectoryStream<Path> directories = Files.newDirectoryStream(objectsDir, DurableWrites::isObjectDirectory)) {
+                for (Path directory : directories) {
+                    // Objects are only ever added, so a fan-out or pack directory that hasn't changed holds nothing new
+                    forced += forceChanged(directory, since, true);
+                }
+            }
+            forceDirectory(objectsDir, since);
+        }
+        forced += forceChanged(gitDir.resolve(REFS), since, false);
+        final Path packedRefs = gitDir.resolve(Constants.PACKED_REFS);
+        if (Files.isRegularFile(packedRefs) && Files.getLastModifiedTime(packedRefs).toMillis() >= since) {
+            force(packedRefs);
+            forced++;
+        }
+        forceDirectory(gitDir, since);
+        syncs++;
+        return forced;
+    }
+
+    private synchronized void syncPacks() throws IOException {
+        final long since = lastPackSync - SLACK;
+        lastPackSync = System.currentTimeMillis();
+        forceChanged(objectsDir.resolve(PACK), since, true);
+    }
+
+    private static boolean isObjectDirectory(final Path path) {
+        final String name = path.getFileName().toString();
+        return Files.isDirectory(path) && (PACK.equals(name) || FAN_OUT.matcher(name).matches());
+    }
+
+    private static int forceChanged(final Path root, final long since, final boolean skipUnchanged) throws IOException {
+        if (!Files.isDirectory(root) || (skipUnchanged && Files.getLastModifiedTime(root).toMillis() < since)) {
+            return 0;
+        }
+        final int[] forced = { 0 };
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() >= since) {
+                    try {
+                        force(file);
+                        forced[0]++;
+                    } catch (NoSuchFileException ignore) {
+                        // Lock files come and go
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) throws IOException {
+                if (exc instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                if (exc != null && !(exc instanceof NoSuchFileException)) {
+                    throw exc;
+                }
+                forceDirectory(dir, since);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return forced[0];
+    }
+
+    private static void forceDirectory(final Path dir, final long since) {
+        try {
+            if (Files.getLastModifiedTime(dir).toMillis() >= since) {
+                force(dir);
+            }
+        } catch (IOException ignore) {
+            // Not every platform can open a directory to force it
+        }
+    }
+
+    synchronized int getSyncs() { return syncs; }
+
+    private static void force(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to sync {}", gitDir, e);
+        }
+    }
+
+    private void configure() {
+        if (durability != Durability.STRICT) {
+            return;
+        }
+        final StoredConfig config = repository.getConfig();
+        if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, FSYNC_OBJECT_FILES, false)
+                || !config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, FSYNC_REF_FILES, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, FSYNC_OBJECT_FILES, true);
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, FSYNC_REF_FILES, true);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+            syncQuietly();
+        }
+    }
+}
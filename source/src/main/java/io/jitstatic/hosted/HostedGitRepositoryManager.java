@@ -23,15 +23,18 @@ import static io.jitstatic.JitStaticConstants.JITSTATIC_NOWHERE;
  */
 
 import static io.jitstatic.JitStaticConstants.METADATA;
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 import static org.eclipse.jgit.lib.Constants.R_HEADS;
 import static org.eclipse.jgit.lib.Constants.R_TAGS;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -42,6 +45,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -50,9 +54,12 @@ import javax.servlet.http.HttpServletRequest;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.events.RepositoryListener;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -78,11 +85,17 @@ import io.jitstatic.check.SourceExtractor;
 import io.jitstatic.hosted.events.AddRefEvent;
 import io.jitstatic.injection.configuration.JitstaticConfiguration;
 import io.jitstatic.injection.executors.RepoWriter;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
 import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.PathSnapshot;
+import io.jitstatic.source.SmallObjectStreamProvider;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.utils.ErrorReporter;
-import io.jitstatic.utils.Functions.ThrowingSupplier;
+import io.jitstatic.utils.KeyPaths;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.ShouldNeverHappenException;
 import zone.dragon.dropwizard.health.InjectableHealthCheck;
@@ -94,6 +107,8 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
 
     private static final Logger LOG = LoggerFactory.getLogger(HostedGitRepositoryManager.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    // How many of the latest commits are looked through for a delta base, older versions are sent in full
+    static final int MAX_BLOB_HISTORY = 100;
     private final Repository bareRepository;
     private final String endPointName;
     private final SourceExtractor extractor;
@@ -107,16 +122,27 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
     private final UserUpdater userUpdater;
     private final ExecutorService uploadPackExecutor;
     private final RepoInserter repoInserter;
+    private final DurableWrites durableWrites;
+    private final SourceCaches caches;
 
     @Inject
-    public HostedGitRepositoryManager(final JitstaticConfiguration config, final @RepoWriter ExecutorService repoWriter)
+    public HostedGitRepositoryManager(final JitstaticConfiguration config, final @RepoWriter ExecutorService repoWriter, final SourceCaches caches)
             throws CorruptedSourceException, IOException {
-        this(config.getHostedFactory().getBasePath(), config.getHostedFactory().getHostedEndpoint(), config.getHostedFactory().getBranch(), repoWriter);
+        this(config.getHostedFactory().getBasePath(), config.getHostedFactory().getHostedEndpoint(), config.getHostedFactory().getBranch(), repoWriter,
+                ErrorReporter.INSTANCE, repository -> new DurableWrites(repository, config.getHostedFactory().getDurability(), config.getHostedFactory()
+                        .getDurabilityInterval(), config.getHostedFactory().getDurabilityCommits()), caches);
     }
 
     HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter,
-            final ErrorReporter errorReporter)
+            final ErrorReporter errorReporter, final SourceCaches caches)
             throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, errorReporter, DurableWrites::relaxed, caches);
+    }
+
+    HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter,
+            final ErrorReporter errorReporter, final Function<Repository, DurableWrites> durability, final SourceCaches caches)
+            throws CorruptedSourceException, IOException {
+        this.caches = Objects.requireNonNull(caches);
         if (!Files.isDirectory(Objects.requireNonNull(workingDirectory))) {
             if (Files.isRegularFile(workingDirectory)) {
                 throw new IllegalArgumentException(String.format("Path %s is a file", workingDirectory));
@@ -139,9 +165,10 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
             throw new RuntimeException(e);
         }
 
-        this.userExtractor = new UserExtractor(bareRepository);
+        this.userExtractor = new UserExtractor(bareRepository, caches);
 
-        final Pair<List<String>, List<String>> interpretedErrorMessages = CorruptedSourceException.interpreteMessages(checkStoreForErrors(bareRepository));
+        final Pair<List<String>, List<String>> interpretedErrorMessages = CorruptedSourceException
+                .interpreteMessages(checkStoreForErrors(bareRepository, caches));
         final Pair<List<String>, List<String>> interpretedUserErrors = CorruptedSourceException.interpreteMessages(checkForUserErrors(userExtractor));
 
         final List<String> errors = new ArrayList<>(interpretedErrorMessages.getLeft());
@@ -158,21 +185,22 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
         }
         this.uploadPackExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
         checkIfDefaultBranchExist(defaultRef);
-        final RepositoryUpdater repositoryUpdater = new RepositoryUpdater(bareRepository);
-        this.extractor = new SourceExtractor(bareRepository);
+        this.durableWrites = durability.apply(bareRepository);
+        final RepositoryUpdater repositoryUpdater = new RepositoryUpdater(bareRepository, durableWrites);
+        this.extractor = new SourceExtractor(bareRepository, caches);
         this.updater = new SourceUpdater(repositoryUpdater);
         this.refLockHolderManager = new RefLockHolderManager();
-        this.repoInserter = new RepoInserter(bareRepository);
-        this.receivePackFactory = new JitStaticReceivePackFactory(errorReporter, defaultRef, refLockHolderManager, userExtractor, repoInserter, repoWriter);
+        this.repoInserter = new RepoInserter(bareRepository, durableWrites);
+        this.receivePackFactory = new JitStaticReceivePackFactory(errorReporter, defaultRef, refLockHolderManager, userExtractor, repoInserter, repoWriter, caches);
         this.uploadPackFactory = new JitStaticUploadPackFactory(uploadPackExecutor, refLockHolderManager, defaultRef);
         this.defaultRef = defaultRef;
         this.errorReporter = errorReporter;
         this.userUpdater = new UserUpdater(repositoryUpdater);
     }
 
-    public HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter)
-            throws CorruptedSourceException, IOException {
-        this(workingDirectory, endPointName, defaultRef, repoWriter, ErrorReporter.INSTANCE);
+    public HostedGitRepositoryManager(final Path workingDirectory, final String endPointName, final String defaultRef, ExecutorService repoWriter,
+            final SourceCaches caches) throws CorruptedSourceException, IOException {
+        this(workingDirectory, endPointName, defaultRef, repoWriter, ErrorReporter.INSTANCE, caches);
     }
 
     private static List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> checkForUserErrors(UserExtractor userExtractor) {
@@ -188,11 +216,12 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
         if (Objects.requireNonNull(defaultRef, "defaultBranch cannot be null").isEmpty()) {
             throw new IllegalArgumentException("defaultBranch cannot be empty");
         }
-        new SourceChecker(bareRepository).checkIfDefaultBranchExists(defaultRef);
+        new SourceChecker(bareRepository, caches).checkIfDefaultBranchExists(defaultRef);
     }
 
-    private static List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> checkStoreForErrors(final Repository bareRepository) {
-        return new SourceChecker(bareRepository).check();
+    private static List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> checkStoreForErrors(final Repository bareRepository,
+            final SourceCaches caches) {
+        return new SourceChecker(bareRepository, caches).check();
     }
 
     private static Repository setUpBareRepository(final Path repositoryBase) throws IOException, GitAPIException {
@@ -222,6 +251,7 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
         } catch (InterruptedException ignore) {
             Thread.currentThread().interrupt();
         }
+        this.durableWrites.close();
         try {
             this.bareRepository.close();
         } catch (Exception ignore) {
@@ -280,6 +310,28 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
         throw new RefNotFoundException(ref);
     }
 
+    @Override
+    public List<Pair<String, SourceInfo>> getAllSourceInfo(String ref, final long maxBytes) throws RefNotFoundException {
+        ref = checkRef(ref);
+        if (!ref.startsWith(R_HEADS) && !ref.startsWith(R_TAGS)) {
+            throw new RefNotFoundException(ref);
+        }
+        try {
+            return extractor.openAll(ref, maxBytes);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getTreeVersion(final String ref) throws RefNotFoundException {
+        try {
+            return extractor.getTreeVersion(checkRef(ref));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private String checkKeyFormat(String key) {
         if (key.isEmpty()) {
             throw new IllegalArgumentException("Key is empty");
@@ -293,7 +345,7 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
     }
 
     @Override
-    public Pair<String, ThrowingSupplier<ObjectLoader, IOException>> updateKey(final String key, String ref, final ObjectStreamProvider data,
+    public WrittenKey updateKey(final String key, String ref, final ObjectStreamProvider data,
             final CommitMetaData commitMetaData) {
         Objects.requireNonNull(data);
         Objects.requireNonNull(key);
@@ -313,7 +365,7 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
     }
 
     @Override
-    public Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> addKey(final String key, String ref, final ObjectStreamProvider data,
+    public WrittenKey addKey(final String key, String ref, final ObjectStreamProvider data,
             final MetaData metaData, final CommitMetaData commitMetaData) {
         Objects.requireNonNull(data);
         Objects.requireNonNull(key);
@@ -376,6 +428,243 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
         }
     }
 
+    @Override
+    public List<WrittenKey> commit(final List<KeyChange> changes, final String ref, final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(changes);
+        Objects.requireNonNull(commitMetaData);
+        final String finalRef = checkRef(ref);
+        checkIfTag(finalRef);
+        final List<Pair<String, ObjectStreamProvider>> files = new ArrayList<>();
+        for (KeyChange change : changes) {
+            final String key = change.getKey();
+            switch (change.getType()) {
+            case ADD:
+                files.add(Pair.of(key, change.getData()));
+                files.add(Pair.of(key + METADATA, new SmallObjectStreamProvider(convertMetaData(change.getMetaData()))));
+                break;
+            case UPDATE:
+                files.add(Pair.of(key, change.getData()));
+                break;
+            case METADATA:
+                files.add(Pair.of(key + METADATA, new SmallObjectStreamProvider(convertMetaData(change.getMetaData()))));
+                break;
+            case DELETE:
+                files.add(Pair.of(key, null));
+                if (hasKeyMetaData(key, finalRef)) {
+                    files.add(Pair.of(key + METADATA, null));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(change.toString());
+            }
+        }
+        try {
+            return updater.commit(changes, files, commitMetaData, finalRef);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public KeyImport newImport() {
+        return new PackedImport();
+    }
+
+    @Override
+    public String importKeys(final KeyImport keys, final String ref, final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(commitMetaData);
+        final String finalRef = checkRef(ref);
+        checkIfTag(finalRef);
+        if (!(keys instanceof PackedImport) || !((PackedImport) keys).finished) {
+            throw new IllegalArgumentException("The import isn't finished");
+        }
+        try {
+            return updater.importKeys(((PackedImport) keys).files, commitMetaData, finalRef);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the data and metadata of every key into one pack as the key is added
+     */
+    private final class PackedImport implements KeyImport {
+
+        private final ObjectInserter objectInserter = updater.newPackInserter();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Pair<String, ObjectId>> files = new ArrayList<>();
+        private boolean finished;
+
+        @Override
+        public void add(final String key, final ObjectStreamProvider data, final MetaData metaData) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The import is finished");
+            }
+            final ObjectId blobId;
+            try (InputStream is = data.getInputStream()) {
+                blobId = objectInserter.insert(OBJ_BLOB, data.getSize(), is);
+            }
+            keys.add(key);
+            files.add(Pair.of(key, blobId));
+            files.add(Pair.of(key + METADATA, objectInserter.insert(OBJ_BLOB, convertMetaData(metaData))));
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!finished) {
+                updater.flushPack(objectInserter);
+                finished = true;
+            }
+        }
+
+        @Override
+        public List<String> getKeys() { return Collections.unmodifiableList(keys); }
+
+        @Override
+        public void close() {
+            objectInserter.close();
+        }
+    }
+
+    @Override
+    @Nullable
+    public PathSnapshot readPath(final String path, final String ref) {
+        final String finalRef = checkRef(ref);
+        try {
+            if (path.endsWith("/")) {
+                final String directory = toDirectory(path);
+                final String version = updater.findVersion(directory, true, finalRef);
+                if (version == null) {
+                    return null;
+                }
+                final int offset = directory.isEmpty() ? 0 : directory.length() + 1;
+                return new PathSnapshot(path, version, updater.listFiles(directory, finalRef).stream()
+                        .filter(file -> isCopyable(file.getLeft()))
+                        .map(file -> Pair.of(file.getLeft().substring(offset), file.getRight()))
+                        .collect(Collectors.toList()));
+            }
+            final String version = updater.findVersion(path, false, finalRef);
+            if (version == null) {
+                return null;
+            }
+            final List<Pair<String, String>> files = new ArrayList<>(2);
+            files.add(Pair.of("", version));
+            final String metaDataVersion = updater.findVersion(path + METADATA, false, finalRef);
+            if (metaDataVersion != null) {
+                files.add(Pair.of(METADATA, metaDataVersion));
+                return new PathSnapshot(path, version, files);
+            }
+            final int slash = path.lastIndexOf('/');
+            return new PathSnapshot(path, version, files, updater.findVersion(path.substring(0, slash + 1) + METADATA, false, finalRef));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] readBlob(final String key, final String ref, final String blobId, final int maxBytes) {
+        Objects.requireNonNull(key);
+        if (!ObjectId.isId(Objects.requireNonNull(blobId))) {
+            return null;
+        }
+        try {
+            if (!updater.wasVersionOf(key, blobId, checkRef(ref), MAX_BLOB_HISTORY)) {
+                return null;
+            }
+            final ObjectLoader loader = bareRepository.open(ObjectId.fromString(blobId), OBJ_BLOB);
+            return loader.getSize() > maxBytes ? null : loader.getBytes(maxBytes);
+        } catch (final MissingObjectException | IncorrectObjectTypeException e) {
+            return null;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Pair<String, String>> copy(final PathSnapshot from, final String to, final String ref, final boolean move,
+            final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(commitMetaData);
+        final String finalRef = checkRef(ref);
+        checkIfTag(finalRef);
+        final String fromPrefix = from.isDirectory() ? toDirectory(from.getPath()) : from.getPath();
+        final String toPrefix = from.isDirectory() ? toDirectory(to) : to;
+        final List<Pair<String, String>> written = new ArrayList<>(from.getFiles().size());
+        final List<Pair<String, String>> blobs = new ArrayList<>(from.getFiles().size() * 2);
+        for (Pair<String, String> file : from.getFiles()) {
+            final Pair<String, String> target = Pair.of(join(toPrefix, file.getLeft(), from.isDirectory()), file.getRight());
+            written.add(target);
+            blobs.add(target);
+            if (move) {
+                blobs.add(Pair.of(join(fromPrefix, file.getLeft(), from.isDirectory()), null));
+            }
+        }
+        if (from.getInheritedMetaData() != null) {
+            // The key would inherit whatever metadata the target directory has, so it keeps its own
+            final Pair<String, String> metaData = Pair.of(to + METADATA, from.getInheritedMetaData());
+            written.add(metaData);
+            blobs.add(metaData);
+        }
+        try {
+            updater.copyBlobs(blobs, commitMetaData, finalRef);
+            return written;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String deletePath(final PathSnapshot snapshot, final String ref, final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(snapshot);
+        Objects.requireNonNull(commitMetaData);
+        final String finalRef = checkRef(ref);
+        checkIfTag(finalRef);
+        try {
+            return updater.deleteFiles(snapshot.getFilePaths(), commitMetaData, finalRef);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String rewriteMetaData(final PathSnapshot snapshot, final MetaData metaData, final String ref, final CommitMetaData commitMetaData) {
+        Objects.requireNonNull(snapshot);
+        Objects.requireNonNull(metaData);
+        Objects.requireNonNull(commitMetaData);
+        final String finalRef = checkRef(ref);
+        checkIfTag(finalRef);
+        try {
+            return updater.writeToFiles(snapshot.getKeys().stream().map(key -> key + METADATA).collect(Collectors.toList()), convertMetaData(metaData),
+                    commitMetaData, finalRef);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String toDirectory(final String path) {
+        return "/".equals(path) ? "" : path.substring(0, path.length() - 1);
+    }
+
+    private static String join(final String prefix, final String relative, final boolean directory) {
+        return directory && !prefix.isEmpty() ? prefix + "/" + relative : prefix + relative;
+    }
+
+    private static boolean isCopyable(final String file) {
+        // Master and key metadata files belong to what is copied, other hidden files such as users don't
+        final String path = file.endsWith(METADATA) ? file.substring(0, file.length() - METADATA.length()) : file;
+        return !KeyPaths.hasDotSegment(path);
+    }
+
+    private boolean hasKeyMetaData(final String key, final String ref) {
+        try {
+            final SourceInfo sourceInfo = getSourceInfo(key, ref);
+            return sourceInfo != null && sourceInfo.hasKeyMetaData();
+        } catch (final RefNotFoundException e) {
+            throw new ShouldNeverHappenException("commit key:" + key + " ref:" + ref, e);
+        }
+    }
+
     @Override
     public void addRefHolderFactory(final Function<String, RefLockHolder> factory) {
         this.refLockHolderManager.setRefHolderFactory(factory);
@@ -434,6 +723,15 @@ public class HostedGitRepositoryManager extends InjectableHealthCheck implements
                 .map(Ref::getName).forEach(ref -> bareRepository.fireEvent(new AddRefEvent(ref)));
     }
 
+    @Override
+    public boolean refExists(final String ref) {
+        try {
+            return bareRepository.exactRef(Objects.requireNonNull(ref)) != null;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void write(final DistributedData data, final String ref) throws IOException {
 //        repoInserter.parse(new ByteArrayInputStream(data.getData()));
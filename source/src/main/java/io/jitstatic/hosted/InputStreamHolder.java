@@ -30,19 +30,30 @@ import io.jitstatic.utils.Functions.ThrowingSupplier;
 
 public class InputStreamHolder {
     private final ThrowingSupplier<ObjectLoader, IOException> loaderFactory;
+    private final ThrowingSupplier<ObjectLoader, IOException> reopener;
     private final IOException e;
 
     public InputStreamHolder(final ThrowingSupplier<ObjectLoader, IOException> loaderFactory) {
-        this(loaderFactory, null);
+        this(loaderFactory, loaderFactory, null);
     }
 
-    private InputStreamHolder(final ThrowingSupplier<ObjectLoader, IOException> loaderFactory, final IOException e) {
+    /**
+     * @param loaderFactory gives the blob, it may hold bytes that have already been read
+     * @param reopener      opens the blob from the repository again without holding on to anything read
+     */
+    public InputStreamHolder(final ThrowingSupplier<ObjectLoader, IOException> loaderFactory, final ThrowingSupplier<ObjectLoader, IOException> reopener) {
+        this(loaderFactory, reopener, null);
+    }
+
+    private InputStreamHolder(final ThrowingSupplier<ObjectLoader, IOException> loaderFactory, final ThrowingSupplier<ObjectLoader, IOException> reopener,
+            final IOException e) {
         this.loaderFactory = loaderFactory;
+        this.reopener = reopener;
         this.e = e;
     }
 
     public InputStreamHolder(final IOException e) {
-        this(null, e);
+        this(null, null, e);
     }
 
     public boolean isPresent() {
@@ -74,4 +85,15 @@ public class InputStreamHolder {
         return this::inputStream;
     }
 
+    /**
+     * Opens the blob from the repository each time, so it can be kept for reloading the blob without keeping this holder alive
+     */
+    public ThrowingSupplier<InputStream, IOException> getReopeningInputStreamProvider() {
+        if (!isPresent()) {
+            throw new NoSuchElementException();
+        }
+        final ThrowingSupplier<ObjectLoader, IOException> opener = reopener;
+        return () -> opener.get().openStream();
+    }
+
 }
\ No newline at end of file
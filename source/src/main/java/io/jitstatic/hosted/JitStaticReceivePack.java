@@ -101,6 +101,14 @@ public class JitStaticReceivePack extends ReceivePack {
         if (Objects.requireNonNull(originalCommands).isEmpty()) {
             return;
         }
+        try {
+            repoInserter.received();
+        } catch (final IOException e) {
+            final String msg = "Error while syncing received objects";
+            setFault(new RepositoryException(msg, e));
+            originalCommands.forEach(rc -> rc.setResult(Result.REJECTED_OTHER_REASON, msg));
+            return;
+        }
         final List<ReceiveCommand> commandsToBeBatched = new ArrayList<>(originalCommands.size());
         final List<Pair<ReceiveCommand, ReceiveCommand>> indexPairs = createTempBranchesAndIndex(originalCommands, commandsToBeBatched);
         try {
@@ -333,6 +341,7 @@ public class JitStaticReceivePack extends ReceivePack {
                 checkResult(refName, updateRef.update());
                 orig.setResult(test.getResult(), test.getMessage());
             }
+            repoInserter.committed();
             return null;
         } catch (final CommandIsStale e11) {
             orig.setResult(Result.REJECTED_NONFASTFORWARD, e11.getLocalizedMessage());
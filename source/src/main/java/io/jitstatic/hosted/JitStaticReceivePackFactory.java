@@ -37,6 +37,7 @@ import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.check.SourceChecker;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.utils.ErrorReporter;
 
 public class JitStaticReceivePackFactory implements ReceivePackFactory<HttpServletRequest> {
@@ -47,15 +48,17 @@ public class JitStaticReceivePackFactory implements ReceivePackFactory<HttpServl
     private final UserExtractor userExtractor;
     private final RepoInserter inserter;
     private final ExecutorService repoWriter;
+    private final SourceCaches caches;
 
     public JitStaticReceivePackFactory(final ErrorReporter reporter, final String defaultRef, final RefLockHolderManager bus, final UserExtractor userExtractor,
-            final RepoInserter inserter, final ExecutorService repoWriter) {
+            final RepoInserter inserter, final ExecutorService repoWriter, final SourceCaches caches) {
         this.defaultRef = Objects.requireNonNull(defaultRef);
         this.errorReporter = Objects.requireNonNull(reporter);
         this.bus = Objects.requireNonNull(bus);
         this.inserter = Objects.requireNonNull(inserter);
         this.userExtractor = Objects.requireNonNull(userExtractor);
         this.repoWriter = repoWriter;
+        this.caches = Objects.requireNonNull(caches);
     }
 
     static class ServiceConfig {
@@ -92,7 +95,7 @@ public class JitStaticReceivePackFactory implements ReceivePackFactory<HttpServl
     protected ReceivePack createFor(final HttpServletRequest req,
             final Repository db,
             final String user) {
-        final ReceivePack rp = new JitStaticReceivePack(db, defaultRef, errorReporter, bus, new SourceChecker(db), userExtractor, req
+        final ReceivePack rp = new JitStaticReceivePack(db, defaultRef, errorReporter, bus, new SourceChecker(db, caches), userExtractor, req
                 .isUserInRole(JitStaticConstants.GIT_FORCEPUSH), inserter, repoWriter);
         rp.setRefLogIdent(toPersonIdent(req, user));
         rp.setAtomic(true);
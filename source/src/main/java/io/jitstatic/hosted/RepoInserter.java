@@ -48,9 +48,15 @@ public class RepoInserter {
 
     private final Repository repository;
     private final PackConfig pc;
+    private final DurableWrites durableWrites;
 
     public RepoInserter(final Repository repository) {
+        this(repository, DurableWrites.relaxed(repository));
+    }
+
+    public RepoInserter(final Repository repository, final DurableWrites durableWrites) {
         this.repository = repository;
+        this.durableWrites = durableWrites;
         pc = new PackConfig(repository);
         ForkJoinPool commonPool = ForkJoinPool.commonPool();
         pc.setExecutor(commonPool);
@@ -65,6 +71,7 @@ public class RepoInserter {
             packParser.setNeedBaseObjectIds(true);
             packParser.parse(NullProgressMonitor.INSTANCE);
             inserter.flush(); // This is a NOOP but declared for consistency
+            durableWrites.onPack();
             return packParser;
         }
     }
@@ -90,7 +97,23 @@ public class RepoInserter {
         newUpdate.setExpectedOldObjectId(last);
         newUpdate.setNewObjectId(tip);
         newUpdate.setForceUpdate(true);
-        return newUpdate.update();
+        final Result result = newUpdate.update();
+        durableWrites.onCommit();
+        return result;
+    }
+
+    /**
+     * Called when a pushed pack has been received, before any ref is moved to it.
+     */
+    public void received() throws IOException {
+        durableWrites.onPack();
+    }
+
+    /**
+     * Called when a pushed ref has been moved.
+     */
+    public void committed() {
+        durableWrites.onCommit();
     }
 
     private PackConfig getPackConfig() {
@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -66,6 +67,7 @@ import io.jitstatic.StorageParseException;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.check.FileObjectIdStore;
 import io.jitstatic.check.RepositoryDataError;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.utils.Functions;
 import io.jitstatic.utils.Pair;
 
@@ -76,9 +78,11 @@ public class UserExtractor {
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
     private final Repository repository;
+    private final SourceCaches caches;
 
-    UserExtractor(final Repository repository) {
+    UserExtractor(final Repository repository, final SourceCaches caches) {
         this.repository = repository;
+        this.caches = Objects.requireNonNull(caches);
     }
 
     public Pair<String, UserData> extractUserFromRef(final String userKey, final String ref) throws IOException, RefNotFoundException {
@@ -98,9 +102,7 @@ public class UserExtractor {
                     final FileMode mode = treeWalker.getFileMode();
                     if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
                         final ObjectId objectId = treeWalker.getObjectId(0);
-                        try (InputStream is = repository.open(objectId).openStream()) {
-                            return Pair.of(objectId.getName(), MAPPER.readValue(is, UserData.class));
-                        }
+                        return Pair.of(objectId.getName(), readUserData(objectId));
                     }
                 }
             } finally {
@@ -134,12 +136,9 @@ public class UserExtractor {
                                 .map(p -> {
                                     final InputStreamHolder inputStream = p.getRight();
                                     if (inputStream.isPresent()) {
-                                        try (InputStream is = inputStream.inputStream()) {
-                                            final UserData readValue = MAPPER.readValue(is, UserData.class);
-                                            final Set<ConstraintViolation<UserData>> validationErrors = validator.validate(readValue);
-                                            if (!validationErrors.isEmpty()) {
-                                                return Pair.of(p.getLeft(), Either.<UserData, Exception>right(new StorageParseException(validationErrors)));
-                                            }
+                                        try {
+                                            final UserData readValue = caches.getUsers().get(p.getLeft().getObjectId().name(),
+                                                    () -> parseAndValidate(inputStream));
                                             return Pair.of(p.getLeft(), Either.<UserData, Exception>left(readValue));
                                         } catch (IOException e1) {
                                             return Pair.of(p.getLeft(), Either.<UserData, Exception>right(e1));
@@ -154,6 +153,28 @@ public class UserExtractor {
                 .collect(Collectors.toList());
     }
 
+    private UserData readUserData(final ObjectId objectId) throws IOException {
+        try {
+            return caches.getUsers().get(objectId.name(), () -> parseAndValidate(new InputStreamHolder(() -> repository.open(objectId))));
+        } catch (final StorageParseException e) {
+            // Reading doesn't validate
+            try (InputStream is = repository.open(objectId).openStream()) {
+                return MAPPER.readValue(is, UserData.class);
+            }
+        }
+    }
+
+    private static UserData parseAndValidate(final InputStreamHolder inputStream) throws IOException {
+        try (InputStream is = inputStream.inputStream()) {
+            final UserData readValue = MAPPER.readValue(is, UserData.class);
+            final Set<ConstraintViolation<UserData>> validationErrors = validator.validate(readValue);
+            if (!validationErrors.isEmpty()) {
+                throw new StorageParseException(validationErrors);
+            }
+            return readValue;
+        }
+    }
+
     public List<Pair<Set<Ref>, List<Pair<String, List<Pair<FileObjectIdStore, Exception>>>>>> validateAll() {
         return validate(repository.getAllRefsByPeeledObjectId());
     }
@@ -210,8 +231,10 @@ public class UserExtractor {
                 if (value.isLeft()) {
                     final Set<Role> userRoles = value.getLeft().getRoles();
                     if (!ROLES.containsAll(userRoles)) {
-                        userRoles.retainAll(ROLES);
-                        return Pair.of(fp.getLeft(), Either.right(new UnknownRolesException(fp.getLeft().getFileName(), userRoles)));
+                        // The parsed user is shared so work on a copy
+                        final Set<Role> roles = new HashSet<>(userRoles);
+                        roles.retainAll(ROLES);
+                        return Pair.of(fp.getLeft(), Either.right(new UnknownRolesException(fp.getLeft().getFileName(), roles)));
                     }
                 }
                 return fp;
@@ -0,0 +1,223 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Content addressed cache of small blobs. Blobs are keyed by their git object id so every ref holding the same content shares one byte array. Entries are
+ * weakly held and disappear when no cached key uses them anymore. The shared arrays must never be modified.
+ * <p>
+ * When an {@link OffHeapStore} is configured the blobs are kept there instead and the providers handed out read from it directly. Large blobs are
+ * served from the {@link SpillCache} if there is one.
+ */
+public class BlobCache {
+
+    private final Map<String, BlobReference> blobs = new ConcurrentHashMap<>();
+    private final ReferenceQueue<byte[]> queue = new ReferenceQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private volatile OffHeapStore offHeapStore;
+    private volatile SpillCache spillCache;
+
+    BlobCache() {
+    }
+
+    public OffHeapStore getOffHeapStore() { return offHeapStore; }
+
+    public void setOffHeapStore(final OffHeapStore offHeapStore) { this.offHeapStore = offHeapStore; }
+
+    public SpillCache getSpillCache() { return spillCache; }
+
+    public void setSpillCache(final SpillCache spillCache) { this.spillCache = spillCache; }
+
+    /**
+     * Returns a provider for a large blob, read from the spill cache if there's one or from the repository otherwise
+     */
+    public ObjectStreamProvider largeProvider(final String blobId, final ThrowingSupplier<InputStream, IOException> source, final long size) {
+        final SpillCache cache = spillCache;
+        if (cache != null) {
+            return new SpilledObjectStreamProvider(cache, blobId, size, source);
+        }
+        return new LargeObjectStreamProvider(source, size);
+    }
+
+    /**
+     * Returns a provider for a small blob, backed by the off heap store if there's one or by the shared heap copy otherwise
+     *
+     * @param loader   reads the blob if it isn't cached
+     * @param reloader reads the blob again if it's evicted from the off heap store, it's kept with the provider so it must not hold on to the blob
+     */
+    public ObjectStreamProvider provider(final String blobId, final ThrowingSupplier<byte[], IOException> loader,
+            final ThrowingSupplier<byte[], IOException> reloader) throws IOException {
+        final OffHeapStore store = offHeapStore;
+        if (store != null) {
+            ByteBuffer stored = store.get(blobId);
+            if (stored != null) {
+                hits.increment();
+            } else {
+                final byte[] data = loader.get();
+                misses.increment();
+                stored = store.put(blobId, data);
+                if (stored == null) {
+                    return new SmallObjectStreamProvider(intern(blobId, () -> data));
+                }
+            }
+            return new OffHeapObjectStreamProvider(store, blobId, stored.remaining(), reloader);
+        }
+        return new SmallObjectStreamProvider(intern(blobId, loader));
+    }
+
+    public byte[] intern(final String blobId, final ThrowingSupplier<byte[], IOException> loader) throws IOException {
+        Objects.requireNonNull(blobId);
+        purge();
+        final BlobReference existing = blobs.get(blobId);
+        if (existing != null) {
+            final byte[] cached = existing.get();
+            if (cached != null) {
+                return hit(existing, cached);
+            }
+        }
+        final byte[] loaded = Objects.requireNonNull(loader.get());
+        final BlobReference created = new BlobReference(blobId, loaded, queue);
+        final BlobReference winner = blobs.compute(blobId, (id, old) -> {
+            if (old != null && old.get() != null) {
+                return old;
+            }
+            created.counted = true;
+            return created;
+        });
+        if (winner == created) {
+            misses.increment();
+            bytes.addAndGet(loaded.length);
+            return loaded;
+        }
+        final byte[] cached = winner.get();
+        return cached == null ? loaded : hit(winner, cached);
+    }
+
+    /**
+     * Returns a provider backed by the shared copy of the blob if it's small enough to be cached
+     */
+    public ObjectStreamProvider share(final String blobId, final ObjectStreamProvider provider, final int threshold) throws IOException {
+        return share(blobId, provider, threshold, provider::asByteArray);
+    }
+
+    /**
+     * Returns a provider backed by the shared copy of the blob if it's small enough to be cached. The reloader is used to read the blob again if it's
+     * evicted from the off heap store.
+     */
+    public ObjectStreamProvider share(final String blobId, final ObjectStreamProvider provider, final int threshold,
+            final ThrowingSupplier<byte[], IOException> reloader) throws IOException {
+        if (provider.getSize() >= threshold) {
+            final SpillCache cache = spillCache;
+            return cache == null ? provider : new SpilledObjectStreamProvider(cache, blobId, provider.getSize(), provider::getInputStream);
+        }
+        final OffHeapStore store = offHeapStore;
+        if (store != null && (store.contains(blobId) || store.put(blobId, provider.asByteArray()) != null)) {
+            return new OffHeapObjectStreamProvider(store, blobId, provider.getSize(), reloader);
+        }
+        return new SmallObjectStreamProvider(intern(blobId, provider::asByteArray));
+    }
+
+    public boolean contains(final String blobId) {
+        final OffHeapStore store = offHeapStore;
+        if (store != null && store.contains(blobId)) {
+            return true;
+        }
+        final BlobReference reference = blobs.get(blobId);
+        return reference != null && reference.get() != null;
+    }
+
+    private byte[] hit(final BlobReference reference, final byte[] cached) {
+        hits.increment();
+        reference.saved.addAndGet(cached.length);
+        savedBytes.addAndGet(cached.length);
+        return cached;
+    }
+
+    private void purge() {
+        BlobReference reference;
+        while ((reference = (BlobReference) queue.poll()) != null) {
+            blobs.remove(reference.blobId, reference);
+            if (reference.counted) {
+                bytes.addAndGet(-reference.size);
+                savedBytes.addAndGet(-reference.saved.get());
+            }
+        }
+    }
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public int getEntries() {
+        purge();
+        return blobs.size();
+    }
+
+    /**
+     * @return bytes held by the cache, counting every shared blob once
+     */
+    public long getBytes() {
+        purge();
+        return bytes.get();
+    }
+
+    /**
+     * @return bytes which would have been held if the blobs hadn't been shared
+     */
+    public long getSavedBytes() {
+        purge();
+        return savedBytes.get();
+    }
+
+    public double getDedupRatio() {
+        final long held = getBytes();
+        return held == 0 ? 1.0 : (double) (held + getSavedBytes()) / held;
+    }
+
+    private static class BlobReference extends WeakReference<byte[]> {
+        private final String blobId;
+        private final int size;
+        private final AtomicLong saved = new AtomicLong();
+        private volatile boolean counted;
+
+        BlobReference(final String blobId, final byte[] blob, final ReferenceQueue<byte[]> queue) {
+            super(blob, queue);
+            this.blobId = blobId;
+            this.size = blob.length;
+        }
+    }
+}
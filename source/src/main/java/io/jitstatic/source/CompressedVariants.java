@@ -0,0 +1,116 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed representations of in memory blobs, computed the first time they're asked for and kept by blob id and encoding. The cache is bounded by the
+ * size of the compressed data plus a fixed cost per entry and evicts the least recently used variants. Blobs smaller than the minimum size, or which
+ * don't get smaller when compressed, are served as they are.
+ */
+public class CompressedVariants {
+
+    public static final String GZIP = "gzip";
+    // The key and map entry, so that remembering a blob as not smaller isn't free
+    static final int ENTRY_OVERHEAD = 128;
+    private static final byte[] NOT_SMALLER = new byte[0];
+
+    private final long maxBytes;
+    private final int minSize;
+    private final Map<String, byte[]> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public CompressedVariants(final long maxBytes, final int minSize) {
+        this.maxBytes = maxBytes;
+        this.minSize = minSize;
+    }
+
+    public boolean isCompressible(final long size) {
+        return size >= minSize;
+    }
+
+    /**
+     * @return the compressed content or null if the content shouldn't be compressed
+     */
+    public ByteBuffer get(final String blobId, final String encoding, final ByteBuffer content) throws IOException {
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+        if (!isCompressible(content.remaining())) {
+            return null;
+        }
+        final String key = Objects.requireNonNull(blobId) + '/' + encoding;
+        synchronized (this) {
+            final byte[] variant = variants.get(key);
+            if (variant != null) {
+                return variant == NOT_SMALLER ? null : ByteBuffer.wrap(variant);
+            }
+        }
+        final byte[] compressed = gzip(content);
+        final byte[] variant = compressed.length < content.remaining() ? compressed : NOT_SMALLER;
+        synchronized (this) {
+            final byte[] old = variants.put(key, variant);
+            bytes += weigh(variant) - (old == null ? 0 : weigh(old));
+            evict();
+        }
+        return variant == NOT_SMALLER ? null : ByteBuffer.wrap(variant);
+    }
+
+    /**
+     * @return true if the variant, or that it isn't smaller, is already known so get won't compress
+     */
+    public synchronized boolean contains(final String blobId, final String encoding) {
+        return variants.containsKey(blobId + '/' + encoding);
+    }
+
+    private void evict() {
+        final Iterator<byte[]> iterator = variants.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= weigh(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long weigh(final byte[] variant) {
+        return ENTRY_OVERHEAD + variant.length;
+    }
+
+    private static byte[] gzip(final ByteBuffer content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(content.remaining() / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            Channels.newChannel(gzip).write(content.duplicate());
+        }
+        return out.toByteArray();
+    }
+
+    public synchronized long getBytes() { return bytes; }
+
+    public synchronized int getEntries() { return variants.size(); }
+}
@@ -0,0 +1,92 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import io.jitstatic.MetaData;
+
+/**
+ * One change in a commit spanning several keys.
+ */
+public final class KeyChange {
+
+    public enum Type {
+        ADD, UPDATE, DELETE, METADATA
+    }
+
+    private final Type type;
+    private final String key;
+    private final ObjectStreamProvider data;
+    private final MetaData metaData;
+    private final String version;
+
+    private KeyChange(final Type type, final String key, @Nullable final ObjectStreamProvider data, @Nullable final MetaData metaData,
+            @Nullable final String version) {
+        this.type = type;
+        this.key = Objects.requireNonNull(key);
+        this.data = data;
+        this.metaData = metaData;
+        this.version = version;
+    }
+
+    public static KeyChange add(final String key, final ObjectStreamProvider data, final MetaData metaData) {
+        return new KeyChange(Type.ADD, key, Objects.requireNonNull(data), Objects.requireNonNull(metaData), null);
+    }
+
+    public static KeyChange update(final String key, final ObjectStreamProvider data, final String version) {
+        return new KeyChange(Type.UPDATE, key, Objects.requireNonNull(data), null, Objects.requireNonNull(version));
+    }
+
+    /**
+     * @param version if not null the key's current version has to match it
+     */
+    public static KeyChange delete(final String key, @Nullable final String version) {
+        return new KeyChange(Type.DELETE, key, null, null, version);
+    }
+
+    public static KeyChange updateMetaData(final String key, final MetaData metaData, final String metaDataVersion) {
+        return new KeyChange(Type.METADATA, key, null, Objects.requireNonNull(metaData), Objects.requireNonNull(metaDataVersion));
+    }
+
+    public Type getType() { return type; }
+
+    public String getKey() { return key; }
+
+    @Nullable
+    public ObjectStreamProvider getData() { return data; }
+
+    @Nullable
+    public MetaData getMetaData() { return metaData; }
+
+    /**
+     * @return the expected current version of the key, or of its metadata for {@link Type#METADATA}
+     */
+    @Nullable
+    public String getVersion() { return version; }
+
+    @Override
+    public String toString() {
+        return type + " " + key;
+    }
+}
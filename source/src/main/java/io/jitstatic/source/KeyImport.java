@@ -0,0 +1,45 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import io.jitstatic.MetaData;
+
+/**
+ * The keys of an import. Each key's data and metadata are written to the repository as the key is added, so only their paths and blob ids are
+ * held until the keys are committed. An import that is closed without being committed leaves nothing that a ref points at.
+ */
+public interface KeyImport extends AutoCloseable {
+
+    void add(String key, ObjectStreamProvider data, MetaData metaData) throws IOException;
+
+    /**
+     * Makes the written blobs readable. No key can be added afterwards.
+     */
+    void finish() throws IOException;
+
+    List<String> getKeys();
+
+    @Override
+    void close();
+}
@@ -22,7 +22,6 @@ package io.jitstatic.source;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -31,6 +30,7 @@ import io.jitstatic.utils.Functions.ThrowingSupplier;
 @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "This is a false positive in Java 11, should be removed")
 public class LargeObjectStreamProvider implements ObjectStreamProvider {
 
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
     private final ThrowingSupplier<InputStream, IOException> inputStreamProvider;
     private final long size;
 
@@ -50,14 +50,12 @@ public class LargeObjectStreamProvider implements ObjectStreamProvider {
     }
 
     @Override
-    // TODO Check this
     public byte[] asByteArray() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("Object of size %d is too large to be read into memory", size));
+        }
         try (InputStream initialStream = getInputStream()) {
-            ByteBuffer byteBuffer = ByteBuffer.allocate((int) getSize());
-            while (initialStream.available() > 0) {
-                byteBuffer.put((byte) initialStream.read());
-            }
-            return byteBuffer.array();
+            return initialStream.readNBytes((int) size);
         }
     }
 }
@@ -24,6 +24,8 @@ import java.io.ByteArrayInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.eclipse.jgit.lib.ObjectLoader;
@@ -32,12 +34,30 @@ import io.jitstatic.utils.Functions.ThrowingSupplier;
 
 public interface ObjectStreamProvider {
 
+    int COPY_CHUNK_SIZE = 65536;
+
     InputStream getInputStream() throws IOException;
 
     long getSize();
     
     byte[] asByteArray() throws IOException;
 
+    /**
+     * Heap buffers are backed by the cached array so the content can be written without copying it, they must not be modified.
+     * 
+     * @return a view of the content if it's already held in memory, otherwise null
+     */
+    default ByteBuffer asByteBuffer() throws IOException {
+        return null;
+    }
+
+    /**
+     * @return true if {@link #asByteBuffer()} answers without reading the repository
+     */
+    default boolean isInMemory() {
+        return false;
+    }
+
     public default ObjectStreamProvider getObjectStreamProvider(final ThrowingSupplier<ObjectLoader, IOException> objectLoaderFactory, final int threshold) {
         final long size = getSize();
         if (size < threshold) {
@@ -64,9 +84,43 @@ public interface ObjectStreamProvider {
             public byte[] asByteArray() {
                 return Arrays.copyOf(data, data.length);
             }
+
+            @Override
+            public ByteBuffer asByteBuffer() {
+                return ByteBuffer.wrap(data);
+            }
+
+            @Override
+            public boolean isInMemory() {
+                return true;
+            }
         };
     }
     public static byte[] toByte(final ObjectStreamProvider provider) throws IOException {
         return provider.asByteArray();
     }
+
+    /**
+     * Copies count bytes starting at position from the stream, skipping through the stream up to the position
+     */
+    public static void copyRange(final InputStream is, final OutputStream output, final long position, final long count) throws IOException {
+        long toSkip = position;
+        while (toSkip > 0) {
+            final long skipped = is.skip(toSkip);
+            if (skipped > 0) {
+                toSkip -= skipped;
+            } else if (is.read() == -1) {
+                return;
+            } else {
+                toSkip--;
+            }
+        }
+        final byte[] chunk = new byte[COPY_CHUNK_SIZE];
+        long remaining = count;
+        int read;
+        while (remaining > 0 && (read = is.read(chunk, 0, (int) Math.min(chunk.length, remaining))) != -1) {
+            output.write(chunk, 0, read);
+            remaining -= read;
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Serves a small blob from the {@link OffHeapStore}. If the blob has been evicted it's loaded again and put back in the store.
+ */
+public class OffHeapObjectStreamProvider implements ObjectStreamProvider {
+
+    private final OffHeapStore store;
+    private final String blobId;
+    private final long size;
+    private final ThrowingSupplier<byte[], IOException> loader;
+
+    public OffHeapObjectStreamProvider(final OffHeapStore store, final String blobId, final long size, final ThrowingSupplier<byte[], IOException> loader) {
+        this.store = Objects.requireNonNull(store);
+        this.blobId = Objects.requireNonNull(blobId);
+        this.size = size;
+        this.loader = Objects.requireNonNull(loader);
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() throws IOException {
+        final ByteBuffer stored = store.get(blobId);
+        if (stored != null) {
+            return stored;
+        }
+        final byte[] data = loader.get();
+        final ByteBuffer reloaded = store.put(blobId, data);
+        return reloaded == null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : reloaded;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return store.contains(blobId);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ByteBufferInputStream(asByteBuffer());
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] asByteArray() throws IOException {
+        final ByteBuffer buffer = asByteBuffer();
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+}
@@ -0,0 +1,289 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content addressed store keeping blobs outside of the Java heap. Blobs are appended to direct {@link ByteBuffer} slabs which are never written to again,
+ * so a view handed out to a reader stays valid even after the blob has been evicted. Whole slabs are evicted, oldest first, but a slab which has been
+ * read since it was last up for eviction is given another round. An evicted slab still counts against the capacity until the last view into it has been
+ * collected, since that's when its memory is returned. Reads don't take any lock.
+ */
+public class OffHeapStore {
+
+    private final long capacity;
+    private final int slabSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Oldest first
+    private final Deque<Slab> slabs = new ArrayDeque<>();
+    private final Set<Released> evicted = new HashSet<>();
+    private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<>();
+    private Slab current;
+    // The slab filled before the current one, small blobs still fitting in it go there
+    private Slab tail;
+    private long slabBytes;
+    // Evicted slabs whose memory hasn't been returned yet
+    private long pinnedBytes;
+    private long liveBytes;
+    private long evictions;
+
+    public OffHeapStore(final long capacity, final int slabSize) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize must be larger than 0");
+        }
+        if (capacity < slabSize) {
+            throw new IllegalArgumentException(String.format("capacity %d must be at least the size of one slab %d", capacity, slabSize));
+        }
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * @return a read only view of the blob or null if it's not in the store
+     */
+    public ByteBuffer get(final String blobId) {
+        final Entry entry = entries.get(Objects.requireNonNull(blobId));
+        if (entry == null) {
+            return null;
+        }
+        entry.slab.touch();
+        return entry.view();
+    }
+
+    public boolean contains(final String blobId) {
+        return entries.containsKey(blobId);
+    }
+
+    /**
+     * Copies the blob into the store, evicting the oldest slabs if there's no room for it.
+     * 
+     * @return a read only view of the stored blob or null if the blob can't fit in the store
+     */
+    public ByteBuffer put(final String blobId, final byte[] data) {
+        Objects.requireNonNull(data);
+        final Entry existing = entries.get(Objects.requireNonNull(blobId));
+        if (existing != null) {
+            return existing.view();
+        }
+        synchronized (this) {
+            final Entry raced = entries.get(blobId);
+            if (raced != null) {
+                return raced.view();
+            }
+            final Slab slab = allocate(data.length);
+            if (slab == null) {
+                return null;
+            }
+            final Entry entry = slab.add(blobId, data);
+            liveBytes += data.length;
+            entries.put(blobId, entry);
+            return entry.view();
+        }
+    }
+
+    public synchronized void remove(final String blobId) {
+        final Entry entry = entries.remove(blobId);
+        if (entry == null) {
+            return;
+        }
+        liveBytes -= entry.length;
+        final Slab slab = entry.slab;
+        if (--slab.live == 0 && slab != current && slab != tail) {
+            slabs.remove(slab);
+            evict(slab);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        for (Slab slab : slabs) {
+            evict(slab);
+        }
+        slabs.clear();
+        current = null;
+        tail = null;
+        liveBytes = 0;
+    }
+
+    private Slab allocate(final int size) {
+        purge();
+        if (tail != null && tail.remaining() >= size) {
+            return tail;
+        }
+        if (current != null && current.remaining() >= size) {
+            return current;
+        }
+        final int newSlabSize = Math.max(slabSize, size);
+        if (newSlabSize > capacity) {
+            return null;
+        }
+        while (slabBytes + newSlabSize > capacity && evictOldest()) {
+            // Evict until there would be room for a new slab
+        }
+        if (slabBytes + pinnedBytes + newSlabSize > capacity) {
+            // Evicting more wouldn't help, evicted slabs are still being read from
+            return null;
+        }
+        final Slab slab = new Slab(ByteBuffer.allocateDirect(newSlabSize));
+        slabBytes += newSlabSize;
+        slabs.addLast(slab);
+        if (size < slabSize) {
+            tail = current;
+            current = slab;
+        }
+        return slab;
+    }
+
+    private boolean evictOldest() {
+        for (int i = slabs.size(); i > 1 && slabs.peekFirst().read; i--) {
+            final Slab read = slabs.pollFirst();
+            read.read = false;
+            slabs.addLast(read);
+        }
+        final Slab oldest = slabs.pollFirst();
+        if (oldest == null) {
+            return false;
+        }
+        for (String blobId : oldest.blobIds) {
+            final Entry entry = entries.get(blobId);
+            if (entry != null && entry.slab == oldest) {
+                entries.remove(blobId);
+                liveBytes -= entry.length;
+                evictions++;
+            }
+        }
+        evict(oldest);
+        return true;
+    }
+
+    private void evict(final Slab slab) {
+        if (slab == current) {
+            current = null;
+        }
+        if (slab == tail) {
+            tail = null;
+        }
+        final int size = slab.buffer.capacity();
+        slabBytes -= size;
+        pinnedBytes += size;
+        evicted.add(new Released(slab.buffer, queue));
+    }
+
+    private void purge() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = queue.poll()) != null) {
+            final Released released = (Released) reference;
+            if (evicted.remove(released)) {
+                pinnedBytes -= released.size;
+            }
+        }
+    }
+
+    public long getCapacity() { return capacity; }
+
+    /**
+     * @return the bytes of the slabs in the store and of the evicted slabs which haven't been collected yet
+     */
+    public synchronized long getAllocatedBytes() {
+        purge();
+        return slabBytes + pinnedBytes;
+    }
+
+    public synchronized long getLiveBytes() { return liveBytes; }
+
+    public int getEntries() { return entries.size(); }
+
+    public synchronized long getEvictions() { return evictions; }
+
+    public synchronized int getSlabs() { return slabs.size(); }
+
+    private static class Slab {
+        private final ByteBuffer buffer;
+        private final List<String> blobIds = new ArrayList<>();
+        private int position;
+        private int live;
+        private volatile boolean read;
+
+        Slab(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        Entry add(final String blobId, final byte[] data) {
+            buffer.duplicate().position(position).put(data);
+            final Entry entry = new Entry(this, position, data.length);
+            position += data.length;
+            live++;
+            blobIds.add(blobId);
+            return entry;
+        }
+
+        void touch() {
+            if (!read) {
+                read = true;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+
+        Entry(final Slab slab, final int offset, final int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ByteBuffer view() {
+            return slab.buffer.duplicate().position(offset).limit(offset + length).slice().asReadOnlyBuffer();
+        }
+    }
+
+    /*
+     * Views into a slab keep its buffer reachable, so the buffer's memory is returned when this is enqueued
+     */
+    private static class Released extends PhantomReference<ByteBuffer> {
+        private final int size;
+
+        Released(final ByteBuffer buffer, final ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.size = buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.jitstatic.StorageParseException;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Bounded cache of parsed and validated blobs keyed by their git object id. Blobs are immutable so a blob is parsed once no matter how many refs,
+ * reloads or pushed branches it's found in. Parse and validation failures are remembered as well, errors from reading the repository are not. Blobs are
+ * parsed outside of the map, two threads missing the same blob at once may both parse it but only one result is kept.
+ * <p>
+ * The cache is bounded by the number of entries and, for blobs given with their size, by the sum of their sizes. A blob larger than the largest size
+ * to cache is parsed every time.
+ * <p>
+ * The instances handed out are shared and must never be modified.
+ */
+public class ParsedBlobCache<T> {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxSize;
+    private final Map<String, Parsed<T>> entries = new ConcurrentHashMap<>();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ParsedBlobCache(final int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes the sum of the sizes of the blobs kept
+     * @param maxSize  the size of the largest blob kept
+     */
+    ParsedBlobCache(final int maxEntries, final long maxBytes, final long maxSize) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxSize = Math.min(maxSize, maxBytes);
+    }
+
+    /**
+     * Returns the parsed blob, calling the parser only if the blob hasn't been seen before. A remembered parse failure is thrown again.
+     */
+    public T get(final String blobId, final ThrowingSupplier<T, IOException> parser) throws IOException {
+        return get(blobId, 0, parser);
+    }
+
+    /**
+     * Returns the parsed blob, calling the parser only if the blob hasn't been seen before or is too large to be kept. A remembered parse failure is
+     * thrown again.
+     */
+    public T get(final String blobId, final long size, final ThrowingSupplier<T, IOException> parser) throws IOException {
+        Objects.requireNonNull(blobId);
+        Objects.requireNonNull(parser);
+        final Parsed<T> cached = entries.get(blobId);
+        if (cached != null) {
+            hits.increment();
+            return cached.get();
+        }
+        misses.increment();
+        final Parsed<T> parsed = parse(parser, size);
+        if (size > maxSize || !parsed.isCacheable()) {
+            return parsed.get();
+        }
+        return add(blobId, parsed).get();
+    }
+
+    /**
+     * Remembers a blob that is already parsed, such as one that was just written from a parsed value.
+     */
+    public void put(final String blobId, final T value) {
+        put(blobId, 0, value);
+    }
+
+    public void put(final String blobId, final long size, final T value) {
+        Objects.requireNonNull(blobId);
+        Objects.requireNonNull(value);
+        if (size <= maxSize) {
+            add(blobId, new Parsed<>(value, null, size));
+        }
+    }
+
+    private Parsed<T> add(final String blobId, final Parsed<T> parsed) {
+        final Parsed<T> existing = entries.putIfAbsent(blobId, parsed);
+        if (existing != null) {
+            return existing;
+        }
+        order.add(blobId);
+        bytes.addAndGet(parsed.size);
+        evict();
+        return parsed;
+    }
+
+    private static <T> Parsed<T> parse(final ThrowingSupplier<T, IOException> parser, final long size) {
+        try {
+            return new Parsed<>(Objects.requireNonNull(parser.get()), null, size);
+        } catch (final IOException e) {
+            return new Parsed<>(null, e, size);
+        }
+    }
+
+    private void evict() {
+        while (entries.size() > maxEntries || bytes.get() > maxBytes) {
+            final String oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            final Parsed<T> evicted = entries.remove(oldest);
+            if (evicted != null) {
+                bytes.addAndGet(-evicted.size);
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        order.clear();
+        bytes.set(0);
+    }
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public int getEntries() { return entries.size(); }
+
+    public long getBytes() { return bytes.get(); }
+
+    private static class Parsed<T> {
+        private final T value;
+        private final IOException error;
+        private final long size;
+
+        Parsed(final T value, final IOException error, final long size) {
+            this.value = value;
+            this.error = error;
+            this.size = size;
+        }
+
+        T get() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+
+        boolean isCacheable() {
+            return error == null || error instanceof StorageParseException || error instanceof JsonProcessingException;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import io.jitstatic.JitStaticConstants;
+import io.jitstatic.utils.Pair;
+
+/**
+ * The files of a key or a directory as they were when read, so they can be copied without reading their data.
+ */
+public final class PathSnapshot {
+
+    private final String path;
+    private final String version;
+    private final List<Pair<String, String>> files;
+    private final String inheritedMetaData;
+
+    /**
+     * @param path    a key or a directory ending with /
+     * @param version the key's blob or the directory's tree
+     * @param files   the path of each file relative to the path paired with its blob
+     */
+    public PathSnapshot(final String path, final String version, final List<Pair<String, String>> files) {
+        this(path, version, files, null);
+    }
+
+    /**
+     * @param inheritedMetaData the blob of the directory's .metadata a key without its own metadata uses
+     */
+    public PathSnapshot(final String path, final String version, final List<Pair<String, String>> files, @Nullable final String inheritedMetaData) {
+        this.path = Objects.requireNonNull(path);
+        this.version = Objects.requireNonNull(version);
+        this.files = Objects.requireNonNull(files);
+        this.inheritedMetaData = inheritedMetaData;
+    }
+
+    public String getPath() { return path; }
+
+    public String getVersion() { return version; }
+
+    public List<Pair<String, String>> getFiles() { return files; }
+
+    @Nullable
+    public String getInheritedMetaData() { return inheritedMetaData; }
+
+    public boolean isDirectory() { return path.endsWith("/"); }
+
+    /**
+     * @return the full path of every file
+     */
+    public List<String> getFilePaths() {
+        final String prefix = "/".equals(path) ? "" : path;
+        return files.stream().map(file -> prefix + file.getLeft()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the full path of every key, metadata files left out
+     */
+    public List<String> getKeys() {
+        return getFilePaths().stream().filter(file -> !file.endsWith(JitStaticConstants.METADATA)).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "PathSnapshot [path=" + path + ", version=" + version + ", files=" + files.size() + "]";
+    }
+}
@@ -22,6 +22,7 @@ package io.jitstatic.source;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -49,4 +50,14 @@ public class SmallObjectStreamProvider implements ObjectStreamProvider {
         return Arrays.copyOf(buffer, buffer.length);
     }
 
+    @Override
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
 }
@@ -25,11 +25,11 @@ import java.net.URI;
 import java.util.List;
 import java.util.function.Function;
 
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.events.RepositoryListener;
-import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
 import org.eclipse.jgit.transport.resolver.RepositoryResolver;
 import org.eclipse.jgit.transport.resolver.UploadPackFactory;
@@ -41,7 +41,6 @@ import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.DistributedData;
 import io.jitstatic.hosted.RefLockHolder;
 import io.jitstatic.injection.CheckHealth;
-import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.Pair;
 import zone.dragon.dropwizard.lifecycle.InjectableManaged;
 
@@ -53,14 +52,74 @@ public interface Source extends AutoCloseable, CheckHealth, InjectableManaged {
 
     public SourceInfo getSourceInfo(String key, String ref) throws RefNotFoundException;
 
-    public Pair<String, ThrowingSupplier<ObjectLoader, IOException>> updateKey(String key, String ref, ObjectStreamProvider data, CommitMetaData commitMetaData);
+    public List<Pair<String, SourceInfo>> getAllSourceInfo(String ref, long maxBytes) throws RefNotFoundException;
 
-    public Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> addKey(String key, String ref, ObjectStreamProvider data, MetaData metaData, CommitMetaData commitMetaData);
+    public String getTreeVersion(String ref) throws RefNotFoundException;
+
+    public WrittenKey updateKey(String key, String ref, ObjectStreamProvider data, CommitMetaData commitMetaData);
+
+    public WrittenKey addKey(String key, String ref, ObjectStreamProvider data, MetaData metaData, CommitMetaData commitMetaData);
 
     public String updateMetaData(MetaData metaData, String metaDataVersion, String key, String ref, CommitMetaData commitMetaData);
 
     public void deleteKey(String key, String ref, CommitMetaData commitMetaData);
 
+    /**
+     * Writes all changes in one commit.
+     * 
+     * @return what was written for each change, in the same order, null for deleted keys
+     */
+    public List<WrittenKey> commit(List<KeyChange> changes, String ref, CommitMetaData commitMetaData);
+
+    /**
+     * Starts an import, which writes each key as it's added.
+     */
+    public KeyImport newImport();
+
+    /**
+     * Commits the keys of a finished import in one commit, replacing keys that already exist.
+     * 
+     * @return the id of the new commit
+     */
+    public String importKeys(KeyImport keys, String ref, CommitMetaData commitMetaData);
+
+    /**
+     * Reads which blobs a key or a directory is made of, leaving out hidden files.
+     * 
+     * @return null if there's no such key or directory
+     */
+    @Nullable
+    public PathSnapshot readPath(String path, String ref);
+
+    /**
+     * Writes the blobs of a snapshot to another path in one commit, deleting the snapshot's files if they are moved.
+     * 
+     * @return the written files and their blobs
+     */
+    public List<Pair<String, String>> copy(PathSnapshot from, String to, String ref, boolean move, CommitMetaData commitMetaData);
+
+    /**
+     * Deletes every file of a snapshot in one commit.
+     * 
+     * @return the new commit
+     */
+    public String deletePath(PathSnapshot snapshot, String ref, CommitMetaData commitMetaData);
+
+    /**
+     * Gives every key of a snapshot the same key metadata in one commit.
+     * 
+     * @return the new commit
+     */
+    public String rewriteMetaData(PathSnapshot snapshot, MetaData metaData, String ref, CommitMetaData commitMetaData);
+
+    /**
+     * Reads an earlier version of a key by its blob id. Only blobs the key has had in the ref's recent history are read.
+     * 
+     * @return null if the key never had that blob or it's larger than maxBytes
+     */
+    @Nullable
+    public byte[] readBlob(String key, String ref, String blobId, int maxBytes);
+
     public void addRefHolderFactory(Function<String, RefLockHolder> factory);
 
     public void createRef(String ref) throws IOException;
@@ -81,6 +140,8 @@ public interface Source extends AutoCloseable, CheckHealth, InjectableManaged {
 
     public void readAllRefs() throws IOException;
 
+    public boolean refExists(String ref);
+
     public void write(DistributedData data, String ref) throws IOException;
 
     public RepositoryResolver<HttpServletRequest> getRepositoryResolver();
@@ -0,0 +1,61 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.auth.UserData;
+
+/**
+ * The caches shared by every repository reader and ref. One instance is bound as a singleton and handed to everything that reads the repository.
+ */
+public class SourceCaches {
+
+    private static final int MAX_ENTRIES = 10_000;
+    private static final int MAX_DOCUMENTS = 64;
+    // A parsed tree takes several times the size of its JSON, so only a few MB of JSON is kept
+    private static final long MAX_DOCUMENT_BYTES = 8_000_000;
+
+    private final BlobCache blobCache;
+    private final ParsedBlobCache<MetaData> metaData = new ParsedBlobCache<>(MAX_ENTRIES);
+    private final ParsedBlobCache<UserData> users = new ParsedBlobCache<>(MAX_ENTRIES);
+    private final ParsedBlobCache<JsonNode> documents = new ParsedBlobCache<>(MAX_DOCUMENTS, MAX_DOCUMENT_BYTES, SourceInfo.THRESHOLD);
+
+    public SourceCaches() {
+        this(new BlobCache());
+    }
+
+    SourceCaches(final BlobCache blobCache) {
+        this.blobCache = blobCache;
+    }
+
+    public BlobCache getBlobCache() { return blobCache; }
+
+    public ParsedBlobCache<MetaData> getMetaData() { return metaData; }
+
+    public ParsedBlobCache<UserData> getUsers() { return users; }
+
+    /**
+     * JSON keys that are being patched. Keys can be large so only a few are kept.
+     */
+    public ParsedBlobCache<JsonNode> getDocuments() { return documents; }
+}
@@ -0,0 +1,64 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.Factory;
+
+import io.jitstatic.injection.configuration.JitstaticConfiguration;
+import io.jitstatic.injection.configuration.hosted.HostedFactory;
+
+/**
+ * Sets up the shared blob cache with the off heap store and spill cache that are configured.
+ */
+public class SourceCachesFactory implements Factory<SourceCaches> {
+
+    private final SourceCaches caches;
+
+    @Inject
+    public SourceCachesFactory(final JitstaticConfiguration config) throws IOException {
+        final HostedFactory hostedFactory = config.getHostedFactory();
+        final BlobCache blobCache = new BlobCache();
+        if (hostedFactory.getOffHeapCacheSize() > 0) {
+            blobCache.setOffHeapStore(new OffHeapStore(hostedFactory.getOffHeapCacheSize(), hostedFactory.getOffHeapSlabSize()));
+        }
+        if (hostedFactory.getSpillCacheSize() > 0) {
+            blobCache.setSpillCache(new SpillCache(hostedFactory.getBasePath().resolve(".git").resolve("jitstatic").resolve("spill"), hostedFactory
+                    .getSpillCacheSize()));
+        }
+        this.caches = new SourceCaches(blobCache);
+    }
+
+    @Override
+    @Singleton
+    public SourceCaches provide() {
+        return caches;
+    }
+
+    @Override
+    public void dispose(final SourceCaches instance) {
+        // NOOP
+    }
+}
@@ -22,29 +22,44 @@ package io.jitstatic.source;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Objects;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.jitstatic.MetaData;
+import io.jitstatic.SourceJSONParser;
+import io.jitstatic.StorageParseException;
 import io.jitstatic.check.MetaFileData;
 import io.jitstatic.check.SourceFileData;
 import io.jitstatic.hosted.InputStreamHolder;
 import io.jitstatic.hosted.SourceHandler;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
 //TODO Remove this SpotBugs Error
 @SuppressFBWarnings(value="RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE",justification="This is a false positive in Java 11, should be removed")
 public class SourceInfo {
 
+    /**
+     * Blobs of this size and larger are streamed from the repository instead of being held in memory.
+     */
+    public static final int THRESHOLD = 1_000_000;
+    private static final SourceJSONParser PARSER = new SourceJSONParser();
+
     private final MetaFileData metaFileData;
     private final SourceFileData sourceFileData;
     private final int threshold;
+    private final SourceCaches caches;
 
-    public SourceInfo(final MetaFileData metaFileData, final SourceFileData sourceFileData) {
+    /**
+     * @param caches where blobs and metadata are shared
+     */
+    public SourceInfo(final MetaFileData metaFileData, final SourceFileData sourceFileData, final SourceCaches caches) {
         this.metaFileData = metaFileData;
         if (sourceFileData == null && !metaFileData.isMasterMetaData()) {
             throw new IllegalArgumentException(String
                     .format("sourceFileData cannot be null if metaFileData %s is not a masterMetaData file", metaFileData.getFileName()));
         }
         this.sourceFileData = sourceFileData;
-        threshold = 1_000_000;
+        threshold = THRESHOLD;
+        this.caches = Objects.requireNonNull(caches);
     }
 
     public String getSourceVersion() {
@@ -77,16 +92,45 @@ public class SourceInfo {
         InputStreamHolder inputStreamHolder = sourceFileData.getInputStreamHolder();
         final long size = inputStreamHolder.getSize();        
         if (size < threshold) {
-            try (InputStream storageStream = inputStreamHolder.getInputStreamProvider().get()) {
-                return new SmallObjectStreamProvider(storageStream.readAllBytes());
+            final ThrowingSupplier<byte[], IOException> reader = () -> readAll(inputStreamHolder.getInputStreamProvider());
+            final String version = getSourceVersion();
+            if (version == null) {
+                return new SmallObjectStreamProvider(reader.get());
             }
+            // The provider is kept with the cached key, so it reloads the blob from the repository instead of holding on to what was read here
+            final ThrowingSupplier<InputStream, IOException> reopener = inputStreamHolder.getReopeningInputStreamProvider();
+            return caches.getBlobCache().provider(version, reader, () -> readAll(reopener));
         } else {
-            return new LargeObjectStreamProvider(inputStreamHolder.getInputStreamProvider(), size);
+            final String version = getSourceVersion();
+            return version == null ? new LargeObjectStreamProvider(inputStreamHolder.getInputStreamProvider(), size)
+                    : caches.getBlobCache().largeProvider(version, inputStreamHolder.getReopeningInputStreamProvider(), size);
         }
 
     }
 
+    private static byte[] readAll(final ThrowingSupplier<InputStream, IOException> streamProvider) throws IOException {
+        try (InputStream storageStream = streamProvider.get()) {
+            return storageStream.readAllBytes();
+        }
+    }
+
     public MetaData readMetaData() throws IOException {
+        final String version = getMetaDataVersion();
+        if (version == null) {
+            return parseMetaData();
+        }
+        // Keys inheriting the same .metadata file share one instance
+        return caches.getMetaData().get(version, () -> {
+            try (final InputStream metaDataStream = getMetadataInputStream()) {
+                return PARSER.readMetaData(metaDataStream);
+            } catch (final StorageParseException e) {
+                // Reading is more lenient than validating
+                return parseMetaData();
+            }
+        });
+    }
+
+    private MetaData parseMetaData() throws IOException {
         try (final InputStream metaDataStream = getMetadataInputStream()) {
             return SourceHandler.readMetaData(metaDataStream);
         }
@@ -0,0 +1,216 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Disk cache of fully inflated large blobs, keyed by their git object id and bounded by size. The least recently used blobs are deleted when the cache
+ * grows past its size. Files are written to a temporary file and moved in place so a reader never sees a partial blob, and a file that's deleted while
+ * it's being read stays readable until it's closed.
+ */
+public class SpillCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillCache.class);
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final Pattern BLOB_ID = Pattern.compile("[0-9a-f]+");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long bytes;
+
+    public SpillCache(final Path directory, final long maxBytes) throws IOException {
+        this.directory = Objects.requireNonNull(directory);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        index();
+    }
+
+    private void index() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(SpillCache::lastModified));
+        synchronized (this) {
+            for (Path file : files) {
+                final long size = Files.size(file);
+                entries.put(file.getFileName().toString(), size);
+                bytes += size;
+            }
+            evict(null);
+        }
+    }
+
+    private static FileTime lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the file holding the blob, writing it from the source if it isn't cached.
+     * 
+     * @return the file or null if the blob is larger than the cache
+     */
+    public Path get(final String blobId, final ThrowingSupplier<InputStream, IOException> source) throws IOException {
+        if (!BLOB_ID.matcher(Objects.requireNonNull(blobId)).matches()) {
+            throw new IllegalArgumentException("Not a blob id " + blobId);
+        }
+        synchronized (this) {
+            if (entries.get(blobId) != null) {
+                hits.increment();
+                return directory.resolve(blobId);
+            }
+        }
+        final CompletableFuture<Path> spilling = new CompletableFuture<>();
+        final CompletableFuture<Path> existing = loading.putIfAbsent(blobId, spilling);
+        if (existing != null) {
+            hits.increment();
+            return join(existing);
+        }
+        misses.increment();
+        try {
+            final Path file = spill(blobId, source);
+            spilling.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            spilling.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(blobId, spilling);
+        }
+    }
+
+    private static Path join(final CompletableFuture<Path> spilling) throws IOException {
+        try {
+            return spilling.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private Path spill(final String blobId, final ThrowingSupplier<InputStream, IOException> source) throws IOException {
+        final Path tmp = Files.createTempFile(directory, blobId, TMP_SUFFIX);
+        try {
+            final long size;
+            try (InputStream is = source.get(); OutputStream os = Files.newOutputStream(tmp)) {
+                size = is.transferTo(os);
+            }
+            if (size > maxBytes) {
+                return null;
+            }
+            final Path file = directory.resolve(blobId);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                final Long old = entries.put(blobId, size);
+                bytes += size - (old == null ? 0 : old);
+                evict(blobId);
+            }
+            return file;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void evict(final String keep) {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= eldest.getValue();
+            evictions.increment();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                LOG.warn("Failed to delete spilled blob {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    void served(final long size) {
+        bytesServed.add(size);
+    }
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public double getHitRatio() {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public long getBytesServed() { return bytesServed.sum(); }
+
+    public long getEvictions() { return evictions.sum(); }
+
+    public synchronized long getBytes() { return bytes; }
+
+    public synchronized int getEntries() { return entries.size(); }
+}
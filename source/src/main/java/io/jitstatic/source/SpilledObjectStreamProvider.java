@@ -0,0 +1,115 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * Serves a large blob from the {@link SpillCache}, inflating it from the repository only when it isn't on disk.
+ */
+public class SpilledObjectStreamProvider implements ObjectStreamProvider {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private final SpillCache cache;
+    private final String blobId;
+    private final long size;
+    private final ThrowingSupplier<InputStream, IOException> source;
+
+    public SpilledObjectStreamProvider(final SpillCache cache, final String blobId, final long size, final ThrowingSupplier<InputStream, IOException> source) {
+        this.cache = Objects.requireNonNull(cache);
+        this.blobId = Objects.requireNonNull(blobId);
+        this.size = size;
+        this.source = Objects.requireNonNull(source);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        final Path file = cache.get(blobId, source);
+        if (file != null) {
+            try {
+                final InputStream is = Files.newInputStream(file);
+                cache.served(size);
+                return is;
+            } catch (final NoSuchFileException e) {
+                // Evicted before it could be opened
+            }
+        }
+        return source.get();
+    }
+
+    /**
+     * Copies the blob to the output with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     */
+    public void transferTo(final OutputStream output) throws IOException {
+        transferTo(output, 0, size);
+    }
+
+    /**
+     * Copies a range of the blob to the output, seeking directly to the start of the range when the blob is on disk
+     */
+    public void transferTo(final OutputStream output, final long position, final long count) throws IOException {
+        final Path file = cache.get(blobId, source);
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final WritableByteChannel target = Channels.newChannel(output);
+                final long end = Math.min(channel.size(), position + count);
+                long current = position;
+                while (current < end) {
+                    current += channel.transferTo(current, end - current, target);
+                }
+                cache.served(Math.max(0, end - position));
+                return;
+            } catch (final NoSuchFileException e) {
+                // Evicted before it could be opened
+            }
+        }
+        try (InputStream is = source.get()) {
+            ObjectStreamProvider.copyRange(is, output, position, count);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] asByteArray() throws IOException {
+        if (size > MAX_ARRAY_SIZE) {
+            throw new IOException(String.format("Object of size %d is too large to be read into memory", size));
+        }
+        try (InputStream is = getInputStream()) {
+            return is.readNBytes((int) size);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectLoader;
+
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+/**
+ * The result of writing a key to a source, the new versions and how to read the written blob.
+ */
+public final class WrittenKey {
+
+    private final String version;
+    private final String metaDataVersion;
+    private final ThrowingSupplier<ObjectLoader, IOException> loader;
+
+    public WrittenKey(final String version, @Nullable final String metaDataVersion, final ThrowingSupplier<ObjectLoader, IOException> loader) {
+        this.version = Objects.requireNonNull(version);
+        this.metaDataVersion = metaDataVersion;
+        this.loader = Objects.requireNonNull(loader);
+    }
+
+    private WrittenKey(final String metaDataVersion) {
+        this.version = null;
+        this.metaDataVersion = Objects.requireNonNull(metaDataVersion);
+        this.loader = null;
+    }
+
+    /**
+     * When only the metadata was written there's no key version nor blob to read
+     */
+    public static WrittenKey ofMetaData(final String metaDataVersion) {
+        return new WrittenKey(metaDataVersion);
+    }
+
+    /**
+     * @return the version of the key or null if only the metadata was written
+     */
+    @Nullable
+    public String getVersion() { return version; }
+
+    /**
+     * @return the version of the metadata or null if the metadata wasn't written
+     */
+    @Nullable
+    public String getMetaDataVersion() { return metaDataVersion; }
+
+    @Nullable
+    public ThrowingSupplier<ObjectLoader, IOException> getLoader() { return loader; }
+}
@@ -21,7 +21,9 @@ package io.jitstatic;
  */
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashSet;
 import java.util.List;
@@ -56,4 +58,13 @@ public class MetaDataTest {
         ObjectMapper mapper = new ObjectMapper();
         System.out.println(mapper.writeValueAsString(sd1));
     }
+
+    @Test
+    public void testCompiledRolesAreNotSerialized() throws JsonProcessingException {
+        MetaData metaData = new MetaData(Set.of(new Role("read")), Set.of(new Role("write")));
+        assertTrue(metaData.getReadRoles().contains("read"));
+        assertTrue(metaData.getWriteRoles().contains("write"));
+        String json = new ObjectMapper().writeValueAsString(metaData);
+        assertFalse(json.contains("Roles"));
+    }
 }
@@ -0,0 +1,75 @@
+package io.jitstatic;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class RoleSetTest {
+
+    @Test
+    public void testEqualSets() {
+        RoleSet first = RoleSet.of(Set.of(new Role("read"), new Role("write")));
+        RoleSet second = RoleSet.of(List.of(new Role("write"), new Role("READ"), new Role("read")));
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(2, first.size());
+        assertSame(RoleSet.EMPTY, RoleSet.of(Set.of()));
+        assertSame(RoleSet.EMPTY, RoleSet.of(null));
+    }
+
+    @Test
+    public void testContainsIgnoresCase() {
+        RoleSet roles = RoleSet.of(Set.of(new Role("Reader")));
+        assertTrue(roles.contains("reader"));
+        assertTrue(roles.contains("READER"));
+        assertFalse(roles.contains("writer"));
+        assertFalse(roles.contains("notarole-" + System.nanoTime()));
+    }
+
+    @Test
+    public void testIntersects() {
+        RoleSet user = RoleSet.of(Set.of(new Role("a"), new Role("b")));
+        assertTrue(user.intersects(RoleSet.of(Set.of(new Role("b"), new Role("c")))));
+        assertFalse(user.intersects(RoleSet.of(Set.of(new Role("c")))));
+        assertFalse(user.intersects(RoleSet.EMPTY));
+        assertFalse(RoleSet.EMPTY.intersects(user));
+    }
+
+    @Test
+    public void testManyRoles() {
+        Role[] many = new Role[200];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Role("role" + i);
+        }
+        RoleSet roles = RoleSet.of(List.of(many));
+        assertTrue(roles.contains("role199"));
+        assertTrue(roles.intersects(RoleSet.of(Set.of(new Role("role150")))));
+        assertFalse(RoleSet.of(Set.of(new Role("role0"))).intersects(RoleSet.of(Set.of(new Role("role199")))));
+    }
+}
@@ -50,6 +50,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.hosted.RemoteTestUtils;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.test.BaseTest;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
@@ -63,6 +64,7 @@ public class SourceCheckerTest extends BaseTest {
     private TemporaryFolder tmpFolder;
     private Git bareGit;
     private Git workingGit;
+    private final SourceCaches caches = new SourceCaches();
 
     @BeforeEach
     public void setup() throws Exception {
@@ -90,7 +92,7 @@ public class SourceCheckerTest extends BaseTest {
     @Test
     public void testCheckSourceFileOnBareRepo()
             throws RevisionSyntaxException, AmbiguousObjectException, IncorrectObjectTypeException, IOException, RefNotFoundException {
-        SourceChecker sc = new SourceChecker(bareGit.getRepository());
+        SourceChecker sc = new SourceChecker(bareGit.getRepository(), caches);
         List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> errors = sc.checkBranchForErrors(REF_HEAD_MASTER);
         Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>> pair = errors.get(0);
         Optional<Ref> firstRef = pair.getLeft().stream().findFirst();
@@ -109,7 +111,7 @@ public class SourceCheckerTest extends BaseTest {
         workingGit.add().addFilepattern(".").call();
         workingGit.commit().setMessage("removed file").call();
         verifyOkPush(workingGit.push().call());
-        SourceChecker sc = new SourceChecker(bareGit.getRepository());
+        SourceChecker sc = new SourceChecker(bareGit.getRepository(), caches);
         List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> errors = sc.checkBranchForErrors(REF_HEAD_MASTER);
         Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>> pair = errors.get(0);
         Optional<Ref> firstRef = pair.getLeft().stream().findFirst();
@@ -133,7 +135,7 @@ public class SourceCheckerTest extends BaseTest {
         workingGit.add().addFilepattern(".").call();
         workingGit.commit().setMessage("msg").call();
         verifyOkPush(workingGit.push().call());
-        SourceChecker sc = new SourceChecker(bareGit.getRepository());
+        SourceChecker sc = new SourceChecker(bareGit.getRepository(), caches);
         List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> errors = sc.checkBranchForErrors(REF_HEAD_MASTER);
         Pair<List<String>, List<String>> interpretedMessages = CorruptedSourceException.interpreteMessages(errors);
         assertTrue(interpretedMessages.getLeft().isEmpty(), errors.toString());
@@ -142,7 +144,7 @@ public class SourceCheckerTest extends BaseTest {
     @Test
     public void testCheckSourceFileOnNormalRepo()
             throws RevisionSyntaxException, AmbiguousObjectException, IncorrectObjectTypeException, IOException, RefNotFoundException {
-        SourceChecker sc = new SourceChecker(workingGit.getRepository());
+        SourceChecker sc = new SourceChecker(workingGit.getRepository(), caches);
         List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> errors = sc.checkBranchForErrors(REF_HEAD_MASTER);
         Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>> pair = errors.get(0);
         Optional<Ref> firstRef = pair.getLeft().stream().findFirst();
@@ -159,7 +161,7 @@ public class SourceCheckerTest extends BaseTest {
             throws RevisionSyntaxException, AmbiguousObjectException, IncorrectObjectTypeException, IOException, RefNotFoundException {
         final String branch = Constants.R_HEADS + "other";
         assertEquals(branch, assertThrows(RefNotFoundException.class, () -> {
-            SourceChecker sc = new SourceChecker(bareGit.getRepository());
+            SourceChecker sc = new SourceChecker(bareGit.getRepository(), caches);
             sc.checkBranchForErrors(branch);
         }).getLocalizedMessage());
     }
@@ -169,7 +171,7 @@ public class SourceCheckerTest extends BaseTest {
             throws RevisionSyntaxException, AmbiguousObjectException, IncorrectObjectTypeException, IOException, RefNotFoundException {
         final String branch = "other";
         assertEquals(branch, assertThrows(RefNotFoundException.class, () -> {
-            SourceChecker sc = new SourceChecker(bareGit.getRepository());
+            SourceChecker sc = new SourceChecker(bareGit.getRepository(), caches);
             sc.checkBranchForErrors(branch);
         }).getLocalizedMessage());
     }
@@ -42,6 +42,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -50,6 +51,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -80,6 +82,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mockito;
 
 import io.jitstatic.JitStaticConstants;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
 import io.jitstatic.test.BaseTest;
 import io.jitstatic.test.TemporaryFolder;
@@ -95,6 +98,7 @@ public class SourceExtractorTest extends BaseTest {
     private Git git;
     private TemporaryFolder tmpFolder;
     private File workingFolder;
+    private final SourceCaches caches = new SourceCaches();
 
     @BeforeEach
     public void setup() throws IllegalStateException, GitAPIException, IOException {
@@ -118,7 +122,7 @@ public class SourceExtractorTest extends BaseTest {
                 createFileAndCommitOnDifferentBranches(tempGitFolder, local, key, i);
             }
             createFileAndCommitOnDifferentBranches(tempGitFolder, local, "." + key, 0);
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             Map<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> allExtracted = se.extractAll();
             assertTrue(allExtracted.keySet().size() == 4);
             checkForErrors();
@@ -140,7 +144,7 @@ public class SourceExtractorTest extends BaseTest {
                 addFilesAndPush(fileName, tempGitFolder, local);
             }
 
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             checkForErrors();
 
             Map<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> allExtracted = se.extractAll();
@@ -169,7 +173,7 @@ public class SourceExtractorTest extends BaseTest {
         final File tempGitFolder = getFolderFile();
         try (final Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(tempGitFolder).call()) {
             addFilesAndPush(key, tempGitFolder, local);
-            final SourceExtractor se = new SourceExtractor(git.getRepository());
+            final SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> sourceBranchExtractor = se.sourceBranchExtractor(REFS_HEADS_MASTER);
             assertEquals(1, sourceBranchExtractor.getRight().size());
             BranchData p = sourceBranchExtractor.getRight().get(0);
@@ -203,7 +207,7 @@ public class SourceExtractorTest extends BaseTest {
         try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
             addFilesAndPush(key, temporaryGitFolder, local);
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo branch = se.openBranch(REFS_HEADS_MASTER, key);
         try (final BufferedReader is = new BufferedReader(new InputStreamReader(branch.getStreamProvider().getInputStream(), UTF_8));) {
             assertNotNull(is);
@@ -213,10 +217,56 @@ public class SourceExtractorTest extends BaseTest {
 
     }
 
+    @Test
+    public void testOpenAllKeysInBranch() throws Exception {
+        File temporaryGitFolder = getFolderFile();
+        try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
+            for (String k : List.of("data/", "key1", "data/key2", USERS + "user")) {
+                addFilesAndPush(k, temporaryGitFolder, local);
+            }
+            Files.write(temporaryGitFolder.toPath().resolve("data").resolve("key3"), getData(3).getBytes(UTF_8), CREATE_NEW);
+            local.add().addFilepattern(".").call();
+            local.commit().setMessage("key3").call();
+            local.push().call();
+        }
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
+        Map<String, SourceInfo> all = se.openAll(REFS_HEADS_MASTER, Long.MAX_VALUE).stream().collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+        assertEquals(Set.of("key1", "data/key2", "data/key3"), all.keySet());
+        try (InputStream is = all.get("data/key3").getStreamProvider().getInputStream()) {
+            assertEquals(getData(3), new String(is.readAllBytes(), UTF_8));
+        }
+        assertEquals(se.openBranch(REFS_HEADS_MASTER, "data/key3").getMetaDataVersion(), all.get("data/key3").getMetaDataVersion());
+        assertEquals(se.openBranch(REFS_HEADS_MASTER, "data/key2").getMetaDataVersion(), all.get("data/key2").getMetaDataVersion());
+    }
+
+    @Test
+    public void testOpenAllKeysInBranchWithinBudget() throws Exception {
+        File temporaryGitFolder = getFolderFile();
+        // Blob contents are unique to this test so that nothing is served from the shared blob cache
+        final String salt = UUID.randomUUID().toString();
+        final List<String> data = new ArrayList<>();
+        try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
+            for (int i = 1; i <= 4; i++) {
+                final String content = "{\"data\":\"" + salt + i + "\"}";
+                data.add(content);
+                Files.write(temporaryGitFolder.toPath().resolve("key" + i), content.getBytes(UTF_8), CREATE_NEW);
+                Files.write(temporaryGitFolder.toPath().resolve("key" + i + METADATA), getMetaData().getBytes(UTF_8), CREATE_NEW);
+            }
+            local.add().addFilepattern(".").call();
+            local.commit().setMessage("keys").call();
+            local.push().call();
+        }
+        final int blobSize = data.get(0).length();
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
+        assertEquals(0, se.openAll(REFS_HEADS_MASTER, 0).size());
+        assertEquals(2, se.openAll(REFS_HEADS_MASTER, blobSize * 2).size());
+        assertEquals(4, se.openAll(REFS_HEADS_MASTER, blobSize * 4).size());
+    }
+
     @Test
     public void testExtractNullTag() throws Exception {
         assertThrows(NullPointerException.class, () -> {
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             se.openTag(null, "file");
         });
     }
@@ -224,7 +274,7 @@ public class SourceExtractorTest extends BaseTest {
     @Test
     public void testExtractNoTag() throws Exception {
         assertThrows(RefNotFoundException.class, () -> {
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             se.openTag("tag", "file");
         });
     }
@@ -238,7 +288,7 @@ public class SourceExtractorTest extends BaseTest {
             local.tag().setName("tag").call();
             local.push().setPushTags().call();
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo tag = se.openTag(Constants.R_TAGS + "tag", key);
         try (final BufferedReader is = new BufferedReader(new InputStreamReader(tag.getStreamProvider().getInputStream(), UTF_8));) {
             assertNotNull(is);
@@ -259,7 +309,7 @@ public class SourceExtractorTest extends BaseTest {
                 local.commit().setMessage("Commit " + file.toString()).call();
                 local.push().call();
             }
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             SourceInfo branch = se.openBranch(Constants.R_HEADS + "notexisting", key);
             try (final BufferedReader is = new BufferedReader(new InputStreamReader(branch.getStreamProvider().getInputStream(), UTF_8));) {
                 assertNotNull(is);
@@ -281,7 +331,7 @@ public class SourceExtractorTest extends BaseTest {
 
             Repository spy = Mockito.spy(local.getRepository());
             Mockito.doThrow(exception).when(spy).open(Mockito.any());
-            SourceExtractor se = new SourceExtractor(spy);
+            SourceExtractor se = new SourceExtractor(spy, caches);
             Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> branch = se.sourceBranchExtractor(REFS_HEADS_MASTER);
             assertEquals(REFS_HEADS_MASTER, branch.getLeft().getRight().stream().findFirst().get().getName());
             List<BranchData> branchData = branch.getRight();
@@ -296,7 +346,7 @@ public class SourceExtractorTest extends BaseTest {
     public void testSourceTestBranchExtractorNullBranch() throws RefNotFoundException, IOException {
         assertThrows(NullPointerException.class, () -> {
             Repository repository = Mockito.mock(Repository.class);
-            SourceExtractor se = new SourceExtractor(repository);
+            SourceExtractor se = new SourceExtractor(repository, caches);
             se.sourceTestBranchExtractor(null);
         });
     }
@@ -305,7 +355,7 @@ public class SourceExtractorTest extends BaseTest {
     public void testSourceTestBranchExtractorBranchNotFound() throws RefNotFoundException, IOException {
         assertThrows(RefNotFoundException.class, () -> {
             Repository repository = Mockito.mock(Repository.class);
-            SourceExtractor se = new SourceExtractor(repository);
+            SourceExtractor se = new SourceExtractor(repository, caches);
             se.sourceTestBranchExtractor("notfound");
         });
     }
@@ -318,7 +368,7 @@ public class SourceExtractorTest extends BaseTest {
             File temporaryGitFolder = getFolderFile();
             try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
                 addFilesAndPush(key, temporaryGitFolder, local);
-                SourceExtractor se = new SourceExtractor(local.getRepository());
+                SourceExtractor se = new SourceExtractor(local.getRepository(), caches);
                 se.sourceTestBranchExtractor(branch);
             }
         }).getLocalizedMessage(), CoreMatchers.containsString(branch));
@@ -328,7 +378,7 @@ public class SourceExtractorTest extends BaseTest {
     public void testSourceBranchExtractorNullBranch() throws RefNotFoundException, IOException {
         assertThrows(NullPointerException.class, () -> {
             Repository repository = Mockito.mock(Repository.class);
-            SourceExtractor se = new SourceExtractor(repository);
+            SourceExtractor se = new SourceExtractor(repository, caches);
             se.sourceBranchExtractor(null);
         });
     }
@@ -337,7 +387,7 @@ public class SourceExtractorTest extends BaseTest {
     public void testSourceBranchExtractorBranchNotFound() throws RefNotFoundException, IOException {
         assertThrows(RefNotFoundException.class, () -> {
             Repository repository = Mockito.mock(Repository.class);
-            SourceExtractor se = new SourceExtractor(repository);
+            SourceExtractor se = new SourceExtractor(repository, caches);
             se.sourceBranchExtractor("notfound");
         });
     }
@@ -345,7 +395,7 @@ public class SourceExtractorTest extends BaseTest {
     @Test
     public void testExtractNullBranch() {
         assertThrows(NullPointerException.class, () -> {
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             se.openBranch(null, null);
         });
     }
@@ -353,7 +403,7 @@ public class SourceExtractorTest extends BaseTest {
     @Test
     public void testExtractNoBranch() {
         assertThrows(RefNotFoundException.class, () -> {
-            SourceExtractor se = new SourceExtractor(git.getRepository());
+            SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
             se.openBranch("branch", null);
         });
     }
@@ -369,7 +419,7 @@ public class SourceExtractorTest extends BaseTest {
             local.commit().setMessage("Init commit").call();
             local.push().call();
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         assertNull(se.openBranch(REFS_HEADS_MASTER, "notexisting"));
     }
 
@@ -389,7 +439,7 @@ public class SourceExtractorTest extends BaseTest {
             local.commit().setMessage("Init commit").call();
             local.push().call();
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo openBranch = se.openBranch(REFS_HEADS_MASTER, key);
         assertNotNull(openBranch);
         try (InputStream is = openBranch.getMetadataInputStream()) {
@@ -421,7 +471,7 @@ public class SourceExtractorTest extends BaseTest {
             local.commit().setMessage("Init commit").call();
             local.push().call();
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo keydata = se.openBranch(REFS_HEADS_MASTER, key1);
         assertNotNull(keydata);
         assertEquals(getData(), readData(keydata.getStreamProvider().getInputStream()));
@@ -470,7 +520,7 @@ public class SourceExtractorTest extends BaseTest {
             local.commit().setMessage("Init commit").call();
             local.push().call();
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo keydata = se.openBranch(REFS_HEADS_MASTER, key1);
         assertNotNull(keydata);
         assertEquals(getData(), readData(keydata.getStreamProvider().getInputStream()));
@@ -494,7 +544,7 @@ public class SourceExtractorTest extends BaseTest {
         try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
             addFilesAndPush(key, temporaryGitFolder, local);
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo openBranch = se.openBranch(REFS_HEADS_MASTER, key);
         assertNotNull(openBranch);
         try (InputStream is = openBranch.getMetadataInputStream()) {
@@ -512,7 +562,7 @@ public class SourceExtractorTest extends BaseTest {
         try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
             addFilesAndPush(key, temporaryGitFolder, local);
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         SourceInfo openBranch = se.openBranch(REFS_HEADS_MASTER, key);
         assertNotNull(openBranch);
         try (InputStream is = openBranch.getMetadataInputStream()) {
@@ -533,7 +583,7 @@ public class SourceExtractorTest extends BaseTest {
         Mockito.when(ref.getObjectId()).thenReturn(ObjectId.zeroId());
         Mockito.when(repo.newObjectReader()).thenReturn(reader);
         Mockito.when(reader.open(Mockito.any())).thenThrow(e);
-        SourceExtractor se = new SourceExtractor(repo);
+        SourceExtractor se = new SourceExtractor(repo, caches);
         Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> sbe = se.sourceBranchExtractor(REFS_HEADS_MASTER);
         List<BranchData> right = sbe.getRight();
         assertTrue(right.size() == 1);
@@ -555,7 +605,7 @@ public class SourceExtractorTest extends BaseTest {
                 addFilesAndPush(k, temporaryGitFolder, local);
             }
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         List<String> listForKey = se.getListForKey(key, REFS_HEADS_MASTER, false);
         String[] values = result.isEmpty() ? new String[0] : result.split(",");
         assertEquals(List.of(values), listForKey);
@@ -571,7 +621,7 @@ public class SourceExtractorTest extends BaseTest {
                 addFilesAndPush(k, temporaryGitFolder, local);
             }
         }
-        SourceExtractor se = new SourceExtractor(git.getRepository());
+        SourceExtractor se = new SourceExtractor(git.getRepository(), caches);
         List<String> listForKey = se.getListForKey(key, REFS_HEADS_MASTER, false);
         assertTrue(listForKey.isEmpty());
     }
@@ -581,7 +631,7 @@ public class SourceExtractorTest extends BaseTest {
         File temporaryGitFolder = getFolderFile();
         try (Git local = Git.cloneRepository().setURI(workingFolder.toURI().toString()).setDirectory(temporaryGitFolder).call()) {
             addFilesAndPush("key", temporaryGitFolder, local);
-            SourceExtractor se = new SourceExtractor(local.getRepository());
+            SourceExtractor se = new SourceExtractor(local.getRepository(), caches);
             Pair<Pair<AnyObjectId, Set<Ref>>, List<BranchData>> extracted = se.sourceBranchExtractor(REFS_HEADS_MASTER);
             assertTrue(extracted.getRight().stream().map(m -> m.pair()).flatMap(m -> m.stream()).allMatch(p -> p.getKey() != null && p.getRight() != null));
             local.rm().addFilepattern("key").call();
@@ -633,7 +683,7 @@ public class SourceExtractorTest extends BaseTest {
     }
 
     private void checkForErrors() {
-        SourceChecker sc = new SourceChecker(git.getRepository());
+        SourceChecker sc = new SourceChecker(git.getRepository(), caches);
         List<Pair<Set<Ref>, List<Pair<FileObjectIdStore, Exception>>>> check = sc.check();
         Pair<List<String>, List<String>> interpreteMessages = CorruptedSourceException.interpreteMessages(check);
         assertEquals(List.of(), interpreteMessages.getLeft());
@@ -0,0 +1,134 @@
+package io.jitstatic.hosted;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static io.jitstatic.JitStaticConstants.JITSTATIC_NOWHERE;
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.jitstatic.CommitMetaData;
+import io.jitstatic.MetaData;
+import io.jitstatic.injection.configuration.hosted.HostedFactory.Durability;
+import io.jitstatic.source.SourceCaches;
+import io.jitstatic.test.BaseTest;
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
+import io.jitstatic.utils.ErrorReporter;
+
+/**
+ * Measures single key commits through the API write path in each durability mode. It only runs when asked for, since the numbers only mean
+ * something on the disk the server will use:
+ *
+ * <pre>
+ * mvn test -pl source -Dtest=DurableWritesBenchmarkTest -Dbenchmark=true -Dbenchmark.commits=500 -Djava.io.tmpdir=/path/on/that/disk
+ * </pre>
+ */
+@ExtendWith(TemporaryFolderExtension.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Tag("slow")
+public class DurableWritesBenchmarkTest extends BaseTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DurableWritesBenchmarkTest.class);
+    private static final String REF_HEADS_MASTER = Constants.R_HEADS + Constants.MASTER;
+    private static final int WARM_UP = 50;
+    private TemporaryFolder tmpFolder;
+    private final SourceCaches caches = new SourceCaches();
+    private ExecutorService service;
+
+    @BeforeEach
+    public void setup() {
+        service = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        service.shutdown();
+        service.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Durability.class)
+    public void testSingleKeyCommits(final Durability durability) throws Exception {
+        final int commits = Integer.getInteger("benchmark.commits", 500);
+        final File base = getFolderFile();
+        pushInitialCommit(base);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(base.toPath(), "endpoint", REF_HEADS_MASTER, service,
+                ErrorReporter.INSTANCE, repository -> new DurableWrites(repository, durability, 1000, 100), caches)) {
+            final MetaData metaData = new MetaData(null, false, false, List.of(), Set.of(), Set.of());
+            final CommitMetaData commitMetaData = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+            for (int i = 0; i < WARM_UP; i++) {
+                grm.addKey("warmup" + i, REF_HEADS_MASTER, toProvider(getData(i).getBytes(UTF_8)), metaData, commitMetaData);
+            }
+            final long[] latencies = new long[commits];
+            final long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                final long before = System.nanoTime();
+                assertNotNull(grm.addKey("key" + i, REF_HEADS_MASTER, toProvider(getData(i).getBytes(UTF_8)), metaData, commitMetaData).getVersion());
+                latencies[i] = System.nanoTime() - before;
+            }
+            final long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            LOG.info(String.format("%-8s %6d commits %8.1f commits/s  p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms", durability, commits,
+                    commits / (elapsed / 1e9), millis(latencies, 0.5), millis(latencies, 0.99), latencies[commits - 1] / 1e6));
+        }
+    }
+
+    private static double millis(final long[] sorted, final double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    private void pushInitialCommit(final File base) throws Exception {
+        Git.init().setBare(true).setDirectory(base).call().close();
+        try (Git git = Git.cloneRepository().setURI(base.toURI().toString()).setDirectory(getFolderFile()).call()) {
+            Files.write(git.getRepository().getWorkTree().toPath().resolve("store"), getData().getBytes(UTF_8));
+            Files.write(git.getRepository().getWorkTree().toPath().resolve("store.metadata"), getMetaData().getBytes(UTF_8));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Initial commit").call();
+            verifyOkPush(git.push().call());
+        }
+    }
+
+    @Override
+    protected File getFolderFile() throws IOException { return tmpFolder.createTemporaryDirectory(); }
+}
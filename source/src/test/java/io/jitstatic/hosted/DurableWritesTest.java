@@ -0,0 +1,122 @@
+package io.jitstatic.hosted;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.awaitility.Awaitility;
+import org.awaitility.Durations;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.jitstatic.injection.configuration.hosted.HostedFactory.Durability;
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
+
+@ExtendWith(TemporaryFolderExtension.class)
+public class DurableWritesTest {
+
+    private TemporaryFolder tmpFolder;
+
+    @Test
+    public void testStrictTurnsOnFsync() throws IllegalStateException, GitAPIException, IOException {
+        try (Git git = Git.init().setBare(true).setDirectory(tmpFolder.createTemporaryDirectory()).call();
+                DurableWrites durableWrites = new DurableWrites(git.getRepository(), Durability.STRICT, 1000, 1)) {
+            final StoredConfig config = git.getRepository().getConfig();
+            assertTrue(config.getBoolean("core", "fsyncObjectFiles", false));
+            assertTrue(config.getBoolean("core", "fsyncRefFiles", false));
+            config.unset("core", null, "fsyncRefFiles");
+            durableWrites.onCommit();
+            assertTrue(config.getBoolean("core", "fsyncRefFiles", false));
+        }
+    }
+
+    @Test
+    public void testRelaxedLeavesConfig() throws IllegalStateException, GitAPIException, IOException {
+        try (Git git = Git.init().setBare(true).setDirectory(tmpFolder.createTemporaryDirectory()).call();
+                DurableWrites durableWrites = DurableWrites.relaxed(git.getRepository())) {
+            durableWrites.onCommit();
+            durableWrites.onPack();
+            final StoredConfig config = git.getRepository().getConfig();
+            assertFalse(config.getBoolean("core", "fsyncObjectFiles", false));
+            assertFalse(config.getBoolean("core", "fsyncRefFiles", false));
+            assertEquals(0, durableWrites.getSyncs());
+        }
+    }
+
+    @Test
+    public void testBatchedSyncsAfterCommits() throws IllegalStateException, GitAPIException, IOException {
+        try (Git git = Git.init().setBare(true).setDirectory(tmpFolder.createTemporaryDirectory()).call()) {
+            final DurableWrites durableWrites = new DurableWrites(git.getRepository(), Durability.BATCHED, 60_000, 2);
+            durableWrites.onCommit();
+            assertEquals(0, durableWrites.getSyncs());
+            durableWrites.onCommit();
+            Awaitility.await().atMost(Durations.TEN_SECONDS).until(durableWrites::getSyncs, equalTo(1));
+            assertFalse(git.getRepository().getConfig().getBoolean("core", "fsyncObjectFiles", false));
+            durableWrites.close();
+            assertEquals(2, durableWrites.getSyncs());
+        }
+    }
+
+    @Test
+    public void testSyncForcesWrittenFiles() throws IllegalStateException, GitAPIException, IOException {
+        try (Git git = Git.init().setBare(true).setDirectory(tmpFolder.createTemporaryDirectory()).call();
+                DurableWrites durableWrites = new DurableWrites(git.getRepository(), Durability.BATCHED, 60_000, 100)) {
+            final Repository repository = git.getRepository();
+            try (ObjectInserter inserter = repository.newObjectInserter()) {
+                inserter.insert(Constants.OBJ_BLOB, "data".getBytes(UTF_8));
+                inserter.flush();
+            }
+            assertTrue(durableWrites.sync() > 0);
+        }
+    }
+
+    @Test
+    public void testSyncOnlyForcesObjectsAndRefs() throws IllegalStateException, GitAPIException, IOException {
+        try (Git git = Git.init().setBare(true).setDirectory(tmpFolder.createTemporaryDirectory()).call();
+                DurableWrites durableWrites = new DurableWrites(git.getRepository(), Durability.BATCHED, 60_000, 100)) {
+            final Repository repository = git.getRepository();
+            final Path spill = repository.getDirectory().toPath().resolve("jitstatic").resolve("spill");
+            Files.createDirectories(spill);
+            Files.write(spill.resolve("data"), new byte[] { 1 });
+            assertEquals(0, durableWrites.sync());
+            try (ObjectInserter inserter = repository.newObjectInserter()) {
+                inserter.insert(Constants.OBJ_BLOB, "data".getBytes(UTF_8));
+                inserter.flush();
+            }
+            assertEquals(1, durableWrites.sync());
+        }
+    }
+}
@@ -59,6 +59,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.awaitility.Awaitility;
@@ -103,7 +105,12 @@ import io.jitstatic.check.CorruptedSourceException;
 import io.jitstatic.check.RepositoryIsMissingIntendedBranch;
 import io.jitstatic.hosted.events.AddRefEventListener;
 import io.jitstatic.hosted.events.ReloadRefEventListener;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.source.PathSnapshot;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.test.BaseTest;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
@@ -122,6 +129,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     private TemporaryFolder tmpFolder;
     private Path tempFile;
     private Path tempDir;
+    private final SourceCaches caches = new SourceCaches();
 
     private ExecutorService service;
 
@@ -142,7 +150,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
 
     @Test
     public void testCreatedBareDirectory() throws CorruptedSourceException, IOException {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             assertTrue(Files.exists(Paths.get(grm.repositoryURI()).resolve(Constants.HEAD)));
         }
     }
@@ -150,7 +158,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test()
     public void testForDirectory() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(IllegalArgumentException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempFile, ENDPOINT, REF_HEADS_MASTER, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempFile, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString(String.format("Path %s is a file", tempFile)));
     }
@@ -160,7 +168,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         assertThat(assertThrows(IllegalArgumentException.class, () -> {
             Set<PosixFilePermission> perms = PosixFilePermissions.fromString("r-xr-x---");
             Files.setPosixFilePermissions(tempDir, perms);
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString(String.format("Path %s is not writeable", tempDir)));
     }
@@ -168,7 +176,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testForNullEndPoint() throws CorruptedSourceException, IOException {
         assertThrows(NullPointerException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, null, REF_HEADS_MASTER, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, null, REF_HEADS_MASTER, service, caches);) {
             }
         });
     }
@@ -176,7 +184,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testForEmptyEndPoint() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(IllegalArgumentException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "", REF_HEADS_MASTER, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "", REF_HEADS_MASTER, service, caches);) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString("Parameter endPointName cannot be empty"));
     }
@@ -184,7 +192,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testForEmptyDefaultBranch() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(IllegalArgumentException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "endpoint", "", service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "endpoint", "", service, caches);) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString("defaultBranch cannot be empty"));
     }
@@ -192,14 +200,14 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testForNullDefaultBranch() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(NullPointerException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "endpoint", null, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, "endpoint", null, service, caches);) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString("defaultBranch cannot be null"));
     }
 
     @Test
     public void testGetRepositoryResolver() throws ServiceNotAuthorizedException, ServiceNotEnabledException, CorruptedSourceException, IOException {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             Repository open = grm.getRepositoryResolver().open(null, ENDPOINT);
             assertNotNull(open);
         }
@@ -208,7 +216,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testNotFoundRepositoryResolver() throws ServiceNotAuthorizedException, ServiceNotEnabledException, CorruptedSourceException, IOException {
         assertThrows(RepositoryNotFoundException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
                 grm.getRepositoryResolver().open(null, "something");
             }
         });
@@ -216,16 +224,16 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
 
     @Test
     public void testMountingOnExistingGitRepository() throws CorruptedSourceException, IOException {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
         }
 
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
         }
     }
 
     @Test
     public void deleteDefaultRef() throws Exception {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             assertThrows(IllegalArgumentException.class, () -> grm.deleteRef(REF_HEADS_MASTER));
         }
     }
@@ -233,7 +241,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testGetTagSourceStream() throws CorruptedSourceException, IOException, NoFilepatternException, GitAPIException {
         File workFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setDirectory(workFolder).setURI(tempDir.toUri().toString()).call();) {
             Path file = workFolder.toPath().resolve("other");
             Path mfile = workFolder.toPath().resolve("other" + METADATA);
@@ -253,7 +261,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     public void testGetSourceStreamNotValid() throws CorruptedSourceException, IOException, RefNotFoundException {
         String ref = "refs/somethingelse/ref";
         assertThat(assertThrows(RefNotFoundException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
                 grm.getSourceInfo("key", ref);
             }
         }).getLocalizedMessage(), CoreMatchers.containsString(ref));
@@ -264,7 +272,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         final String wrongBranch = "wrongbranch";
         final File tmpGit = getFolderFile();
         assertThat(assertThrows(RepositoryIsMissingIntendedBranch.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
                 // should create a bare repo with a branch other with a store file with content
             }
             try (Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(tmpGit).call();) {
@@ -274,7 +282,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
                 git.branchDelete().setBranchNames("master").call();
                 verifyOkPush(git.push().call());
             }
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString(REF_HEADS_MASTER));
 
@@ -283,7 +291,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testInitializingValidRepository() throws InvalidRemoteException, TransportException, GitAPIException, IOException, CorruptedSourceException {
         File base = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setDirectory(base).setURI(tempDir.toUri().toString()).call()) {
             // TODO
         }
@@ -292,7 +300,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testPushingANonJSONFormattedStorageFile() throws Exception {
         assertThat(assertThrows(CorruptedSourceException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
                 final File localGitDir = getFolderFile();
                 try (Git git = Git.cloneRepository().setURI(grm.repositoryURI().toString()).setDirectory(localGitDir).call()) {
                     final Path file = localGitDir.toPath().resolve(STORE);
@@ -305,14 +313,14 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
                     verifyOkPush(git.push().call());
                 }
             }
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             }
         }).getLocalizedMessage(), CoreMatchers.containsString("Error in branch " + REF_HEADS_MASTER));
     }
 
     @Test
     public void testClosedRepositoryAndInputStream() throws Exception {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             final File localGitDir = getFolderFile();
             try (Git git = Git.cloneRepository().setURI(grm.repositoryURI().toString()).setDirectory(localGitDir).call()) {
                 addFilesAndPush(localGitDir, git);
@@ -329,14 +337,14 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testListeners() throws CorruptedSourceException, IOException {
         ReloadRefEventListener svl = mock(ReloadRefEventListener.class);
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             grm.addListener(svl, ReloadRefEventListener.class);
         }
     }
 
     @Test
     public void testCheckHealth() throws CorruptedSourceException, IOException {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             grm.checkHealth();
         }
     }
@@ -346,7 +354,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         NullPointerException npe = new NullPointerException();
         assertSame(npe, assertThrows(RuntimeException.class, () -> {
             ErrorReporter reporter = new ErrorReporter();
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, null, reporter);) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, null, reporter, caches);) {
                 reporter.setFault(npe);
                 grm.checkHealth();
             }
@@ -357,7 +365,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     public void testModifyKey() throws Exception {
         CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call();) {
 
             addFilesAndPush(gitFolder, git);
@@ -367,11 +375,11 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             String firstVersion = firstSourceInfo.getSourceVersion();
             byte[] modified = "{\"one\":\"two\"}".getBytes(UTF_8);
             var newVersion = grm.updateKey(STORE, REF_HEADS_MASTER, toProvider(modified), cmd);
-            assertNotEquals(firstVersion, newVersion.getLeft());
+            assertNotEquals(firstVersion, newVersion.getVersion());
             SourceInfo secondSourceInfo = grm.getSourceInfo(STORE, null);
             JsonNode secondValue = readJsonData(secondSourceInfo);
             assertNotEquals(firstValue, secondValue);
-            assertEquals(newVersion.getLeft(), secondSourceInfo.getSourceVersion());
+            assertEquals(newVersion.getVersion(), secondSourceInfo.getSourceVersion());
             git.pull().call();
             RevCommit revCommit = getRevCommit(git.getRepository(), REF_HEADS_MASTER);
             assertEquals(cmd.getMessage(), revCommit.getShortMessage());
@@ -385,7 +393,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         CommitMetaData cmd1 = new CommitMetaData("user", "mail", "msg1", "Test", JITSTATIC_NOWHERE);
         CommitMetaData cmd2 = new CommitMetaData("user", "mail", "msg2", "Test", JITSTATIC_NOWHERE);
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call();) {
 
             addFilesAndPush(gitFolder, git);
@@ -397,11 +405,11 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             byte[] modified2 = "{\"one\":\"three\"}".getBytes(UTF_8);
             var newVersion = grm.updateKey(STORE, REF_HEADS_MASTER, toProvider(modified), cmd1);
             var secondNewVersion = grm.updateKey(STORE, REF_HEADS_MASTER, toProvider(modified2), cmd2);
-            assertNotEquals(firstVersion, newVersion.getLeft());
+            assertNotEquals(firstVersion, newVersion.getVersion());
             SourceInfo secondSourceInfo = grm.getSourceInfo(STORE, null);
             JsonNode secondValue = readJsonData(secondSourceInfo);
             assertNotEquals(firstValue, secondValue);
-            assertEquals(secondNewVersion.getLeft(), secondSourceInfo.getSourceVersion());
+            assertEquals(secondNewVersion.getVersion(), secondSourceInfo.getSourceVersion());
             git.pull().call();
             Iterator<RevCommit> call = git.log().call().iterator();
             RevCommit last = call.next();
@@ -418,7 +426,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testModifyTag() throws CorruptedSourceException, IOException {
         assertThat(assertThrows(UnsupportedOperationException.class, () -> {
-            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service)) {
+            try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches)) {
                 grm.updateKey("key", "refs/tags/tag", toProvider(new byte[] { 1, 2, 3, 4 }), new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE));
             }
         }).getLocalizedMessage(), CoreMatchers.containsString("Tags cannot be modified"));
@@ -427,12 +435,12 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testAddKey() throws Exception {
         File localGitDir = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(localGitDir).call();) {
             addFilesAndPush(localGitDir, git);
             var addKey = grm.addKey("key", REF_HEADS_MASTER, toProvider(new byte[] { 1 }), new MetaData(null, false, false, List
                     .of(), Set.of(), Set.of()), new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE));
-            String version = addKey.getLeft().getRight();
+            String version = addKey.getVersion();
             assertNotNull(version);
             SourceInfo sourceInfo = grm.getSourceInfo("key", REF_HEADS_MASTER);
             assertNotNull(sourceInfo);
@@ -449,7 +457,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     public void testModifyMetaData() throws Exception {
         CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call();) {
             addFilesAndPush(gitFolder, git);
             SourceInfo firstSourceInfo = grm.getSourceInfo(STORE, null);
@@ -475,7 +483,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
 
     @Test
     public void testModifyMetadataWithTag() throws CorruptedSourceException, IOException {
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);) {
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);) {
             assertThrows(UnsupportedOperationException.class, () -> grm.updateMetaData(new MetaData("", false, false, List
                     .of(), Set.of(), Set.of()), null, STORE, "refs/tags/tag", new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE)));
         }
@@ -484,7 +492,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testDelete() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             addFilesAndPush(gitFolder, git);
             SourceInfo sourceInfo = grm.getSourceInfo(STORE, null);
@@ -495,10 +503,198 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testCommitSeveralChanges() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            addFilesAndPush(gitFolder, git);
+            List<WrittenKey> written = grm.commit(List.of(KeyChange.add("key", toProvider(new byte[] { 1 }), new MetaData(Set.of(), Set.of())), KeyChange
+                    .delete(STORE, null)), REF_HEADS_MASTER, new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE));
+            assertEquals(2, written.size());
+            assertNull(written.get(1));
+            SourceInfo sourceInfo = grm.getSourceInfo("key", REF_HEADS_MASTER);
+            assertEquals(written.get(0).getVersion(), sourceInfo.getSourceVersion());
+            assertEquals(written.get(0).getMetaDataVersion(), sourceInfo.getMetaDataVersion());
+            assertNull(grm.getSourceInfo(STORE, REF_HEADS_MASTER));
+            git.pull().call();
+            RevCommit head = git.log().setMaxCount(1).call().iterator().next();
+            assertEquals("msg", head.getShortMessage());
+            assertEquals(1, head.getParentCount());
+            assertEquals("Test commit", git.log().add(head.getParent(0)).setMaxCount(1).call().iterator().next().getShortMessage());
+        }
+    }
+
+    @Test
+    public void testImportKeys() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            addFilesAndPush(gitFolder, git);
+            MetaData metaData = new MetaData(Set.of(), Set.of());
+            CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+            String commit = importKeys(grm, List.of(KeyChange.add("dir/a", toProvider(new byte[] { 1 }), metaData), KeyChange
+                    .add(STORE, toProvider(new byte[] { 2 }), metaData)), REF_HEADS_MASTER, cmd);
+            git.pull().call();
+            assertEquals(commit, git.getRepository().resolve(Constants.HEAD).name());
+            for (Pair<String, Byte> expected : List.of(Pair.of("dir/a", (byte) 1), Pair.of(STORE, (byte) 2))) {
+                SourceInfo sourceInfo = grm.getSourceInfo(expected.getLeft(), REF_HEADS_MASTER);
+                assertTrue(sourceInfo.hasKeyMetaData());
+                try (InputStream is = sourceInfo.getStreamProvider().getInputStream()) {
+                    assertEquals(expected.getRight().intValue(), is.read());
+                }
+            }
+            try (Stream<Path> packs = Files.list(tempDir.resolve("objects").resolve("pack"))) {
+                assertTrue(packs.anyMatch(p -> p.toString().endsWith(".pack")));
+            }
+            assertThrows(IllegalArgumentException.class, () -> importKeys(grm, List.of(KeyChange.add(STORE + "/b", toProvider(new byte[] { 1 }), metaData)),
+                    REF_HEADS_MASTER, cmd));
+            assertThrows(IllegalArgumentException.class, () -> importKeys(grm, List.of(KeyChange.add("dir", toProvider(new byte[] { 1 }), metaData)),
+                    REF_HEADS_MASTER, cmd));
+            try (KeyImport unfinished = grm.newImport()) {
+                unfinished.add("c", toProvider(new byte[] { 3 }), metaData);
+                assertThrows(IllegalArgumentException.class, () -> grm.importKeys(unfinished, REF_HEADS_MASTER, cmd));
+            }
+            assertNull(grm.getSourceInfo("c", REF_HEADS_MASTER));
+        }
+    }
+
+    private static String importKeys(final HostedGitRepositoryManager grm, final List<KeyChange> keys, final String ref, final CommitMetaData cmd)
+            throws IOException {
+        try (KeyImport keyImport = grm.newImport()) {
+            for (KeyChange key : keys) {
+                keyImport.add(key.getKey(), key.getData(), key.getMetaData());
+            }
+            keyImport.finish();
+            return grm.importKeys(keyImport, ref, cmd);
+        }
+    }
+
+    @Test
+    public void testCopyAndMoveKeys() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            addFilesAndPush(gitFolder, git);
+            CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+            String version = grm.getSourceInfo(STORE, REF_HEADS_MASTER).getSourceVersion();
+            PathSnapshot key = grm.readPath(STORE, REF_HEADS_MASTER);
+            assertEquals(version, key.getVersion());
+            assertEquals(List.of("", METADATA), key.getFiles().stream().map(Pair::getLeft).collect(Collectors.toList()));
+            assertNull(grm.readPath("missing", REF_HEADS_MASTER));
+            assertNull(grm.readPath(STORE + "/", REF_HEADS_MASTER));
+
+            assertEquals(List.of(Pair.of("copied", version)), grm.copy(key, "copied", REF_HEADS_MASTER, false, cmd).subList(0, 1));
+            SourceInfo copied = grm.getSourceInfo("copied", REF_HEADS_MASTER);
+            assertEquals(version, copied.getSourceVersion());
+            assertTrue(copied.hasKeyMetaData());
+
+            String other = Constants.R_HEADS + "other";
+            grm.createRef(other);
+            PathSnapshot root = grm.readPath("/", REF_HEADS_MASTER);
+            assertEquals(Set.of(STORE, STORE + METADATA, "copied", "copied" + METADATA), root.getFiles().stream().map(Pair::getLeft).collect(Collectors
+                    .toSet()));
+            grm.copy(root, "promoted/", other, false, cmd);
+            assertEquals(version, grm.getSourceInfo("promoted/" + STORE, other).getSourceVersion());
+            assertNull(grm.getSourceInfo("promoted/" + STORE, REF_HEADS_MASTER));
+
+            grm.copy(grm.readPath("copied", REF_HEADS_MASTER), "moved", REF_HEADS_MASTER, true, cmd);
+            assertNull(grm.getSourceInfo("copied", REF_HEADS_MASTER));
+            assertEquals(version, grm.getSourceInfo("moved", REF_HEADS_MASTER).getSourceVersion());
+            assertThrows(IllegalArgumentException.class, () -> grm.copy(key, "moved/key", REF_HEADS_MASTER, false, cmd));
+        }
+    }
+
+    @Test
+    public void testCopyKeyKeepsInheritedMetaData() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            final Path file = gitFolder.toPath().resolve("base/" + STORE);
+            final Path mfile = gitFolder.toPath().resolve("base/" + METADATA);
+            file.getParent().toFile().mkdirs();
+            Files.write(file, getData().getBytes(UTF_8), CREATE_NEW, TRUNCATE_EXISTING);
+            Files.write(mfile, getMetaData().getBytes(UTF_8), CREATE_NEW, TRUNCATE_EXISTING);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Test commit").call();
+            verifyOkPush(git.push().call());
+            CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+
+            PathSnapshot key = grm.readPath("base/" + STORE, REF_HEADS_MASTER);
+            assertEquals(List.of(""), key.getFiles().stream().map(Pair::getLeft).collect(Collectors.toList()));
+            String inherited = grm.getSourceInfo("base/" + STORE, REF_HEADS_MASTER).getMetaDataVersion();
+            assertEquals(inherited, key.getInheritedMetaData());
+            assertEquals(Pair.of("copied" + METADATA, inherited), grm.copy(key, "copied", REF_HEADS_MASTER, false, cmd).get(1));
+            SourceInfo copied = grm.getSourceInfo("copied", REF_HEADS_MASTER);
+            assertTrue(copied.hasKeyMetaData());
+            assertEquals(inherited, copied.getMetaDataVersion());
+        }
+    }
+
+    @Test
+    public void testDeleteAndRewriteMetaDataOfPath() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            addFilesAndPush(gitFolder, git);
+            CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+            MetaData metaData = new MetaData(Set.of(), Set.of());
+            importKeys(grm, List.of(KeyChange.add("dir/a", toProvider(new byte[] { 1 }), metaData), KeyChange
+                    .add("dir/sub/b", toProvider(new byte[] { 2 }), metaData)), REF_HEADS_MASTER, cmd);
+
+            PathSnapshot dir = grm.readPath("dir/", REF_HEADS_MASTER);
+            assertEquals(Set.of("dir/a", "dir/sub/b"), Set.copyOf(dir.getKeys()));
+            MetaData newData = new MetaData("newcontent", false, false, List.of(), Set.of(), Set.of());
+            String commit = grm.rewriteMetaData(dir, newData, REF_HEADS_MASTER, cmd);
+            git.pull().call();
+            assertEquals(commit, git.getRepository().resolve(Constants.HEAD).name());
+            SourceInfo a = grm.getSourceInfo("dir/a", REF_HEADS_MASTER);
+            SourceInfo b = grm.getSourceInfo("dir/sub/b", REF_HEADS_MASTER);
+            assertEquals(newData, readMetaData(a));
+            assertEquals(a.getMetaDataVersion(), b.getMetaDataVersion());
+            assertNotEquals(a.getMetaDataVersion(), grm.getSourceInfo(STORE, REF_HEADS_MASTER).getMetaDataVersion());
+
+            grm.deletePath(grm.readPath("dir/", REF_HEADS_MASTER), REF_HEADS_MASTER, cmd);
+            assertNull(grm.readPath("dir/", REF_HEADS_MASTER));
+            assertNull(grm.getSourceInfo("dir/a", REF_HEADS_MASTER));
+            assertNotNull(grm.getSourceInfo(STORE, REF_HEADS_MASTER));
+        }
+    }
+
+    @Test
+    public void testReadBlob() throws Exception {
+        File gitFolder = getFolderFile();
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
+                Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
+            addFilesAndPush(gitFolder, git);
+            CommitMetaData cmd = new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE);
+            String commit = importKeys(grm, List.of(KeyChange.add("blob", toProvider(new byte[] { 1, 2 }), new MetaData(Set.of(), Set.of()))),
+                    REF_HEADS_MASTER, cmd);
+            String version = grm.readPath("blob", REF_HEADS_MASTER).getVersion();
+            assertArrayEquals(new byte[] { 1, 2 }, grm.readBlob("blob", REF_HEADS_MASTER, version, 2));
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, version, 1));
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, commit, 100));
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, "ffffffffffffffffffffffffffffffffffffffff", 100));
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, "blob", 100));
+
+            grm.updateKey("blob", REF_HEADS_MASTER, toProvider(new byte[] { 3 }), cmd);
+            assertArrayEquals(new byte[] { 1, 2 }, grm.readBlob("blob", REF_HEADS_MASTER, version, 2));
+            String other = grm.readPath(STORE, REF_HEADS_MASTER).getVersion();
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, other, 1000));
+            assertNull(grm.readBlob(STORE, REF_HEADS_MASTER, version, 2));
+            assertNull(grm.readBlob("blob", "refs/heads/missing", version, 2));
+
+            for (int i = 0; i < HostedGitRepositoryManager.MAX_BLOB_HISTORY; i++) {
+                grm.updateKey(STORE, REF_HEADS_MASTER, toProvider(new byte[] { (byte) i }), cmd);
+            }
+            assertNull(grm.readBlob("blob", REF_HEADS_MASTER, version, 2));
+        }
+    }
+
     @Test
     public void testRootMasterMetaData() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             final Path file = gitFolder.toPath().resolve(STORE);
             final Path mfile = gitFolder.toPath().resolve(METADATA);
@@ -517,7 +713,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testMasterMetaData() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             final Path file = gitFolder.toPath().resolve("base/" + STORE);
             final Path mfile = gitFolder.toPath().resolve("base/" + METADATA);
@@ -538,7 +734,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testDeleteRootMasterMetaData() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             final Path file = gitFolder.toPath().resolve(STORE);
             final Path mfile = gitFolder.toPath().resolve(METADATA);
@@ -563,7 +759,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testDeleteMasterMetaData() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             final String base = "base/";
             final Path file = gitFolder.toPath().resolve(base + STORE);
@@ -590,7 +786,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testGetSourceInfoWithEmptyKey() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             addFilesAndPush(gitFolder, git);
             assertThrows(IllegalArgumentException.class, () -> grm.getSourceInfo("", null));
@@ -603,7 +799,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     public void testCreateAndDeleteRef() throws Exception {
         File gitFolder = getFolderFile();
         String branch = "refs/heads/test";
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             addFilesAndPush(gitFolder, git);
             Collection<Ref> branches = git.lsRemote().call();
@@ -620,7 +816,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testGetList() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             Path dir = gitFolder.toPath().resolve("dir");
             dir.toFile().mkdirs();
@@ -636,7 +832,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     @Test
     public void testGetListFromNotExistingBranch() throws Exception {
         File gitFolder = getFolderFile();
-        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service);
+        try (HostedGitRepositoryManager grm = new HostedGitRepositoryManager(tempDir, ENDPOINT, REF_HEADS_MASTER, service, caches);
                 Git git = Git.cloneRepository().setURI(tempDir.toUri().toString()).setDirectory(gitFolder).call()) {
             addFilesAndPush(gitFolder, git);
             assertThrows(RefNotFoundException.class, () -> grm.getList("store/", "refs/heads/notexisting", false));
@@ -647,7 +843,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
     public void testHostedGitRepositoryWithUsers() throws Exception {
         File base = createTempDirectory();
         setupGitRepoWithUsers(base);
-        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
 
         }
     }
@@ -657,7 +853,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             throws IOException, CorruptedSourceException, InvalidRemoteException, TransportException, NoFilepatternException, GitAPIException {
         File base = createTempDirectory();
         setupGitRepoWithUsers(base);
-        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             Pair<String, UserData> userDataHolder = hgrm.getUser(".users/git/gituser", REF_HEADS_MASTER);
             assertTrue(userDataHolder.isPresent());
             assertEquals("1234", userDataHolder.getRight().getBasicPassword());
@@ -669,7 +865,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             throws IOException, CorruptedSourceException, InvalidRemoteException, TransportException, NoFilepatternException, GitAPIException {
         File base = createTempDirectory();
         setupGitRepoWithUsers(base);
-        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             assertFalse(hgrm.getUser(".users/git/kit", REF_HEADS_MASTER).isPresent());
         }
     }
@@ -679,7 +875,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             throws IOException, CorruptedSourceException, InvalidRemoteException, TransportException, NoFilepatternException, GitAPIException {
         File base = createTempDirectory();
         setupGitRepoWithUsers(base);
-        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             assertNotNull(hgrm.addUser(".users/git/kit", REF_HEADS_MASTER, "doc", new UserData(Set.of(new Role("role")), "1234", null, null)));
         }
     }
@@ -689,7 +885,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             throws IOException, CorruptedSourceException, InvalidRemoteException, TransportException, NoFilepatternException, GitAPIException {
         File base = createTempDirectory();
         setupGitRepoWithUsers(base);
-        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hgrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             assertNotNull(hgrm.updateUser(".users/git/kit", REF_HEADS_MASTER, "doc", new UserData(Set.of(new Role("role")), "1234", null, null)));
         }
     }
@@ -706,7 +902,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             Files.write(creatorRealm.resolve("error"), new byte[] { 1, 2, 4 }, CREATE_NEW);
             commitAndPush(workingGit, null);
             LOG.info("", assertThrows(CorruptedSourceException.class, () -> new HostedGitRepositoryManager(base
-                    .toPath(), ENDPOINT, REF_HEADS_MASTER, service)));
+                    .toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)));
         }
     }
 
@@ -724,7 +920,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             commitAndPush(workingGit, null);
         }
         LOG.info("", assertThrows(CorruptedSourceException.class, () -> new HostedGitRepositoryManager(base
-                .toPath(), ENDPOINT, REF_HEADS_MASTER, service)));
+                .toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)));
     }
 
     @Test
@@ -741,7 +937,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             commitAndPush(workingGit, null);
         }
         LOG.info("", assertThrows(CorruptedSourceException.class, () -> new HostedGitRepositoryManager(base
-                .toPath(), ENDPOINT, REF_HEADS_MASTER, service)));
+                .toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)));
     }
 
     @Test
@@ -757,7 +953,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             write(corruptuser, new UserData(Set.of(new Role("role")), null, "salt", "hash"));
             commitAndPush(workingGit, null);
         }
-        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
         }
     }
 
@@ -774,7 +970,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             write(corruptuser, new UserData(Set.of(new Role("role")), "pass", "salt", "hash"));
             commitAndPush(workingGit, null);
         }
-        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
         }
     }
 
@@ -788,7 +984,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             workingGit.checkout().setCreateBranch(true).setName("other").setUpstreamMode(SetupUpstreamMode.TRACK).call();
             commitAndPush(workingGit, null);
         }
-        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service)) {
+        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
             Repository repository = hrm.getRepositoryResolver().open(null, ENDPOINT);
             Map<String, String> refs = new ConcurrentHashMap<>();
             repository.getListenerList().addListener(AddRefEventListener.class, e -> {
@@ -800,6 +996,17 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testRefExists() throws Exception {
+        File base = createTempDirectory();
+        setupGitRepoWithUsers(base);
+        try (HostedGitRepositoryManager hrm = new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches)) {
+            assertTrue(hrm.refExists(REF_HEADS_MASTER));
+            assertFalse(hrm.refExists("refs/heads/other"));
+            assertFalse(hrm.refExists("refs/tags/tag"));
+        }
+    }
+
     @Test
     public void testMountMetaDataWithUsers() throws Exception {
         File base = createTempDirectory();
@@ -815,7 +1022,7 @@ public class HostedGitRepositoryManagerTest extends BaseTest {
             git.commit().setMessage("Test commit").call();
             verifyOkPush(git.push().call());
         }
-        assertThrows(CorruptedSourceException.class, () -> new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service));
+        assertThrows(CorruptedSourceException.class, () -> new HostedGitRepositoryManager(base.toPath(), ENDPOINT, REF_HEADS_MASTER, service, caches));
     }
 
     private void setupGitRepoWithUsers(File base)
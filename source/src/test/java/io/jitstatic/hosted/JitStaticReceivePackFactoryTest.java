@@ -52,6 +52,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
 import io.jitstatic.utils.ErrorReporter;
@@ -65,6 +66,7 @@ public class JitStaticReceivePackFactoryTest {
     private static final String defaultRef = "refs/heads/master";
     private HttpServletRequest req;
     private ExecutorService service;
+    private final SourceCaches caches = new SourceCaches();
 
     @BeforeEach
     public void setup() throws IllegalStateException, GitAPIException, IOException {
@@ -85,7 +87,7 @@ public class JitStaticReceivePackFactoryTest {
         String user = "user", host = "remotehost";
         RepoInserter inserter = mock(RepoInserter.class);
         JitStaticReceivePackFactory jsrpf = new JitStaticReceivePackFactory(reporter, defaultRef, new RefLockHolderManager(), new UserExtractor(git
-                .getRepository()), inserter, service);
+                .getRepository(), caches), inserter, service, caches);
         when(req.getRemoteUser()).thenReturn(user);
         when(req.getRemoteHost()).thenReturn(host);
         ReceivePack create = jsrpf.create(req, git.getRepository());
@@ -103,7 +105,7 @@ public class JitStaticReceivePackFactoryTest {
         RepoInserter inserter = mock(RepoInserter.class);
         assertThat(assertThrows(ServiceNotAuthorizedException.class, () -> {
             JitStaticReceivePackFactory jsrpf = new JitStaticReceivePackFactory(reporter, defaultRef, new RefLockHolderManager(), new UserExtractor(git
-                    .getRepository()), inserter, service);
+                    .getRepository(), caches), inserter, service, caches);
             when(req.getRemoteHost()).thenReturn(host);
             jsrpf.create(req, git.getRepository());
         }).getLocalizedMessage(), CoreMatchers.containsString("Unauthorized"));
@@ -115,7 +117,7 @@ public class JitStaticReceivePackFactoryTest {
         RepoInserter inserter = mock(RepoInserter.class);
         assertThat(assertThrows(ServiceNotEnabledException.class, () -> {
             JitStaticReceivePackFactory jsrpf = new JitStaticReceivePackFactory(reporter, defaultRef, new RefLockHolderManager(), new UserExtractor(git
-                    .getRepository()), inserter, service);
+                    .getRepository(), caches), inserter, service, caches);
             git.getRepository().getConfig().setString("http", null, "receivepack", "false");
             when(req.getRemoteUser()).thenReturn(user);
             when(req.getRemoteHost()).thenReturn(host);
@@ -128,7 +130,7 @@ public class JitStaticReceivePackFactoryTest {
         String user = "user", host = "remotehost";
         RepoInserter inserter = mock(RepoInserter.class);
         JitStaticReceivePackFactory jsrpf = new JitStaticReceivePackFactory(reporter, defaultRef, new RefLockHolderManager(), new UserExtractor(git
-                .getRepository()), inserter, service);
+                .getRepository(), caches), inserter, service, caches);
         git.getRepository().getConfig().setString("http", null, "receivepack", "true");
         when(req.getRemoteUser()).thenReturn(user);
         when(req.getRemoteHost()).thenReturn(host);
@@ -153,7 +155,7 @@ public class JitStaticReceivePackFactoryTest {
         when(req.getRemoteUser()).thenReturn(user);
 
         JitStaticReceivePackFactory jsrpf = new JitStaticReceivePackFactory(reporter, defaultRef, new RefLockHolderManager(), new UserExtractor(git
-                .getRepository()), inserter, service);
+                .getRepository(), caches), inserter, service, caches);
 
         ReceivePack up = jsrpf.create(req, git.getRepository());
         Map<String, Ref> map = new HashMap<>();
@@ -101,6 +101,7 @@ import com.spencerwi.either.Either;
 
 import io.jitstatic.JitStaticConstants;
 import io.jitstatic.check.SourceChecker;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.test.BaseTest;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
@@ -124,6 +125,7 @@ public class JitStaticReceivePackTest extends BaseTest {
     private TestProtocol<Object> protocol;
     private URIish uri;
     private ErrorReporter errorReporter;
+    private final SourceCaches caches = new SourceCaches();
     private RefLockHolderManager bus;
     private ExecutorService executor;
 
@@ -144,7 +146,7 @@ public class JitStaticReceivePackTest extends BaseTest {
         bus = new RefLockHolderManager();
         bus.setRefHolderFactory(this::refHolderFactory);
         protocol = new TestProtocol<Object>(null, (req, db) -> {
-            final ReceivePack receivePack = new JitStaticReceivePack(db, REF_HEADS_MASTER, errorReporter, bus, new SourceChecker(db), new UserExtractor(db), false, new RepoInserter(db), executor);
+            final ReceivePack receivePack = new JitStaticReceivePack(db, REF_HEADS_MASTER, errorReporter, bus, new SourceChecker(db, caches), new UserExtractor(db, caches), false, new RepoInserter(db), executor);
             return receivePack;
 
         });
@@ -287,7 +289,7 @@ public class JitStaticReceivePackTest extends BaseTest {
         RevCommit c = clientGit.commit().setMessage("New commit").call();
 
         ReceiveCommand rc = new ReceiveCommand(oldRef, c.getId(), REF_HEADS_MASTER, Type.UPDATE);
-        JitStaticReceivePack rp = initUnit(remoteRepository, new SourceChecker(remoteRepository), new UserExtractor(remoteRepository), rc, bus);
+        JitStaticReceivePack rp = initUnit(remoteRepository, new SourceChecker(remoteRepository, caches), new UserExtractor(remoteRepository, caches), rc, bus);
 
         BatchRefUpdate bru = mock(BatchRefUpdate.class);
         when(remoteRepository.getRefDatabase()).thenReturn(refDatabase);
@@ -407,7 +409,7 @@ public class JitStaticReceivePackTest extends BaseTest {
         clientGit.branchDelete().setBranchNames(REF_HEADS_MASTER).call();
         ReceiveCommand rc = new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), REF_HEADS_MASTER, Type.DELETE);
         Repository repository = remoteBareGit.getRepository();
-        JitStaticReceivePack rp = initUnit(repository, new SourceChecker(repository), new UserExtractor(repository), rc, bus);
+        JitStaticReceivePack rp = initUnit(repository, new SourceChecker(repository, caches), new UserExtractor(repository, caches), rc, bus);
 
         rp.executeCommands();
         assertEquals(Result.REJECTED_NODELETE, rc.getResult());
@@ -422,7 +424,7 @@ public class JitStaticReceivePackTest extends BaseTest {
         clientGit.branchDelete().setBranchNames(REF_HEADS_MASTER).call();
         ReceiveCommand rc = new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), REF_HEADS_MASTER, Type.DELETE);
         Repository repository = remoteBareGit.getRepository();
-        JitStaticReceivePack rp = initUnit(repository, new SourceChecker(repository), new UserExtractor(repository), rc, bus);
+        JitStaticReceivePack rp = initUnit(repository, new SourceChecker(repository, caches), new UserExtractor(repository, caches), rc, bus);
 
         rp.executeCommands();
         assertEquals(Result.REJECTED_NODELETE, rc.getResult());
@@ -53,6 +53,7 @@ import io.jitstatic.JitStaticConstants;
 import io.jitstatic.Role;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.check.FileObjectIdStore;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.test.BaseTest;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
@@ -132,7 +133,7 @@ public class UserExtractorTest extends BaseTest {
         write(supdaterUser, supdaterUserData);
 
         commit();
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
         Pair<String, UserData> extractUserFromRef = ue.extractUserFromRef(USERS + JITSTATIC_GIT_REALM + "/" + gitUserKey, REF_HEAD_MASTER);
         assertEquals(gitUserData, extractUserFromRef.getRight());
         assertNotNull(extractUserFromRef.getLeft());
@@ -182,7 +183,7 @@ public class UserExtractorTest extends BaseTest {
         write(supdaterUser, supdaterUserData);
 
         commit();
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
         assertTrue(ue.validateAll().isEmpty());
         Files.write(sgituser, new byte[] { 1 }, StandardOpenOption.TRUNCATE_EXISTING);
         commit();
@@ -218,7 +219,7 @@ public class UserExtractorTest extends BaseTest {
         write(tgituser, tgitUserData);
 
         commit();
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
         List<Pair<Set<Ref>, List<Pair<String, List<Pair<FileObjectIdStore, Exception>>>>>> errors = ue.validateAll();
         assertFalse(errors.isEmpty());
         assertTrue(errors.size() == 1);
@@ -57,6 +57,7 @@ import io.jitstatic.JitStaticConstants;
 import io.jitstatic.RepositoryUpdater;
 import io.jitstatic.Role;
 import io.jitstatic.auth.UserData;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.test.TemporaryFolder;
 import io.jitstatic.test.TemporaryFolderExtension;
 import io.jitstatic.utils.Pair;
@@ -116,7 +117,7 @@ public class UserUpdaterTest {
         List<Pair<String, String>> updateUser = uu.updateUser(
                 List.of(Pair.of(gitAdmin, gitAdminData), Pair.of(keyAdmin, keyAdminData), Pair.of(keyUser, keyUserData)),
                 new CommitMetaData("test", "testmail", "test", "Test", JitStaticConstants.JITSTATIC_NOWHERE), REF_HEAD_MASTER);
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
 
         Pair<String, UserData> extractUserFromRef = ue.extractUserFromRef(gitAdmin, REF_HEAD_MASTER);
         assertEquals(gitAdminData, extractUserFromRef.getRight());
@@ -156,7 +157,7 @@ public class UserUpdaterTest {
         UserUpdater uu = new UserUpdater(new RepositoryUpdater(bareGit.getRepository()));
         String updateUser = uu.updateUser(gitAdmin, gitAdminData, new CommitMetaData("user", "test", "msg", "Test", JitStaticConstants.JITSTATIC_NOWHERE),
                 REF_HEAD_MASTER);
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
         Pair<String, UserData> extractUserFromRef = ue.extractUserFromRef(gitAdmin, REF_HEAD_MASTER);
         assertEquals(gitAdminData, extractUserFromRef.getRight());
         assertEquals(updateUser, extractUserFromRef.getLeft());
@@ -168,7 +169,7 @@ public class UserUpdaterTest {
         UserData gitAdminData = new UserData(Set.of(new Role("pull"), new Role("push"), new Role("forcepush")), "1234", null, null); // Full admin rights
         UserUpdater uu = new UserUpdater(new RepositoryUpdater(bareGit.getRepository()));
         uu.addUser(gitAdmin, gitAdminData, new CommitMetaData("user", "test", "msg", "Test", JitStaticConstants.JITSTATIC_NOWHERE), REF_HEAD_MASTER);
-        UserExtractor ue = new UserExtractor(bareGit.getRepository());
+        UserExtractor ue = new UserExtractor(bareGit.getRepository(), new SourceCaches());
         Pair<String, UserData> extractUserFromRef = ue.extractUserFromRef(gitAdmin, REF_HEAD_MASTER);
         assertTrue(extractUserFromRef.isPresent());
         uu.deleteUser(gitAdmin, new CommitMetaData("user", "test", "msg", "Test", JitStaticConstants.JITSTATIC_NOWHERE), REF_HEAD_MASTER);
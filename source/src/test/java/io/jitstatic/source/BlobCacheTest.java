@@ -0,0 +1,74 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class BlobCacheTest {
+
+    private static final String SHA_1 = "5f12e3846fef8c259efede1a55e12667effcc461";
+    private static final String SHA_2 = "5f12e3846fef8c259efede1a55e12667effcc462";
+
+    @Test
+    void testSameBlobIsShared() throws IOException {
+        BlobCache cache = new BlobCache();
+        byte[] first = cache.intern(SHA_1, () -> new byte[] { 1, 2, 3 });
+        byte[] second = cache.intern(SHA_1, () -> fail("Should not be loaded"));
+        assertSame(first, second);
+        assertTrue(cache.contains(SHA_1));
+        assertFalse(cache.contains(SHA_2));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.getBytes());
+        assertEquals(3, cache.getSavedBytes());
+        assertEquals(2.0, cache.getDedupRatio());
+    }
+
+    @Test
+    void testDifferentBlobsAreNotShared() throws IOException {
+        BlobCache cache = new BlobCache();
+        byte[] first = cache.intern(SHA_1, () -> new byte[] { 1 });
+        byte[] second = cache.intern(SHA_2, () -> new byte[] { 1 });
+        assertArrayEquals(first, second);
+        assertEquals(2, cache.getEntries());
+        assertEquals(1.0, cache.getDedupRatio());
+    }
+
+    @Test
+    void testShareSmallProvider() throws IOException {
+        BlobCache cache = new BlobCache();
+        ObjectStreamProvider provider = ObjectStreamProvider.toProvider(new byte[] { 1, 2 });
+        ObjectStreamProvider shared = cache.share(SHA_1, provider, 10);
+        assertTrue(shared instanceof SmallObjectStreamProvider);
+        assertArrayEquals(new byte[] { 1, 2 }, shared.asByteArray());
+        assertSame(provider, cache.share(SHA_2, provider, 2));
+        assertEquals(1, cache.getEntries());
+    }
+}
@@ -0,0 +1,92 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class CompressedVariantsTest {
+
+    private static final String SHA_1 = "5f12e3846fef8c259efede1a55e12667effcc461";
+    private static final String SHA_2 = "5f12e3846fef8c259efede1a55e12667effcc462";
+
+    private static final ByteBuffer DATA = ByteBuffer.wrap("{\"data\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}"
+            .getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void testCompressesOnce() throws IOException {
+        CompressedVariants variants = new CompressedVariants(1000, 10);
+        assertFalse(variants.contains(SHA_1, CompressedVariants.GZIP));
+        ByteBuffer compressed = variants.get(SHA_1, CompressedVariants.GZIP, DATA);
+        assertTrue(variants.contains(SHA_1, CompressedVariants.GZIP));
+        assertTrue(compressed.remaining() < DATA.remaining());
+        assertSame(compressed.array(), variants.get(SHA_1, CompressedVariants.GZIP, DATA).array());
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+            assertEquals(DATA, ByteBuffer.wrap(is.readAllBytes()));
+        }
+        assertEquals(1, variants.getEntries());
+        assertEquals(CompressedVariants.ENTRY_OVERHEAD + compressed.remaining(), variants.getBytes());
+    }
+
+    @Test
+    void testSmallOrIncompressibleContentIsNotCompressed() throws IOException {
+        CompressedVariants variants = new CompressedVariants(1000, 10);
+        assertNull(variants.get(SHA_1, CompressedVariants.GZIP, ByteBuffer.wrap(new byte[] { 1, 2, 3 })));
+        assertNull(variants.get(SHA_2, CompressedVariants.GZIP, ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 })));
+        assertEquals(1, variants.getEntries());
+        assertEquals(CompressedVariants.ENTRY_OVERHEAD, variants.getBytes());
+    }
+
+    @Test
+    void testEvictsWhenFull() throws IOException {
+        CompressedVariants variants = new CompressedVariants(CompressedVariants.ENTRY_OVERHEAD + 40, 10);
+        variants.get(SHA_1, CompressedVariants.GZIP, DATA);
+        variants.get(SHA_2, CompressedVariants.GZIP, DATA);
+        assertEquals(1, variants.getEntries());
+    }
+
+    @Test
+    void testUnsupportedEncoding() {
+        assertThrows(IllegalArgumentException.class, () -> new CompressedVariants(1000, 10).get(SHA_1, "br", DATA));
+    }
+
+    @Test
+    void testIncompressibleContentIsBounded() throws IOException {
+        CompressedVariants variants = new CompressedVariants(CompressedVariants.ENTRY_OVERHEAD * 10, 10);
+        for (int i = 0; i < 100; i++) {
+            assertNull(variants.get(String.format("%040d", i), CompressedVariants.GZIP, ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 })));
+        }
+        assertEquals(10, variants.getEntries());
+    }
+}
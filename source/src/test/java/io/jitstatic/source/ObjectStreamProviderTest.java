@@ -20,6 +20,7 @@ package io.jitstatic.source;
  * #L%
  */
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.when;
@@ -58,4 +59,19 @@ class ObjectStreamProviderTest {
         when(osp.getObjectStreamProvider(Mockito.any(), Mockito.anyInt())).thenCallRealMethod();
         assertEquals(osp.getClass(), osp.getObjectStreamProvider(() -> ol, 2).getClass());
     }
+
+    @Test
+    void testLargeObjectAsByteArrayReadsInBulk() throws IOException {
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        LargeObjectStreamProvider provider = new LargeObjectStreamProvider(() -> new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        }, data.length);
+        assertArrayEquals(data, provider.asByteArray());
+    }
 }
@@ -0,0 +1,169 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.awaitility.Durations;
+import org.junit.jupiter.api.Test;
+
+class OffHeapStoreTest {
+
+    @Test
+    void testPutAndGet() throws IOException {
+        OffHeapStore store = new OffHeapStore(100, 10);
+        ByteBuffer stored = store.put("a", new byte[] { 1, 2, 3 });
+        assertTrue(stored.isDirect());
+        assertTrue(stored.isReadOnly());
+        assertEquals(3, stored.remaining());
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(1, store.getSlabs());
+        assertEquals(10, store.getAllocatedBytes());
+        assertEquals(3, store.getLiveBytes());
+        try (InputStream is = new ByteBufferInputStream(store.get("a"))) {
+            assertArrayEquals(new byte[] { 1, 2, 3 }, is.readAllBytes());
+        }
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        OffHeapStore store = new OffHeapStore(20, 10);
+        store.put("a", new byte[10]);
+        store.put("b", new byte[10]);
+        assertNotNull(store.get("a"));
+        store.put("c", new byte[10]);
+        assertTrue(store.contains("a"));
+        assertFalse(store.contains("b"));
+        assertEquals(1, store.getEvictions());
+        assertEquals(20, store.getAllocatedBytes());
+    }
+
+    @Test
+    void testViewIsValidAfterEviction() {
+        OffHeapStore store = new OffHeapStore(10, 10);
+        ByteBuffer a = store.put("a", new byte[] { 1, 2, 3, 4, 5, 6 });
+        store.put("b", new byte[] { 9, 9, 9, 9, 9, 9 });
+        assertFalse(store.contains("a"));
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6 }), a);
+    }
+
+    @Test
+    void testEvictsWholeSlab() {
+        OffHeapStore store = new OffHeapStore(20, 10);
+        store.put("a", new byte[5]);
+        store.put("b", new byte[5]);
+        store.put("c", new byte[10]);
+        store.put("d", new byte[5]);
+        assertFalse(store.contains("a"));
+        assertFalse(store.contains("b"));
+        assertTrue(store.contains("c"));
+        assertEquals(2, store.getEvictions());
+    }
+
+    @Test
+    void testTailOfSlabIsFilled() {
+        OffHeapStore store = new OffHeapStore(100, 10);
+        store.put("a", new byte[8]);
+        store.put("b", new byte[5]);
+        store.put("c", new byte[2]);
+        store.put("d", new byte[5]);
+        assertEquals(2, store.getSlabs());
+        assertEquals(20, store.getAllocatedBytes());
+    }
+
+    @Test
+    void testEvictedSlabIsCountedUntilReleased() {
+        OffHeapStore store = new OffHeapStore(10, 10);
+        ByteBuffer a = store.put("a", new byte[6]);
+        assertNull(store.put("b", new byte[6]));
+        assertEquals(0, store.getSlabs());
+        assertEquals(10, store.getAllocatedBytes());
+        assertEquals(6, a.remaining());
+        a = null;
+        Awaitility.await().atMost(Durations.TEN_SECONDS).until(() -> {
+            System.gc();
+            return store.put("b", new byte[6]) != null;
+        });
+        assertEquals(10, store.getAllocatedBytes());
+        assertEquals(1, store.getSlabs());
+    }
+
+    @Test
+    void testRemovingLastBlobReleasesSlab() {
+        OffHeapStore store = new OffHeapStore(100, 10);
+        store.put("a", new byte[8]);
+        store.put("b", new byte[5]);
+        store.put("c", new byte[6]);
+        assertEquals(3, store.getSlabs());
+        store.remove("a");
+        assertEquals(2, store.getSlabs());
+        assertEquals(11, store.getLiveBytes());
+    }
+
+    @Test
+    void testTooLargeBlobIsNotStored() {
+        OffHeapStore store = new OffHeapStore(10, 5);
+        assertNotNull(store.put("a", new byte[8]));
+        assertNull(store.put("b", new byte[11]));
+        assertEquals(8, store.getLiveBytes());
+    }
+
+    @Test
+    void testCapacityMustHoldASlab() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapStore(5, 10));
+    }
+
+    @Test
+    void testProviderReloadsEvictedBlob() throws IOException {
+        OffHeapStore store = new OffHeapStore(10, 10);
+        BlobCache cache = new BlobCache();
+        cache.setOffHeapStore(store);
+        AtomicInteger reloads = new AtomicInteger();
+        ObjectStreamProvider provider = cache.provider("a", () -> new byte[] { 1, 2, 3 }, () -> {
+            reloads.incrementAndGet();
+            return new byte[] { 1, 2, 3 };
+        });
+        assertTrue(provider instanceof OffHeapObjectStreamProvider);
+        assertEquals(3, provider.getSize());
+        assertEquals(0, reloads.get());
+        store.remove("a");
+        assertArrayEquals(new byte[] { 1, 2, 3 }, provider.asByteArray());
+        assertEquals(1, reloads.get());
+        assertTrue(store.contains("a"));
+        assertTrue(cache.contains("a"));
+        assertEquals(1, cache.getMisses());
+        cache.provider("a", () -> new byte[] { 4 }, () -> new byte[] { 4 });
+        assertEquals(1, cache.getHits());
+    }
+}
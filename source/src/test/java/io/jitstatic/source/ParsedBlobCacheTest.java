@@ -0,0 +1,125 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.StorageParseException;
+
+public class ParsedBlobCacheTest {
+
+    @Test
+    public void testBlobIsParsedOnce() throws IOException {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(10);
+        AtomicInteger parsed = new AtomicInteger();
+        MetaData first = cache.get("1", () -> {
+            parsed.incrementAndGet();
+            return new MetaData(Set.of(), Set.of());
+        });
+        MetaData second = cache.get("1", () -> {
+            parsed.incrementAndGet();
+            return new MetaData(Set.of(), Set.of());
+        });
+        assertSame(first, second);
+        assertEquals(1, parsed.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testParseFailuresAreRemembered() {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(10);
+        AtomicInteger parsed = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            assertThrows(StorageParseException.class, () -> cache.get("1", () -> {
+                parsed.incrementAndGet();
+                throw new StorageParseException("broken", new IOException());
+            }));
+        }
+        assertEquals(1, parsed.get());
+    }
+
+    @Test
+    public void testReadFailuresAreNotRemembered() throws IOException {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(10);
+        assertThrows(IOException.class, () -> cache.get("1", () -> {
+            throw new IOException("unreadable");
+        }));
+        assertEquals(0, cache.getEntries());
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        assertSame(metaData, cache.get("1", () -> metaData));
+    }
+
+    @Test
+    public void testCacheIsBounded() throws IOException {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(2);
+        for (int i = 0; i < 5; i++) {
+            cache.get(String.valueOf(i), () -> new MetaData(Set.of(), Set.of()));
+        }
+        assertEquals(2, cache.getEntries());
+        AtomicInteger parsed = new AtomicInteger();
+        cache.get("4", () -> {
+            parsed.incrementAndGet();
+            return new MetaData(Set.of(), Set.of());
+        });
+        assertEquals(0, parsed.get());
+    }
+
+    @Test
+    public void testPutValueIsNotParsedAgain() throws IOException {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(10);
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        cache.put("1", metaData);
+        assertSame(metaData, cache.get("1", () -> {
+            throw new IOException("should not be parsed");
+        }));
+        assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void testCacheIsBoundedByBytes() throws IOException {
+        ParsedBlobCache<MetaData> cache = new ParsedBlobCache<>(10, 100, 60);
+        cache.get("1", 50, () -> new MetaData(Set.of(), Set.of()));
+        cache.put("2", 40, new MetaData(Set.of(), Set.of()));
+        assertEquals(90, cache.getBytes());
+        cache.get("3", 30, () -> new MetaData(Set.of(), Set.of()));
+        assertEquals(2, cache.getEntries());
+        assertEquals(70, cache.getBytes());
+        AtomicInteger parsed = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            cache.get("4", 61, () -> {
+                parsed.incrementAndGet();
+                return new MetaData(Set.of(), Set.of());
+            });
+        }
+        assertEquals(2, parsed.get());
+        assertEquals(2, cache.getEntries());
+    }
+}
@@ -56,7 +56,7 @@ public class SourceInfoTest {
         when(ish.getInputStreamProvider()).thenReturn(() -> new ByteArrayInputStream(new byte[] { 1 }));
         SourceFileData sdf = new SourceFileData(fois, ish);
         MetaFileData mfd = new MetaFileData(fois2, ish2);
-        SourceInfo si = new SourceInfo(mfd, sdf);
+        SourceInfo si = new SourceInfo(mfd, sdf, new SourceCaches());
         assertArrayEquals(toByteArray(new ByteArrayInputStream(new byte[] { 1 })), toByteArray(si.getStreamProvider().getInputStream()));
         assertEquals(SHA_1, si.getSourceVersion());
     }
@@ -75,7 +75,7 @@ public class SourceInfoTest {
         when(inputStreamHolder.getSize()).thenReturn(1_000_000L);
         when(inputStreamHolder.getInputStreamProvider()).thenReturn(() -> new ByteArrayInputStream(new byte[] { 1 }));
         when(sourceFileData.getInputStreamHolder()).thenReturn(inputStreamHolder);
-        SourceInfo si = new SourceInfo(metaFileData, sourceFileData);
+        SourceInfo si = new SourceInfo(metaFileData, sourceFileData, new SourceCaches());
         ObjectStreamProvider sourceProvider = si.getStreamProvider();
         assertTrue(sourceProvider instanceof LargeObjectStreamProvider);
         assertTrue(sourceProvider.getSize() == 1_000_000L);
@@ -88,7 +88,7 @@ public class SourceInfoTest {
         InputStreamHolder inputStreamHolder = mock(InputStreamHolder.class);
         when(inputStreamHolder.getInputStreamProvider()).thenReturn(() -> new ByteArrayInputStream(new byte[] { 1 }));
         when(sourceFileData.getInputStreamHolder()).thenReturn(inputStreamHolder);
-        SourceInfo si = new SourceInfo(metaFileData, sourceFileData);
+        SourceInfo si = new SourceInfo(metaFileData, sourceFileData, new SourceCaches());
         ObjectStreamProvider sourceProvider = si.getStreamProvider();
         assertTrue(sourceProvider instanceof SmallObjectStreamProvider);
         assertTrue(sourceProvider.getSize() == 1L);
@@ -104,7 +104,7 @@ public class SourceInfoTest {
         when(ish.exception()).thenReturn(new IOException("Fake IO"));
         SourceFileData sdf = new SourceFileData(fois, ish);
         MetaFileData mfd = new MetaFileData(fois2, ish2);
-        SourceInfo si = new SourceInfo(mfd, sdf);
+        SourceInfo si = new SourceInfo(mfd, sdf, new SourceCaches());
         assertThrows(RuntimeException.class, () -> si.getStreamProvider().getInputStream());
     }
 
@@ -118,7 +118,7 @@ public class SourceInfoTest {
         when(ish.exception()).thenReturn(ioException);
         SourceFileData sdf = new SourceFileData(fois, ish);
         MetaFileData mfd = new MetaFileData(fois2, ish2);
-        SourceInfo si = new SourceInfo(mfd, sdf);
+        SourceInfo si = new SourceInfo(mfd, sdf, new SourceCaches());
         assertThrows(RuntimeException.class, () -> si.getStreamProvider().getInputStream());
     }
 
@@ -126,7 +126,7 @@ public class SourceInfoTest {
     public void testNotMasterdata() {
         MetaFileData meta = mock(MetaFileData.class);
         when(meta.isMasterMetaData()).thenReturn(false).thenReturn(true);
-        assertThrows(IllegalArgumentException.class, () -> new SourceInfo(meta, null));
-        assertNull(new SourceInfo(meta, null).getSourceVersion());
+        assertThrows(IllegalArgumentException.class, () -> new SourceInfo(meta, null, new SourceCaches()));
+        assertNull(new SourceInfo(meta, null, new SourceCaches()).getSourceVersion());
     }
 }
@@ -0,0 +1,141 @@
+package io.jitstatic.source;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
+
+@ExtendWith(TemporaryFolderExtension.class)
+class SpillCacheTest {
+
+    private static final String SHA_1 = "5f12e3846fef8c259efede1a55e12667effcc461";
+    private static final String SHA_2 = "5f12e3846fef8c259efede1a55e12667effcc462";
+    private static final String SHA_3 = "5f12e3846fef8c259efede1a55e12667effcc463";
+
+    private TemporaryFolder tmpFolder;
+
+    @Test
+    void testBlobIsInflatedOnce() throws IOException {
+        SpillCache cache = new SpillCache(getFolder(), 100);
+        AtomicInteger opened = new AtomicInteger();
+        byte[] data = new byte[] { 1, 2, 3, 4 };
+        ThrowingSupplier<InputStream, IOException> source = () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(data);
+        };
+        SpilledObjectStreamProvider provider = new SpilledObjectStreamProvider(cache, SHA_1, data.length, source);
+        assertArrayEquals(data, provider.asByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.transferTo(out);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(1, opened.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(8, cache.getBytesServed());
+        assertEquals(4, cache.getBytes());
+    }
+
+    @Test
+    void testTransferRange() throws IOException {
+        SpillCache cache = new SpillCache(getFolder(), 100);
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SpilledObjectStreamProvider(cache, SHA_1, data.length, () -> new ByteArrayInputStream(data)).transferTo(out, 3, 4);
+        assertArrayEquals(new byte[] { 3, 4, 5, 6 }, out.toByteArray());
+        assertEquals(4, cache.getBytesServed());
+        out.reset();
+        new SpilledObjectStreamProvider(new SpillCache(getFolder(), 1), SHA_1, data.length, () -> new ByteArrayInputStream(data)).transferTo(out, 8, 4);
+        assertArrayEquals(new byte[] { 8, 9 }, out.toByteArray());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() throws IOException {
+        Path folder = getFolder();
+        SpillCache cache = new SpillCache(folder, 10);
+        cache.get(SHA_1, () -> new ByteArrayInputStream(new byte[4]));
+        cache.get(SHA_2, () -> new ByteArrayInputStream(new byte[4]));
+        cache.get(SHA_1, () -> new ByteArrayInputStream(new byte[4]));
+        cache.get(SHA_3, () -> new ByteArrayInputStream(new byte[4]));
+        assertEquals(2, cache.getEntries());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(Files.exists(folder.resolve(SHA_1)));
+        assertFalse(Files.exists(folder.resolve(SHA_2)));
+    }
+
+    @Test
+    void testTooLargeBlobIsServedFromSource() throws IOException {
+        Path folder = getFolder();
+        SpillCache cache = new SpillCache(folder, 2);
+        byte[] data = new byte[] { 1, 2, 3 };
+        assertNull(cache.get(SHA_1, () -> new ByteArrayInputStream(data)));
+        SpilledObjectStreamProvider provider = new SpilledObjectStreamProvider(cache, SHA_1, data.length, () -> new ByteArrayInputStream(data));
+        assertArrayEquals(data, provider.asByteArray());
+        assertEquals(0, cache.getEntries());
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testCacheIsIndexedOnStartup() throws IOException {
+        Path folder = getFolder();
+        new SpillCache(folder, 100).get(SHA_1, () -> new ByteArrayInputStream(new byte[5]));
+        Files.write(folder.resolve(SHA_2 + "123.tmp"), new byte[5]);
+        SpillCache cache = new SpillCache(folder, 100);
+        assertEquals(1, cache.getEntries());
+        assertEquals(5, cache.getBytes());
+        assertEquals(folder.resolve(SHA_1), cache.get(SHA_1, () -> {
+            throw new IOException("Should not be read");
+        }));
+        assertFalse(Files.exists(folder.resolve(SHA_2 + "123.tmp")));
+    }
+
+    @Test
+    void testNotABlobId() throws IOException {
+        SpillCache cache = new SpillCache(getFolder(), 100);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("../key", () -> new ByteArrayInputStream(new byte[1])));
+    }
+
+    private Path getFolder() throws IOException {
+        return tmpFolder.createTemporaryDirectory().toPath();
+    }
+}
@@ -0,0 +1,176 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The set of most accessed (ref, key) entries, stored in a small tab separated file so it survives restarts. The size of a key is stored when
+ * it's known so that prefetching can keep within its budget without loading the key first.
+ */
+public class HotSet {
+
+    private static final String SEPARATOR = "\t";
+    private final Path file;
+    private final int size;
+    private final long interval;
+    private final Progress progress = new Progress();
+
+    public HotSet(final Path file, final int size, final long interval) {
+        this.file = Objects.requireNonNull(file);
+        this.size = size;
+        this.interval = interval;
+    }
+
+    public Path getFile() { return file; }
+
+    public int getSize() { return size; }
+
+    public long getInterval() { return interval; }
+
+    public Progress getProgress() { return progress; }
+
+    public List<HotKey> read() throws IOException {
+        final List<HotKey> hotKeys = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && hotKeys.size() < size) {
+                final String[] parts = line.split(SEPARATOR, 4);
+                try {
+                    if (parts.length == 4 && isNumber(parts[1])) {
+                        hotKeys.add(new HotKey(parts[2], parts[3], Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+                    } else if (parts.length >= 3) {
+                        // Written before sizes were stored
+                        final String[] old = line.split(SEPARATOR, 3);
+                        hotKeys.add(new HotKey(old[1], old[2], Long.parseLong(old[0])));
+                    }
+                } catch (NumberFormatException ignore) {
+                    // Skip broken lines
+                }
+            }
+        } catch (NoSuchFileException ignore) {
+            return List.of();
+        }
+        return hotKeys;
+    }
+
+    public void write(final List<HotKey> hotKeys) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+                for (HotKey hotKey : top(hotKeys)) {
+                    writer.write(hotKey.getCount() + SEPARATOR + hotKey.getSize() + SEPARATOR + hotKey.getRef() + SEPARATOR + hotKey.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static boolean isNumber(final String part) {
+        return !part.isEmpty() && part.chars().allMatch(c -> Character.isDigit(c) || c == '-');
+    }
+
+    List<HotKey> top(final List<HotKey> hotKeys) {
+        final List<HotKey> sorted = new ArrayList<>(hotKeys);
+        sorted.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+        return sorted.size() > size ? sorted.subList(0, size) : sorted;
+    }
+
+    public static class HotKey {
+        public static final long UNKNOWN_SIZE = -1;
+        private final String ref;
+        private final String key;
+        private final long count;
+        private final long size;
+
+        public HotKey(final String ref, final String key, final long count) {
+            this(ref, key, count, UNKNOWN_SIZE);
+        }
+
+        public HotKey(final String ref, final String key, final long count, final long size) {
+            this.ref = Objects.requireNonNull(ref);
+            this.key = Objects.requireNonNull(key);
+            this.count = count;
+            this.size = size;
+        }
+
+        public String getRef() { return ref; }
+
+        public String getKey() { return key; }
+
+        public long getCount() { return count; }
+
+        /**
+         * @return the size of the key's content, or {@link #UNKNOWN_SIZE} if it wasn't loaded
+         */
+        public long getSize() { return size; }
+    }
+
+    public static class Progress {
+        private final AtomicReference<String> state = new AtomicReference<>("idle");
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger loaded = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+
+        void started(final int keys) {
+            total.set(keys);
+            state.set("running");
+        }
+
+        void loaded(final long size) {
+            loaded.incrementAndGet();
+            bytes.addAndGet(size);
+        }
+
+        void finished(final String finalState) {
+            state.set(finalState);
+        }
+
+        public String getState() { return state.get(); }
+
+        public int getLoaded() { return loaded.get(); }
+
+        public Map<String, Object> toMap() {
+            return Map.of("state", state.get(), "total", total.get(), "loaded", loaded.get(), "bytes", bytes.get());
+        }
+    }
+}
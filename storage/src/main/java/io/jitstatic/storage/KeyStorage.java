@@ -20,19 +20,27 @@ package io.jitstatic.storage;
  * #L%
  */
 
+import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -40,6 +48,7 @@ import javax.inject.Singleton;
 
 import org.cache2k.Cache;
 import org.cache2k.Cache2kBuilder;
+import org.cache2k.CacheEntry;
 import org.cache2k.integration.CacheLoader;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.lib.Constants;
@@ -48,7 +57,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck.ResultBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.spencerwi.either.Either;
 
 import io.jitstatic.CommitMetaData;
@@ -67,13 +79,24 @@ import io.jitstatic.hosted.events.ReloadRef;
 import io.jitstatic.hosted.events.ReloadRefEventListener;
 import io.jitstatic.hosted.events.StorageAddRefEventListener;
 import io.jitstatic.injection.configuration.JitstaticConfiguration;
+import io.jitstatic.injection.configuration.hosted.HostedFactory;
 import io.jitstatic.injection.executors.DefaultExecutor;
 import io.jitstatic.injection.executors.WorkStealer;
+import io.jitstatic.source.BlobCache;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.source.ParsedBlobCache;
 import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.OffHeapStore;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
+import io.jitstatic.source.SpillCache;
+import io.jitstatic.storage.HotSet.HotKey;
 import io.jitstatic.storage.ref.ReadOnlyRefHolder;
 import io.jitstatic.storage.ref.RefHolder;
 import io.jitstatic.storage.ref.RefLockService;
+import io.jitstatic.storage.ref.TagSnapshots;
+import io.jitstatic.utils.KeyPaths;
 import io.jitstatic.utils.NamingThreadFactory;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.ShouldNeverHappenException;
@@ -95,26 +118,107 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
     private final String rootUser;
     private final ExecutorService refCleaner;
     private final ExecutorService executor;
+    private final HotSet hotSet;
+    private final long prefetchBytes;
+    private final ScheduledExecutorService scheduler;
+    private final long refIdleTimeout;
+    private final Meter fastReads;
+    private final Meter asyncReads;
 
     @Inject
     public KeyStorage(final Source source, final HashService hashService, final RefLockService clusterService, final JitstaticConfiguration config,
-            final @DefaultExecutor ExecutorService executor, @WorkStealer ExecutorService workStealer, final MetricRegistry metrics) {
+            final @DefaultExecutor ExecutorService executor, @WorkStealer ExecutorService workStealer, final MetricRegistry metrics,
+            final SourceCaches caches) {
         this(source, config.getHostedFactory().getBranch(), hashService, clusterService, config.getHostedFactory()
-                .getUserName(), executor, workStealer, metrics);
+                .getUserName(), executor, workStealer, metrics, new RefMatcher(config.getHostedFactory().getWarmUpRefs()), config.getHostedFactory()
+                        .getWarmUpBytes(), hotSet(config), config.getHostedFactory().getRefIdleTimeout(), new TagSnapshots(config.getHostedFactory()
+                                .getWarmUpBytes()), caches);
+    }
+
+    private static HotSet hotSet(final JitstaticConfiguration config) {
+        final HostedFactory hostedFactory = config.getHostedFactory();
+        if (hostedFactory.getHotSetSize() == 0) {
+            return null;
+        }
+        return new HotSet(hostedFactory.getBasePath().resolve(".git").resolve("jitstatic").resolve("hotset"), hostedFactory.getHotSetSize(), hostedFactory
+                .getHotSetInterval());
     }
 
     public KeyStorage(final Source source, final String defaultRef, final HashService hashService, final RefLockService clusterService, final String rootUser,
-            final ExecutorService executor, final ExecutorService workStealingExecutor, final MetricRegistry metrics) {
+            final ExecutorService executor, final ExecutorService workStealingExecutor, final MetricRegistry metrics, final SourceCaches caches) {
+        this(source, defaultRef, hashService, clusterService, rootUser, executor, workStealingExecutor, metrics, RefMatcher.NONE, 0, null, 0, null,
+                caches);
+    }
+
+    public KeyStorage(final Source source, final String defaultRef, final HashService hashService, final RefLockService clusterService, final String rootUser,
+            final ExecutorService executor, final ExecutorService workStealingExecutor, final MetricRegistry metrics, final Predicate<String> warmUpRefs,
+            final long warmUpBytes, @Nullable final HotSet hotSet, final long refIdleTimeout, @Nullable final TagSnapshots tagSnapshots,
+            final SourceCaches caches) {
         this.source = Objects.requireNonNull(source, "Source cannot be null");
         this.defaultRef = defaultRef == null ? Constants.R_HEADS + Constants.MASTER : defaultRef;
         this.rootUser = Objects.requireNonNull(rootUser);
-        this.cache = getMap(source, hashService, clusterService, workStealingExecutor);
+        this.cache = getMap(source, hashService, clusterService, workStealingExecutor, Objects.requireNonNull(warmUpRefs), warmUpBytes, tagSnapshots);
         this.executor = Objects.requireNonNull(executor);
         this.refCleaner = new InstrumentedExecutorService(Executors.newSingleThreadExecutor(new NamingThreadFactory("RefCleaner")), Objects
                 .requireNonNull(metrics));
+        this.hotSet = hotSet;
+        this.prefetchBytes = warmUpBytes;
+        this.refIdleTimeout = refIdleTimeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("KeyStorageScheduler"));
+        this.fastReads = metrics.meter(MetricRegistry.name(KeyStorage.class, "fast-path-reads"));
+        this.asyncReads = metrics.meter(MetricRegistry.name(KeyStorage.class, "async-reads"));
+        registerCacheMetrics(metrics, caches);
         addRef(this.defaultRef);
     }
 
+    private static void registerCacheMetrics(final MetricRegistry metrics, final SourceCaches caches) {
+        final BlobCache blobCache = caches.getBlobCache();
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "hits"), () -> blobCache::getHits);
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "misses"), () -> blobCache::getMisses);
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "entries"), () -> blobCache::getEntries);
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "bytes"), () -> blobCache::getBytes);
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "saved-bytes"), () -> blobCache::getSavedBytes);
+        metrics.gauge(MetricRegistry.name(BlobCache.class, "dedup-ratio"), () -> blobCache::getDedupRatio);
+        final ParsedBlobCache<MetaData> parsedMetaData = caches.getMetaData();
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "metadata", "hits"), () -> parsedMetaData::getHits);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "metadata", "misses"), () -> parsedMetaData::getMisses);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "metadata", "entries"), () -> parsedMetaData::getEntries);
+        final ParsedBlobCache<UserData> parsedUsers = caches.getUsers();
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "users", "hits"), () -> parsedUsers::getHits);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "users", "misses"), () -> parsedUsers::getMisses);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "users", "entries"), () -> parsedUsers::getEntries);
+        final ParsedBlobCache<JsonNode> parsedDocuments = caches.getDocuments();
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "documents", "hits"), () -> parsedDocuments::getHits);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "documents", "misses"), () -> parsedDocuments::getMisses);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "documents", "entries"), () -> parsedDocuments::getEntries);
+        metrics.gauge(MetricRegistry.name(ParsedBlobCache.class, "documents", "bytes"), () -> parsedDocuments::getBytes);
+        metrics.gauge(MetricRegistry.name(OffHeapStore.class, "capacity"), () -> () -> offHeap(blobCache, OffHeapStore::getCapacity));
+        metrics.gauge(MetricRegistry.name(OffHeapStore.class, "allocated-bytes"), () -> () -> offHeap(blobCache, OffHeapStore::getAllocatedBytes));
+        metrics.gauge(MetricRegistry.name(OffHeapStore.class, "live-bytes"), () -> () -> offHeap(blobCache, OffHeapStore::getLiveBytes));
+        metrics.gauge(MetricRegistry.name(OffHeapStore.class, "entries"), () -> () -> offHeap(blobCache, OffHeapStore::getEntries));
+        metrics.gauge(MetricRegistry.name(OffHeapStore.class, "evictions"), () -> () -> offHeap(blobCache, OffHeapStore::getEvictions));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "hits"), () -> () -> spill(blobCache, SpillCache::getHits));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "misses"), () -> () -> spill(blobCache, SpillCache::getMisses));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "hit-ratio"), () -> () -> {
+            final SpillCache cache = blobCache.getSpillCache();
+            return cache == null ? 0.0 : cache.getHitRatio();
+        });
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "bytes-served"), () -> () -> spill(blobCache, SpillCache::getBytesServed));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "bytes"), () -> () -> spill(blobCache, SpillCache::getBytes));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "entries"), () -> () -> spill(blobCache, SpillCache::getEntries));
+        metrics.gauge(MetricRegistry.name(SpillCache.class, "evictions"), () -> () -> spill(blobCache, SpillCache::getEvictions));
+    }
+
+    private static long spill(final BlobCache blobCache, final ToLongFunction<SpillCache> metric) {
+        final SpillCache cache = blobCache.getSpillCache();
+        return cache == null ? 0 : metric.applyAsLong(cache);
+    }
+
+    private static long offHeap(final BlobCache blobCache, final ToLongFunction<OffHeapStore> metric) {
+        final OffHeapStore store = blobCache.getOffHeapStore();
+        return store == null ? 0 : metric.applyAsLong(store);
+    }
+
     @PostConstruct
     public void postConstruct() {
         // TODO Change this to HK2 event system
@@ -160,17 +264,42 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
             return CompletableFuture.completedFuture(Optional.empty());
         }
         final String finalRef = checkRef(ref);
+        final Optional<StoreInfo> cached = peekKey(key, finalRef);
+        if (cached != null) {
+            fastReads.mark();
+            return CompletableFuture.completedFuture(cached);
+        }
+        asyncReads.mark();
         return CompletableFuture.supplyAsync(() -> {
-            RefHolder refHolder;
             try {
-                refHolder = getRefHolder(finalRef);
+                return onRefHolder(finalRef, refHolder -> refHolder.readKey(key));
             } catch (RefNotFoundException e) {
                 throw new WrappingAPIException(e);
             }
-            return refHolder.readKey(key);
         }, executor).handleAsync((o, t) -> unwrap(o, t, finalRef), executor);
     }
 
+    /*
+     * Keys already cached are answered on the calling thread, only a miss is worth the hops through the executor
+     */
+    @Nullable
+    private Optional<StoreInfo> peekKey(final String key, final String ref) {
+        while (true) {
+            final RefHolder refHolder = cache.peek(ref);
+            if (refHolder == null) {
+                return null;
+            }
+            if (refHolder.lease()) {
+                try {
+                    return refHolder.peekKey(key);
+                } finally {
+                    refHolder.release();
+                }
+            }
+            // Retired as idle, it's about to be removed
+        }
+    }
+
     private Optional<StoreInfo> unwrap(final Optional<StoreInfo> o, final Throwable t, final String ref) {
         if (t != null) {
             if (t instanceof CompletionException) {
@@ -203,20 +332,54 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
     }
 
     private boolean checkKeyIsDotFile(final String key) {
-        return Tree.of(List.of(Pair.of(key, false))).accept(Tree.DOT_FINDER);
+        return KeyPaths.hasDotSegment(key);
     }
 
     private RefHolder getRefHolder(final String finalRef) throws RefNotFoundException {
-        final RefHolder refHolder = cache.peek(finalRef);
+        final RefHolder refHolder = findRefHolder(finalRef);
         if (refHolder == null) {
             throw new RefNotFoundException(finalRef);
         }
         return refHolder;
     }
 
+    /*
+     * Idle refs are retired by evictIdleRefs, a holder is leased while it's used so it isn't closed under a request. A holder retired before it
+     * could be leased is looked up again.
+     */
+    private <T> T onRefHolder(final String finalRef, final Function<RefHolder, T> action) throws RefNotFoundException {
+        while (true) {
+            final RefHolder refHolder = getRefHolder(finalRef);
+            if (refHolder.lease()) {
+                try {
+                    return action.apply(refHolder);
+                } finally {
+                    refHolder.release();
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private RefHolder findRefHolder(final String finalRef) {
+        RefHolder refHolder = cache.peek(finalRef);
+        if (refHolder == null) {
+            if (!source.refExists(finalRef)) {
+                return null;
+            }
+            refHolder = cache.get(finalRef);
+        }
+        refHolder.touch();
+        return refHolder;
+    }
+
     @Override
     public void close() {
         shutDownExecutor(refCleaner);
+        shutDownExecutor(scheduler);
+        if (hotSet != null) {
+            writeHotSet();
+        }
         StreamSupport.stream(cache.entries().spliterator(), true).forEach(ce -> ce.getValue().close());
         cache.close();
         try {
@@ -249,8 +412,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
         Objects.requireNonNull(key, KEY_CANNOT_BE_NULL);
         Objects.requireNonNull(data, DATA_CANNOT_BE_NULL);
         Objects.requireNonNull(oldVersion, "oldVersion cannot be null");
-        final RefHolder refHolder = getRefHolder(checkRef(ref));
-        return refHolder.updateKey(key, data, oldVersion, commitMetaData);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.updateKey(key, data, oldVersion, commitMetaData));
     }
 
     @Override
@@ -265,8 +427,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
         }
 
         final String finalRef = checkRef(branch);
-        final RefHolder refStore = getRefHolder(finalRef);
-        return refStore.addKey(key, data, metaData, commitMetaData).thenApplyAsync(result -> {
+        return onRefHolder(finalRef, refStore -> refStore.addKey(key, data, metaData, commitMetaData)).thenApplyAsync(result -> {
             if (result.isRight()) {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, finalRef));
             }
@@ -285,8 +446,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
         if (checkKeyIsDotFile(key)) {
             throw new WrappingAPIException(new UnsupportedOperationException(key));
         }
-        final RefHolder refHolder = getRefHolder(checkRef(ref));
-        return refHolder.updateMetadata(key, metaData, oldMetaDataVersion, commitMetaData);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.updateMetadata(key, metaData, oldMetaDataVersion, commitMetaData));
     }
 
     @Override
@@ -304,21 +464,147 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
             // We don't support deleting master .metadata files right now
             throw new WrappingAPIException(new UnsupportedOperationException(key));
         }
-        final RefHolder refHolder = cache.peek(finalRef);
-        if (refHolder != null) {
-            try {
-                return refHolder.deleteKey(key, commitMetaData);
-            } catch (UncheckedIOException ioe) {
-                consumeError(ioe);
-            }
+        try {
+            return onRefHolder(finalRef, refHolder -> refHolder.deleteKey(key, commitMetaData));
+        } catch (RefNotFoundException ignore) {
+            // Nothing to delete
+        } catch (UncheckedIOException ioe) {
+            consumeError(ioe);
         }
         return CompletableFuture.completedFuture(null);
     }
 
+    @Override
+    public CompletableFuture<Either<List<String>, FailedToLock>> commit(final String ref, final List<KeyChange> changes, final CommitMetaData commitMetaData)
+            throws RefNotFoundException {
+        Objects.requireNonNull(commitMetaData);
+        checkChanges(changes);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.commit(changes, commitMetaData));
+    }
+
+    @Override
+    public KeyImport newImport() {
+        return source.newImport();
+    }
+
+    @Override
+    public CompletableFuture<Either<String, FailedToLock>> importKeys(final String ref, final KeyImport keys, final CommitMetaData commitMetaData)
+            throws RefNotFoundException {
+        Objects.requireNonNull(keys);
+        Objects.requireNonNull(commitMetaData);
+        if (keys.getKeys().isEmpty()) {
+            throw new WrappingAPIException(new IllegalArgumentException("There are no changes"));
+        }
+        final TreeSet<String> checked = new TreeSet<>();
+        for (String key : keys.getKeys()) {
+            checkChangedKey(key, false, checked);
+        }
+        checkKeysAndDirectories(checked);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.importKeys(keys, commitMetaData));
+    }
+
+    @Override
+    public CompletableFuture<Either<List<Pair<String, String>>, FailedToLock>> copy(final String from, final String fromRef, final String to,
+            final String ref, final boolean move, @Nullable final String version, final CommitMetaData commitMetaData) throws RefNotFoundException {
+        Objects.requireNonNull(from, KEY_CANNOT_BE_NULL);
+        Objects.requireNonNull(to, KEY_CANNOT_BE_NULL);
+        Objects.requireNonNull(commitMetaData);
+        final String finalFromRef = checkRef(fromRef);
+        final String finalRef = checkRef(ref);
+        if (from.endsWith("/") != to.endsWith("/")) {
+            throw new WrappingAPIException(new IllegalArgumentException(from + " and " + to + " have to be both keys or both directories"));
+        }
+        if (checkKeyIsDotFile(from) || checkKeyIsDotFile(to)) {
+            throw new WrappingAPIException(new UnsupportedOperationException(checkKeyIsDotFile(from) ? from : to));
+        }
+        if (finalFromRef.equals(finalRef)) {
+            final String fromPrefix = "/".equals(from) ? "" : from;
+            final String toPrefix = "/".equals(to) ? "" : to;
+            if (from.equals(to) || (move && from.endsWith("/") && (toPrefix.startsWith(fromPrefix) || fromPrefix.startsWith(toPrefix)))) {
+                throw new WrappingAPIException(new IllegalArgumentException(from + " can't be moved into " + to));
+            }
+        } else if (move) {
+            throw new WrappingAPIException(new IllegalArgumentException("Keys can only be moved within a ref"));
+        }
+        if (!source.refExists(finalFromRef)) {
+            throw new RefNotFoundException(finalFromRef);
+        }
+        return onRefHolder(finalRef, refHolder -> refHolder.copy(from, finalFromRef, to, move, version, commitMetaData));
+    }
+
+    @Override
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> deletePath(final String directory, final String ref,
+            @Nullable final String version, final boolean dryRun, final CommitMetaData commitMetaData) throws RefNotFoundException {
+        checkDirectory(directory);
+        Objects.requireNonNull(commitMetaData);
+        if ("/".equals(directory)) {
+            throw new WrappingAPIException(new IllegalArgumentException("The root can't be deleted"));
+        }
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.deletePath(directory, version, dryRun, commitMetaData));
+    }
+
+    @Override
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> rewriteMetaData(final String directory, final String ref,
+            final MetaData metaData, @Nullable final String version, final boolean dryRun, final CommitMetaData commitMetaData)
+            throws RefNotFoundException {
+        checkDirectory(directory);
+        Objects.requireNonNull(metaData);
+        Objects.requireNonNull(commitMetaData);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.rewriteMetaData(directory, metaData, version, dryRun, commitMetaData));
+    }
+
+    private void checkDirectory(final String directory) {
+        Objects.requireNonNull(directory, KEY_CANNOT_BE_NULL);
+        if (!directory.endsWith("/")) {
+            throw new WrappingAPIException(new IllegalArgumentException(directory + " is not a directory"));
+        }
+        if (checkKeyIsDotFile(directory)) {
+            throw new WrappingAPIException(new UnsupportedOperationException(directory));
+        }
+    }
+
+    private void checkChanges(final List<KeyChange> changes) {
+        Objects.requireNonNull(changes);
+        if (changes.isEmpty()) {
+            throw new WrappingAPIException(new IllegalArgumentException("There are no changes"));
+        }
+        final TreeSet<String> keys = new TreeSet<>();
+        for (KeyChange change : changes) {
+            checkChangedKey(change.getKey(), change.getType() == KeyChange.Type.METADATA, keys);
+        }
+        checkKeysAndDirectories(keys);
+    }
+
+    private void checkChangedKey(final String key, final boolean directoryAllowed, final TreeSet<String> keys) {
+        Objects.requireNonNull(key, KEY_CANNOT_BE_NULL);
+        if (checkKeyIsDotFile(key) || (!directoryAllowed && key.endsWith("/"))) {
+            throw new WrappingAPIException(new UnsupportedOperationException(key));
+        }
+        if (!keys.add(key)) {
+            throw new WrappingAPIException(new IllegalArgumentException(key + " is changed more than once"));
+        }
+    }
+
+    private static void checkKeysAndDirectories(final TreeSet<String> keys) {
+        for (String key : keys) {
+            // A key can't be both a file and a directory
+            final String directory = key.endsWith("/") ? key : key + "/";
+            final String inside = keys.higher(directory);
+            if (!key.equals(directory) && (keys.contains(directory) || (inside != null && inside.startsWith(directory)))) {
+                throw new WrappingAPIException(new IllegalArgumentException(key + " is both a key and a directory"));
+            }
+        }
+    }
+
+    @Override
+    public Optional<byte[]> readBlob(final String key, final String ref, final String blobId, final int maxBytes) throws RefNotFoundException {
+        return Optional.ofNullable(source.readBlob(Objects.requireNonNull(key), checkRef(ref), Objects.requireNonNull(blobId), maxBytes));
+    }
+
     @Override
     public CompletableFuture<List<Pair<String, StoreInfo>>> getListForRef(final List<Pair<String, Boolean>> keyPairs,
             final String finalRef) throws RefNotFoundException {
-        final List<CompletableFuture<List<Pair<String, StoreInfo>>>> collected = Tree.of(Objects.requireNonNull(keyPairs)).accept(Tree.EXTRACTOR).stream()
+        final List<CompletableFuture<List<Pair<String, StoreInfo>>>> collected = KeyPaths.dedupe(Objects.requireNonNull(keyPairs)).stream()
                 .map(pair -> {
                     final String key = pair.getLeft();
                     if (key.endsWith("/")) {
@@ -366,8 +652,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
     private CompletableFuture<List<Pair<String, StoreInfo>>> extractListAndMap(final String finalRef, Pair<String, Boolean> pair, final String key) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                final RefHolder refHolder = getRefHolder(finalRef);
-                return refHolder.getList(key, pair.getRight()).handle((l1, t) -> {
+                return onRefHolder(finalRef, refHolder -> refHolder.getList(key, pair.getRight())).handle((l1, t) -> {
                     if (t != null) {
                         if (t instanceof CompletionException) {
                             handle(t.getCause());
@@ -435,18 +720,17 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
 
     @Override
     public CompletableFuture<Pair<String, UserData>> getUserData(final String key, final String ref, final String realm) throws RefNotFoundException {
-        final RefHolder refHolder = getRefHolder(checkRef(ref));
-        return refHolder.getUser(realm + "/" + key);
+        return onRefHolder(checkRef(ref), refHolder -> refHolder.getUser(realm + "/" + key));
     }
 
     @Override
     public CompletableFuture<Either<String, FailedToLock>> updateUser(final String key, final String ref, final String realm, final String creatorUserName,
             final UserData data, final String version) throws RefNotFoundException {
-        final RefHolder refHolder = cache.peek(checkRef(ref));
-        if (refHolder == null) {
+        final String finalRef = checkRef(ref);
+        if (findRefHolder(finalRef) == null) {
             throw new UnsupportedOperationException(key);
         }
-        return refHolder.updateUser(realm + "/" + key, creatorUserName, data, version);
+        return onRefHolder(finalRef, refHolder -> refHolder.updateUser(realm + "/" + key, creatorUserName, data, version));
     }
 
     @Override
@@ -460,8 +744,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
         if (rootUser.equals(key)) {
             throw new WrappingAPIException(new KeyAlreadyExist(key, finalRef));
         }
-        final RefHolder refHolder = getRefHolder(finalRef);
-        return refHolder.addUser(realm + "/" + key, creatorUserName, data).thenApplyAsync(postUser -> {
+        return onRefHolder(finalRef, refHolder -> refHolder.addUser(realm + "/" + key, creatorUserName, data)).thenApplyAsync(postUser -> {
             if (postUser.isRight()) {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, finalRef));
             }
@@ -474,9 +757,9 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
         Objects.requireNonNull(key);
         Objects.requireNonNull(realm);
         Objects.requireNonNull(creatorUserName);
-        final RefHolder refHolder = cache.peek(checkRef(ref));
-        if (refHolder != null) {
-            refHolder.deleteUser(realm + "/" + key, creatorUserName).join();
+        final String finalRef = checkRef(ref);
+        if (findRefHolder(finalRef) != null) {
+            onRefHolder(finalRef, refHolder -> refHolder.deleteUser(realm + "/" + key, creatorUserName)).join();
         }
     }
 
@@ -502,7 +785,7 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
     }
 
     private static Cache<String, RefHolder> getMap(final Source source, final HashService hashService, final RefLockService refLockService,
-            ExecutorService executor) {
+            ExecutorService executor, final Predicate<String> warmUpRefs, final long warmUpBytes, final TagSnapshots tagSnapshots) {
         return new Cache2kBuilder<String, RefHolder>() {
         }
         .name(KeyStorage.class)
@@ -510,17 +793,29 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
             @Override
             public RefHolder load(final String ref) throws Exception {
                 LOG.info("Adding ref {}", ref);
+                final RefHolder refHolder;
                 if (ref.startsWith("refs/tags/")) {
-                    return new ReadOnlyRefHolder(ref, source, hashService, refLockService, executor);
+                    refHolder = new ReadOnlyRefHolder(ref, source, hashService, refLockService, executor, tagSnapshots);
+                } else {
+                    refHolder = new RefHolder(ref, source, hashService, refLockService, executor);
+                    refHolder.start();
+                }
+                if (warmUpRefs.test(ref)) {
+                    warmUp(refHolder, ref, warmUpBytes);
                 }
-                final RefHolder refHolder = new RefHolder(ref, source, hashService, refLockService, executor);
-                refHolder.start();
                 return refHolder;
             }
         })
         .build();
     }
 
+    private static void warmUp(final RefHolder refHolder, final String ref, final long warmUpBytes) {
+        refHolder.warmUp(warmUpBytes).exceptionally(t -> {
+            LOG.warn("Failed to warm up {}", ref, t);
+            return 0;
+        });
+    }
+
     @Override
     public void addRef(final String ref) {
         cache.get(ref);
@@ -528,7 +823,76 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
 
     @Override
     public void start() throws Exception {
-        // NOOP
+        if (hotSet != null) {
+            CompletableFuture.runAsync(this::prefetchHotSet, executor);
+            scheduler.scheduleAtFixedRate(this::writeHotSet, hotSet.getInterval(), hotSet.getInterval(), TimeUnit.SECONDS);
+        }
+        if (refIdleTimeout > 0) {
+            final long period = Math.max(1, refIdleTimeout / 2);
+            scheduler.scheduleAtFixedRate(this::evictIdleRefs, period, period, TimeUnit.SECONDS);
+        }
+    }
+
+    void evictIdleRefs() {
+        final long idleNanos = TimeUnit.SECONDS.toNanos(refIdleTimeout);
+        for (CacheEntry<String, RefHolder> entry : cache.entries()) {
+            final String ref = entry.getKey();
+            final RefHolder refHolder = entry.getValue();
+            if (!defaultRef.equals(ref) && refHolder.retire(idleNanos)) {
+                LOG.info("Evicting idle ref {}", ref);
+                cache.removeIfEquals(ref, refHolder);
+                CompletableFuture.runAsync(refHolder::close, refCleaner);
+            }
+        }
+    }
+
+    void prefetchHotSet() {
+        final HotSet.Progress progress = hotSet.getProgress();
+        try {
+            final List<HotKey> hotKeys = hotSet.read();
+            progress.started(hotKeys.size());
+            long budget = prefetchBytes;
+            for (HotKey hotKey : hotKeys) {
+                if (budget <= 0) {
+                    break;
+                }
+                if (hotKey.getSize() > budget) {
+                    continue;
+                }
+                // Refs are loaded lazily so only the default ref is there at startup
+                final RefHolder refHolder = findRefHolder(hotKey.getRef());
+                if (refHolder == null || !refHolder.lease()) {
+                    continue;
+                }
+                final Optional<StoreInfo> storeInfo;
+                try {
+                    storeInfo = refHolder.prefetchKey(hotKey.getKey());
+                } finally {
+                    refHolder.release();
+                }
+                final long size = storeInfo.filter(StoreInfo::isNormalKey).map(si -> si.getStreamProvider().getSize()).orElse(0L);
+                progress.loaded(size);
+                budget -= size;
+            }
+            progress.finished("done");
+            LOG.info("Prefetched {} hot keys", progress.getLoaded());
+        } catch (final IOException | RuntimeException e) {
+            progress.finished("failed");
+            LOG.warn("Failed to prefetch hot set from {}", hotSet.getFile(), e);
+        }
+    }
+
+    void writeHotSet() {
+        final List<HotKey> hotKeys = new ArrayList<>();
+        cache.entries().forEach(ce -> hotKeys.addAll(ce.getValue().getHotKeys(hotSet.getSize())));
+        if (hotKeys.isEmpty()) {
+            return;
+        }
+        try {
+            hotSet.write(hotKeys);
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("Failed to write hot set to {}", hotSet.getFile(), e);
+        }
     }
 
     @Override
@@ -538,11 +902,15 @@ public class KeyStorage extends InjectableHealthCheck implements Storage, Reload
 
     @Override
     protected Result check() throws Exception {
+        final ResultBuilder builder = Result.builder();
+        if (hotSet != null) {
+            builder.withDetail("hotSetPrefetch", hotSet.getProgress().toMap());
+        }
         try {
             checkHealth();
-            return Result.healthy();
+            return builder.healthy().build();
         } catch (final Throwable e) {
-            return Result.unhealthy(e);
+            return builder.unhealthy(e).build();
         }
     }
 }
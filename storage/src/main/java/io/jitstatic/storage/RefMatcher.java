@@ -0,0 +1,75 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Matches ref names against simple glob patterns like {@code refs/heads/prod*}. {@code *} matches any sequence of characters and {@code ?} matches
+ * exactly one.
+ */
+public class RefMatcher implements Predicate<String> {
+
+    public static final RefMatcher NONE = new RefMatcher(List.of());
+
+    private final List<Pattern> patterns;
+
+    public RefMatcher(final List<String> globs) {
+        this.patterns = Objects.requireNonNull(globs).stream().map(RefMatcher::compile).collect(Collectors.toList());
+    }
+
+    private static Pattern compile(final String glob) {
+        final StringBuilder sb = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        for (char c : glob.trim().toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    sb.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                sb.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            sb.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    @Override
+    public boolean test(final String ref) {
+        if (ref == null) {
+            return false;
+        }
+        for (Pattern p : patterns) {
+            if (p.matcher(ref).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -35,6 +35,8 @@ import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.injection.CheckHealth;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.utils.Pair;
 import zone.dragon.dropwizard.lifecycle.InjectableManaged;
@@ -56,6 +58,48 @@ public interface Storage extends AutoCloseable, CheckHealth, InjectableManaged {
 
     public CompletableFuture<Either<String, FailedToLock>> deleteKey(String key, String ref, CommitMetaData commitMetaData) throws RefNotFoundException;
 
+    /**
+     * Makes all changes in one commit, or none of them if any of their preconditions fails
+     */
+    public CompletableFuture<Either<List<String>, FailedToLock>> commit(String ref, List<KeyChange> changes, CommitMetaData commitMetaData)
+            throws RefNotFoundException;
+
+    /**
+     * Starts an import, whose keys are written as they are added and committed with {@link #importKeys(String, KeyImport, CommitMetaData)}.
+     */
+    public KeyImport newImport();
+
+    /**
+     * Adds or replaces the keys of a finished import in one commit while the whole ref is locked. Returns the id of the new commit.
+     */
+    public CompletableFuture<Either<String, FailedToLock>> importKeys(String ref, KeyImport keys, CommitMetaData commitMetaData)
+            throws RefNotFoundException;
+
+    /**
+     * Copies or moves a key or a directory to another path, possibly in another ref, in one commit without reading the data. Returns the copied
+     * keys with their versions.
+     */
+    public CompletableFuture<Either<List<Pair<String, String>>, FailedToLock>> copy(String from, String fromRef, String to, String ref, boolean move,
+            String version, CommitMetaData commitMetaData) throws RefNotFoundException;
+
+    /**
+     * Deletes every key in a directory in one commit. Returns the deleted keys and the commit, or only the keys for a dry run.
+     */
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> deletePath(String directory, String ref, String version, boolean dryRun,
+            CommitMetaData commitMetaData) throws RefNotFoundException;
+
+    /**
+     * Gives every key in a directory the same key metadata in one commit. Returns the changed keys and the commit, or only the keys for a dry run.
+     */
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> rewriteMetaData(String directory, String ref, MetaData metaData,
+            String version, boolean dryRun, CommitMetaData commitMetaData) throws RefNotFoundException;
+
+    /**
+     * Reads an earlier version of a key by its blob id on the calling thread. Empty if the key hasn't had that blob in the ref or it's larger than
+     * maxBytes.
+     */
+    public Optional<byte[]> readBlob(String key, String ref, String blobId, int maxBytes) throws RefNotFoundException;
+
     public CompletableFuture<List<Pair<String, StoreInfo>>> getListForRef(List<Pair<String, Boolean>> keyPairs, String ref) throws RefNotFoundException;
 
     public CompletableFuture<List<Pair<List<Pair<String, StoreInfo>>, String>>> getList(List<Pair<List<Pair<String, Boolean>>, String>> input);
@@ -29,6 +29,7 @@ import java.util.Optional;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import io.jitstatic.utils.KeyPaths;
 import io.jitstatic.utils.Pair;
 
 public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
@@ -40,11 +41,7 @@ public class Tree implements TreeVisitable<String, Pair<String, Boolean>> {
     private Tree(final List<Pair<String, Boolean>> data) {
         final Node<String, Pair<String, Boolean>> node = new AnchorNode<>(FWD_SLASH);
         for (Pair<String, Boolean> p : data) {
-            String key = p.getLeft().replaceAll("/+", "/");
-            if (key.startsWith("/") && key.length() > 1) {
-                key = key.substring(1);
-            }
-            node.accept(new Inserter(Pair.of(key, p.getRight())));
+            node.accept(new Inserter(Pair.of(KeyPaths.canonicalize(p.getLeft()), p.getRight())));
         }
         this.root = node;
     }
@@ -22,6 +22,7 @@ package io.jitstatic.storage.ref;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -35,35 +36,76 @@ import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.MetricRegistry;
 
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.utils.NamingThreadFactory;
 import zone.dragon.dropwizard.lifecycle.InjectableManaged;
 
 @Singleton
 @Service
 public class LocalRefLockService implements RefLockService, InjectableManaged {
-    private final Map<String, LockService> refLockMap = new HashMap<>();
+    private final Map<String, Lease> refLockMap = new HashMap<>();
     private final ExecutorService repoWriter;
+    private final SourceCaches caches;
+
     @Inject
-    public LocalRefLockService(final MetricRegistry metrics) {
+    public LocalRefLockService(final MetricRegistry metrics, final SourceCaches caches) {
         this.repoWriter = new InstrumentedExecutorService(Executors.newSingleThreadExecutor(new NamingThreadFactory("RepoWriter")), metrics);
+        this.caches = Objects.requireNonNull(caches);
     }
 
     @Override
     public synchronized void close() throws Exception {
         repoWriter.shutdown();
         repoWriter.awaitTermination(10, TimeUnit.SECONDS);
-        refLockMap.forEach((k, v) -> v.close());
+        refLockMap.forEach((k, v) -> v.lock.dispose());
+        refLockMap.clear();
     }
 
     @Override
     public synchronized LockService getLockService(final String ref, final ExecutorService workstealingExecutor, final Source source) {
-        final LockService map = refLockMap.get(ref);
-        return map == null ? new LockServiceImpl(this, ref, workstealingExecutor, source, repoWriter) : map;
+        final Lease lease = refLockMap.computeIfAbsent(ref, r -> new Lease(new LockServiceImpl(this, r, workstealingExecutor, source, repoWriter, caches)));
+        lease.users++;
+        return lease.lock;
     }
 
     @Override
     public synchronized void returnLock(final LockService lock) {
-        refLockMap.put(lock.getRef(), lock);
+        final Lease lease = refLockMap.get(lock.getRef());
+        if (lease != null && lease.lock == lock) {
+            lease.users--;
+            releaseIfUnused(lease);
+        }
+    }
+
+    /**
+     * Called when a lock has no more pending writes. A lock which has been returned by all its users is kept until its last write is done so two locks
+     * never exist for the same ref.
+     */
+    synchronized void idle(final LockService lock) {
+        final Lease lease = refLockMap.get(lock.getRef());
+        if (lease != null && lease.lock == lock) {
+            releaseIfUnused(lease);
+        }
+    }
+
+    private void releaseIfUnused(final Lease lease) {
+        if (lease.users <= 0 && lease.lock.isIdle()) {
+            refLockMap.remove(lease.lock.getRef());
+            lease.lock.dispose();
+        }
+    }
+
+    synchronized int size() {
+        return refLockMap.size();
+    }
+
+    private static class Lease {
+        private final LockService lock;
+        private int users;
+
+        Lease(final LockService lock) {
+            this.lock = lock;
+        }
     }
 
     @Override
@@ -31,10 +31,15 @@ import org.jvnet.hk2.annotations.Contract;
 
 import com.spencerwi.either.Either;
 
+import io.jitstatic.CommitMetaData;
+import io.jitstatic.MetaData;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.DistributedData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.storage.HotSet.HotKey;
 import io.jitstatic.utils.Pair;
 
 @Contract
@@ -45,19 +50,83 @@ public interface LockService extends AutoCloseable {
     CompletableFuture<Either<String, FailedToLock>> fireEvent(String key, ActionData data);
 
     CompletableFuture<Either<String, FailedToLock>> fireEvent(String ref, Supplier<Exception> preRequisite, Supplier<DistributedData> action, Consumer<Exception> postAction);
+    /**
+     * Locks all changed keys and writes the changes in one commit if all their preconditions hold.
+     * @param changes
+     * @param commitMetaData
+     * @return the new versions in the same order as the changes
+     */
+    CompletableFuture<Either<List<String>, FailedToLock>> commit(List<KeyChange> changes, CommitMetaData commitMetaData);
+    /**
+     * Locks the whole ref and writes all keys in one commit.
+     * @param keys
+     * @param commitMetaData
+     * @return the new commit
+     */
+    CompletableFuture<Either<String, FailedToLock>> importKeys(KeyImport keys, CommitMetaData commitMetaData);
+    /**
+     * Locks the whole ref and copies a key or a directory into it in one commit, reusing the blobs.
+     * @param from a key or a directory
+     * @param fromRef the ref copied from, the same as this one for a move
+     * @param to where to copy to
+     * @param move if the copied files should be deleted
+     * @param version if not null, the version of what is copied has to match it
+     * @param commitMetaData
+     * @return the copied keys and their versions
+     */
+    CompletableFuture<Either<List<Pair<String, String>>, FailedToLock>> copy(String from, String fromRef, String to, boolean move, String version,
+            CommitMetaData commitMetaData);
+    /**
+     * Locks the whole ref and deletes every file in a directory in one commit.
+     * @param directory a directory ending with /
+     * @param version if not null, the version of the directory has to match it
+     * @param dryRun if nothing should be locked or written
+     * @param commitMetaData
+     * @return the deleted keys and the new commit, which is null for a dry run
+     */
+    CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> deletePath(String directory, String version, boolean dryRun,
+            CommitMetaData commitMetaData);
+    /**
+     * Locks the whole ref and gives every key in a directory the same key metadata in one commit.
+     * @param directory a directory ending with /
+     * @param metaData
+     * @param version if not null, the version of the directory has to match it
+     * @param dryRun if nothing should be locked or written
+     * @param commitMetaData
+     * @return the changed keys and the new commit, which is null for a dry run
+     */
+    CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> rewriteMetaData(String directory, MetaData metaData, String version,
+            boolean dryRun, CommitMetaData commitMetaData);
     String getRef();
     CompletableFuture<Pair<String, UserData>> getUser(final String userKeyPath);
     <T> CompletableFuture<Either<T, FailedToLock>> enqueueAndReadBlock(Supplier<T> supplier);
     Optional<StoreInfo> readKey(String key);
+    /**
+     * Reads a key only if it's already cached, never loading it.
+     * @param key
+     * @return the cached key or null if it has to be loaded
+     */
+    Optional<StoreInfo> peekKey(String key);
+    Optional<StoreInfo> prefetchKey(String key);
+    /**
+     * Counts are halved every time the hot keys are taken so that the hot set follows what is read now, and the coldest keys are dropped to
+     * make room for new ones.
+     * @param max
+     * @return the most read keys
+     */
+    List<HotKey> getHotKeys(int max);
     CompletableFuture<List<String>> getList(String key, boolean recursive);
     void reload();
+    CompletableFuture<Integer> warmUp(long maxBytes);
     boolean isEmpty();
-    Either<Optional<StoreInfo>, Pair<String, UserData>> peek(String key);
+    boolean isIdle();
+    void dispose();
+    RefCacheEntry peek(String key);
 
     /** 
      * This is for testing purposes only
      * @param key
      * @param data
      */
-    void putKeyFull(String key, Either<Optional<StoreInfo>, Pair<String, UserData>> data);
+    void putKeyFull(String key, RefCacheEntry data);
 }
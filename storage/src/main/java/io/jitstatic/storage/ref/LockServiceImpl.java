@@ -22,6 +22,8 @@ package io.jitstatic.storage.ref;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,10 +31,15 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
@@ -61,10 +68,18 @@ import io.jitstatic.hosted.DistributedData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.LoadException;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
 import io.jitstatic.source.ObjectStreamProvider;
+import io.jitstatic.source.PathSnapshot;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.storage.KeyAlreadyExist;
+import io.jitstatic.storage.HotSet.HotKey;
+import io.jitstatic.storage.ref.RefCacheEntry.KeyEntry;
+import io.jitstatic.storage.ref.RefCacheEntry.UserEntry;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
@@ -80,14 +95,19 @@ class LockServiceImpl implements LockService {
     private final LocalRefLockService refLockService;
     private static final String KEYPREFIX = "key-";
     private static final String GLOBAL = "globallock";
-    private final AtomicReference<Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>> refCache;
+    private static final int MAX_TRACKED_KEYS = 10_000;
+    private final AtomicReference<Cache<String, RefCacheEntry>> refCache;
     private final Logger log;
     private final ExecutorService workStealingExecutor;
     private final Source source;
     private final ExecutorService repoWriter;
+    private volatile int entryCapacity;
+    private final Map<String, LongAdder> accessCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final SourceCaches caches;
 
     public LockServiceImpl(final LocalRefLockService refLockService, final String ref, ExecutorService workStealingExecutor, final Source source,
-            final ExecutorService repoWriter) {
+            final ExecutorService repoWriter, final SourceCaches caches) {
         this.keyMap = new HashMap<>();
         this.refLockService = Objects.requireNonNull(refLockService);
         this.ref = Objects.requireNonNull(ref);
@@ -96,23 +116,25 @@ class LockServiceImpl implements LockService {
         this.workStealingExecutor = Objects.requireNonNull(workStealingExecutor);
         this.source = Objects.requireNonNull(source);
         this.repoWriter = Objects.requireNonNull(repoWriter);
+        this.caches = Objects.requireNonNull(caches);
     }
 
-    private Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>> getStorage(final int size) {
-        return new Cache2kBuilder<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>() {
+    private Cache<String, RefCacheEntry> getStorage(final int size) {
+        entryCapacity = size;
+        return new Cache2kBuilder<String, RefCacheEntry>() {
         }.name(ref.replace("/", "-") + "-" + UUID.randomUUID())
-                .loader(new CacheLoader<String, Either<Optional<StoreInfo>, Pair<String, UserData>>>() {
+                .loader(new CacheLoader<String, RefCacheEntry>() {
                     @Override
-                    public Either<Optional<StoreInfo>, Pair<String, UserData>> load(final String key) throws Exception {
+                    public RefCacheEntry load(final String key) throws Exception {
                         // TODO Cache2k doesn't have an asynchronous API, yet.
                         return key.startsWith(JitStaticConstants.USERS) ? internalLoadUserKey(key) : internalLoadKey(key);
                     }
                 }).entryCapacity(size).build();
     }
 
-    private Either<Optional<StoreInfo>, Pair<String, UserData>> internalLoadKey(final String key) {
+    private RefCacheEntry internalLoadKey(final String key) {
         try {
-            return Either.left(isStorable(key, internalLoad(key)));
+            return RefCacheEntry.ofKey(isStorable(key, internalLoad(key)));
         } catch (RefNotFoundException e) {
             throw new LoadException(e);
         }
@@ -123,15 +145,7 @@ class LockServiceImpl implements LockService {
         final SourceInfo sourceInfo = source.getSourceInfo(key, ref);
         if (sourceInfo != null) {
             try {
-                final MetaData metaData = sourceInfo.readMetaData();
-                if (!metaData.isHidden()) {
-                    if (!sourceInfo.isMetaDataSource()) {
-                        return new StoreInfo(sourceInfo.getStreamProvider(), metaData, sourceInfo.getSourceVersion(), sourceInfo.getMetaDataVersion());
-                    } else {
-                        return new StoreInfo(metaData, sourceInfo.getMetaDataVersion());
-                    }
-                }
-                return null;
+                return toStoreInfo(sourceInfo, sourceInfo.readMetaData());
             } catch (final IOException e) {
                 throw new UncheckedIOException(e);
             }
@@ -139,19 +153,41 @@ class LockServiceImpl implements LockService {
         return null;
     }
 
-    private Optional<StoreInfo> isStorable(final String key, final StoreInfo storeInfo) {
+    @Nullable
+    static StoreInfo toStoreInfo(final SourceInfo sourceInfo, final MetaData metaData) throws IOException {
+        if (!metaData.isHidden()) {
+            if (!sourceInfo.isMetaDataSource()) {
+                return new StoreInfo(sourceInfo.getStreamProvider(), metaData, sourceInfo.getSourceVersion(), sourceInfo.getMetaDataVersion());
+            } else {
+                return new StoreInfo(metaData, sourceInfo.getMetaDataVersion());
+            }
+        }
+        return null;
+    }
+
+    private ObjectStreamProvider share(final String blobId, final ObjectStreamProvider data,
+            final ThrowingSupplier<ObjectLoader, IOException> loaderFactory) {
+        try {
+            return caches.getBlobCache().share(blobId, data.getObjectStreamProvider(loaderFactory, SourceInfo.THRESHOLD), SourceInfo.THRESHOLD,
+                    () -> loaderFactory.get().getBytes());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    static StoreInfo isStorable(final String key, @Nullable final StoreInfo storeInfo) {
         if (storeInfo != null && (keyRequestedIsMasterMeta(key, storeInfo) || keyRequestedIsNormalKey(key, storeInfo))) {
-            return Optional.of(storeInfo);
-        } else {
-            return Optional.empty();
+            return storeInfo;
         }
+        return null;
     }
 
-    private boolean keyRequestedIsNormalKey(final String key, final StoreInfo storeInfo) {
+    private static boolean keyRequestedIsNormalKey(final String key, final StoreInfo storeInfo) {
         return !key.endsWith("/") && storeInfo.isNormalKey();
     }
 
-    private boolean keyRequestedIsMasterMeta(final String key, final StoreInfo storeInfo) {
+    private static boolean keyRequestedIsMasterMeta(final String key, final StoreInfo storeInfo) {
         return key.endsWith("/") && storeInfo.isMasterMetaData();
     }
 
@@ -161,11 +197,11 @@ class LockServiceImpl implements LockService {
     void checkIfPlainKeyExist(final String key) {
         if (key.endsWith("/")) {
             final String plainKey = key.substring(0, key.length() - 1);
-            Either<Optional<StoreInfo>, Pair<String, UserData>> keyData = peek(plainKey);
+            RefCacheEntry keyData = peek(plainKey);
             if (keyData == null) {
                 keyData = internalLoadKey(plainKey);
             }
-            if (keyData != null && keyData.getLeft().isPresent()) {
+            if (keyData != null && keyData.isKey() && keyData.isPresent()) {
                 throw new WrappingAPIException(new KeyAlreadyExist(key, ref));
             }
         }
@@ -182,6 +218,7 @@ class LockServiceImpl implements LockService {
 
     @Override
     public CompletableFuture<Either<String, FailedToLock>> fireEvent(final String key, final ActionData data) {
+        pending.incrementAndGet();
         return CompletableFuture.supplyAsync(() -> {
             final String requestedKey = getRequestedKey(key);
             if (!keyMap.containsKey(GLOBAL) && keyMap.putIfAbsent(requestedKey, data) == null) {
@@ -195,12 +232,167 @@ class LockServiceImpl implements LockService {
             } else {
                 return CompletableFuture.completedFuture(Either.<String, FailedToLock>right(new FailedToLock(getRef(), key)));
             }
-        }, repoWriter).thenCompose(c -> c);
+        }, repoWriter).thenCompose(c -> c).whenComplete((r, t) -> done());
+    }
+
+    @Override
+    public CompletableFuture<Either<List<String>, FailedToLock>> commit(final List<KeyChange> changes, final CommitMetaData commitMetaData) {
+        pending.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            final List<String> requestedKeys = changes.stream().map(KeyChange::getKey).map(this::getRequestedKey).collect(Collectors.toList());
+            final String locked = keyMap.containsKey(GLOBAL) ? ref : requestedKeys.stream().filter(keyMap::containsKey).findFirst().orElse(null);
+            if (locked != null) {
+                return CompletableFuture.completedFuture(Either.<List<String>, FailedToLock>right(new FailedToLock(getRef(), locked)));
+            }
+            requestedKeys.forEach(key -> keyMap.put(key, ActionData.PLACEHOLDER));
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return Either.<List<String>, FailedToLock>left(internalCommit(changes, commitMetaData));
+                } finally {
+                    requestedKeys.forEach(keyMap::remove);
+                }
+            }, repoWriter);
+        }, repoWriter).thenCompose(c -> c).whenComplete((r, t) -> done());
+    }
+
+    @Override
+    public CompletableFuture<Either<String, FailedToLock>> importKeys(final KeyImport keys, final CommitMetaData commitMetaData) {
+        return lockRef(() -> internalImportKeys(keys, commitMetaData));
+    }
+
+    private String internalImportKeys(final KeyImport keys, final CommitMetaData commitMetaData) {
+        final String commit;
+        try {
+            commit = source.importKeys(keys, ref, commitMetaData);
+        } catch (IllegalArgumentException e) {
+            throw new WrappingAPIException(e);
+        }
+        // Only the imported keys can have changed, anything cached about them is stale
+        refCache.get().removeAll(keys.getKeys());
+        log.info("Imported {} keys in {}", keys.getKeys().size(), ref);
+        return commit;
+    }
+
+    @Override
+    public CompletableFuture<Either<List<Pair<String, String>>, FailedToLock>> copy(final String from, final String fromRef, final String to,
+            final boolean move, @Nullable final String version, final CommitMetaData commitMetaData) {
+        return lockRef(() -> internalCopy(from, fromRef, to, move, version, commitMetaData));
+    }
+
+    /**
+     * Runs an action that changes any number of keys when no key in the ref is locked, keeping the whole ref locked meanwhile
+     */
+    private <T> CompletableFuture<Either<T, FailedToLock>> lockRef(final Supplier<T> action) {
+        pending.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            if (!keyMap.isEmpty()) {
+                return CompletableFuture.completedFuture(Either.<T, FailedToLock>right(new FailedToLock(getRef())));
+            }
+            keyMap.put(GLOBAL, ActionData.PLACEHOLDER);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return Either.<T, FailedToLock>left(action.get());
+                } finally {
+                    keyMap.remove(GLOBAL);
+                }
+            }, repoWriter);
+        }, repoWriter).thenCompose(c -> c).whenComplete((r, t) -> done());
+    }
+
+    private PathSnapshot readPath(final String path, final String pathRef, @Nullable final String version) {
+        final PathSnapshot snapshot = source.readPath(path, pathRef);
+        if (snapshot == null || snapshot.getFiles().isEmpty()) {
+            throw new WrappingAPIException(new UnsupportedOperationException(path));
+        }
+        if (version != null && !version.equals(snapshot.getVersion())) {
+            throw new WrappingAPIException(new VersionIsNotSame(version, snapshot.getVersion()));
+        }
+        return snapshot;
+    }
+
+    private List<Pair<String, String>> internalCopy(final String from, final String fromRef, final String to, final boolean move,
+            @Nullable final String version, final CommitMetaData commitMetaData) {
+        final PathSnapshot snapshot = readPath(from, fromRef, version);
+        final List<Pair<String, String>> written;
+        try {
+            written = source.copy(snapshot, to, ref, move, commitMetaData);
+        } catch (IllegalArgumentException e) {
+            throw new WrappingAPIException(e);
+        }
+        final List<String> changed = written.stream().map(Pair::getLeft).collect(Collectors.toCollection(ArrayList::new));
+        if (move) {
+            changed.addAll(snapshot.getFilePaths());
+        }
+        invalidateFiles(changed);
+        log.info("{} {} from {} to {} in {}", move ? "Moved" : "Copied", from, fromRef, to, ref);
+        return written.stream().filter(file -> !file.getLeft().endsWith(JitStaticConstants.METADATA)).collect(Collectors.toList());
+    }
+
+    @Override
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> deletePath(final String directory, @Nullable final String version,
+            final boolean dryRun, final CommitMetaData commitMetaData) {
+        return onPath(directory, version, dryRun, snapshot -> {
+            final String commit = source.deletePath(snapshot, ref, commitMetaData);
+            invalidateFiles(snapshot.getFilePaths());
+            log.info("Deleted {} keys in {} in {}", snapshot.getKeys().size(), directory, ref);
+            return commit;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> rewriteMetaData(final String directory, final MetaData metaData,
+            @Nullable final String version, final boolean dryRun, final CommitMetaData commitMetaData) {
+        return onPath(directory, version, dryRun, snapshot -> {
+            final List<String> keys = snapshot.getKeys();
+            if (keys.isEmpty()) {
+                return null;
+            }
+            final String commit = source.rewriteMetaData(snapshot, metaData, ref, commitMetaData);
+            // Only key metadata is written, keys elsewhere can't have inherited it
+            refCache.get().removeAll(keys);
+            log.info("Rewrote metadata of {} keys in {} in {}", keys.size(), directory, ref);
+            return commit;
+        });
+    }
+
+    private CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> onPath(final String directory, @Nullable final String version,
+            final boolean dryRun, final Function<PathSnapshot, String> action) {
+        if (dryRun) {
+            // A preview only reads, it shouldn't make writers fail to lock
+            return enqueueAndReadBlock(() -> Pair.of(readPath(directory, ref, version).getKeys(), (String) null));
+        }
+        return lockRef(() -> {
+            final PathSnapshot snapshot = readPath(directory, ref, version);
+            return Pair.of(snapshot.getKeys(), action.apply(snapshot));
+        });
+    }
+
+    private void invalidateFiles(final List<String> files) {
+        final Cache<String, RefCacheEntry> cache = refCache.get();
+        final List<String> keys = new ArrayList<>(files.size());
+        for (String file : files) {
+            if (file.equals(JitStaticConstants.METADATA) || file.endsWith("/" + JitStaticConstants.METADATA)) {
+                final String directoryKey = file.equals(JitStaticConstants.METADATA) ? "/"
+                        : file.substring(0, file.length() - JitStaticConstants.METADATA.length());
+                invalidateInheritingKeys(directoryKey, cachedMetaDataVersion(directoryKey));
+                keys.add(directoryKey);
+            } else {
+                keys.add(file.endsWith(JitStaticConstants.METADATA) ? file.substring(0, file.length() - JitStaticConstants.METADATA.length()) : file);
+            }
+        }
+        cache.removeAll(keys);
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            refLockService.idle(this);
+        }
     }
 
     @Override
     public CompletableFuture<Either<String, FailedToLock>> fireEvent(String ref, Supplier<Exception> preRequisite, Supplier<DistributedData> action,
             Consumer<Exception> postAction) {
+        pending.incrementAndGet();
         return CompletableFuture.supplyAsync(() -> {
             if (keyMap.putIfAbsent(GLOBAL, ActionData.PLACEHOLDER) == null) {
                 return CompletableFuture.supplyAsync(() -> {
@@ -224,7 +416,7 @@ class LockServiceImpl implements LockService {
             } else {
                 return CompletableFuture.completedFuture(Either.<String, FailedToLock>right(new FailedToLock(ref)));
             }
-        }, repoWriter).thenCompose(c -> c);
+        }, repoWriter).thenCompose(c -> c).whenComplete((r, t) -> done());
     }
 
     private String invoke(final ActionData data) {
@@ -257,15 +449,31 @@ class LockServiceImpl implements LockService {
 
     @Nullable
     private Optional<StoreInfo> internalReadKey(final String key) {
+        return toOptional(internalReadEntry(key));
+    }
+
+    @Nullable
+    private StoreInfo internalReadStoreInfo(final String key) {
+        final KeyEntry entry = internalReadEntry(key);
+        return entry == null ? null : entry.getStoreInfo();
+    }
+
+    @Nullable
+    private KeyEntry internalReadEntry(final String key) {
         return unwrapCacheLoaderException(() -> {
-            final Either<Optional<StoreInfo>, Pair<String, UserData>> data = refCache.get().get(key);
-            if (data != null && data.isLeft()) {
-                return data.getLeft();
+            final RefCacheEntry data = refCache.get().get(key);
+            if (data != null && data.isKey()) {
+                return (KeyEntry) data;
             }
             return null;
         });
     }
 
+    @Nullable
+    private static Optional<StoreInfo> toOptional(@Nullable final KeyEntry entry) {
+        return entry == null ? null : Optional.ofNullable(entry.getStoreInfo());
+    }
+
     private <T> T unwrapCacheLoaderException(final Supplier<T> supplier) {
         try {
             return supplier.get();
@@ -290,104 +498,216 @@ class LockServiceImpl implements LockService {
     }
 
     private String internalAddKey(final String key, ObjectStreamProvider data, final MetaData metaData, final CommitMetaData commitMetaData) {
-        final Optional<StoreInfo> storeInfo = unwrapCacheLoaderException(() -> internalReadKey(key));
-        if (storeInfo != null && storeInfo.isPresent()) {
+        checkKeyIsAbsent(key);
+        return storeAddedKey(key, data, metaData, source.addKey(key, ref, data, metaData, commitMetaData));
+    }
+
+    private void checkKeyIsAbsent(final String key) {
+        if (internalReadStoreInfo(key) != null) {
             throw new WrappingAPIException(new KeyAlreadyExist(key, ref));
         }
-        final Pair<Pair<ThrowingSupplier<ObjectLoader, IOException>, String>, String> version = source.addKey(key, ref, data, metaData, commitMetaData);
-        final Pair<ThrowingSupplier<ObjectLoader, IOException>, String> fileInfo = version.getLeft();
-        final StoreInfo newStoreInfo = new StoreInfo(data.getObjectStreamProvider(fileInfo.getLeft(), RefHolder.THRESHOLD), metaData, fileInfo
-                .getRight(), version
-                        .getRight());
-        if (newStoreInfo.getMetaData().isHidden()) {
-            putKey(key, Optional.empty());
-        } else {
-            putKey(key, Optional.of(newStoreInfo));
-        }
-        return fileInfo.getRight();
+    }
+
+    private String storeAddedKey(final String key, final ObjectStreamProvider data, final MetaData metaData, final WrittenKey written) {
+        final StoreInfo newStoreInfo = new StoreInfo(share(written.getVersion(), data, written.getLoader()),
+                metaData, written.getVersion(), written.getMetaDataVersion());
+        putKey(key, newStoreInfo.getMetaData().isHidden() ? null : newStoreInfo);
+        return written.getVersion();
     }
 
     private String internalUpdateKey(final String key, final ObjectStreamProvider data, final String oldVersion, final CommitMetaData commitMetaData) {
-        final Optional<StoreInfo> keyHolder = internalReadKey(key);
-        if (storageIsForbidden(keyHolder)) {
+        final StoreInfo storeInfo = checkKeyVersion(key, oldVersion);
+        return storeUpdatedKey(key, data, storeInfo, source.updateKey(key, ref, data, commitMetaData));
+    }
+
+    private StoreInfo checkKeyVersion(final String key, final String oldVersion) {
+        final StoreInfo storeInfo = internalReadStoreInfo(key);
+        if (storageIsForbidden(storeInfo)) {
             throw new WrappingAPIException(new UnsupportedOperationException("modifyKey " + key));
         }
-        final StoreInfo storeInfo = keyHolder.get();
         if (!oldVersion.equals(storeInfo.getVersion())) {
             throw new WrappingAPIException(new VersionIsNotSame(oldVersion, storeInfo.getVersion()));
         }
+        return storeInfo;
+    }
 
-        Pair<StoreInfo, Pair<String, ThrowingSupplier<ObjectLoader, IOException>>> dataPair = Pair
-                .of(storeInfo, source.updateKey(key, ref, data, commitMetaData));
-        final StoreInfo newStoreInfo = dataPair.getLeft();
-        final Pair<String, ThrowingSupplier<ObjectLoader, IOException>> newVersion = dataPair.getRight();
-        putKeyFull(key, Either
-                .left(Optional.of(new StoreInfo(data.getObjectStreamProvider(newVersion.getRight(), RefHolder.THRESHOLD), newStoreInfo
-                        .getMetaData(), newVersion.getLeft(), newStoreInfo.getMetaDataVersion()))));
-        return newVersion.getLeft();
+    private String storeUpdatedKey(final String key, final ObjectStreamProvider data, final StoreInfo storeInfo, final WrittenKey written) {
+        putKey(key, new StoreInfo(share(written.getVersion(), data, written.getLoader()), storeInfo.getMetaData(), written.getVersion(),
+                storeInfo.getMetaDataVersion()));
+        return written.getVersion();
     }
 
     private String internalDeleteKey(final String key, final CommitMetaData commitMetaData) {
         source.deleteKey(key, ref, commitMetaData);
-        putKey(key, Optional.empty());
+        putKey(key, null);
         return ObjectId.zeroId().name();
     }
 
-    private boolean storageIsForbidden(final Optional<StoreInfo> storeInfo) {
-        return storeInfo == null || !storeInfo.isPresent() || storeInfo.get().getMetaData().isProtected();
+    private boolean storageIsForbidden(@Nullable final StoreInfo storeInfo) {
+        return storeInfo == null || storeInfo.getMetaData().isProtected();
     }
 
     private String internalUpdateMetadata(final String key, final MetaData metaData, final String oldMetaDataVersion, final CommitMetaData commitMetaData) {
+        final StoreInfo si = checkMetaDataVersion(key, oldMetaDataVersion);
+        final String newMetaDataVersion = source.updateMetaData(metaData, oldMetaDataVersion, key, ref, commitMetaData);
+        storeMetaData(key, metaData, si, oldMetaDataVersion, newMetaDataVersion);
+        return newMetaDataVersion;
+    }
+
+    private StoreInfo checkMetaDataVersion(final String key, final String oldMetaDataVersion) {
         checkIfPlainKeyExist(key);
-        final Optional<StoreInfo> storeInfo = internalReadKey(key);
+        final StoreInfo storeInfo = internalReadStoreInfo(key);
         if (storageIsForbidden(storeInfo)) {
             throw new WrappingAPIException(new UnsupportedOperationException(key));
         }
-        if (!oldMetaDataVersion.equals(storeInfo.get().getMetaDataVersion())) {
-            throw new WrappingAPIException(new VersionIsNotSame(oldMetaDataVersion, storeInfo.get().getMetaDataVersion()));
+        if (!oldMetaDataVersion.equals(storeInfo.getMetaDataVersion())) {
+            throw new WrappingAPIException(new VersionIsNotSame(oldMetaDataVersion, storeInfo.getMetaDataVersion()));
         }
+        return storeInfo;
+    }
 
-        final String newMetaDataVersion = source.updateMetaData(metaData, oldMetaDataVersion, key, ref, commitMetaData);
-        final StoreInfo si = storeInfo.get();
+    private void storeMetaData(final String key, final MetaData metaData, final StoreInfo si, final String oldMetaDataVersion,
+            final String newMetaDataVersion) {
         if (si.isMasterMetaData()) {
-            refCache.get().clear(); // Reminder
-            putKey(key, Optional.of(new StoreInfo(metaData, newMetaDataVersion)));
+            invalidateInheritingKeys(key, oldMetaDataVersion);
+            putKey(key, new StoreInfo(metaData, newMetaDataVersion));
         } else {
-            putKey(key, Optional
-                    .of(new StoreInfo(si.getStreamProvider(), metaData, si.getVersion(), newMetaDataVersion)));
+            putKey(key, new StoreInfo(si.getStreamProvider(), metaData, si.getVersion(), newMetaDataVersion));
         }
-        return newMetaDataVersion;
     }
 
-    void putKey(final String key, final Optional<StoreInfo> store) {
-        putKeyFull(key, Either.left(store));
+    /*
+     * Every precondition is checked before anything is written, and everything is written in one commit, so either all changes are made or none.
+     */
+    private List<String> internalCommit(final List<KeyChange> changes, final CommitMetaData commitMetaData) {
+        final List<StoreInfo> current = new ArrayList<>(changes.size());
+        for (KeyChange change : changes) {
+            current.add(checkPrecondition(change));
+        }
+        final List<WrittenKey> written = source.commit(changes, ref, commitMetaData);
+        final List<String> versions = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            versions.add(storeChange(changes.get(i), current.get(i), written.get(i)));
+        }
+        return versions;
+    }
+
+    @Nullable
+    private StoreInfo checkPrecondition(final KeyChange change) {
+        final String key = change.getKey();
+        switch (change.getType()) {
+        case ADD:
+            checkKeyIsAbsent(key);
+            return null;
+        case UPDATE:
+            return checkKeyVersion(key, change.getVersion());
+        case METADATA:
+            return checkMetaDataVersion(key, change.getVersion());
+        case DELETE:
+            return checkKeyIsPresent(key, change.getVersion());
+        default:
+            throw new IllegalArgumentException(change.toString());
+        }
+    }
+
+    private StoreInfo checkKeyIsPresent(final String key, @Nullable final String version) {
+        final StoreInfo storeInfo = internalReadStoreInfo(key);
+        if (storeInfo == null) {
+            throw new WrappingAPIException(new UnsupportedOperationException("deleteKey " + key));
+        }
+        if (version != null && !version.equals(storeInfo.getVersion())) {
+            throw new WrappingAPIException(new VersionIsNotSame(version, storeInfo.getVersion()));
+        }
+        return storeInfo;
+    }
+
+    private String storeChange(final KeyChange change, final StoreInfo current, final WrittenKey written) {
+        final String key = change.getKey();
+        switch (change.getType()) {
+        case ADD:
+            return storeAddedKey(key, change.getData(), change.getMetaData(), written);
+        case UPDATE:
+            return storeUpdatedKey(key, change.getData(), current, written);
+        case METADATA:
+            storeMetaData(key, change.getMetaData(), current, change.getVersion(), written.getMetaDataVersion());
+            return written.getMetaDataVersion();
+        case DELETE:
+        default:
+            putKey(key, null);
+            return ObjectId.zeroId().name();
+        }
+    }
+
+    @Nullable
+    private String cachedMetaDataVersion(final String directoryKey) {
+        final RefCacheEntry entry = peek(directoryKey);
+        if (entry == null || !entry.isKey()) {
+            return null;
+        }
+        final StoreInfo storeInfo = ((KeyEntry) entry).getStoreInfo();
+        return storeInfo == null ? null : storeInfo.getMetaDataVersion();
+    }
+
+    /*
+     * A key without its own .metadata file uses the one in its directory, never one further up. So only the cached keys directly in the directory
+     * which were read with the old version, or were hidden by it, has to be read again. Without the old version every key directly in the directory
+     * is read again.
+     */
+    void invalidateInheritingKeys(final String directoryKey, @Nullable final String oldMetaDataVersion) {
+        final String directory = "/".equals(directoryKey) ? "" : directoryKey;
+        final Cache<String, RefCacheEntry> cache = refCache.get();
+        final List<String> inheriting = new ArrayList<>();
+        for (CacheEntry<String, RefCacheEntry> entry : cache.entries()) {
+            final String key = entry.getKey();
+            if (isInDirectory(key, directory) && inherits(entry.getValue(), oldMetaDataVersion)) {
+                inheriting.add(key);
+            }
+        }
+        cache.removeAll(inheriting);
+        log.debug("Invalidated {} keys in {}{}", inheriting.size(), ref, directoryKey);
     }
 
-    public void putKeyFull(final String key, final Either<Optional<StoreInfo>, Pair<String, UserData>> data) {
+    private static boolean isInDirectory(final String key, final String directory) {
+        return key.length() > directory.length() && key.startsWith(directory) && key.indexOf('/', directory.length()) < 0;
+    }
+
+    private static boolean inherits(final RefCacheEntry entry, @Nullable final String metaDataVersion) {
+        if (!entry.isKey()) {
+            return false;
+        }
+        final StoreInfo storeInfo = ((KeyEntry) entry).getStoreInfo();
+        return storeInfo == null || metaDataVersion == null || metaDataVersion.equals(storeInfo.getMetaDataVersion());
+    }
+
+    void putKey(final String key, @Nullable final StoreInfo store) {
+        putKeyFull(key, RefCacheEntry.ofKey(store));
+    }
+
+    public void putKeyFull(final String key, final RefCacheEntry data) {
         refCache.get().put(key, data);
     }
 
     private Pair<String, UserData> internalGetUser(final String userKeyPath) {
         final String key = RefHolder.createFullUserKeyPath(userKeyPath);
         return unwrapCacheLoaderException(() -> {
-            final Either<Optional<StoreInfo>, Pair<String, UserData>> data = refCache.get().get(key);
-            if (data != null) {
-                return data.getRight();
+            final RefCacheEntry data = refCache.get().get(key);
+            if (data != null && data.isUser()) {
+                return ((UserEntry) data).toPair();
             }
             return null;
         });
     }
 
     private Pair<String, UserData> extractUserKeyData(final String userKeyPath, final String key) {
-        final Either<Optional<StoreInfo>, Pair<String, UserData>> keyDataHolder = peek(key);
+        final RefCacheEntry keyDataHolder = peek(key);
         final Pair<String, UserData> userKeyData;
-        if (keyDataHolder == null || keyDataHolder.isLeft()) {
+        if (keyDataHolder == null || keyDataHolder.isKey()) {
             userKeyData = internalGetUser(userKeyPath);
             if (userKeyData == null) {
                 throw new WrappingAPIException(new UnsupportedOperationException(key));
             }
         } else {
-            userKeyData = keyDataHolder.getRight();
+            userKeyData = ((UserEntry) keyDataHolder).toPair();
         }
         return userKeyData;
     }
@@ -400,7 +720,7 @@ class LockServiceImpl implements LockService {
         }
         try {
             final String newVersion = source.updateUser(key, ref, username, data);
-            putKeyFull(key, Either.right(Pair.of(newVersion, data)));
+            putKeyFull(key, RefCacheEntry.ofUser(newVersion, data));
             return newVersion;
         } catch (RefNotFoundException e) {
             throw new WrappingAPIException(e);
@@ -411,13 +731,13 @@ class LockServiceImpl implements LockService {
 
     private String internalAddUser(final String userKeyPath, final String username, final UserData data) {
         final String key = RefHolder.createFullUserKeyPath(userKeyPath);
-        final Either<Optional<StoreInfo>, Pair<String, UserData>> keyDataHolder = refCache.get().get(key);
-        if (keyDataHolder != null && keyDataHolder.isRight() && keyDataHolder.getRight().isPresent()) {
+        final RefCacheEntry keyDataHolder = refCache.get().get(key);
+        if (keyDataHolder != null && keyDataHolder.isUser() && keyDataHolder.isPresent()) {
             throw new WrappingAPIException(new KeyAlreadyExist(key, ref));
         }
         try {
             final String newVersion = source.addUser(key, ref, username, data);
-            putKeyFull(key, Either.right(Pair.of(newVersion, data)));
+            putKeyFull(key, RefCacheEntry.ofUser(newVersion, data));
             return newVersion;
         } catch (RefNotFoundException e) {
             throw new WrappingAPIException(new UnsupportedOperationException(key));
@@ -442,13 +762,13 @@ class LockServiceImpl implements LockService {
         return CompletableFuture.supplyAsync(() -> internalGetUser(userKeyPath), repoWriter);
     }
 
-    private Either<Optional<StoreInfo>, Pair<String, UserData>> internalLoadUserKey(final String key) {
+    private RefCacheEntry internalLoadUserKey(final String key) {
         try {
             final Pair<String, UserData> user = source.getUser(key, ref);
             if (user != null && user.isPresent()) {
-                return Either.right(user);
+                return RefCacheEntry.ofUser(user.getLeft(), user.getRight());
             }
-            return Either.right(Pair.ofNothing());
+            return RefCacheEntry.ofUser(null, null);
         } catch (RefNotFoundException | IOException e) {
             throw new WrappingAPIException(e);
         }
@@ -461,9 +781,78 @@ class LockServiceImpl implements LockService {
 
     @Override
     public Optional<StoreInfo> readKey(String key) {
+        countAccess(key);
         return internalReadKey(key);
     }
 
+    private void countAccess(final String key) {
+        final LongAdder counter = accessCounts.get(key);
+        if (counter != null) {
+            counter.increment();
+        } else if (accessCounts.size() < MAX_TRACKED_KEYS) {
+            accessCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Optional<StoreInfo> peekKey(final String key) {
+        final RefCacheEntry data = peek(key);
+        if (data == null || !data.isKey()) {
+            return null;
+        }
+        countAccess(key);
+        return toOptional((KeyEntry) data);
+    }
+
+    @Override
+    public Optional<StoreInfo> prefetchKey(final String key) {
+        return internalReadKey(key);
+    }
+
+    @Override
+    public List<HotKey> getHotKeys(final int max) {
+        final List<Pair<String, Long>> counted = accessCounts.entrySet().stream()
+                .map(e -> Pair.of(e.getKey(), e.getValue().sum()))
+                .sorted(Comparator.comparing((Pair<String, Long> p) -> p.getRight()).reversed())
+                .collect(Collectors.toList());
+        final List<HotKey> hotKeys = counted.stream()
+                .limit(max)
+                .map(p -> new HotKey(ref, p.getLeft(), p.getRight(), cachedSize(p.getLeft())))
+                .collect(Collectors.toList());
+        decay(counted);
+        return hotKeys;
+    }
+
+    private long cachedSize(final String key) {
+        final RefCacheEntry data = peek(key);
+        if (data == null || !data.isKey()) {
+            return HotKey.UNKNOWN_SIZE;
+        }
+        final StoreInfo storeInfo = ((KeyEntry) data).getStoreInfo();
+        if (storeInfo == null || !storeInfo.isNormalKey()) {
+            return HotKey.UNKNOWN_SIZE;
+        }
+        return storeInfo.getStreamProvider().getSize();
+    }
+
+    private void decay(final List<Pair<String, Long>> counted) {
+        for (int i = 0; i < counted.size(); i++) {
+            final String key = counted.get(i).getLeft();
+            final LongAdder counter = accessCounts.get(key);
+            if (counter == null) {
+                continue;
+            }
+            // Reads that happen meanwhile are kept
+            final long halved = counter.sumThenReset() / 2;
+            if (halved == 0 || i >= MAX_TRACKED_KEYS / 2) {
+                accessCounts.remove(key, counter);
+            } else {
+                counter.add(halved);
+            }
+        }
+    }
+
     @Override
     public CompletableFuture<List<String>> getList(String key, boolean recursive) {
         return CompletableFuture.supplyAsync(() -> {
@@ -481,12 +870,12 @@ class LockServiceImpl implements LockService {
     public void reload() {
         CompletableFuture.runAsync(((Supplier<Runnable>) () -> {
             log.info("Reloading {}", ref);
-            final Cache<String, Either<Optional<StoreInfo>, Pair<String, UserData>>> oldRefCache = refCache
+            final Cache<String, RefCacheEntry> oldRefCache = refCache
                     .compareAndExchange(refCache.get(), getStorage(RefHolder.MAX_ENTRIES));
             return () -> {
                 StreamSupport.stream(oldRefCache.entries().spliterator(), true).filter(e -> {
-                    final Either<Optional<StoreInfo>, Pair<String, UserData>> value = e.getValue();
-                    return (value.isLeft() && value.getLeft().isPresent());
+                    final RefCacheEntry value = e.getValue();
+                    return value.isKey() && value.isPresent();
                 }).map(CacheEntry::getKey).forEach(key -> refCache.get().get(key));
                 oldRefCache.close();
                 log.info("Reloaded {}", ref);
@@ -495,14 +884,77 @@ class LockServiceImpl implements LockService {
 
     }
 
+    @Override
+    public CompletableFuture<Integer> warmUp(final long maxBytes) {
+        final Cache<String, RefCacheEntry> cache = refCache.get();
+        return CompletableFuture.supplyAsync(() -> {
+            final String treeVersion;
+            final List<Pair<String, SourceInfo>> sourceInfos;
+            try {
+                treeVersion = source.getTreeVersion(ref);
+                sourceInfos = source.getAllSourceInfo(ref, maxBytes);
+            } catch (RefNotFoundException e) {
+                throw new WrappingAPIException(e);
+            }
+            final Map<String, MetaData> parsedMetaData = new HashMap<>();
+            final List<Pair<String, RefCacheEntry>> entries = new ArrayList<>();
+            for (Pair<String, SourceInfo> entry : sourceInfos) {
+                if (entries.size() >= entryCapacity || refCache.get() != cache) {
+                    break;
+                }
+                final String key = entry.getLeft();
+                final SourceInfo sourceInfo = entry.getRight();
+                try {
+                    MetaData metaData = parsedMetaData.get(sourceInfo.getMetaDataVersion());
+                    if (metaData == null) {
+                        metaData = sourceInfo.readMetaData();
+                        parsedMetaData.put(sourceInfo.getMetaDataVersion(), metaData);
+                    }
+                    entries.add(Pair.of(key, RefCacheEntry.ofKey(isStorable(key, toStoreInfo(sourceInfo, metaData)))));
+                } catch (final IOException e) {
+                    log.warn("Skipping {} in {} during warm up", key, ref, e);
+                }
+            }
+            return Pair.of(treeVersion, entries);
+        }, workStealingExecutor).thenApplyAsync(read -> {
+            // Every write removes or replaces what it changed on the repo writer, so if the tree hasn't moved since it was read no write can come
+            // between the check and the puts
+            try {
+                if (refCache.get() != cache || !Objects.equals(read.getLeft(), source.getTreeVersion(ref))) {
+                    log.info("Skipped warming up {}, it changed while it was read", ref);
+                    return 0;
+                }
+            } catch (RefNotFoundException e) {
+                throw new WrappingAPIException(e);
+            }
+            int loaded = 0;
+            for (Pair<String, RefCacheEntry> entry : read.getRight()) {
+                if (cache.putIfAbsent(entry.getLeft(), entry.getRight())) {
+                    loaded++;
+                }
+            }
+            log.info("Warmed up {} keys in {}", loaded, ref);
+            return loaded;
+        }, repoWriter);
+    }
+
+    @Override
+    public boolean isIdle() { return pending.get() == 0; }
+
+    @Override
+    public void dispose() {
+        refCache.get().close();
+        accessCounts.clear();
+    }
+
     @Override
     public boolean isEmpty() {
         return StreamSupport.stream(refCache.get().entries().spliterator(), true)
-                .noneMatch(e -> e.getValue().fold(Optional<StoreInfo>::isPresent, u -> true));
+                .noneMatch(e -> e.getValue().isUser() || e.getValue().isPresent());
     }
 
     @Override
-    public Either<Optional<StoreInfo>, Pair<String, UserData>> peek(String key) {
+    public RefCacheEntry peek(String key) {
         return refCache.get().peek(key);
     }
 }
@@ -20,15 +20,22 @@ package io.jitstatic.storage.ref;
  * #L%
  */
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+
 import com.spencerwi.either.Either;
 
 import io.jitstatic.CommitMetaData;
 import io.jitstatic.MetaData;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
+import io.jitstatic.hosted.LoadException;
+import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
 import io.jitstatic.storage.HashService;
@@ -38,9 +45,91 @@ public class ReadOnlyRefHolder extends RefHolder {
 
     private static final String TAGS_CANNOT_BE_MODIFIED = "Tags cannot be modified";
 
+    private final TagSnapshots snapshots;
+    private final ExecutorService workStealer;
+    private volatile String treeVersion;
+
     public ReadOnlyRefHolder(final String ref, final Source source, final HashService hashService, final RefLockService clusterService,
             final ExecutorService workStealer) {
+        this(ref, source, hashService, clusterService, workStealer, null);
+    }
+
+    public ReadOnlyRefHolder(final String ref, final Source source, final HashService hashService, final RefLockService clusterService,
+            final ExecutorService workStealer, @Nullable final TagSnapshots snapshots) {
         super(ref, source, hashService, clusterService, workStealer);
+        this.snapshots = snapshots;
+        this.workStealer = workStealer;
+    }
+
+    @Override
+    public Optional<StoreInfo> readKey(final String key) {
+        if (snapshots != null) {
+            final TagSnapshot snapshot = getSnapshot();
+            final Optional<StoreInfo> storeInfo = snapshot == null ? null : snapshot.get(key);
+            if (storeInfo != null) {
+                return storeInfo;
+            }
+        }
+        return super.readKey(key);
+    }
+
+    /*
+     * Answers from the snapshot if it's already built, building it is left to readKey so the calling thread isn't blocked
+     */
+    @Nullable
+    @Override
+    public Optional<StoreInfo> peekKey(final String key) {
+        final String current = treeVersion;
+        if (snapshots != null && current != null) {
+            final TagSnapshot snapshot = snapshots.lookup(current);
+            final Optional<StoreInfo> storeInfo = snapshot == null ? null : snapshot.get(key);
+            if (storeInfo != null) {
+                return storeInfo;
+            }
+        }
+        return super.peekKey(key);
+    }
+
+    @Override
+    public CompletableFuture<Integer> warmUp(final long maxBytes) {
+        if (snapshots == null) {
+            return super.warmUp(maxBytes);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            final TagSnapshot snapshot = getSnapshot();
+            return snapshot == null ? 0 : snapshot.size();
+        }, workStealer);
+    }
+
+    @Override
+    public void reload() {
+        treeVersion = null;
+        super.reload();
+    }
+
+    /*
+     * The snapshot is built once per tree version. If it's been dropped to make room for other snapshots it's not built again, the tag's keys
+     * are read through the lock cache instead.
+     */
+    @Nullable
+    private TagSnapshot getSnapshot() {
+        String current = treeVersion;
+        if (current == null) {
+            synchronized (this) {
+                current = treeVersion;
+                if (current == null) {
+                    final TagSnapshot built;
+                    try {
+                        built = snapshots.get(ref, source);
+                    } catch (final RefNotFoundException e) {
+                        throw new LoadException(e);
+                    }
+                    treeVersion = built.getTreeVersion();
+                    return built;
+                }
+            }
+        }
+        return snapshots.lookup(current);
     }
 
     @Override
@@ -0,0 +1,114 @@
+package io.jitstatic.storage.ref;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.annotation.Nullable;
+
+import io.jitstatic.auth.UserData;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.utils.Pair;
+
+/**
+ * A value in a ref's cache, which is either a {@link KeyEntry} or a {@link UserEntry}. Keys and users which doesn't exist are shared by all
+ * entries.
+ */
+public abstract class RefCacheEntry {
+
+    private static final KeyEntry MISSING_KEY = new KeyEntry(null);
+    private static final UserEntry MISSING_USER = new UserEntry(null, null);
+
+    private RefCacheEntry() {
+    }
+
+    public static KeyEntry ofKey(@Nullable final StoreInfo storeInfo) {
+        return storeInfo != null ? new KeyEntry(storeInfo) : MISSING_KEY;
+    }
+
+    public static UserEntry ofUser(@Nullable final String version, @Nullable final UserData userData) {
+        return version != null && userData != null ? new UserEntry(version, userData) : MISSING_USER;
+    }
+
+    public abstract boolean isKey();
+
+    public abstract boolean isUser();
+
+    /**
+     * @return if the key or user exists
+     */
+    public abstract boolean isPresent();
+
+    public static final class KeyEntry extends RefCacheEntry {
+
+        private final StoreInfo storeInfo;
+
+        private KeyEntry(@Nullable final StoreInfo storeInfo) {
+            this.storeInfo = storeInfo;
+        }
+
+        @Override
+        public boolean isKey() { return true; }
+
+        @Override
+        public boolean isUser() { return false; }
+
+        @Override
+        public boolean isPresent() { return storeInfo != null; }
+
+        /**
+         * @return the key or null if it doesn't exist
+         */
+        @Nullable
+        public StoreInfo getStoreInfo() { return storeInfo; }
+    }
+
+    public static final class UserEntry extends RefCacheEntry {
+
+        private final String version;
+        private final UserData userData;
+
+        private UserEntry(@Nullable final String version, @Nullable final UserData userData) {
+            this.version = version;
+            this.userData = userData;
+        }
+
+        @Override
+        public boolean isKey() { return false; }
+
+        @Override
+        public boolean isUser() { return true; }
+
+        @Override
+        public boolean isPresent() { return userData != null; }
+
+        @Nullable
+        public String getVersion() { return version; }
+
+        @Nullable
+        public UserData getUserData() { return userData; }
+
+        /**
+         * @return the version and the user, or nothing if the user doesn't exist
+         */
+        public Pair<String, UserData> toPair() {
+            return isPresent() ? Pair.of(version, userData) : Pair.ofNothing();
+        }
+    }
+}
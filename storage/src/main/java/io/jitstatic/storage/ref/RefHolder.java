@@ -25,6 +25,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -40,20 +42,27 @@ import io.jitstatic.hosted.DistributedData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.RefLockHolder;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
 import io.jitstatic.storage.HashService;
+import io.jitstatic.storage.HotSet.HotKey;
+import io.jitstatic.storage.ref.RefCacheEntry.UserEntry;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
 
 public class RefHolder implements RefLockHolder, AutoCloseable {
     static final int MAX_ENTRIES = 2000;
-    static final int THRESHOLD = 1_000_000;
+    private static final int RETIRED = -1;
     final String ref;
     final Source source;
     private final HashService hashService;
     final LockService lock;
+    private volatile long lastAccess = System.nanoTime();
+    private final AtomicInteger users = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public RefHolder(final String ref, final Source source, final HashService hashService, final RefLockService refLockService,
             final ExecutorService workStealingExecutor) {
@@ -69,6 +78,48 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
 
     public boolean isEmpty() { return lock.isEmpty(); }
 
+    public void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    public boolean isIdle(final long idleNanos) {
+        return System.nanoTime() - lastAccess > idleNanos;
+    }
+
+    /**
+     * Keeps the holder from being retired while it's used. Every successful lease has to be released.
+     *
+     * @return false if the holder has been retired and has to be looked up again
+     */
+    public boolean lease() {
+        while (true) {
+            final int current = users.get();
+            if (current == RETIRED) {
+                return false;
+            }
+            if (users.compareAndSet(current, current + 1)) {
+                touch();
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        users.decrementAndGet();
+    }
+
+    /**
+     * Retires the holder if nobody has used it for idleNanos, it's not leased and it has no pending writes. A retired holder can't be leased
+     * again and should be closed.
+     */
+    public boolean retire(final long idleNanos) {
+        return isIdle(idleNanos) && lock.isIdle() && users.compareAndSet(0, RETIRED);
+    }
+
+    public CompletableFuture<Integer> warmUp(final long maxBytes) {
+        return lock.warmUp(maxBytes);
+    }
+
     public CompletableFuture<Either<String, FailedToLock>> addKey(final String key, final ObjectStreamProvider data, final MetaData metaData,
             final CommitMetaData commitMetaData) {
         return lock.fireEvent(key, ActionData.addKey(key, data, metaData, commitMetaData));
@@ -89,11 +140,36 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
                 .requireNonNull(oldMetaDataVersion), Objects.requireNonNull(commitMetaData)));
     }
 
+    public CompletableFuture<Either<List<String>, FailedToLock>> commit(final List<KeyChange> changes, final CommitMetaData commitMetaData) {
+        return lock.commit(Objects.requireNonNull(changes), Objects.requireNonNull(commitMetaData));
+    }
+
+    public CompletableFuture<Either<List<Pair<String, String>>, FailedToLock>> copy(final String from, final String fromRef, final String to,
+            final boolean move, @Nullable final String version, final CommitMetaData commitMetaData) {
+        return lock.copy(Objects.requireNonNull(from), Objects.requireNonNull(fromRef), Objects.requireNonNull(to), move, version, Objects
+                .requireNonNull(commitMetaData));
+    }
+
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> deletePath(final String directory, @Nullable final String version,
+            final boolean dryRun, final CommitMetaData commitMetaData) {
+        return lock.deletePath(Objects.requireNonNull(directory), version, dryRun, Objects.requireNonNull(commitMetaData));
+    }
+
+    public CompletableFuture<Either<Pair<List<String>, String>, FailedToLock>> rewriteMetaData(final String directory, final MetaData metaData,
+            @Nullable final String version, final boolean dryRun, final CommitMetaData commitMetaData) {
+        return lock.rewriteMetaData(Objects.requireNonNull(directory), Objects.requireNonNull(metaData), version, dryRun, Objects
+                .requireNonNull(commitMetaData));
+    }
+
+    public CompletableFuture<Either<String, FailedToLock>> importKeys(final KeyImport keys, final CommitMetaData commitMetaData) {
+        return lock.importKeys(Objects.requireNonNull(keys), Objects.requireNonNull(commitMetaData));
+    }
+
     @Nullable
     public CompletableFuture<Pair<String, UserData>> getUser(final String userKeyPath) {
-        final Either<Optional<StoreInfo>, Pair<String, UserData>> peek = lock.peek(createFullUserKeyPath(userKeyPath));
-        if (peek != null && peek.isRight()) {
-            return CompletableFuture.completedFuture(peek.getRight());
+        final RefCacheEntry peek = lock.peek(createFullUserKeyPath(userKeyPath));
+        if (peek != null && peek.isUser()) {
+            return CompletableFuture.completedFuture(((UserEntry) peek).toPair());
         }
         return lock.getUser(userKeyPath);
     }
@@ -138,7 +214,9 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
 
     @Override
     public void close() {
-        lock.close();
+        if (closed.compareAndSet(false, true)) {
+            lock.close();
+        }
     }
 
     @Override
@@ -156,6 +234,18 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         return lock.getList(key, recursive);
     }
 
+    public Optional<StoreInfo> prefetchKey(final String key) {
+        final Optional<StoreInfo> storeInfo = lock.prefetchKey(key);
+        if (storeInfo == null) {
+            return Optional.<StoreInfo>empty();
+        }
+        return storeInfo;
+    }
+
+    public List<HotKey> getHotKeys(final int max) {
+        return lock.getHotKeys(max);
+    }
+
     public Optional<StoreInfo> readKey(String key) {
         final Optional<StoreInfo> storeInfo = lock.readKey(key);
         if (storeInfo == null) {
@@ -163,4 +253,9 @@ public class RefHolder implements RefLockHolder, AutoCloseable {
         }
         return storeInfo;
     }
+
+    @Nullable
+    public Optional<StoreInfo> peekKey(final String key) {
+        return lock.peekKey(key);
+    }
 }
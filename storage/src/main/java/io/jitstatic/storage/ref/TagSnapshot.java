@@ -0,0 +1,102 @@
+package io.jitstatic.storage.ref;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import io.jitstatic.MetaData;
+import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.SourceInfo;
+import io.jitstatic.utils.Pair;
+
+/**
+ * Read only view of all keys in a tree. It's never changed after it's built so it can be read without any locking.
+ */
+class TagSnapshot {
+
+    // Rough cost of an entry besides its content, so that snapshots of keys without content aren't free
+    static final int ENTRY_OVERHEAD = 64;
+
+    private final String treeVersion;
+    private final Map<String, Optional<StoreInfo>> entries;
+    private final long bytes;
+    private volatile long lastAccess = System.nanoTime();
+
+    private TagSnapshot(final String treeVersion, final Map<String, Optional<StoreInfo>> entries) {
+        this.treeVersion = treeVersion;
+        this.entries = Map.copyOf(entries);
+        this.bytes = this.entries.values().stream().mapToLong(TagSnapshot::weigh).sum();
+    }
+
+    private static long weigh(final Optional<StoreInfo> entry) {
+        if (entry.isPresent() && entry.get().isNormalKey()) {
+            final long size = entry.get().getStreamProvider().getSize();
+            return ENTRY_OVERHEAD + (size < SourceInfo.THRESHOLD ? size : 0);
+        }
+        return ENTRY_OVERHEAD;
+    }
+
+    static TagSnapshot build(final String treeVersion, final List<Pair<String, SourceInfo>> sourceInfos) {
+        final Map<String, MetaData> parsedMetaData = new HashMap<>();
+        final Map<String, Optional<StoreInfo>> entries = new HashMap<>(sourceInfos.size());
+        for (Pair<String, SourceInfo> entry : sourceInfos) {
+            final String key = entry.getLeft();
+            final SourceInfo sourceInfo = entry.getRight();
+            try {
+                MetaData metaData = parsedMetaData.get(sourceInfo.getMetaDataVersion());
+                if (metaData == null) {
+                    metaData = sourceInfo.readMetaData();
+                    parsedMetaData.put(sourceInfo.getMetaDataVersion(), metaData);
+                }
+                entries.put(key, Optional.ofNullable(LockServiceImpl.isStorable(key, LockServiceImpl.toStoreInfo(sourceInfo, metaData))));
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new TagSnapshot(treeVersion, entries);
+    }
+
+    String getTreeVersion() { return treeVersion; }
+
+    long getBytes() { return bytes; }
+
+    long getLastAccess() { return lastAccess; }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    /**
+     * @return the key or {@code null} if the key isn't part of the snapshot
+     */
+    Optional<StoreInfo> get(final String key) {
+        return entries.get(key);
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,98 @@
+package io.jitstatic.storage.ref;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+
+import io.jitstatic.source.Source;
+
+/**
+ * Shares {@link TagSnapshot}s between tags pointing at the same tree. All snapshots together are kept within one byte budget, the least
+ * recently read ones are dropped when a new one doesn't fit. A tag whose snapshot has been dropped reads its keys like a branch does.
+ */
+public class TagSnapshots {
+
+    private final Map<String, TagSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final long maxBytes;
+    private long bytes;
+
+    public TagSnapshots(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Finds the snapshot of the ref's tree, building it if no tag has it.
+     */
+    TagSnapshot get(final String ref, final Source source) throws RefNotFoundException {
+        final String treeVersion = Objects.requireNonNull(source.getTreeVersion(ref));
+        final TagSnapshot existing = lookup(treeVersion);
+        if (existing != null) {
+            return existing;
+        }
+        return add(TagSnapshot.build(treeVersion, source.getAllSourceInfo(ref, maxBytes)));
+    }
+
+    /**
+     * @return the snapshot of the tree or null if it has been dropped
+     */
+    @Nullable
+    TagSnapshot lookup(final String treeVersion) {
+        final TagSnapshot snapshot = snapshots.get(treeVersion);
+        if (snapshot != null) {
+            snapshot.touch();
+        }
+        return snapshot;
+    }
+
+    private synchronized TagSnapshot add(final TagSnapshot built) {
+        final TagSnapshot existing = snapshots.putIfAbsent(built.getTreeVersion(), built);
+        if (existing != null) {
+            existing.touch();
+            return existing;
+        }
+        bytes += built.getBytes();
+        while (bytes > maxBytes) {
+            final TagSnapshot eldest = snapshots.values().stream()
+                    .filter(s -> s != built)
+                    .min(Comparator.comparingLong(TagSnapshot::getLastAccess))
+                    .orElse(null);
+            if (eldest == null) {
+                break;
+            }
+            snapshots.remove(eldest.getTreeVersion());
+            bytes -= eldest.getBytes();
+        }
+        return built;
+    }
+
+    int size() {
+        return snapshots.size();
+    }
+
+    synchronized long getBytes() { return bytes; }
+}
@@ -0,0 +1,89 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.jitstatic.storage.HotSet.HotKey;
+import io.jitstatic.test.BaseTest;
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
+
+@ExtendWith(TemporaryFolderExtension.class)
+class HotSetTest extends BaseTest {
+
+    private TemporaryFolder tmpFolder;
+
+    @Test
+    void testReadMissingFile() throws IOException {
+        HotSet hotSet = new HotSet(getFolderFile().toPath().resolve("hotset"), 10, 1);
+        assertTrue(hotSet.read().isEmpty());
+    }
+
+    @Test
+    void testWriteKeepsHottestKeys() throws IOException {
+        Path file = getFolderFile().toPath().resolve("jitstatic").resolve("hotset");
+        HotSet hotSet = new HotSet(file, 2, 1);
+        hotSet.write(List.of(new HotKey("refs/heads/master", "a", 1), new HotKey("refs/heads/master", "b/c d", 5), new HotKey("refs/tags/t", "c", 3)));
+        List<HotKey> read = hotSet.read();
+        assertEquals(2, read.size());
+        assertEquals("b/c d", read.get(0).getKey());
+        assertEquals(5, read.get(0).getCount());
+        assertEquals("refs/tags/t", read.get(1).getRef());
+        assertEquals(1, Files.list(file.getParent()).count());
+    }
+
+    @Test
+    void testReadSkipsBrokenLines() throws IOException {
+        Path file = getFolderFile().toPath().resolve("hotset");
+        Files.write(file, List.of("x\trefs/heads/master\tkey", "broken", "3\trefs/heads/master\tkey2"), UTF_8);
+        List<HotKey> read = new HotSet(file, 10, 1).read();
+        assertEquals(1, read.size());
+        assertEquals("key2", read.get(0).getKey());
+    }
+
+    @Test
+    void testWriteKeepsSizes() throws IOException {
+        Path file = getFolderFile().toPath().resolve("hotset");
+        HotSet hotSet = new HotSet(file, 10, 1);
+        hotSet.write(List.of(new HotKey("refs/heads/master", "a", 2, 10), new HotKey("refs/heads/master", "b", 1)));
+        List<HotKey> read = hotSet.read();
+        assertEquals(10, read.get(0).getSize());
+        assertEquals(HotKey.UNKNOWN_SIZE, read.get(1).getSize());
+        Files.write(file, List.of("3\trefs/heads/master\tkey"), UTF_8);
+        read = hotSet.read();
+        assertEquals("key", read.get(0).getKey());
+        assertEquals(HotKey.UNKNOWN_SIZE, read.get(0).getSize());
+    }
+
+    @Override
+    protected File getFolderFile() throws IOException { return tmpFolder.createTemporaryDirectory(); }
+}
@@ -37,9 +37,13 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -50,6 +54,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -63,6 +68,7 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 
 import com.codahale.metrics.MetricRegistry;
@@ -77,19 +83,26 @@ import io.jitstatic.auth.User;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.RefLockHolder;
+import io.jitstatic.hosted.SourceHandler;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyChange;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.storage.ref.LocalRefLockService;
 import io.jitstatic.storage.ref.RefLockService;
 import io.jitstatic.test.BaseTest;
+import io.jitstatic.test.TemporaryFolder;
+import io.jitstatic.test.TemporaryFolderExtension;
 import io.jitstatic.utils.Functions;
 import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.NamingThreadFactory;
 import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.WrappingAPIException;
 
+@ExtendWith(TemporaryFolderExtension.class)
 public class KeyStorageTest extends BaseTest {
 
     private static final Charset UTF_8 = StandardCharsets.UTF_8;
@@ -103,17 +116,20 @@ public class KeyStorageTest extends BaseTest {
     private ThrowingSupplier<ObjectLoader, IOException> factory = mock(Functions.ThrowingSupplier.class);
     private Source source = mock(Source.class);
     private HashService hashService = new HashService();
+    private final SourceCaches caches = new SourceCaches();
     private MetricRegistry registry = new MetricRegistry();
     private RefLockService clusterService;
 
     private ExecutorService defaultExecutor;
     private ExecutorService workStealer;
+    private TemporaryFolder tmpFolder;
 
     @BeforeEach
     public void setup() {
+        // The tests reuse metadata versions for different metadata
         defaultExecutor = Executors.newCachedThreadPool(new NamingThreadFactory("test"));
         workStealer = Executors.newWorkStealingPool();
-        clusterService = new LocalRefLockService(registry);
+        clusterService = new LocalRefLockService(registry, caches);
     }
 
     @AfterEach
@@ -134,11 +150,11 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetAKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest1 = getMetaDataInputStream();) {
             SourceInfo si1 = mock(SourceInfo.class);
             when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
             when(si1.getMetadataInputStream()).thenReturn(mtest1);
             when(si1.getSourceVersion()).thenReturn(SHA_1);
             when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -152,7 +168,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetARootKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertEquals(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> {
                 throw assertThrows(ExecutionException.class, () -> ks.getKey("root/", null).get()).getCause();
             }).getCause().getClass());
@@ -162,12 +178,12 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testPutARootKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest1 = getMetaDataInputStream();
                 InputStream mtest2 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             when(source.updateMetaData(any(), anyString(), anyString(), anyString(), any())).thenReturn(SHA_2_MD);
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
             when(si.getMetadataInputStream()).thenReturn(mtest1).thenReturn(mtest2);
             when(source.getSourceInfo(eq("root/"), anyString())).thenReturn(si);
@@ -191,7 +207,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testInitGitStorageWithNullSource() {
         assertEquals("Source cannot be null", assertThrows(NullPointerException.class, () -> {
-            try (KeyStorage ks = new KeyStorage(null, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+            try (KeyStorage ks = new KeyStorage(null, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
             }
         }).getLocalizedMessage());
     }
@@ -200,17 +216,17 @@ public class KeyStorageTest extends BaseTest {
     public void testLoadCache() throws Throwable {
         Set<User> users = new HashSet<>();
         users.add(new User("user", "1234"));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest1 = getMetaDataInputStream();
                 InputStream mtest2 = getMetaDataInputStream();) {
             SourceInfo si1 = mock(SourceInfo.class);
             SourceInfo si2 = mock(SourceInfo.class);
 
             when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
             when(si1.getMetadataInputStream()).thenReturn(mtest1);
             when(si2.getStreamProvider()).thenReturn(toProvider(getByteArray(2)));
-            when(si2.readMetaData()).thenCallRealMethod();
+            when(si2.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si2.getMetadataInputStream()));
             when(si2.getMetadataInputStream()).thenReturn(mtest2);
             when(si1.getSourceVersion()).thenReturn(SHA_1);
             when(si2.getSourceVersion()).thenReturn(SHA_2);
@@ -239,17 +255,17 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testLoadNewCache() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream();
                 InputStream mtest4 = getMetaDataInputStream()) {
             SourceInfo si1 = mock(SourceInfo.class);
             SourceInfo si2 = mock(SourceInfo.class);
             when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
             when(si1.getMetadataInputStream()).thenReturn(mtest3);
             when(si1.getSourceVersion()).thenReturn(SHA_1);
             when(si2.getStreamProvider()).thenReturn(toProvider(getByteArray(2)));
-            when(si2.readMetaData()).thenCallRealMethod();
+            when(si2.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si2.getMetadataInputStream()));
             when(si2.getMetadataInputStream()).thenReturn(mtest4);
             when(si2.getSourceVersion()).thenReturn(SHA_2);
             when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -270,7 +286,7 @@ public class KeyStorageTest extends BaseTest {
 
         when(source.getSourceInfo(anyString(), anyString())).thenThrow(npe);
         assertSame(npe, assertThrows(NullPointerException.class, () -> {
-            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
                 try {
                     ks.getKey("", null).get();
                 } catch (Exception ignore) {
@@ -285,13 +301,13 @@ public class KeyStorageTest extends BaseTest {
         RuntimeException cause = new RuntimeException("Error reading something");
         SourceInfo info = mock(SourceInfo.class);
         when(info.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-        when(info.readMetaData()).thenCallRealMethod();
+        when(info.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(info.getMetadataInputStream()));
         when(info.getSourceVersion()).thenReturn(SHA_1);
         when(info.getMetaDataVersion()).thenReturn(SHA_1_MD);
         when(info.getMetadataInputStream()).thenReturn(getMetaDataInputStream());
         doThrow(cause).doReturn(info).when(source).getSourceInfo(anyString(), anyString());
 
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
             ks.reload(REF_HEADS_MASTER);
             assertFalse(ks.getKey("test3.json", null).get().isPresent());
             assertEquals(cause.getLocalizedMessage(), assertThrows(RuntimeException.class, () -> ks.checkHealth()).getLocalizedMessage());
@@ -306,7 +322,7 @@ public class KeyStorageTest extends BaseTest {
         doThrow(cause).when(source).getSourceInfo(anyString(), anyString());
 
         assertSame(cause, assertThrows(RuntimeException.class, () -> {
-            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
                 ks.reload(REF_HEADS_MASTER);
                 assertFalse(ks.getKey("key", null).orTimeout(5, TimeUnit.SECONDS).join().isPresent());
                 assertEquals(cause.getLocalizedMessage(), assertThrows(RuntimeException.class, () -> ks.checkHealth()).getLocalizedMessage());
@@ -319,25 +335,25 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testSourceCloseFailed() {
         doThrow(new RuntimeException("Test Exception")).when(source).close();
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
         }
     }
 
     @Test
     public void testRefIsFoundButKeyIsNot() throws Throwable {
 
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream();
                 InputStream mtest4 = getMetaDataInputStream()) {
             SourceInfo si1 = mock(SourceInfo.class);
             SourceInfo si2 = mock(SourceInfo.class);
 
             when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si1.readMetaData()).thenCallRealMethod();
+            when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
             when(si1.getMetadataInputStream()).thenReturn(mtest3);
             when(si1.getSourceVersion()).thenReturn(SHA_1);
             when(si2.getStreamProvider()).thenReturn(toProvider(getByteArray(2)));
-            when(si2.readMetaData()).thenCallRealMethod();
+            when(si2.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si2.getMetadataInputStream()));
             when(si2.getMetadataInputStream()).thenReturn(mtest4);
             when(si2.getSourceVersion()).thenReturn(SHA_2);
             when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -358,19 +374,19 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testPutAKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             byte[] data = readData("{\"one\" : \"two\"}");
             String key = "key3";
 
             when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetadataInputStream()).thenReturn(mtest3);
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
             when(source.getSourceInfo(eq("key3"), anyString())).thenReturn(si);
-            when(source.updateKey(eq(key), any(), any(), any())).thenReturn(Pair.of(SHA_2, factory));
+            when(source.updateKey(eq(key), any(), any(), any())).thenReturn(new WrittenKey(SHA_2, null, factory));
             Optional<StoreInfo> first = ks.getKey(key, null).get();
             StoreInfo storeInfo = first.get();
             assertNotNull(storeInfo);
@@ -391,19 +407,19 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testPutAOnANonWritableKey() throws Exception {
         assertThat((UnsupportedOperationException) assertThrows(WrappingAPIException.class, () -> {
-            KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+            KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
             try (ks; InputStream mtest3 = getMetaDataProtectedInputStream()) {
                 SourceInfo si = mock(SourceInfo.class);
                 byte[] data = readData("{\"one\" : \"two\"}");
                 String key = "key3";
                 when(si.getStreamProvider()).thenReturn(toProvider(data));
-                when(si.readMetaData()).thenCallRealMethod();
+                when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
                 when(si.getMetadataInputStream()).thenReturn(mtest3);
                 when(si.getSourceVersion()).thenReturn(SHA_1);
                 when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
 
                 when(source.getSourceInfo(eq(key), anyString())).thenReturn(si);
-                when(source.updateKey(eq(key), any(), any(), any())).thenReturn(Pair.of(SHA_2, factory));
+                when(source.updateKey(eq(key), any(), any(), any())).thenReturn(new WrittenKey(SHA_2, null, factory));
                 Optional<StoreInfo> first = ks.getKey(key, null).get();
                 StoreInfo storeInfo = first.get();
                 assertNotNull(storeInfo);
@@ -421,7 +437,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetADotKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             String key = ".key3";
             Optional<StoreInfo> first = ks.getKey(key, null).get();
             assertFalse(first.isPresent());
@@ -431,7 +447,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetATrainDotKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             String key = "key/key/.key3";
             Optional<StoreInfo> first = ks.getKey(key, null).get();
             assertFalse(first.isPresent());
@@ -444,10 +460,10 @@ public class KeyStorageTest extends BaseTest {
         SourceInfo si = mock(SourceInfo.class);
 
         when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-        when(si.readMetaData()).thenCallRealMethod();
+        when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
         when(si.getMetadataInputStream()).thenReturn(getMetaDataHiddenInputStream());
         when(source.getSourceInfo("key", REF_HEADS_MASTER)).thenReturn(si);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             Optional<StoreInfo> key = ks.getKey("key", null).get();
             assertFalse(key.isPresent());
             ks.checkHealth();
@@ -456,7 +472,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testPutKeyWithEmptyMessage() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
             assertThrows(IllegalArgumentException.class, () -> {
                 byte[] data = readData("{\"one\" : \"two\"}");
                 String key = "key3";
@@ -469,7 +485,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testPutKeyWithNoRef() {
         assertThrows(RefNotFoundException.class, () -> {
-            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);) {
+            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);) {
                 byte[] data = readData("{\"one\" : \"two\"}");
                 String key = "key3";
                 ks.checkHealth();
@@ -481,18 +497,18 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testPutKeyWithNoKey() throws Throwable {
         assertThat((UnsupportedOperationException) assertThrows(WrappingAPIException.class, () -> {
-            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+            try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                     InputStream mtest3 = getMetaDataInputStream()) {
                 SourceInfo si = mock(SourceInfo.class);
                 byte[] data = readData("{\"one\" : \"two\"}");
                 String key = "key3";
                 when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-                when(si.readMetaData()).thenCallRealMethod();
+                when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
                 when(si.getMetadataInputStream()).thenReturn(mtest3);
                 when(si.getSourceVersion()).thenReturn(SHA_1);
                 when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
                 when(source.getSourceInfo(eq("key3"), anyString())).thenReturn(si);
-                when(source.updateKey(eq(key), any(), any(), any())).thenReturn(Pair.of(SHA_2, factory));
+                when(source.updateKey(eq(key), any(), any(), any())).thenReturn(new WrittenKey(SHA_2, null, factory));
                 Optional<StoreInfo> first = ks.getKey(key, null).get();
                 StoreInfo storeInfo = first.get();
                 assertNotNull(storeInfo);
@@ -510,8 +526,8 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testAddKey() throws Throwable {
-        when(source.addKey(any(), any(), any(), any(), any())).thenReturn(Pair.of(Pair.of(factory, "1"), "1"));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        when(source.addKey(any(), any(), any(), any(), any())).thenReturn(new WrittenKey("1", "1", factory));
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             byte[] data = getByteArray(1);
             byte[] pretty = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(MAPPER.readTree(data));
             String si = ks
@@ -525,13 +541,13 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testPutMetaDataKey() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             String key = "key3";
 
             when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetadataInputStream()).thenReturn(mtest3);
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -556,13 +572,13 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testDelete() throws Throwable {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             String key = "key3";
 
             when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetadataInputStream()).thenReturn(mtest3);
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -578,7 +594,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testDeleteMetaKey() throws IOException {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertSame(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks
                     .deleteKey("key/", null, new CommitMetaData("user", "mail", "msg", "Test", JITSTATIC_NOWHERE))).getCause().getClass());
         }
@@ -590,8 +606,8 @@ public class KeyStorageTest extends BaseTest {
         String branch = "refs/heads/newbranch";
 
         when(source.getSourceInfo(eq(key), eq(branch))).thenThrow(RefNotFoundException.class);
-        when(source.addKey(eq(key), eq(branch), any(), any(), any())).thenReturn(Pair.of(Pair.of(factory, "1"), "1"));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        when(source.addKey(eq(key), eq(branch), any(), any(), any())).thenReturn(new WrittenKey("1", "1", factory));
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             byte[] data = getByteArray(1);
             byte[] pretty = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(MAPPER.readTree(data));
             assertThrows(RefNotFoundException.class, () -> {
@@ -621,7 +637,7 @@ public class KeyStorageTest extends BaseTest {
         when(sourceInfo.getSourceVersion()).thenReturn("1");
         when(sourceInfo.getStreamProvider()).thenReturn(toProvider(pretty));
         when(source.getSourceInfo(eq(key), eq(branch))).thenReturn(sourceInfo);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             ks.addRef(branch);
             assertSame(KeyAlreadyExist.class, assertThrows(WrappingAPIException.class, () -> {
                 try {
@@ -636,14 +652,14 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetListForRef() throws RefNotFoundException, IOException {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             String key = "dir/";
             String dirkey = "dir/key";
 
             when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetadataInputStream()).thenReturn(mtest3);
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -659,14 +675,14 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetList() throws Exception {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             String key = "dir/";
             String dirkey = "dir/key";
 
             when(si.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
-            when(si.readMetaData()).thenCallRealMethod();
+            when(si.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si.getMetadataInputStream()));
             when(si.getMetadataInputStream()).thenReturn(mtest3);
             when(si.getSourceVersion()).thenReturn(SHA_1);
             when(si.getMetaDataVersion()).thenReturn(SHA_1_MD);
@@ -688,16 +704,71 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testAclusterServiceotFile() {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertThrows(WrappingAPIException.class, () -> ks.addKey("dot/.dot", null, toProvider(new byte[] { 1 }), new MetaData(Set.of(), Set
                     .of()), new CommitMetaData("d", "d", "d", "Test", JITSTATIC_NOWHERE)));
         }
     }
 
+    @Test
+    public void testCommitRejectsConflictingChanges() {
+        CommitMetaData cmd = new CommitMetaData("d", "d", "d", "Test", JITSTATIC_NOWHERE);
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.commit(null, List.of(), cmd)).getCause()
+                    .getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .commit(null, List.of(KeyChange.delete("a", null), KeyChange.delete("a", null)), cmd)).getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .commit(null, List.of(KeyChange.add("a", toProvider(new byte[] { 1 }), metaData), KeyChange
+                            .add("a/b", toProvider(new byte[] { 1 }), metaData)), cmd)).getCause().getClass());
+            assertSame(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .commit(null, List.of(KeyChange.add("dot/.dot", toProvider(new byte[] { 1 }), metaData)), cmd)).getCause().getClass());
+            verify(source, never()).commit(any(), any(), any());
+        }
+    }
+
+    @Test
+    public void testCopyRejectsInvalidPaths() {
+        CommitMetaData cmd = new CommitMetaData("d", "d", "d", "Test", JITSTATIC_NOWHERE);
+        String other = "refs/heads/other";
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.copy("a", null, "b/", null, false, null, cmd))
+                    .getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.copy("a", null, "a", null, false, null, cmd))
+                    .getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.copy("a/", null, "a/b/", null, true, null, cmd))
+                    .getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.copy("a", other, "a", null, true, null, cmd))
+                    .getCause().getClass());
+            assertSame(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .copy(".users/", other, ".users/", null, false, null, cmd)).getCause().getClass());
+            assertThrows(RefNotFoundException.class, () -> ks.copy("a", other, "a", null, false, null, cmd));
+            verify(source, never()).readPath(any(), any());
+        }
+    }
+
+    @Test
+    public void testPathChangesOnlyTakeDirectories() {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("d", "d", "d", "Test", JITSTATIC_NOWHERE);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.deletePath("a", null, null, false, cmd))
+                    .getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks.deletePath("/", null, null, false, cmd))
+                    .getCause().getClass());
+            assertSame(IllegalArgumentException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .rewriteMetaData("a", null, metaData, null, false, cmd)).getCause().getClass());
+            assertSame(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks
+                    .deletePath(".users/", null, null, false, cmd)).getCause().getClass());
+            verify(source, never()).readPath(any(), any());
+        }
+    }
+
     @Test
     public void testGetUser() throws RefNotFoundException, IOException {
         when(source.getUser(anyString(), anyString())).thenReturn(Pair.of("1", new UserData(Set.of(new Role("role")), "1234", null, null)));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             ks.addRef("refs/heads/secret");
             assertNotNull(ks.getUser("name", "refs/heads/secret", JitStaticConstants.JITSTATIC_GIT_REALM));
         }
@@ -706,7 +777,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testGetListForNoKey() throws RefNotFoundException {
         when(source.getSourceInfo(eq("key"), eq("refs/heads/master"))).thenReturn(null);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             List<Pair<String, StoreInfo>> listForRef = ks.getListForRef(List.of(Pair.of("key", false)), "refs/heads/master").orTimeout(5, TimeUnit.SECONDS)
                     .join();
             assertTrue(listForRef.isEmpty());
@@ -716,7 +787,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testGetListNoRef() throws RefNotFoundException, IOException {
         when(source.getList(eq("key/"), eq("refs/heads/master"), Mockito.anyBoolean())).thenThrow(new RefNotFoundException("test"));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             List<Pair<String, StoreInfo>> listForRef = ks.getListForRef(List.of(Pair.of("key/", false)), "refs/heads/master").orTimeout(5, TimeUnit.SECONDS)
                     .join();
             assertTrue(listForRef.isEmpty());
@@ -726,7 +797,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testGetListIOException() throws RefNotFoundException, IOException {
         when(source.getList(eq("key/"), eq("refs/heads/master"), Mockito.anyBoolean())).thenThrow(new IOException("test"));
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             List<Pair<String, StoreInfo>> listForRef = ks.getListForRef(List.of(Pair.of("key/", false)), "refs/heads/master").orTimeout(5, TimeUnit.SECONDS)
                     .join();
             assertTrue(listForRef.isEmpty());
@@ -735,7 +806,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testGetListForAKey() throws RefNotFoundException, IOException {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches);
                 InputStream mtest3 = getMetaDataInputStream()) {
             SourceInfo si = mock(SourceInfo.class);
             MetaData metaData = mock(MetaData.class);
@@ -758,7 +829,7 @@ public class KeyStorageTest extends BaseTest {
     public void testGetUserDataNoBranch() throws RefNotFoundException, IOException {
         RefNotFoundException exception = new RefNotFoundException("Test");
         when(source.getUser(eq(".users/git/kit"), eq(REF_HEADS_MASTER))).thenThrow(exception);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertSame(exception, assertThrows(CompletionException.class, () -> ks.getUserData("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM).join())
                     .getCause().getCause());
             Mockito.verify(source).getUser(".users/git/kit", REF_HEADS_MASTER);
@@ -769,7 +840,7 @@ public class KeyStorageTest extends BaseTest {
     public void testGetUserDataIOError() throws RefNotFoundException, IOException {
         IOException exception = new IOException("Test");
         when(source.getUser(eq(".users/git/kit"), eq(REF_HEADS_MASTER))).thenThrow(exception);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertSame(exception, assertThrows(CompletionException.class, () -> ks.getUserData("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM).join())
                     .getCause().getCause());
             Mockito.verify(source).getUser(".users/git/kit", REF_HEADS_MASTER);
@@ -778,7 +849,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testUpdateUserNoRef() {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertThrows(UnsupportedOperationException.class, () -> ks
                     .updateUser("kit", "refs/heads/noref", JitStaticConstants.JITSTATIC_GIT_REALM, "updater", new UserData(Set
                             .of(new Role("role")), "p", null, null), "1"));
@@ -789,7 +860,7 @@ public class KeyStorageTest extends BaseTest {
     public void testUpdateUser() throws RefNotFoundException, IOException {
         when(source.addUser(anyString(), anyString(), anyString(), any())).thenReturn("1");
         when(source.updateUser(anyString(), anyString(), anyString(), any())).thenReturn("2");
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             ks.addUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null))
                     .orTimeout(5, TimeUnit.SECONDS).orTimeout(5, TimeUnit.SECONDS).join();
             assertEquals("2", ks
@@ -802,7 +873,7 @@ public class KeyStorageTest extends BaseTest {
     public void testUpdateUserNoKey() throws RefNotFoundException, IOException {
         when(source.addUser(anyString(), anyString(), anyString(), any())).thenReturn("1");
         when(source.updateUser(anyString(), anyString(), anyString(), any())).thenReturn("2");
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             ks.addUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null))
                     .orTimeout(5, TimeUnit.SECONDS).join();
             assertEquals("2", ks
@@ -814,7 +885,7 @@ public class KeyStorageTest extends BaseTest {
     @Test()
     public void testDeleteUser() throws RefNotFoundException, IOException {
         when(source.addUser(anyString(), anyString(), anyString(), any())).thenReturn("1");
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             ks.addUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null))
                     .orTimeout(5, TimeUnit.SECONDS).join();
             ks.deleteUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator");
@@ -824,7 +895,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testAddUserRefNotFound() throws RefNotFoundException, IOException {
         when(source.addUser(anyString(), anyString(), anyString(), any())).thenThrow(RefNotFoundException.class);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertEquals(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> {
                 try {
                     ks.addUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null))
@@ -839,7 +910,7 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testAddUserReadError() throws RefNotFoundException, IOException {
         when(source.addUser(anyString(), anyString(), anyString(), any())).thenThrow(IOException.class);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertEquals(IOException.class, assertThrows(UncheckedIOException.class, () -> {
                 try {
                     ks.addUser("kit", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null))
@@ -853,7 +924,7 @@ public class KeyStorageTest extends BaseTest {
 
     @Test
     public void testAddUserMatchingRoot() {
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertEquals("io.jitstatic.storage.KeyAlreadyExist: Key 'root' already exist in branch refs/heads/master", assertThrows(WrappingAPIException.class, () -> ks
                     .addUser("root", null, JitStaticConstants.JITSTATIC_GIT_REALM, "creator", new UserData(Set.of(new Role("role")), "pa", null, null)))
                             .getMessage());
@@ -864,7 +935,7 @@ public class KeyStorageTest extends BaseTest {
     public void testPutMetaDataDotKey() {
         MetaData md = mock(MetaData.class);
         CommitMetaData cmd = mock(CommitMetaData.class);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertEquals(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks.updateMetaData(".key", null, md, "1", cmd)
                     .orTimeout(5, TimeUnit.SECONDS).join()).getCause().getClass());
         }
@@ -874,7 +945,7 @@ public class KeyStorageTest extends BaseTest {
     public void testPutMetaDataWithNoRef() {
         MetaData md = mock(MetaData.class);
         CommitMetaData cmd = mock(CommitMetaData.class);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             assertThrows(RefNotFoundException.class, () -> ks.updateMetaData("key", "refs/heads/blah", md, "1", cmd)
                     .orTimeout(5, TimeUnit.SECONDS).join());
         }
@@ -883,13 +954,182 @@ public class KeyStorageTest extends BaseTest {
     @Test
     public void testDeleteFromTag() {
         CommitMetaData cmd = mock(CommitMetaData.class);
-        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry)) {
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
             String tag = "refs/tags/blah";
             ks.addRef(tag);
             assertEquals(UnsupportedOperationException.class, assertThrows(WrappingAPIException.class, () -> ks.deleteKey("key", tag, cmd)).getCause().getClass());
         }
     }
 
+    @Test
+    public void testHotSetIsWrittenAndPrefetched() throws Throwable {
+        HotSet hotSet = new HotSet(getFolderFile().toPath().resolve("hotset"), 10, 60);
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key"), anyString())).thenReturn(si1);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE, 1000,
+                hotSet, 0, null, caches)) {
+            assertTrue(ks.getKey("key", null).get().isPresent());
+            assertTrue(ks.getKey("key", null).get().isPresent());
+        }
+        List<HotSet.HotKey> hotKeys = hotSet.read();
+        assertEquals(1, hotKeys.size());
+        assertEquals(REF_HEADS_MASTER, hotKeys.get(0).getRef());
+        assertEquals("key", hotKeys.get(0).getKey());
+        assertEquals(2, hotKeys.get(0).getCount());
+
+        Mockito.clearInvocations(source);
+        try (LocalRefLockService restartedLockService = new LocalRefLockService(registry, caches);
+                KeyStorage ks = new KeyStorage(source, null, hashService, restartedLockService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE,
+                        1000, hotSet, 0, null, caches)) {
+            ks.prefetchHotSet();
+            Mockito.verify(source).getSourceInfo(eq("key"), eq(REF_HEADS_MASTER));
+            assertEquals("done", hotSet.getProgress().getState());
+            assertEquals(1, hotSet.getProgress().getLoaded());
+            assertEquals(hotSet.getProgress().toMap(), ks.execute().getDetails().get("hotSetPrefetch"));
+        }
+    }
+
+    @Test
+    public void testHotSetPrefetchRespectsBudget() throws Throwable {
+        HotSet hotSet = new HotSet(getFolderFile().toPath().resolve("hotset"), 10, 60);
+        hotSet.write(List.of(new HotSet.HotKey(REF_HEADS_MASTER, "key1", 2), new HotSet.HotKey(REF_HEADS_MASTER, "key2", 1)));
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key1"), anyString())).thenReturn(si1);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE, 1,
+                hotSet, 0, null, caches)) {
+            ks.prefetchHotSet();
+            Mockito.verify(source).getSourceInfo(eq("key1"), eq(REF_HEADS_MASTER));
+            Mockito.verify(source, Mockito.never()).getSourceInfo(eq("key2"), anyString());
+            assertEquals(1, hotSet.getProgress().getLoaded());
+        }
+    }
+
+    @Test
+    public void testHotSetPrefetchSkipsKeysOverBudget() throws Throwable {
+        HotSet hotSet = new HotSet(getFolderFile().toPath().resolve("hotset"), 10, 60);
+        hotSet.write(List.of(new HotSet.HotKey(REF_HEADS_MASTER, "key1", 2, 10), new HotSet.HotKey(REF_HEADS_MASTER, "key2", 1, 1)));
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key2"), anyString())).thenReturn(si1);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE, 1,
+                hotSet, 0, null, caches)) {
+            ks.prefetchHotSet();
+            Mockito.verify(source, Mockito.never()).getSourceInfo(eq("key1"), anyString());
+            Mockito.verify(source).getSourceInfo(eq("key2"), eq(REF_HEADS_MASTER));
+        }
+    }
+
+    @Test
+    public void testHotSetPrefetchLoadsOtherRefs() throws Throwable {
+        String ref = "refs/heads/other";
+        HotSet hotSet = new HotSet(getFolderFile().toPath().resolve("hotset"), 10, 60);
+        hotSet.write(List.of(new HotSet.HotKey(ref, "key", 2, 1), new HotSet.HotKey("refs/heads/gone", "key", 1, 1)));
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key"), eq(ref))).thenReturn(si1);
+        when(source.refExists(eq(ref))).thenReturn(true);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE,
+                1000, hotSet, 0, null, caches)) {
+            ks.prefetchHotSet();
+            Mockito.verify(source).getSourceInfo(eq("key"), eq(ref));
+            Mockito.verify(source, Mockito.never()).getSourceInfo(eq("key"), eq("refs/heads/gone"));
+            assertEquals(1, hotSet.getProgress().getLoaded());
+        }
+    }
+
+    @Test
+    public void testRefIsMaterializedLazily() throws Throwable {
+        String ref = "refs/heads/other";
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key"), eq(ref))).thenReturn(si1);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
+            assertThrows(RefNotFoundException.class, () -> ks.getUserData("user", ref, "realm"));
+            when(source.refExists(eq(ref))).thenReturn(true);
+            assertTrue(ks.getKey("key", ref).get().isPresent());
+            ks.checkHealth();
+        }
+    }
+
+    @Test
+    public void testCachedKeyIsReadOnTheCallingThread() throws Throwable {
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getByteArray(1)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).then(i -> getMetaDataInputStream());
+        when(si1.getSourceVersion()).thenReturn(SHA_1);
+        when(si1.getMetaDataVersion()).thenReturn(SHA_1_MD);
+        when(source.getSourceInfo(eq("key"), anyString())).thenReturn(si1);
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, caches)) {
+            assertTrue(ks.getKey("key", null).get().isPresent());
+            assertEquals(1, registry.meter(MetricRegistry.name(KeyStorage.class, "async-reads")).getCount());
+            CompletableFuture<Optional<StoreInfo>> cached = ks.getKey("key", null);
+            assertTrue(cached.isDone());
+            assertTrue(cached.get().isPresent());
+            assertEquals(1, registry.meter(MetricRegistry.name(KeyStorage.class, "fast-path-reads")).getCount());
+            verify(source, times(1)).getSourceInfo(eq("key"), anyString());
+        }
+    }
+
+    @Test
+    public void testIdleRefsAreEvicted() throws Throwable {
+        String ref = "refs/heads/other";
+        String tag = "refs/tags/tag";
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE, 0,
+                null, 0, null, caches)) {
+            ks.addRef(ref);
+            ks.addRef(tag);
+            ks.evictIdleRefs();
+            assertThrows(RefNotFoundException.class, () -> ks.getUserData("user", ref, "realm"));
+            assertThrows(RefNotFoundException.class, () -> ks.getUserData("user", tag, "realm"));
+            when(source.getUser(eq(".users/realm/user"), eq(REF_HEADS_MASTER))).thenReturn(Pair.of("1", new UserData(Set.of(), "p", null, null)));
+            assertEquals("1", ks.getUserData("user", null, "realm").get().getLeft());
+            when(source.refExists(eq(ref))).thenReturn(true);
+            when(source.getUser(eq(".users/realm/user"), eq(ref))).thenReturn(Pair.of("2", new UserData(Set.of(), "p", null, null)));
+            assertEquals("2", ks.getUserData("user", ref, "realm").get().getLeft());
+        }
+    }
+
+    @Test
+    public void testRetiredRefIsLookedUpAgain() throws Throwable {
+        String ref = "refs/heads/other";
+        when(source.refExists(eq(ref))).thenReturn(true);
+        when(source.getUser(eq(".users/realm/user"), eq(ref))).thenReturn(Pair.of("2", new UserData(Set.of(), "p", null, null)));
+        try (KeyStorage ks = new KeyStorage(source, null, hashService, clusterService, "root", defaultExecutor, workStealer, registry, RefMatcher.NONE, 0,
+                null, 0, null, caches)) {
+            ks.addRef(ref);
+            Thread.sleep(1);
+            ks.evictIdleRefs();
+            assertEquals("2", ks.getUserData("user", ref, "realm").get().getLeft());
+            assertEquals("2", ks.getUserData("user", ref, "realm").get().getLeft());
+        }
+    }
+
+    @Override
+    protected File getFolderFile() throws IOException { return tmpFolder.createTemporaryDirectory(); }
+
     private byte[] getByteArray(int c) {
         return ("{\"data\":\"value" + c + "\"}").getBytes(UTF_8);
     }
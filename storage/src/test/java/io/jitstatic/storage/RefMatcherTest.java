@@ -0,0 +1,62 @@
+package io.jitstatic.storage;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RefMatcherTest {
+
+    @Test
+    void testMatchExact() {
+        RefMatcher matcher = new RefMatcher(List.of("refs/heads/master"));
+        assertTrue(matcher.test("refs/heads/master"));
+        assertFalse(matcher.test("refs/heads/master2"));
+        assertFalse(matcher.test(null));
+    }
+
+    @Test
+    void testMatchGlob() {
+        RefMatcher matcher = new RefMatcher(List.of("refs/heads/prod*", "refs/tags/v?"));
+        assertTrue(matcher.test("refs/heads/prod"));
+        assertTrue(matcher.test("refs/heads/production"));
+        assertTrue(matcher.test("refs/tags/v1"));
+        assertFalse(matcher.test("refs/tags/v10"));
+        assertFalse(matcher.test("refs/heads/develop"));
+    }
+
+    @Test
+    void testRegexCharactersAreLiteral() {
+        RefMatcher matcher = new RefMatcher(List.of("refs/heads/a.b"));
+        assertTrue(matcher.test("refs/heads/a.b"));
+        assertFalse(matcher.test("refs/heads/axb"));
+    }
+
+    @Test
+    void testNone() {
+        assertFalse(RefMatcher.NONE.test("refs/heads/master"));
+    }
+}
@@ -31,6 +31,7 @@ import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import io.jitstatic.storage.Tree.Node;
+import io.jitstatic.utils.KeyPaths;
 import io.jitstatic.utils.Pair;
 
 public class TreeTest {
@@ -65,6 +66,11 @@ public class TreeTest {
         assertEquals(expected, Tree.of(data).accept(Tree.EXTRACTOR));
     }
 
+    @Test
+    public void testKeyPathsDedupeAgreesWithExtractor() {
+        assertEquals(Tree.of(data).accept(Tree.EXTRACTOR), KeyPaths.dedupe(data));
+    }
+
     @Test
     public void testOrderingAndStarNode() {
         List<Pair<String, Boolean>> data = List.of(
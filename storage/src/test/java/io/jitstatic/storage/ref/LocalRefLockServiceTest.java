@@ -19,17 +19,25 @@ package io.jitstatic.storage.ref;
  * limitations under the License.
  * #L%
  */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
 
 import com.codahale.metrics.MetricRegistry;
+import com.spencerwi.either.Either;
 
+import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 
 class LocalRefLockServiceTest {
 
@@ -38,11 +46,55 @@ class LocalRefLockServiceTest {
         MetricRegistry registry = new MetricRegistry();
         Source source = mock(Source.class);
         ExecutorService workstealingExecutor = ForkJoinPool.commonPool();
-        try (LocalRefLockService service = new LocalRefLockService(registry);) {
+        try (LocalRefLockService service = new LocalRefLockService(registry, new SourceCaches());) {
             LockService lockService = service.getLockService("refs/heads/master", workstealingExecutor, source);
+            LockService other = service.getLockService("refs/heads/master", workstealingExecutor, source);
+            assertSame(lockService, other);
             service.returnLock(lockService);
             LockService lockService2 = service.getLockService("refs/heads/master", workstealingExecutor, source);
             assertSame(lockService, lockService2);
         }
     }
+
+    @Test
+    void testLockServiceIsReleasedWhenReturnedByAllUsers() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        Source source = mock(Source.class);
+        ExecutorService workstealingExecutor = ForkJoinPool.commonPool();
+        try (LocalRefLockService service = new LocalRefLockService(registry, new SourceCaches());) {
+            LockService lockService = service.getLockService("refs/heads/master", workstealingExecutor, source);
+            LockService other = service.getLockService("refs/heads/master", workstealingExecutor, source);
+            service.returnLock(lockService);
+            assertEquals(1, service.size());
+            service.returnLock(other);
+            assertEquals(0, service.size());
+            assertNotSame(lockService, service.getLockService("refs/heads/master", workstealingExecutor, source));
+        }
+    }
+
+    @Test
+    void testLockServiceWithPendingWritesIsKeptUntilIdle() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        Source source = mock(Source.class);
+        ExecutorService workstealingExecutor = ForkJoinPool.commonPool();
+        CountDownLatch latch = new CountDownLatch(1);
+        try (LocalRefLockService service = new LocalRefLockService(registry, new SourceCaches());) {
+            LockService lockService = service.getLockService("refs/heads/master", workstealingExecutor, source);
+            CompletableFuture<Either<String, FailedToLock>> write = lockService.fireEvent("refs/heads/master", () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }, () -> null, e -> {});
+            service.returnLock(lockService);
+            assertSame(lockService, service.getLockService("refs/heads/master", workstealingExecutor, source));
+            service.returnLock(lockService);
+            assertEquals(1, service.size());
+            latch.countDown();
+            assertTrue(write.get().isLeft());
+            assertEquals(0, service.size());
+        }
+    }
 }
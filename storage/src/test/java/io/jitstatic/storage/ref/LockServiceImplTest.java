@@ -23,33 +23,62 @@ package io.jitstatic.storage.ref;
 import static io.jitstatic.source.ObjectStreamProvider.toProvider;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import com.spencerwi.either.Either;
+
+import io.jitstatic.CommitMetaData;
+import io.jitstatic.MetaData;
+import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.LoadException;
+import io.jitstatic.hosted.SourceHandler;
 import io.jitstatic.hosted.StoreInfo;
+import io.jitstatic.source.KeyChange;
+import io.jitstatic.source.KeyImport;
+import io.jitstatic.source.PathSnapshot;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
+import io.jitstatic.storage.HotSet.HotKey;
 import io.jitstatic.storage.KeyAlreadyExist;
+import io.jitstatic.storage.ref.RefCacheEntry.KeyEntry;
 import io.jitstatic.test.BaseTest;
+import io.jitstatic.utils.Functions.ThrowingSupplier;
 import io.jitstatic.utils.NamingThreadFactory;
+import io.jitstatic.utils.Pair;
+import io.jitstatic.utils.VersionIsNotSame;
 import io.jitstatic.utils.WrappingAPIException;
 
 class LockServiceImplTest extends BaseTest {
@@ -59,6 +88,7 @@ class LockServiceImplTest extends BaseTest {
     private LocalRefLockService clusterService;
     private ExecutorService workStealer;
     private LockService lock;
+    private final SourceCaches caches = new SourceCaches();
 
     private ExecutorService repoWriter;
 
@@ -83,12 +113,12 @@ class LockServiceImplTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
         when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.getSourceVersion()).thenReturn("2");
         when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             assertTrue(lock.readKey("key").isPresent());
         }
     }
@@ -96,7 +126,7 @@ class LockServiceImplTest extends BaseTest {
     @Test
     public void testLoadAndStoreRefNotFound() throws IOException, RefNotFoundException {
         when(source.getSourceInfo(eq("key"), eq(REF))).thenThrow(new RefNotFoundException(REF));
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             assertThrows(LoadException.class, () -> lock.readKey("key"));
         }
     }
@@ -106,12 +136,12 @@ class LockServiceImplTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
         when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaDataHidden()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.getSourceVersion()).thenReturn("2");
         when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             Optional<StoreInfo> loadAndStore = lock.readKey("key");
             assertEquals(lock.readKey("key"), loadAndStore);
             assertFalse(loadAndStore.isPresent());
@@ -122,12 +152,12 @@ class LockServiceImplTest extends BaseTest {
     public void testLoadAndStoreMetaData() throws IOException, RefNotFoundException {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.isMetaDataSource()).thenReturn(true);
         when(source.getSourceInfo(eq("key/"), eq(REF))).thenReturn(sourceInfo);
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             Optional<StoreInfo> loadAndStore = lock.readKey("key/");
             assertEquals(lock.readKey("key/"), loadAndStore);
             assertTrue(loadAndStore.isPresent());
@@ -139,10 +169,10 @@ class LockServiceImplTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
         IOException ioException = new IOException("Test exception");
 
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenThrow(ioException);
         when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             assertSame(ioException, assertThrows(UncheckedIOException.class, () -> lock.readKey("key")).getCause());
         }
     }
@@ -150,15 +180,15 @@ class LockServiceImplTest extends BaseTest {
 
     @Test
     public void testCheckIfPlainKeyDoesNotExist() {
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
-            lock.putKey("key", Optional.empty());
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("key", null);
             lock.checkIfPlainKeyExist("key/");
         }
     }
 
     @Test
     public void testCheckIfPlainKeyDoesNotExistNull() {
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             lock.checkIfPlainKeyExist("key/");
         }
     }
@@ -166,21 +196,270 @@ class LockServiceImplTest extends BaseTest {
     @Test
     public void testCheckIfPlainKeyExist() {
         StoreInfo storeInfo = mock(StoreInfo.class);
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
-            lock.putKey("key", Optional.of(storeInfo));
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("key", storeInfo);
             assertThrows(WrappingAPIException.class, () -> lock.checkIfPlainKeyExist("key/"));
         }
     }
     
     @Test
     public void testCheckIfPlainKeyDoesExist() {
-        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter)) {
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
             StoreInfo si = Mockito.mock(StoreInfo.class);
-            lock.putKey("key", Optional.of(si));
+            lock.putKey("key", si);
             assertEquals(KeyAlreadyExist.class, assertThrows(WrappingAPIException.class, () -> lock.checkIfPlainKeyExist("key/")).getCause().getClass());
         }
     }
     
+    @Test
+    public void testWarmUp() throws IOException, RefNotFoundException {
+        SourceInfo si1 = mock(SourceInfo.class);
+        SourceInfo si2 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(si1.getMetaDataVersion()).thenReturn("1");
+        when(si1.getSourceVersion()).thenReturn("1");
+        when(si2.getStreamProvider()).thenReturn(toProvider(getData(2).getBytes(UTF_8)));
+        when(si2.getMetaDataVersion()).thenReturn("1");
+        when(si2.getSourceVersion()).thenReturn("2");
+        when(source.getAllSourceInfo(eq(REF), anyLong())).thenReturn(List.of(Pair.of("key1", si1), Pair.of("dir/key2", si2)));
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            assertEquals(2, lock.warmUp(1000).join());
+            assertTrue(lock.peek("key1").isPresent());
+            assertEquals("2", ((KeyEntry) lock.peek("dir/key2")).getStoreInfo().getVersion());
+            verify(si2, never()).readMetaData();
+            verify(source, never()).getSourceInfo(eq("key1"), eq(REF));
+        }
+    }
+
+    @Test
+    public void testWarmUpDoesNotOverwriteCachedKeys() throws IOException, RefNotFoundException {
+        SourceInfo si1 = mock(SourceInfo.class);
+        StoreInfo cached = mock(StoreInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(si1.getMetaDataVersion()).thenReturn("1");
+        when(si1.getSourceVersion()).thenReturn("1");
+        when(source.getAllSourceInfo(eq(REF), anyLong())).thenReturn(List.of(Pair.of("key1", si1)));
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("key1", cached);
+            assertEquals(0, lock.warmUp(1000).join());
+            assertSame(cached, ((KeyEntry) lock.peek("key1")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testWarmUpIsSkippedIfTheTreeMoved() throws IOException, RefNotFoundException {
+        SourceInfo si1 = mock(SourceInfo.class);
+        when(si1.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
+        when(si1.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(si1.getMetadataInputStream()));
+        when(si1.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
+        when(si1.getMetaDataVersion()).thenReturn("1");
+        when(si1.getSourceVersion()).thenReturn("1");
+        when(source.getAllSourceInfo(eq(REF), anyLong())).thenReturn(List.of(Pair.of("key1", si1)));
+        when(source.getTreeVersion(eq(REF))).thenReturn("tree1", "tree2");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            assertEquals(0, lock.warmUp(1000).join());
+            assertNull(lock.peek("key1"));
+        }
+    }
+
+    @Test
+    public void testInvalidateInheritingKeys() {
+        StoreInfo inheriting = mock(StoreInfo.class);
+        StoreInfo ownMetaData = mock(StoreInfo.class);
+        StoreInfo subDirectory = mock(StoreInfo.class);
+        when(inheriting.getMetaDataVersion()).thenReturn("1");
+        when(ownMetaData.getMetaDataVersion()).thenReturn("2");
+        when(subDirectory.getMetaDataVersion()).thenReturn("1");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("dir/a", inheriting);
+            lock.putKey("dir/b", ownMetaData);
+            lock.putKey("dir/hidden", null);
+            lock.putKey("dir/sub/c", subDirectory);
+            lock.putKey("other", inheriting);
+            lock.invalidateInheritingKeys("dir/", "1");
+            assertNull(lock.peek("dir/a"));
+            assertNull(lock.peek("dir/hidden"));
+            assertSame(ownMetaData, ((KeyEntry) lock.peek("dir/b")).getStoreInfo());
+            assertSame(subDirectory, ((KeyEntry) lock.peek("dir/sub/c")).getStoreInfo());
+            assertSame(inheriting, ((KeyEntry) lock.peek("other")).getStoreInfo());
+            lock.invalidateInheritingKeys("/", "1");
+            assertNull(lock.peek("other"));
+            assertSame(ownMetaData, ((KeyEntry) lock.peek("dir/b")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testCommitWritesAllChanges() throws Exception {
+        @SuppressWarnings("unchecked")
+        ThrowingSupplier<ObjectLoader, IOException> loader = mock(ThrowingSupplier.class);
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        List<KeyChange> changes = List.of(KeyChange.update("a", toProvider(new byte[] { 1 }), "1"), KeyChange.add("b", toProvider(new byte[] { 2 }), metaData),
+                KeyChange.delete("c", null));
+        when(source.commit(eq(changes), eq(REF), eq(cmd))).thenReturn(Arrays.asList(new WrittenKey("2", null, loader), new WrittenKey("3", "4", loader), null));
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1"));
+            lock.putKey("c", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "5", "5"));
+            Either<List<String>, FailedToLock> result = lock.commit(changes, cmd).orTimeout(5, TimeUnit.SECONDS).join();
+            assertEquals(List.of("2", "3", ObjectId.zeroId().name()), result.getLeft());
+            assertEquals("2", ((KeyEntry) lock.peek("a")).getStoreInfo().getVersion());
+            assertEquals("4", ((KeyEntry) lock.peek("b")).getStoreInfo().getMetaDataVersion());
+            assertFalse(lock.peek("c").isPresent());
+        }
+    }
+
+    @Test
+    public void testCommitDoesNotWriteIfAnyPreconditionFails() throws Exception {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1"));
+            lock.putKey("b", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1"));
+            CompletionException ce = assertThrows(CompletionException.class, () -> lock
+                    .commit(List.of(KeyChange.update("a", toProvider(new byte[] { 1 }), "1"), KeyChange.update("b", toProvider(new byte[] { 1 }), "2")), cmd)
+                    .orTimeout(5, TimeUnit.SECONDS).join());
+            assertTrue(ce.getCause().getCause() instanceof VersionIsNotSame);
+            verify(source, never()).commit(any(), any(), any());
+            assertEquals("1", ((KeyEntry) lock.peek("a")).getStoreInfo().getVersion());
+        }
+    }
+
+    @Test
+    public void testImportKeysInvalidatesImportedKeys() throws Exception {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        KeyImport keys = mock(KeyImport.class);
+        when(keys.getKeys()).thenReturn(List.of("a", "b"));
+        when(source.importKeys(eq(keys), eq(REF), eq(cmd))).thenReturn("commit");
+        StoreInfo other = new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1"));
+            lock.putKey("b", null);
+            lock.putKey("c", other);
+            assertEquals("commit", lock.importKeys(keys, cmd).orTimeout(5, TimeUnit.SECONDS).join().getLeft());
+            assertNull(lock.peek("a"));
+            assertNull(lock.peek("b"));
+            assertSame(other, ((KeyEntry) lock.peek("c")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testCopyChecksVersionOfWhatIsCopied() {
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        when(source.readPath(eq("dir/"), eq("refs/heads/other"))).thenReturn(new PathSnapshot("dir/", "1", List.of(Pair.of("a", "2"))));
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            CompletionException ce = assertThrows(CompletionException.class, () -> lock.copy("dir/", "refs/heads/other", "dir/", false, "3", cmd)
+                    .orTimeout(5, TimeUnit.SECONDS).join());
+            assertTrue(ce.getCause().getCause() instanceof VersionIsNotSame);
+            ce = assertThrows(CompletionException.class, () -> lock.copy("missing/", "refs/heads/other", "dir/", false, null, cmd)
+                    .orTimeout(5, TimeUnit.SECONDS).join());
+            assertTrue(ce.getCause().getCause() instanceof UnsupportedOperationException);
+            verify(source, never()).copy(any(), any(), any(), Mockito.anyBoolean(), any());
+        }
+    }
+
+    @Test
+    public void testCopyInvalidatesCopiedKeys() {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        PathSnapshot snapshot = new PathSnapshot("a", "1", List.of(Pair.of("", "1"), Pair.of(".metadata", "2")));
+        when(source.readPath(eq("a"), eq(REF))).thenReturn(snapshot);
+        when(source.copy(eq(snapshot), eq("b"), eq(REF), eq(true), eq(cmd))).thenReturn(List.of(Pair.of("b", "1"), Pair.of("b.metadata", "2")));
+        StoreInfo other = new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "2"));
+            lock.putKey("b", null);
+            lock.putKey("c", other);
+            assertEquals(List.of(Pair.of("b", "1")), lock.copy("a", REF, "b", true, "1", cmd).orTimeout(5, TimeUnit.SECONDS).join().getLeft());
+            assertNull(lock.peek("a"));
+            assertNull(lock.peek("b"));
+            assertSame(other, ((KeyEntry) lock.peek("c")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testDeletePathOnlyInvalidatesKeysInheritingDirectoryMetaData() {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        PathSnapshot snapshot = new PathSnapshot("dir/sub/", "1", List.of(Pair.of("a", "2"), Pair.of(".metadata", "3")));
+        when(source.readPath(eq("dir/sub/"), eq(REF))).thenReturn(snapshot);
+        when(source.deletePath(eq(snapshot), eq(REF), eq(cmd))).thenReturn("commit");
+        StoreInfo other = new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("dir/sub/", new StoreInfo(metaData, "3"));
+            lock.putKey("dir/sub/a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "2", "3"));
+            lock.putKey("dir/sub/b", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "4", "5"));
+            lock.putKey("dir/c", other);
+            assertEquals(Pair.of(List.of("dir/sub/a"), "commit"), lock.deletePath("dir/sub/", "1", false, cmd).orTimeout(5, TimeUnit.SECONDS)
+                    .join().getLeft());
+            assertNull(lock.peek("dir/sub/"));
+            assertNull(lock.peek("dir/sub/a"));
+            assertNotNull(lock.peek("dir/sub/b"));
+            assertSame(other, ((KeyEntry) lock.peek("dir/c")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testDeletePathDryRunDoesNotWrite() {
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        PathSnapshot snapshot = new PathSnapshot("dir/", "1", List.of(Pair.of("a", "2"), Pair.of("a.metadata", "3"), Pair.of("sub/b", "4")));
+        when(source.readPath(eq("dir/"), eq(REF))).thenReturn(snapshot);
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            Pair<List<String>, String> result = lock.deletePath("dir/", "1", true, cmd).orTimeout(5, TimeUnit.SECONDS).join().getLeft();
+            assertEquals(List.of("dir/a", "dir/sub/b"), result.getLeft());
+            assertNull(result.getRight());
+            CompletionException ce = assertThrows(CompletionException.class, () -> lock.deletePath("dir/", "2", true, cmd)
+                    .orTimeout(5, TimeUnit.SECONDS).join());
+            assertTrue(ce.getCause().getCause() instanceof VersionIsNotSame);
+            verify(source, never()).deletePath(any(), any(), any());
+        }
+    }
+
+    @Test
+    public void testRewriteMetaDataInvalidatesRewrittenKeys() {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        CommitMetaData cmd = new CommitMetaData("user", "mail", "message", "proxyUser", "proxyUserMail");
+        PathSnapshot snapshot = new PathSnapshot("dir/", "1", List.of(Pair.of("a", "2"), Pair.of("a.metadata", "3")));
+        when(source.readPath(eq("dir/"), eq(REF))).thenReturn(snapshot);
+        when(source.rewriteMetaData(eq(snapshot), eq(metaData), eq(REF), eq(cmd))).thenReturn("commit");
+        StoreInfo other = new StoreInfo(toProvider(new byte[] { 0 }), metaData, "1", "1");
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("dir/a", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "2", "3"));
+            lock.putKey("c", other);
+            assertEquals(Pair.of(List.of("dir/a"), "commit"), lock.rewriteMetaData("dir/", metaData, null, false, cmd).orTimeout(5, TimeUnit.SECONDS)
+                    .join().getLeft());
+            assertNull(lock.peek("dir/a"));
+            assertSame(other, ((KeyEntry) lock.peek("c")).getStoreInfo());
+        }
+    }
+
+    @Test
+    public void testHotKeysDecay() {
+        MetaData metaData = new MetaData(Set.of(), Set.of());
+        try (LockServiceImpl lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, caches)) {
+            lock.putKey("a", new StoreInfo(toProvider(new byte[] { 0, 1 }), metaData, "1", "1"));
+            lock.putKey("b", new StoreInfo(toProvider(new byte[] { 0 }), metaData, "2", "2"));
+            for (int i = 0; i < 4; i++) {
+                lock.peekKey("a");
+            }
+            lock.peekKey("b");
+            List<HotKey> hotKeys = lock.getHotKeys(10);
+            assertEquals(2, hotKeys.size());
+            assertEquals("a", hotKeys.get(0).getKey());
+            assertEquals(REF, hotKeys.get(0).getRef());
+            assertEquals(4, hotKeys.get(0).getCount());
+            assertEquals(2, hotKeys.get(0).getSize());
+            assertEquals(1, hotKeys.get(1).getCount());
+            hotKeys = lock.getHotKeys(10);
+            assertEquals(1, hotKeys.size());
+            assertEquals(2, hotKeys.get(0).getCount());
+        }
+    }
+
     private ByteArrayInputStream asStream(String data) {
         return new ByteArrayInputStream(data.getBytes(UTF_8));
     }
@@ -19,21 +19,42 @@ package io.jitstatic.storage.ref;
  * limitations under the License.
  * #L%
  */
+import static io.jitstatic.source.ObjectStreamProvider.toProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import io.jitstatic.CommitMetaData;
 import io.jitstatic.MetaData;
 import io.jitstatic.auth.UserData;
+import io.jitstatic.hosted.SourceHandler;
+import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.source.ObjectStreamProvider;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceInfo;
 import io.jitstatic.storage.HashService;
+import io.jitstatic.utils.Pair;
 import io.jitstatic.utils.WrappingAPIException;
 
 class ReadOnlyRefHolderTest {
@@ -58,4 +79,111 @@ class ReadOnlyRefHolderTest {
         }
     }
 
+    @Test
+    void testReadsAreServedFromSharedSnapshot() throws IOException, RefNotFoundException {
+        ExecutorService workStealer = mock(ExecutorService.class);
+        Source source = mock(Source.class);
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        LockService lock = mock(LockService.class);
+        LocalRefLockService lrls = mock(LocalRefLockService.class);
+        StoreInfo other = mock(StoreInfo.class);
+        when(lrls.getLockService(any(), any(), any())).thenReturn(lock);
+        when(lock.readKey(eq("other"))).thenReturn(Optional.of(other));
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider("{\"data\":1}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
+        when(sourceInfo.getMetadataInputStream())
+                .then(i -> new ByteArrayInputStream("{\"users\":[],\"read\":[],\"write\":[]}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.getSourceVersion()).thenReturn("1");
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(source.getTreeVersion(any())).thenReturn("tree");
+        when(source.getAllSourceInfo(any(), anyLong())).thenReturn(List.of(Pair.of("key", sourceInfo)));
+        TagSnapshots snapshots = new TagSnapshots(1000);
+        try (ReadOnlyRefHolder tag1 = new ReadOnlyRefHolder("refs/tags/1", source, mock(HashService.class), lrls, workStealer, snapshots);
+                ReadOnlyRefHolder tag2 = new ReadOnlyRefHolder("refs/tags/2", source, mock(HashService.class), lrls, workStealer, snapshots)) {
+            Optional<StoreInfo> key = tag1.readKey("key");
+            assertEquals("1", key.get().getVersion());
+            assertSame(key.get(), tag2.readKey("key").get());
+            assertSame(other, tag1.readKey("other").get());
+            verify(source, times(1)).getAllSourceInfo(any(), anyLong());
+            verify(lock, times(0)).readKey(eq("key"));
+            assertEquals(1, snapshots.size());
+        }
+    }
+
+    @Test
+    void testSnapshotIsDroppedOnReload() throws IOException, RefNotFoundException {
+        ExecutorService workStealer = mock(ExecutorService.class);
+        Source source = mock(Source.class);
+        LockService lock = mock(LockService.class);
+        LocalRefLockService lrls = mock(LocalRefLockService.class);
+        when(lrls.getLockService(any(), any(), any())).thenReturn(lock);
+        when(source.getTreeVersion(any())).thenReturn("tree1").thenReturn("tree2");
+        when(source.getAllSourceInfo(any(), anyLong())).thenReturn(List.of());
+        try (ReadOnlyRefHolder tag = new ReadOnlyRefHolder("refs/tags/1", source, mock(HashService.class), lrls, workStealer, new TagSnapshots(1000))) {
+            assertFalse(tag.readKey("key").isPresent());
+            tag.reload();
+            assertFalse(tag.readKey("key").isPresent());
+            verify(source, times(2)).getAllSourceInfo(any(), anyLong());
+            verify(lock).reload();
+        }
+    }
+
+    @Test
+    void testSnapshotsShareOneBudget() throws IOException, RefNotFoundException {
+        ExecutorService workStealer = mock(ExecutorService.class);
+        Source source = mock(Source.class);
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        LockService lock = mock(LockService.class);
+        LocalRefLockService lrls = mock(LocalRefLockService.class);
+        StoreInfo fallback = mock(StoreInfo.class);
+        when(lrls.getLockService(any(), any(), any())).thenReturn(lock);
+        when(lock.readKey(eq("key"))).thenReturn(Optional.of(fallback));
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider("{\"data\":1}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
+        when(sourceInfo.getMetadataInputStream())
+                .then(i -> new ByteArrayInputStream("{\"users\":[],\"read\":[],\"write\":[]}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.getSourceVersion()).thenReturn("1");
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(source.getTreeVersion(eq("refs/tags/1"))).thenReturn("tree1");
+        when(source.getTreeVersion(eq("refs/tags/2"))).thenReturn("tree2");
+        when(source.getAllSourceInfo(any(), anyLong())).thenReturn(List.of(Pair.of("key", sourceInfo)));
+        TagSnapshots snapshots = new TagSnapshots(TagSnapshot.ENTRY_OVERHEAD + 20);
+        try (ReadOnlyRefHolder tag1 = new ReadOnlyRefHolder("refs/tags/1", source, mock(HashService.class), lrls, workStealer, snapshots);
+                ReadOnlyRefHolder tag2 = new ReadOnlyRefHolder("refs/tags/2", source, mock(HashService.class), lrls, workStealer, snapshots)) {
+            assertEquals("1", tag1.readKey("key").get().getVersion());
+            assertEquals("1", tag2.readKey("key").get().getVersion());
+            assertEquals(1, snapshots.size());
+            assertEquals(TagSnapshot.ENTRY_OVERHEAD + 10, snapshots.getBytes());
+            assertSame(fallback, tag1.readKey("key").get());
+            verify(source, times(2)).getAllSourceInfo(any(), anyLong());
+        }
+    }
+
+    @Test
+    void testPeekIsServedFromSnapshot() throws IOException, RefNotFoundException {
+        ExecutorService workStealer = mock(ExecutorService.class);
+        Source source = mock(Source.class);
+        SourceInfo sourceInfo = mock(SourceInfo.class);
+        LockService lock = mock(LockService.class);
+        LocalRefLockService lrls = mock(LocalRefLockService.class);
+        when(lrls.getLockService(any(), any(), any())).thenReturn(lock);
+        when(lock.peekKey(any())).thenReturn(null);
+        when(sourceInfo.getStreamProvider()).thenReturn(toProvider("{\"data\":1}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
+        when(sourceInfo.getMetadataInputStream())
+                .then(i -> new ByteArrayInputStream("{\"users\":[],\"read\":[],\"write\":[]}".getBytes(StandardCharsets.UTF_8)));
+        when(sourceInfo.getSourceVersion()).thenReturn("1");
+        when(sourceInfo.getMetaDataVersion()).thenReturn("2");
+        when(source.getTreeVersion(any())).thenReturn("tree");
+        when(source.getAllSourceInfo(any(), anyLong())).thenReturn(List.of(Pair.of("key", sourceInfo)));
+        try (ReadOnlyRefHolder tag = new ReadOnlyRefHolder("refs/tags/1", source, mock(HashService.class), lrls, workStealer, new TagSnapshots(1000))) {
+            assertNull(tag.peekKey("key"));
+            verify(source, times(0)).getAllSourceInfo(any(), anyLong());
+            Optional<StoreInfo> key = tag.readKey("key");
+            assertSame(key.get(), tag.peekKey("key").get());
+            assertNull(tag.peekKey("other"));
+            verify(lock, times(1)).peekKey(eq("key"));
+            verify(lock).peekKey(eq("other"));
+        }
+    }
 }
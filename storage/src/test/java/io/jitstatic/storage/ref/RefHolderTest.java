@@ -63,9 +63,12 @@ import io.jitstatic.Role;
 import io.jitstatic.auth.UserData;
 import io.jitstatic.hosted.FailedToLock;
 import io.jitstatic.hosted.LoadException;
+import io.jitstatic.hosted.SourceHandler;
 import io.jitstatic.hosted.StoreInfo;
 import io.jitstatic.source.Source;
+import io.jitstatic.source.SourceCaches;
 import io.jitstatic.source.SourceInfo;
+import io.jitstatic.source.WrittenKey;
 import io.jitstatic.storage.HashService;
 import io.jitstatic.storage.KeyAlreadyExist;
 import io.jitstatic.test.BaseTest;
@@ -92,7 +95,7 @@ public class RefHolderTest extends BaseTest {
         workStealer = Executors.newWorkStealingPool();
         repoWriter = Executors.newSingleThreadExecutor(new NamingThreadFactory("test-repowriter"));
         clusterService = mock(LocalRefLockService.class);
-        lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter);
+        lock = new LockServiceImpl(clusterService, REF, workStealer, source, repoWriter, new SourceCaches());
         when(clusterService.getLockService(REF, workStealer, source)).thenReturn(lock);
     }
 
@@ -107,7 +110,7 @@ public class RefHolderTest extends BaseTest {
     public void testAssertRefIsEmptyIfEmptyCachedKeyIsPresent() {
         try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);) {
             ref.start();
-            lock.putKeyFull("key", Either.left(Optional.empty()));
+            lock.putKeyFull("key", RefCacheEntry.ofKey(null));
             assertNotNull(ref.readKey("key").isPresent());
             assertTrue(ref.isEmpty());
         }
@@ -124,10 +127,10 @@ public class RefHolderTest extends BaseTest {
         when(storeInfo.getMetaDataVersion()).thenReturn("1");
 
         byte[] data = getData().getBytes(UTF_8);
-        when(source.updateKey(eq("key"), eq(REF), any(), eq(cmd))).thenReturn(Pair.of("2", ts));
+        when(source.updateKey(eq("key"), eq(REF), any(), eq(cmd))).thenReturn(new WrittenKey("2", null, ts));
         try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);) {
             ref.start();
-            lock.putKeyFull("key", Either.left(Optional.of(storeInfo)));
+            lock.putKeyFull("key", RefCacheEntry.ofKey(storeInfo));
             ref.updateKey("key", toProvider(data), "1", cmd).orTimeout(5, TimeUnit.SECONDS).join();
             assertEquals("2", ref.readKey("key").get().getVersion());
         }
@@ -145,7 +148,7 @@ public class RefHolderTest extends BaseTest {
         when(storeInfo.getMetaDataVersion()).thenReturn("1");
         try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);) {
             ref.start();
-            lock.putKeyFull("key", Either.left(Optional.of(storeInfo)));
+            lock.putKeyFull("key", RefCacheEntry.ofKey(storeInfo));
             CompletableFuture<Either<String, FailedToLock>> modifyMetadata = ref.updateMetadata("key", storageData, "1", commitMetaData);
             assertEquals("2", modifyMetadata.orTimeout(5, TimeUnit.SECONDS).join().getLeft());
             Optional<StoreInfo> key = ref.readKey("key");
@@ -158,7 +161,7 @@ public class RefHolderTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
         when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.getSourceVersion()).thenReturn("2");
@@ -183,7 +186,7 @@ public class RefHolderTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
         when(sourceInfo.getStreamProvider()).thenReturn(toProvider(getData().getBytes(UTF_8)));
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaDataHidden()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.getSourceVersion()).thenReturn("2");
@@ -200,7 +203,7 @@ public class RefHolderTest extends BaseTest {
     public void testLoadAndStoreMetaData() throws IOException, RefNotFoundException {
         SourceInfo sourceInfo = mock(SourceInfo.class);
 
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenReturn(asStream(getMetaData()));
         when(sourceInfo.getMetaDataVersion()).thenReturn("2");
         when(sourceInfo.isMetaDataSource()).thenReturn(true);
@@ -218,7 +221,7 @@ public class RefHolderTest extends BaseTest {
         SourceInfo sourceInfo = mock(SourceInfo.class);
         IOException ioException = new IOException("Test exception");
 
-        when(sourceInfo.readMetaData()).thenCallRealMethod();
+        when(sourceInfo.readMetaData()).thenAnswer(i -> SourceHandler.readMetaData(sourceInfo.getMetadataInputStream()));
         when(sourceInfo.getMetadataInputStream()).thenThrow(ioException);
         when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(sourceInfo);
         try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);) {
@@ -307,7 +310,7 @@ public class RefHolderTest extends BaseTest {
         @SuppressWarnings("unchecked")
         ThrowingSupplier<ObjectLoader, IOException> ts = mock(Functions.ThrowingSupplier.class);
         when(source.getSourceInfo(eq("key"), eq(REF))).thenReturn(null);
-        when(source.addKey(Mockito.eq("key"), anyString(), any(), any(), any())).thenReturn(Pair.of(Pair.of(ts, "one"), "two"));
+        when(source.addKey(Mockito.eq("key"), anyString(), any(), any(), any())).thenReturn(new WrittenKey("one", "two", ts));
         try (RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);) {
             ref.start();
             Either<String, FailedToLock> newKey = ref.addKey("key", toProvider(getData()
@@ -427,6 +430,21 @@ public class RefHolderTest extends BaseTest {
         return MAPPER.readValue(metaData, MetaData.class);
     }
 
+    @Test
+    public void testLeasedHolderIsNotRetired() throws InterruptedException {
+        RefHolder ref = new RefHolder(REF, source, hashService, clusterService, workStealer);
+        assertTrue(ref.lease());
+        Thread.sleep(1);
+        assertFalse(ref.retire(0));
+        ref.release();
+        Thread.sleep(1);
+        assertTrue(ref.retire(0));
+        assertFalse(ref.lease());
+        ref.close();
+        ref.close();
+        verify(clusterService, Mockito.times(1)).returnLock(lock);
+    }
+
     private ByteArrayInputStream asStream(String data) {
         return new ByteArrayInputStream(data.getBytes(UTF_8));
     }
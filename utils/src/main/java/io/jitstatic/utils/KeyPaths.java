@@ -0,0 +1,166 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Canonicalizes, validates and dedupes key paths in single passes over the characters of the paths, instead of building a tree of their segments.
+ */
+public final class KeyPaths {
+
+    private static final char SEPARATOR = '/';
+    private static final char DOT = '.';
+    private static final String ROOT = "/";
+    private static final Comparator<Pair<String, Boolean>> PATH_ORDER = (a, b) -> {
+        final int compared = compareSegments(a.getLeft(), b.getLeft());
+        return compared != 0 ? compared : Boolean.compare(b.getRight(), a.getRight());
+    };
+
+    private KeyPaths() {
+    }
+
+    /**
+     * @param key the path to check
+     * @return true if any of the path's segments starts with a dot, ie the key is hidden
+     */
+    public static boolean hasDotSegment(final String key) {
+        boolean segmentStart = true;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (segmentStart && c == DOT) {
+                return true;
+            }
+            segmentStart = c == SEPARATOR;
+        }
+        return false;
+    }
+
+    /**
+     * Collapses repeated separators and removes a leading one, unless the path is the root.
+     *
+     * @param key the path
+     * @return the canonical path, which is the same instance if it already was canonical
+     */
+    public static String canonicalize(final String key) {
+        if (isCanonical(key)) {
+            return key;
+        }
+        final StringBuilder sb = new StringBuilder(key.length());
+        char previous = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c != SEPARATOR || previous != SEPARATOR) {
+                sb.append(c);
+            }
+            previous = c;
+        }
+        if (sb.length() > 1 && sb.charAt(0) == SEPARATOR) {
+            sb.deleteCharAt(0);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isCanonical(final String key) {
+        if (key.length() > 1 && key.charAt(0) == SEPARATOR) {
+            return false;
+        }
+        for (int i = 1; i < key.length(); i++) {
+            if (key.charAt(i) == SEPARATOR && key.charAt(i - 1) == SEPARATOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the paths which are already covered by another path. A directory ending with '/' covers the keys directly in it and a recursive
+     * directory covers everything below it. The root is '/'.
+     *
+     * @param paths paths paired with if they are recursive or not
+     * @return the canonical paths, in segment order, that are needed to cover all of the paths
+     */
+    public static List<Pair<String, Boolean>> dedupe(final List<Pair<String, Boolean>> paths) {
+        final List<Pair<String, Boolean>> sorted = new ArrayList<>(paths.size());
+        for (Pair<String, Boolean> p : paths) {
+            final String key = canonicalize(p.getLeft());
+            sorted.add(key == p.getLeft() ? p : Pair.of(key, p.getRight()));
+        }
+        // A directory sorts right before everything in it, so what covers a path has always been seen before the path itself
+        sorted.sort(PATH_ORDER);
+        final List<Pair<String, Boolean>> deduped = new ArrayList<>(sorted.size());
+        final Set<String> levels = new HashSet<>();
+        String recursive = null;
+        String previous = null;
+        for (Pair<String, Boolean> p : sorted) {
+            final String key = p.getLeft();
+            if (key.equals(previous) || (recursive != null && key.startsWith(recursive))) {
+                continue;
+            }
+            previous = key;
+            if (isDirectory(key)) {
+                final String directory = ROOT.equals(key) ? "" : key;
+                if (p.getRight()) {
+                    recursive = directory;
+                } else {
+                    levels.add(directory);
+                }
+            } else if (!levels.isEmpty() && levels.contains(parentOf(key))) {
+                continue;
+            }
+            deduped.add(p);
+        }
+        return deduped;
+    }
+
+    private static boolean isDirectory(final String key) {
+        return !key.isEmpty() && key.charAt(key.length() - 1) == SEPARATOR;
+    }
+
+    private static String parentOf(final String key) {
+        return key.substring(0, key.lastIndexOf(SEPARATOR) + 1);
+    }
+
+    /*
+     * Compares segment by segment, which is the same as comparing the characters with the separator sorting before any other character
+     */
+    static int compareSegments(final String a, final String b) {
+        final int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            final char x = a.charAt(i);
+            final char y = b.charAt(i);
+            if (x != y) {
+                if (x == SEPARATOR) {
+                    return -1;
+                }
+                if (y == SEPARATOR) {
+                    return 1;
+                }
+                return x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+}
@@ -0,0 +1,97 @@
+package io.jitstatic.utils;
+
+/*-
+ * #%L
+ * jitstatic
+ * %%
+ * Copyright (C) 2017 - 2019 H.Hegardt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyPathsTest {
+
+    @Test
+    public void testHasDotSegment() {
+        assertTrue(KeyPaths.hasDotSegment(".key"));
+        assertTrue(KeyPaths.hasDotSegment("dir/.key"));
+        assertTrue(KeyPaths.hasDotSegment(".dir/key"));
+        assertTrue(KeyPaths.hasDotSegment("dir//.dir/key"));
+        assertTrue(KeyPaths.hasDotSegment("/.key"));
+        assertFalse(KeyPaths.hasDotSegment("key"));
+        assertFalse(KeyPaths.hasDotSegment("dir/key.metadata"));
+        assertFalse(KeyPaths.hasDotSegment("dir./key"));
+        assertFalse(KeyPaths.hasDotSegment("/"));
+        assertFalse(KeyPaths.hasDotSegment(""));
+    }
+
+    @Test
+    public void testCanonicalize() {
+        String key = "dir/key";
+        assertSame(key, KeyPaths.canonicalize(key));
+        assertEquals("/", KeyPaths.canonicalize("/"));
+        assertEquals("/", KeyPaths.canonicalize("///"));
+        assertEquals("key", KeyPaths.canonicalize("/key"));
+        assertEquals("dir/key", KeyPaths.canonicalize("//dir///key"));
+        assertEquals("dir/", KeyPaths.canonicalize("dir//"));
+    }
+
+    @Test
+    public void testCompareSegments() {
+        assertTrue(KeyPaths.compareSegments("a/b", "a-b") < 0);
+        assertTrue(KeyPaths.compareSegments("a/", "a/b") < 0);
+        assertTrue(KeyPaths.compareSegments("/", "-") < 0);
+        assertEquals(0, KeyPaths.compareSegments("a/b", "a/b"));
+    }
+
+    @Test
+    public void testDedupe() {
+        List<Pair<String, Boolean>> data = List.of(
+                Pair.of("dir0/dir1/dir3/file1", false),
+                Pair.of("dir0/dir1/file2", false),
+                Pair.of("dir0/dir1/", false),
+                Pair.of("dir0/dir2/file3", false),
+                Pair.of("dir0/dir2/file3", false),
+                Pair.of("dir0/dir2/", true),
+                Pair.of("dir0/dir2/", false),
+                Pair.of("file5", false),
+                Pair.of("//dir6//file7", false),
+                Pair.of("/", false));
+        List<Pair<String, Boolean>> expected = List.of(
+                Pair.of("/", false),
+                Pair.of("dir0/dir1/", false),
+                Pair.of("dir0/dir1/dir3/file1", false),
+                Pair.of("dir0/dir2/", true),
+                Pair.of("dir6/file7", false));
+        assertEquals(expected, KeyPaths.dedupe(data));
+    }
+
+    @Test
+    public void testDedupeRecursiveRoot() {
+        List<Pair<String, Boolean>> data = List.of(
+                Pair.of("dir0/file1", false),
+                Pair.of("/", true),
+                Pair.of("dir1/", false));
+        assertEquals(List.of(Pair.of("/", true)), KeyPaths.dedupe(data));
+    }
+}